@@ -0,0 +1,30 @@
+package com.example.ccat;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.module.AppGlideModule;
+
+/**
+ * 应用的Glide配置：注册视频缩略图加载器
+ */
+@GlideModule
+public final class CCatGlideModule extends AppGlideModule 
+{
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) 
+    {
+        registry.prepend(VideoItem.class, Bitmap.class, new VideoThumbnailLoader.Factory(context));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() 
+    {
+        return false;
+    }
+}
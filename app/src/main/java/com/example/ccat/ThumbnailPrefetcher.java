@@ -0,0 +1,271 @@
+package com.example.ccat;
+
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LongSparseArray;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayDeque;
+
+/**
+ * 视频库缩略图预取
+ * 按滚动方向预先加载下一屏的缩略图，快速滑动时预取两屏；离开可见区域较远的预取直接取消
+ * 同时进行的预取数量有上限，且优先级低于可见单元格，预取不会拖慢屏幕上缩略图的加载
+ */
+public class ThumbnailPrefetcher extends RecyclerView.OnScrollListener 
+{
+    // 同时进行的预取请求上限
+    private static final int MAX_IN_FLIGHT = 2;
+    // 每秒滚动超过这么多屏视为快速滑动，预取范围加倍
+    private static final float FAST_SCREENS_PER_SECOND = 1f;
+    private static final int SLOW_SCREENS = 1;
+    private static final int FAST_SCREENS = 2;
+    // 超出可见区域这么多屏的预取被取消，已完成的记录也一并清除，回来时重新预取
+    private static final int KEEP_SCREENS = FAST_SCREENS + 1;
+    // 速度的平滑系数，避免单次回调的抖动影响预取范围
+    private static final float VELOCITY_SMOOTHING = 0.3f;
+
+    /**
+     * 一次预取：进行中时target非空，完成后置空但保留记录，避免重复预取
+     */
+    private static final class Prefetch 
+    {
+        final int position;
+        Target<Drawable> target;
+        boolean done;
+
+        Prefetch(int position) 
+        {
+            this.position = position;
+        }
+    }
+
+    private final RequestManager requestManager;
+    private final VideoCatalog catalog;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 以媒体库id为键，列表增量刷新后位置变化也不会重复预取
+    private final LongSparseArray<Prefetch> prefetches = new LongSparseArray<>();
+    private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+    private int inFlight;
+    private int direction = 1;
+    // 单位：像素/毫秒
+    private float velocity;
+    private long lastScrollTime;
+    private int width;
+    private int height;
+
+    public ThumbnailPrefetcher(RequestManager requestManager, VideoCatalog catalog) 
+    {
+        this.requestManager = requestManager;
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) 
+    {
+        if (dy == 0) 
+        {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - lastScrollTime;
+        lastScrollTime = now;
+        int newDirection = dy > 0 ? 1 : -1;
+        if (newDirection != direction || elapsed <= 0 || elapsed > 100) 
+        {
+            // 换向或停顿后重新估计速度
+            velocity = 0;
+        }
+        else 
+        {
+            float instant = Math.abs(dy) / (float) elapsed;
+            velocity += (instant - velocity) * VELOCITY_SMOOTHING;
+        }
+        direction = newDirection;
+        schedule(recyclerView);
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) 
+    {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) 
+        {
+            velocity = 0;
+            schedule(recyclerView);
+        }
+    }
+
+    /**
+     * 页面销毁时取消全部预取
+     */
+    public void release() 
+    {
+        queue.clear();
+        for (int i = 0; i < prefetches.size(); i++) 
+        {
+            Prefetch prefetch = prefetches.valueAt(i);
+            if (prefetch.target != null) 
+            {
+                requestManager.clear(prefetch.target);
+            }
+        }
+        prefetches.clear();
+        inFlight = 0;
+    }
+
+    private void schedule(RecyclerView recyclerView) 
+    {
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || !resolveSize(recyclerView)) 
+        {
+            return;
+        }
+        int visible = last - first + 1;
+        float screensPerSecond = recyclerView.getHeight() > 0
+                ? velocity * 1000 / recyclerView.getHeight() : 0;
+        int screens = screensPerSecond >= FAST_SCREENS_PER_SECOND ? FAST_SCREENS : SLOW_SCREENS;
+
+        cancelOutside(first - visible * KEEP_SCREENS, last + visible * KEEP_SCREENS);
+
+        // 由近到远排队，反向滑动时重新排队，旧方向上尚未开始的预取不再进行
+        queue.clear();
+        int count = catalog.size();
+        if (direction > 0) 
+        {
+            int end = Math.min(count - 1, last + visible * screens);
+            for (int position = last + 1; position <= end; position++) 
+            {
+                queue.add(position);
+            }
+        }
+        else 
+        {
+            int start = Math.max(0, first - visible * screens);
+            for (int position = first - 1; position >= start; position--) 
+            {
+                queue.add(position);
+            }
+        }
+        pump();
+    }
+
+    /**
+     * 预取尺寸与单元格中缩略图的尺寸一致，否则缓存键不同，绑定时无法命中
+     */
+    private boolean resolveSize(RecyclerView recyclerView) 
+    {
+        if (width > 0 && height > 0) 
+        {
+            return true;
+        }
+        if (recyclerView.getChildCount() == 0) 
+        {
+            return false;
+        }
+        View thumbnail = recyclerView.getChildAt(0).findViewById(R.id.video_thumbnail);
+        if (thumbnail == null || thumbnail.getWidth() <= 0 || thumbnail.getHeight() <= 0) 
+        {
+            return false;
+        }
+        width = thumbnail.getWidth();
+        height = thumbnail.getHeight();
+        return true;
+    }
+
+    private void cancelOutside(int keepStart, int keepEnd) 
+    {
+        for (int i = prefetches.size() - 1; i >= 0; i--) 
+        {
+            Prefetch prefetch = prefetches.valueAt(i);
+            if (prefetch.position >= keepStart && prefetch.position <= keepEnd) 
+            {
+                continue;
+            }
+            if (prefetch.target != null) 
+            {
+                requestManager.clear(prefetch.target);
+                inFlight--;
+            }
+            prefetches.removeAt(i);
+        }
+    }
+
+    private void pump() 
+    {
+        while (inFlight < MAX_IN_FLIGHT && !queue.isEmpty()) 
+        {
+            int position = queue.poll();
+            if (position >= catalog.size() || prefetches.get(catalog.getId(position)) != null) 
+            {
+                continue;
+            }
+            start(catalog.get(position), position);
+        }
+    }
+
+    private void start(VideoItem video, int position) 
+    {
+        long id = video.getId();
+        Prefetch prefetch = new Prefetch(position);
+        prefetches.put(id, prefetch);
+        inFlight++;
+        Target<Drawable> target = requestManager
+                .load(video)
+                .apply(VideoGalleryAdapter.THUMBNAIL_OPTIONS)
+                .priority(Priority.LOW)
+                .listener(new RequestListener<Drawable>() 
+                {
+                    @Override
+                    public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                            @NonNull Target<Drawable> target, boolean isFirstResource) 
+                    {
+                        finish(id, prefetch);
+                        return false;
+                    }
+
+                    @Override
+                    public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model,
+                            Target<Drawable> target, @NonNull DataSource dataSource, boolean isFirstResource) 
+                    {
+                        finish(id, prefetch);
+                        return false;
+                    }
+                })
+                .preload(width, height);
+        // 内存缓存命中时请求在preload返回前就已完成
+        if (!prefetch.done) 
+        {
+            prefetch.target = target;
+        }
+    }
+
+    private void finish(long id, Prefetch prefetch) 
+    {
+        if (prefetch.done || prefetches.get(id) != prefetch) 
+        {
+            return;
+        }
+        prefetch.done = true;
+        prefetch.target = null;
+        inFlight--;
+        // 回调可能发生在preload调用内部，下一个请求延后发出，避免重入
+        mainHandler.post(this::pump);
+    }
+}
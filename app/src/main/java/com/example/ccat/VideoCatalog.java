@@ -0,0 +1,195 @@
+package com.example.ccat;
+
+import java.util.Arrays;
+
+/**
+ * 视频库目录：按列存放已加载的视频
+ * 每个字段一个基本类型数组，不为每个视频创建对象；名称经intern去重，content URI由id按需生成
+ * 大型媒体库(数万个视频)的堆占用和滚动时的GC压力都远小于List<VideoItem>
+ * 只在主线程修改，后台线程需要时先复制一份
+ */
+public final class VideoCatalog 
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] ids;
+    private long[] durations;
+    private long[] datesModified;
+    private long[] generations;
+    private String[] names;
+    private int size;
+
+    public VideoCatalog() 
+    {
+        this(INITIAL_CAPACITY);
+    }
+
+    public VideoCatalog(int capacity) 
+    {
+        capacity = Math.max(capacity, 1);
+        ids = new long[capacity];
+        durations = new long[capacity];
+        datesModified = new long[capacity];
+        generations = new long[capacity];
+        names = new String[capacity];
+    }
+
+    /**
+     * 复制另一个目录，名称字符串共享
+     */
+    public VideoCatalog(VideoCatalog other) 
+    {
+        this(other.size);
+        System.arraycopy(other.ids, 0, ids, 0, other.size);
+        System.arraycopy(other.durations, 0, durations, 0, other.size);
+        System.arraycopy(other.datesModified, 0, datesModified, 0, other.size);
+        System.arraycopy(other.generations, 0, generations, 0, other.size);
+        System.arraycopy(other.names, 0, names, 0, other.size);
+        size = other.size;
+    }
+
+    public int size() 
+    {
+        return size;
+    }
+
+    public boolean isEmpty() 
+    {
+        return size == 0;
+    }
+
+    public long getId(int position) 
+    {
+        return ids[position];
+    }
+
+    public String getName(int position) 
+    {
+        return names[position];
+    }
+
+    /**
+     * 时长，单位：毫秒
+     */
+    public long getDuration(int position) 
+    {
+        return durations[position];
+    }
+
+    /**
+     * 修改时间，单位：秒
+     */
+    public long getDateModified(int position) 
+    {
+        return datesModified[position];
+    }
+
+    /**
+     * 媒体库修改代数，Android 11以下为0
+     */
+    public long getGeneration(int position) 
+    {
+        return generations[position];
+    }
+
+    /**
+     * 媒体库content URI，由id生成，不在目录中保存
+     */
+    public String getUri(int position) 
+    {
+        return VideoItem.buildUri(ids[position]);
+    }
+
+    /**
+     * 生成单个视频的对象，供点击和缩略图加载使用
+     */
+    public VideoItem get(int position) 
+    {
+        return new VideoItem(ids[position], names[position], durations[position],
+                datesModified[position], generations[position]);
+    }
+
+    /**
+     * 两个位置上的视频是否相同且未被修改
+     */
+    boolean isSameVersion(int position, VideoCatalog other, int otherPosition) 
+    {
+        return ids[position] == other.ids[otherPosition]
+                && datesModified[position] == other.datesModified[otherPosition]
+                && generations[position] == other.generations[otherPosition];
+    }
+
+    /**
+     * 追加一个视频
+     * 不同目录下的同名视频很常见，名称经intern后共享同一个字符串
+     */
+    void add(long id, String name, long duration, long dateModified, long generation) 
+    {
+        ensureCapacity(size + 1);
+        ids[size] = id;
+        names[size] = name != null ? name.intern() : null;
+        durations[size] = duration;
+        datesModified[size] = dateModified;
+        generations[size] = generation;
+        size++;
+    }
+
+    /**
+     * 追加另一个目录中的一项
+     */
+    void add(VideoCatalog other, int position) 
+    {
+        ensureCapacity(size + 1);
+        ids[size] = other.ids[position];
+        names[size] = other.names[position];
+        durations[size] = other.durations[position];
+        datesModified[size] = other.datesModified[position];
+        generations[size] = other.generations[position];
+        size++;
+    }
+
+    void addAll(VideoCatalog other) 
+    {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        System.arraycopy(other.durations, 0, durations, size, other.size);
+        System.arraycopy(other.datesModified, 0, datesModified, size, other.size);
+        System.arraycopy(other.generations, 0, generations, size, other.size);
+        System.arraycopy(other.names, 0, names, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * 用另一个目录的内容替换，直接接管其数组，之后不应再使用other
+     */
+    void replaceWith(VideoCatalog other) 
+    {
+        ids = other.ids;
+        durations = other.durations;
+        datesModified = other.datesModified;
+        generations = other.generations;
+        names = other.names;
+        size = other.size;
+    }
+
+    void clear() 
+    {
+        // 只释放名称引用，数组留给下一次加载复用
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+    }
+
+    private void ensureCapacity(int capacity) 
+    {
+        if (capacity <= ids.length) 
+        {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        durations = Arrays.copyOf(durations, newCapacity);
+        datesModified = Arrays.copyOf(datesModified, newCapacity);
+        generations = Arrays.copyOf(generations, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
+    }
+}
@@ -4,6 +4,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.Bitmap;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Bundle;
@@ -13,6 +14,8 @@ import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageButton;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -22,8 +25,11 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.ccat.services.VideoProcessingService;
-
-import java.io.File;
+import com.example.ccat.utils.FilmstripGenerator;
+import com.example.ccat.utils.SampleIndexCache;
+import com.example.ccat.utils.ThumbnailEngine;
+import com.example.ccat.utils.VideoFilter;
+import com.example.ccat.utils.VideoSource;
 
 /**
  * 视频编辑器活动
@@ -31,6 +37,9 @@ import java.io.File;
 public class VideoEditorActivity extends AppCompatActivity 
 {
     private static final String TAG = "VideoEditorActivity";
+    // 时间轴缩略图的帧数和每帧长边像素
+    private static final int FILMSTRIP_FRAMES = 10;
+    private static final int FILMSTRIP_FRAME_SIZE = 160;
     
     private VideoView videoView;
     private SeekBar seekBarTrim;
@@ -42,8 +51,11 @@ public class VideoEditorActivity extends AppCompatActivity
     private ImageButton btnAddMusic;
     private ImageButton btnFilter;
     private View progressOverlay;
+    private LinearLayout filmstrip;
+    private FilmstripGenerator.Task filmstripTask;
 
-    private String videoPath;
+    private String videoPath; // 文件路径或content URI
+    private VideoSource videoSource;
     private String videoName;
     private long videoDuration; // 毫秒
     private long startTrimPosition = 0L; // 毫秒
@@ -87,8 +99,9 @@ public class VideoEditorActivity extends AppCompatActivity
         videoName = getIntent().getStringExtra("video_name");
         videoDuration = getIntent().getLongExtra("video_duration", 0);
         
-        // 检查文件是否存在
-        if (videoPath == null || !new File(videoPath).exists()) 
+        // 检查文件是否存在，content URI通过文件描述符读取，不需要文件路径
+        videoSource = videoPath != null ? VideoSource.parse(this, videoPath) : null;
+        if (videoSource == null || !videoSource.exists()) 
         {
             Toast.makeText(this, "视频文件不存在", Toast.LENGTH_SHORT).show();
             finish();
@@ -101,7 +114,7 @@ public class VideoEditorActivity extends AppCompatActivity
             try 
             {
                 MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-                retriever.setDataSource(videoPath);
+                videoSource.setDataSource(retriever);
                 String time = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
                 if (time != null) 
                 {
@@ -132,6 +145,7 @@ public class VideoEditorActivity extends AppCompatActivity
         initViews();
         setupVideoPlayer();
         setupTrimControls();
+        loadFilmstrip();
         setupActionButtons();
         
         // 注册广播接收器
@@ -165,6 +179,7 @@ public class VideoEditorActivity extends AppCompatActivity
         btnAddMusic = findViewById(R.id.btn_add_music);
         btnFilter = findViewById(R.id.btn_filter);
         progressOverlay = findViewById(R.id.progress_overlay);
+        filmstrip = findViewById(R.id.filmstrip);
     }
 
     private void setupVideoPlayer() 
@@ -349,6 +364,47 @@ public class VideoEditorActivity extends AppCompatActivity
         });
     }
 
+    /**
+     * 加载裁剪进度条上方的时间轴缩略图
+     */
+    private void loadFilmstrip() 
+    {
+        if (filmstrip == null) 
+        {
+            return;
+        }
+        filmstrip.removeAllViews();
+        ImageView[] frames = new ImageView[FILMSTRIP_FRAMES];
+        for (int i = 0; i < FILMSTRIP_FRAMES; i++) 
+        {
+            ImageView frame = new ImageView(this);
+            frame.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            filmstrip.addView(frame, new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.MATCH_PARENT, 1f));
+            frames[i] = frame;
+        }
+
+        if (filmstripTask != null) 
+        {
+            filmstripTask.cancel();
+        }
+        FilmstripGenerator generator = new FilmstripGenerator(ThumbnailEngine.get(this), SampleIndexCache.get(this));
+        filmstripTask = generator.generate(videoSource, videoDuration, FILMSTRIP_FRAMES, FILMSTRIP_FRAME_SIZE,
+                new FilmstripGenerator.Listener() 
+                {
+                    @Override
+                    public void onFrame(int index, Bitmap frame) 
+                    {
+                        frames[index].setImageBitmap(frame);
+                    }
+
+                    @Override
+                    public void onComplete() 
+                    {
+                        Log.d(TAG, "时间轴缩略图加载完成");
+                    }
+                });
+    }
+
     private void setupActionButtons() 
     {
         // 播放/暂停按钮
@@ -394,8 +450,7 @@ public class VideoEditorActivity extends AppCompatActivity
         // 滤镜按钮
         btnFilter.setOnClickListener(v -> 
         {
-            Toast.makeText(this, "滤镜功能开发中...", Toast.LENGTH_SHORT).show();
-            // 实际应用中，应该显示滤镜选择面板
+            showFilterDialog();
         });
         
         // 返回按钮
@@ -441,7 +496,7 @@ public class VideoEditorActivity extends AppCompatActivity
                             break;
                             
                         case 1: // 应用滤镜
-                            Toast.makeText(this, "滤镜功能开发中...", Toast.LENGTH_SHORT).show();
+                            showFilterDialog();
                             break;
                             
                         case 2: // 取消
@@ -452,6 +507,57 @@ public class VideoEditorActivity extends AppCompatActivity
                 .show();
     }
     
+    /**
+     * 显示滤镜选择对话框
+     */
+    private void showFilterDialog() 
+    {
+        // 不列出"原图"
+        VideoFilter[] all = VideoFilter.values();
+        VideoFilter[] filters = new VideoFilter[all.length - 1];
+        String[] names = new String[filters.length];
+        int count = 0;
+        for (VideoFilter filter : all) 
+        {
+            if (filter != VideoFilter.NONE) 
+            {
+                filters[count] = filter;
+                names[count] = filter.getDisplayName();
+                count++;
+            }
+        }
+        
+        new AlertDialog.Builder(this)
+                .setTitle("选择滤镜")
+                .setItems(names, (dialog, which) -> applyFilter(filters[which]))
+                .setNegativeButton("取消", (dialog, which) -> dialog.dismiss())
+                .show();
+    }
+    
+    /**
+     * 对整个视频应用滤镜
+     */
+    private void applyFilter(VideoFilter filter) 
+    {
+        // 暂停播放
+        if (isPlaying) 
+        {
+            videoView.pause();
+            btnPlay.setText("播放");
+            isPlaying = false;
+            handler.removeCallbacks(updateTimeRunnable);
+        }
+        
+        progressOverlay.setVisibility(View.VISIBLE);
+        Log.d(TAG, "开始应用滤镜: " + filter.getDisplayName());
+        
+        Intent intent = new Intent(this, VideoProcessingService.class);
+        intent.setAction(VideoProcessingService.ACTION_APPLY_FILTER);
+        intent.putExtra(VideoProcessingService.EXTRA_SOURCE_PATH, videoPath);
+        intent.putExtra(VideoProcessingService.EXTRA_FILTER_TYPE, filter.getId());
+        startService(intent);
+    }
+    
     /**
      * 开始裁剪视频
      */
@@ -502,6 +608,7 @@ public class VideoEditorActivity extends AppCompatActivity
         intent.putExtra(VideoProcessingService.EXTRA_SOURCE_PATH, videoPath);
         intent.putExtra(VideoProcessingService.EXTRA_START_TIME, (long) startTrimPosition);
         intent.putExtra(VideoProcessingService.EXTRA_END_TIME, (long) endTrimPosition);
+        intent.putExtra(VideoProcessingService.EXTRA_SMART_TRIM, true);
         startService(intent);
     }
     
@@ -529,6 +636,7 @@ public class VideoEditorActivity extends AppCompatActivity
                 {
                     // 重新加载当前视频或加载新的处理结果
                     videoPath = outputPath;
+                    videoSource = VideoSource.parse(this, outputPath);
                     setupVideoPlayer();
                     dialog.dismiss();
                 })
@@ -579,6 +687,10 @@ public class VideoEditorActivity extends AppCompatActivity
     protected void onDestroy() 
     {
         super.onDestroy();
+        if (filmstripTask != null) 
+        {
+            filmstripTask.cancel();
+        }
         if (videoView != null) 
         {
             videoView.stopPlayback();
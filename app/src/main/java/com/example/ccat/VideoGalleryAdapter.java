@@ -11,22 +11,27 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
 
-import java.io.File;
-import java.util.List;
-
 /**
  * 视频库适配器
  */
 public class VideoGalleryAdapter extends RecyclerView.Adapter<VideoGalleryAdapter.VideoViewHolder> 
 {
+    // 系统已缓存原始缩略图，磁盘缓存只保存裁剪后的结果
+    // 预取使用相同的选项，缓存键一致，绑定时直接命中
+    static final RequestOptions THUMBNAIL_OPTIONS = new RequestOptions()
+            .centerCrop()
+            .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+            .placeholder(R.drawable.ic_video_placeholder);
+
     private Context context;
-    private List<VideoItem> videoList;
+    private VideoCatalog catalog;
     private OnVideoClickListener listener;
 
     public interface OnVideoClickListener 
@@ -34,11 +39,21 @@ public class VideoGalleryAdapter extends RecyclerView.Adapter<VideoGalleryAdapte
         void onVideoClick(VideoItem video);
     }
 
-    public VideoGalleryAdapter(Context context, List<VideoItem> videoList, OnVideoClickListener listener) 
+    public VideoGalleryAdapter(Context context, VideoCatalog catalog, OnVideoClickListener listener) 
     {
         this.context = context;
-        this.videoList = videoList;
+        this.catalog = catalog;
         this.listener = listener;
+        // 以媒体库id作为稳定id，局部刷新时未变化的项保留原有视图，缩略图不会重新加载
+        setHasStableIds(true);
+    }
+
+    /**
+     * 目录已被增量刷新的结果替换，只对差异部分发出变更通知
+     */
+    public void applyUpdate(DiffUtil.DiffResult diff) 
+    {
+        diff.dispatchUpdatesTo(this);
     }
 
     @NonNull
@@ -46,46 +61,46 @@ public class VideoGalleryAdapter extends RecyclerView.Adapter<VideoGalleryAdapte
     public VideoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) 
     {
         View view = LayoutInflater.from(context).inflate(R.layout.item_video_gallery, parent, false);
-        return new VideoViewHolder(view);
+        VideoViewHolder holder = new VideoViewHolder(view);
+        // 点击时再按位置生成视频对象，绑定时不为每个单元格创建监听器
+        view.setOnClickListener(v -> 
+        {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) 
+            {
+                listener.onVideoClick(catalog.get(position));
+            }
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull VideoViewHolder holder, int position) 
     {
-        VideoItem video = videoList.get(position);
-        
         // 设置视频名称
-        holder.videoName.setText(video.getName());
+        holder.videoName.setText(catalog.getName(position));
         
         // 设置视频时长
-        holder.videoDuration.setText(video.getFormattedDuration());
-        
-        // 使用Glide加载视频缩略图
-        RequestOptions options = new RequestOptions()
-                .centerCrop()
-                .diskCacheStrategy(DiskCacheStrategy.ALL)
-                .placeholder(R.drawable.ic_video_placeholder);
+        holder.videoDuration.setText(VideoItem.formatDuration(catalog.getDuration(position)));
         
+        // 从系统缩略图缓存加载，按单元格尺寸读取，不打开视频文件
+        // 同一视频重新绑定时生成的对象相等，Glide不会重新发起请求
         Glide.with(context)
-             .load(new File(video.getPath()))
-             .thumbnail(0.1f)
-             .apply(options)
+             .load(catalog.get(position))
+             .apply(THUMBNAIL_OPTIONS)
              .into(holder.videoThumbnail);
-        
-        // 设置点击事件
-        holder.itemView.setOnClickListener(v -> 
-        {
-            if (listener != null) 
-            {
-                listener.onVideoClick(video);
-            }
-        });
+    }
+
+    @Override
+    public long getItemId(int position) 
+    {
+        return catalog.getId(position);
     }
 
     @Override
     public int getItemCount() 
     {
-        return videoList.size();
+        return catalog.size();
     }
 
     static class VideoViewHolder extends RecyclerView.ViewHolder 
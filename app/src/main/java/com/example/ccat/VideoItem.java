@@ -1,5 +1,8 @@
 package com.example.ccat;
 
+import android.content.ContentUris;
+import android.provider.MediaStore;
+
 /**
  * 视频条目模型类
  */
@@ -7,17 +10,17 @@ public class VideoItem
 {
     private long id;
     private String name;
-    private String path;
-    private String uri;
     private long duration; // 单位：毫秒，改为long类型
+    private long dateModified; // 单位：秒
+    private long generation; // 媒体库修改代数，Android 11以下为0
 
-    public VideoItem(long id, String name, String path, String uri, long duration) 
+    public VideoItem(long id, String name, long duration, long dateModified, long generation) 
     {
         this.id = id;
         this.name = name;
-        this.path = path;
-        this.uri = uri;
         this.duration = duration;
+        this.dateModified = dateModified;
+        this.generation = generation;
     }
 
     public long getId() 
@@ -30,14 +33,20 @@ public class VideoItem
         return name;
     }
 
-    public String getPath() 
+    /**
+     * 媒体库content URI，编辑、缩略图和播放都通过它读取视频，不依赖文件路径
+     */
+    public String getUri() 
     {
-        return path;
+        return buildUri(id);
     }
 
-    public String getUri() 
+    /**
+     * 由媒体库id生成content URI
+     */
+    public static String buildUri(long id) 
     {
-        return uri;
+        return ContentUris.withAppendedId(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, id).toString();
     }
 
     public long getDuration() 
@@ -45,10 +54,25 @@ public class VideoItem
         return duration;
     }
 
+    public long getDateModified() 
+    {
+        return dateModified;
+    }
+
+    public long getGeneration() 
+    {
+        return generation;
+    }
+
     /**
      * 获取格式化的时长字符串 (mm:ss)
      */
     public String getFormattedDuration() 
+    {
+        return formatDuration(duration);
+    }
+
+    public static String formatDuration(long duration) 
     {
         int seconds = (int) (duration / 1000) % 60;
         int minutes = (int) ((duration / (1000 * 60)) % 60);
@@ -63,4 +87,30 @@ public class VideoItem
             return String.format("%02d:%02d", minutes, seconds);
         }
     }
+
+    /**
+     * 媒体库id和版本相同即视为同一项，Glide以此判断请求和内存缓存是否可以复用
+     */
+    @Override
+    public boolean equals(Object o) 
+    {
+        if (this == o) 
+        {
+            return true;
+        }
+        if (!(o instanceof VideoItem)) 
+        {
+            return false;
+        }
+        VideoItem other = (VideoItem) o;
+        return id == other.id && dateModified == other.dateModified && generation == other.generation;
+    }
+
+    @Override
+    public int hashCode() 
+    {
+        int result = Long.hashCode(id);
+        result = 31 * result + Long.hashCode(dateModified);
+        return 31 * result + Long.hashCode(generation);
+    }
 } 
\ No newline at end of file
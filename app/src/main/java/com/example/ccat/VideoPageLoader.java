@@ -0,0 +1,488 @@
+package com.example.ccat;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.LongSparseArray;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.ccat.utils.BackgroundExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 分页读取媒体库中的视频
+ * 查询在后台线程执行，每页读取完成后回到主线程回调；第一页较小，尽快出现在屏幕上，
+ * 后续页在列表滚动到末尾附近时由调用方按需请求
+ * 媒体库变化后增量刷新：只重新读取修改代数或修改时间变化的行，差异也在后台计算
+ * 读取结果写入调用方提供的VideoCatalog，目录只在主线程修改
+ */
+public class VideoPageLoader 
+{
+    // 第一页只需要填满一屏，查询和绑定都能在一帧内完成
+    static final int FIRST_PAGE_SIZE = 24;
+    static final int PAGE_SIZE = 60;
+
+    // 媒体扫描时通知接连到达，合并为一次刷新
+    private static final long REFRESH_DELAY_MS = 300;
+    // SQLite单条语句的参数个数有上限，按id读取时分批查询
+    private static final int MAX_SELECTION_ARGS = 500;
+
+    // Android 11起每一行都记录最后修改时的媒体库代数，比秒级的修改时间可靠
+    private static final boolean HAS_GENERATION = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+
+    private static final String[] PROJECTION = HAS_GENERATION
+            ? new String[] {
+                    MediaStore.Video.Media._ID,
+                    MediaStore.Video.Media.DISPLAY_NAME,
+                    MediaStore.Video.Media.DURATION,
+                    MediaStore.Video.Media.DATE_MODIFIED,
+                    MediaStore.Video.Media.GENERATION_MODIFIED
+            }
+            : new String[] {
+                    MediaStore.Video.Media._ID,
+                    MediaStore.Video.Media.DISPLAY_NAME,
+                    MediaStore.Video.Media.DURATION,
+                    MediaStore.Video.Media.DATE_MODIFIED
+            };
+    // 增量刷新时先只读取判断变化所需的列
+    private static final String[] VERSION_PROJECTION = HAS_GENERATION
+            ? new String[] {
+                    MediaStore.Video.Media._ID,
+                    MediaStore.Video.Media.DATE_MODIFIED,
+                    MediaStore.Video.Media.GENERATION_MODIFIED
+            }
+            : new String[] {
+                    MediaStore.Video.Media._ID,
+                    MediaStore.Video.Media.DATE_MODIFIED
+            };
+    // 以_ID作为第二排序键，添加时间相同的视频在相邻两页之间不会重复或遗漏
+    private static final String SORT_ORDER = MediaStore.Video.Media.DATE_ADDED + " DESC, "
+            + MediaStore.Video.Media._ID + " DESC";
+
+    // 单线程执行，各页和刷新按请求顺序依次查询
+    private static final ExecutorService EXECUTOR = BackgroundExecutors.newSingleThreadExecutor("VideoPageLoader");
+
+    public interface Callback 
+    {
+        /**
+         * 一页读取完成并已追加到目录末尾，在主线程回调
+         * @param offset 这一页第一项在全部视频中的位置
+         * @param count 这一页的数量
+         * @param hasMore 是否还有下一页
+         */
+        void onPageLoaded(int offset, int count, boolean hasMore);
+
+        /**
+         * 增量刷新完成，目录内容已经替换，在主线程回调
+         * @param diff 与刷新前目录的差异，用于发出最小的变更通知
+         */
+        void onRefreshed(DiffUtil.DiffResult diff);
+
+        void onLoadFailed(Exception e);
+    }
+
+    private final ContentResolver resolver;
+    private final VideoCatalog catalog;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable refreshRunnable = this::refresh;
+
+    // 以下字段只在主线程访问，读取的结果写入catalog
+    private boolean loading;
+    private boolean hasMore = true;
+    private boolean refreshPending;
+    private boolean released;
+    // reset或release后递增，之前发出的查询结果到达时直接丢弃
+    private int generation;
+
+    public VideoPageLoader(ContentResolver resolver, VideoCatalog catalog, Callback callback) 
+    {
+        this.resolver = resolver;
+        this.catalog = catalog;
+        this.callback = callback;
+    }
+
+    public boolean isLoading() 
+    {
+        return loading;
+    }
+
+    public boolean hasMore() 
+    {
+        return hasMore;
+    }
+
+    /**
+     * 请求下一页，正在读取或已经读完时忽略，在主线程调用
+     */
+    public void loadNextPage() 
+    {
+        if (loading || !hasMore) 
+        {
+            return;
+        }
+        loading = true;
+        final int offset = catalog.size();
+        final int limit = offset == 0 ? FIRST_PAGE_SIZE : PAGE_SIZE;
+        final int requestGeneration = generation;
+        EXECUTOR.execute(() -> 
+        {
+            VideoCatalog page;
+            try 
+            {
+                page = queryPage(offset, limit);
+            }
+            catch (RuntimeException e) 
+            {
+                postFailure(requestGeneration, e);
+                return;
+            }
+            final VideoCatalog result = page;
+            mainHandler.post(() -> 
+            {
+                if (requestGeneration != generation) 
+                {
+                    return;
+                }
+                loading = false;
+                catalog.addAll(result);
+                hasMore = result.size() == limit;
+                callback.onPageLoaded(offset, result.size(), hasMore);
+                runPendingRefresh();
+            });
+        });
+    }
+
+    /**
+     * 媒体库发生变化，稍后增量刷新已加载的部分，在主线程调用
+     * 短时间内的多次请求合并为一次；尚未加载第一页时忽略，读取第一页时自然拿到最新数据
+     */
+    public void requestRefresh() 
+    {
+        if (released || (catalog.isEmpty() && hasMore && !loading)) 
+        {
+            return;
+        }
+        mainHandler.removeCallbacks(refreshRunnable);
+        mainHandler.postDelayed(refreshRunnable, REFRESH_DELAY_MS);
+    }
+
+    /**
+     * 清空目录，下一次loadNextPage从第一页开始
+     */
+    public void reset() 
+    {
+        generation++;
+        mainHandler.removeCallbacks(refreshRunnable);
+        catalog.clear();
+        loading = false;
+        hasMore = true;
+        refreshPending = false;
+    }
+
+    /**
+     * 页面销毁时调用，尚未返回的查询不再回调
+     */
+    public void release() 
+    {
+        reset();
+        hasMore = false;
+        released = true;
+    }
+
+    private void refresh() 
+    {
+        // 与分页读取互斥，否则下一页的偏移会与刷新后的列表错开
+        if (loading) 
+        {
+            refreshPending = true;
+            return;
+        }
+        loading = true;
+        // 复制一份交给后台线程，复制只涉及几个基本类型数组
+        final VideoCatalog current = new VideoCatalog(catalog);
+        // 至少覆盖第一页，列表为空时也能发现新增的视频
+        final int window = Math.max(current.size(), FIRST_PAGE_SIZE);
+        final int requestGeneration = generation;
+        EXECUTOR.execute(() -> 
+        {
+            VideoCatalog items;
+            DiffUtil.DiffResult diff;
+            try 
+            {
+                items = queryChanges(current, window);
+                diff = DiffUtil.calculateDiff(new VideoDiffCallback(current, items), false);
+            }
+            catch (RuntimeException e) 
+            {
+                postFailure(requestGeneration, e);
+                return;
+            }
+            final VideoCatalog result = items;
+            final DiffUtil.DiffResult resultDiff = diff;
+            mainHandler.post(() -> 
+            {
+                if (requestGeneration != generation) 
+                {
+                    return;
+                }
+                loading = false;
+                hasMore = result.size() == window;
+                catalog.replaceWith(result);
+                callback.onRefreshed(resultDiff);
+                runPendingRefresh();
+            });
+        });
+    }
+
+    private void runPendingRefresh() 
+    {
+        if (refreshPending) 
+        {
+            refreshPending = false;
+            refresh();
+        }
+    }
+
+    private void postFailure(int requestGeneration, RuntimeException e) 
+    {
+        mainHandler.post(() -> 
+        {
+            if (requestGeneration != generation) 
+            {
+                return;
+            }
+            loading = false;
+            hasMore = false;
+            callback.onLoadFailed(e);
+        });
+    }
+
+    private VideoCatalog queryPage(int offset, int limit) 
+    {
+        VideoCatalog page = new VideoCatalog(limit);
+        try (Cursor cursor = query(PROJECTION, null, null, offset, limit)) 
+        {
+            if (cursor == null) 
+            {
+                return page;
+            }
+            RowReader reader = new RowReader(cursor);
+            // 提供器没有执行分页时也只取一页
+            while (page.size() < limit && cursor.moveToNext()) 
+            {
+                reader.readInto(page);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 读取前window行的id和版本，与当前目录比较
+     * 没有变化的行直接从当前目录复制，只有新增或修改过的行再按id读取完整内容
+     */
+    private VideoCatalog queryChanges(VideoCatalog current, int window) 
+    {
+        LongSparseArray<Integer> known = new LongSparseArray<>(current.size());
+        for (int i = 0; i < current.size(); i++) 
+        {
+            known.put(current.getId(i), i);
+        }
+
+        // 按新顺序记录每一行的id，以及未变化时在当前目录中的位置(变化时为-1)
+        long[] order = new long[window];
+        int[] sources = new int[window];
+        int rows = 0;
+        List<Long> changed = new ArrayList<>();
+        try (Cursor cursor = query(VERSION_PROJECTION, null, null, 0, window)) 
+        {
+            if (cursor == null) 
+            {
+                return current;
+            }
+            int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media._ID);
+            int modifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATE_MODIFIED);
+            int generationColumn = HAS_GENERATION
+                    ? cursor.getColumnIndexOrThrow(MediaStore.Video.Media.GENERATION_MODIFIED) : -1;
+            while (rows < window && cursor.moveToNext()) 
+            {
+                long id = cursor.getLong(idColumn);
+                long dateModified = cursor.getLong(modifiedColumn);
+                long rowGeneration = generationColumn >= 0 ? cursor.getLong(generationColumn) : 0;
+                Integer position = known.get(id);
+                order[rows] = id;
+                if (position != null && current.getDateModified(position) == dateModified
+                        && current.getGeneration(position) == rowGeneration) 
+                {
+                    sources[rows] = position;
+                }
+                else 
+                {
+                    sources[rows] = -1;
+                    changed.add(id);
+                }
+                rows++;
+            }
+        }
+
+        VideoCatalog fetched = new VideoCatalog(changed.size());
+        for (int start = 0; start < changed.size(); start += MAX_SELECTION_ARGS) 
+        {
+            List<Long> batch = changed.subList(start, Math.min(start + MAX_SELECTION_ARGS, changed.size()));
+            queryByIds(batch, fetched);
+        }
+        LongSparseArray<Integer> fetchedPositions = new LongSparseArray<>(fetched.size());
+        for (int i = 0; i < fetched.size(); i++) 
+        {
+            fetchedPositions.put(fetched.getId(i), i);
+        }
+
+        VideoCatalog items = new VideoCatalog(rows);
+        for (int i = 0; i < rows; i++) 
+        {
+            if (sources[i] >= 0) 
+            {
+                items.add(current, sources[i]);
+                continue;
+            }
+            // 两次查询之间被删除的行直接跳过，下一次通知会再刷新
+            Integer position = fetchedPositions.get(order[i]);
+            if (position != null) 
+            {
+                items.add(fetched, position);
+            }
+        }
+        return items;
+    }
+
+    private void queryByIds(List<Long> ids, VideoCatalog out) 
+    {
+        StringBuilder selection = new StringBuilder(MediaStore.Video.Media._ID).append(" IN (");
+        String[] args = new String[ids.size()];
+        for (int i = 0; i < args.length; i++) 
+        {
+            selection.append(i == 0 ? "?" : ",?");
+            args[i] = Long.toString(ids.get(i));
+        }
+        selection.append(')');
+        try (Cursor cursor = query(PROJECTION, selection.toString(), args, 0, 0)) 
+        {
+            if (cursor == null) 
+            {
+                return;
+            }
+            RowReader reader = new RowReader(cursor);
+            while (cursor.moveToNext()) 
+            {
+                reader.readInto(out);
+            }
+        }
+    }
+
+    /**
+     * Android 11起媒体库只接受查询参数形式的分页，不再允许在排序语句后追加LIMIT；
+     * 更早的系统通过排序语句分页
+     * @param limit 为0时不分页
+     */
+    private Cursor query(String[] projection, String selection, String[] selectionArgs, int offset, int limit) 
+    {
+        Uri uri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) 
+        {
+            Bundle args = new Bundle();
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER);
+            if (limit > 0) 
+            {
+                args.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+                args.putInt(ContentResolver.QUERY_ARG_OFFSET, offset);
+            }
+            return resolver.query(uri, projection, args, null);
+        }
+        String sortOrder = limit > 0 ? SORT_ORDER + " LIMIT " + limit + " OFFSET " + offset : SORT_ORDER;
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * 按PROJECTION读取一行并追加到目录
+     */
+    private static final class RowReader 
+    {
+        private final Cursor cursor;
+        private final int idColumn;
+        private final int nameColumn;
+        private final int durationColumn;
+        private final int modifiedColumn;
+        private final int generationColumn;
+
+        RowReader(Cursor cursor) 
+        {
+            this.cursor = cursor;
+            idColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media._ID);
+            nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DISPLAY_NAME);
+            durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DURATION);
+            modifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATE_MODIFIED);
+            generationColumn = HAS_GENERATION
+                    ? cursor.getColumnIndexOrThrow(MediaStore.Video.Media.GENERATION_MODIFIED) : -1;
+        }
+
+        void readInto(VideoCatalog catalog) 
+        {
+            long id = cursor.getLong(idColumn);
+            String name = cursor.getString(nameColumn);
+            long duration = cursor.getLong(durationColumn);
+            long dateModified = cursor.getLong(modifiedColumn);
+            long rowGeneration = generationColumn >= 0 ? cursor.getLong(generationColumn) : 0;
+            catalog.add(id, name, duration, dateModified, rowGeneration);
+        }
+    }
+
+    /**
+     * 以媒体库id判断是否同一项，id和版本都相同时内容未变
+     */
+    private static final class VideoDiffCallback extends DiffUtil.Callback 
+    {
+        private final VideoCatalog oldItems;
+        private final VideoCatalog newItems;
+
+        VideoDiffCallback(VideoCatalog oldItems, VideoCatalog newItems) 
+        {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() 
+        {
+            return oldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() 
+        {
+            return newItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) 
+        {
+            return oldItems.getId(oldPosition) == newItems.getId(newPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) 
+        {
+            return oldItems.isSameVersion(oldPosition, newItems, newPosition);
+        }
+    }
+}
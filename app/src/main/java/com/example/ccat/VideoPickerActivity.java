@@ -3,11 +3,13 @@ package com.example.ccat;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.provider.Settings;
 import android.view.View;
@@ -19,16 +21,17 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.bumptech.glide.Glide;
 
 /**
  * 视频选择器活动
  */
-public class VideoPickerActivity extends AppCompatActivity implements VideoGalleryAdapter.OnVideoClickListener 
+public class VideoPickerActivity extends AppCompatActivity 
+        implements VideoGalleryAdapter.OnVideoClickListener, VideoPageLoader.Callback 
 {
     private static final int PERMISSION_REQUEST_CODE = 1001;
     private static final int MANAGE_EXTERNAL_STORAGE_REQUEST_CODE = 1002;
@@ -36,10 +39,15 @@ public class VideoPickerActivity extends AppCompatActivity implements VideoGalle
             Manifest.permission.READ_EXTERNAL_STORAGE,
             Manifest.permission.WRITE_EXTERNAL_STORAGE
     };
+    // 距离已加载末尾不足这么多项时请求下一页
+    private static final int PRELOAD_DISTANCE = 12;
 
     private RecyclerView recyclerView;
     private VideoGalleryAdapter adapter;
-    private List<VideoItem> videoList;
+    private VideoCatalog catalog;
+    private VideoPageLoader pageLoader;
+    private ContentObserver mediaObserver;
+    private ThumbnailPrefetcher prefetcher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) 
@@ -50,9 +58,37 @@ public class VideoPickerActivity extends AppCompatActivity implements VideoGalle
         recyclerView = findViewById(R.id.recycler_video_gallery);
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
         
-        videoList = new ArrayList<>();
-        adapter = new VideoGalleryAdapter(this, videoList, this);
+        catalog = new VideoCatalog();
+        adapter = new VideoGalleryAdapter(this, catalog, this);
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() 
+        {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) 
+            {
+                if (dy > 0) 
+                {
+                    loadMoreIfNeeded();
+                }
+            }
+        });
+
+        // 按滚动方向和速度预取缩略图
+        prefetcher = new ThumbnailPrefetcher(Glide.with(this), catalog);
+        recyclerView.addOnScrollListener(prefetcher);
+
+        pageLoader = new VideoPageLoader(getContentResolver(), catalog, this);
+        // 媒体库变化时只做增量刷新，不再清空列表重新加载
+        mediaObserver = new ContentObserver(new Handler(Looper.getMainLooper())) 
+        {
+            @Override
+            public void onChange(boolean selfChange) 
+            {
+                pageLoader.requestRefresh();
+            }
+        };
+        getContentResolver().registerContentObserver(
+                MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, mediaObserver);
 
         // 检查权限
         if (checkPermissions()) 
@@ -180,52 +216,72 @@ public class VideoPickerActivity extends AppCompatActivity implements VideoGalle
                 .show();
     }
 
+    /**
+     * 从第一页开始重新读取视频列表，查询在后台执行，不阻塞界面
+     */
     private void loadVideos() 
     {
-        // 使用ContentResolver查询媒体库中的视频
-        Uri uri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
-        String[] projection = {
-                MediaStore.Video.Media._ID,
-                MediaStore.Video.Media.DISPLAY_NAME,
-                MediaStore.Video.Media.DATA,
-                MediaStore.Video.Media.DURATION
-        };
-        String sortOrder = MediaStore.Video.Media.DATE_ADDED + " DESC";
+        // reset同时清空目录
+        int oldSize = catalog.size();
+        pageLoader.reset();
+        if (oldSize > 0) 
+        {
+            adapter.notifyItemRangeRemoved(0, oldSize);
+        }
+        pageLoader.loadNextPage();
+    }
 
-        try (Cursor cursor = getContentResolver().query(uri, projection, null, null, sortOrder)) 
+    /**
+     * 列表末尾进入预加载范围时请求下一页
+     */
+    private void loadMoreIfNeeded() 
+    {
+        if (pageLoader.isLoading() || !pageLoader.hasMore()) 
         {
-            if (cursor != null) 
-            {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media._ID);
-                int nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DISPLAY_NAME);
-                int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA);
-                int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DURATION);
+            return;
+        }
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible >= catalog.size() - PRELOAD_DISTANCE) 
+        {
+            pageLoader.loadNextPage();
+        }
+    }
 
-                videoList.clear();
-                while (cursor.moveToNext()) 
-                {
-                    long id = cursor.getLong(idColumn);
-                    String name = cursor.getString(nameColumn);
-                    String path = cursor.getString(dataColumn);
-                    int duration = cursor.getInt(durationColumn);
-
-                    Uri videoUri = Uri.withAppendedPath(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, Long.toString(id));
-                    VideoItem videoItem = new VideoItem(id, name, path, videoUri.toString(), duration);
-                    videoList.add(videoItem);
-                }
-                adapter.notifyDataSetChanged();
-                
-                if (videoList.isEmpty()) 
-                {
-                    Toast.makeText(this, "未找到视频文件", Toast.LENGTH_SHORT).show();
-                }
-            }
-        } 
-        catch (Exception e) 
+    @Override
+    public void onPageLoaded(int offset, int count, boolean hasMore) 
+    {
+        adapter.notifyItemRangeInserted(offset, count);
+
+        if (catalog.isEmpty()) 
         {
-            e.printStackTrace();
-            Toast.makeText(this, "加载视频失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            Toast.makeText(this, "未找到视频文件", Toast.LENGTH_SHORT).show();
+            return;
         }
+        // 这一页不足一屏时不会产生滚动事件，布局完成后再检查一次
+        recyclerView.post(this::loadMoreIfNeeded);
+    }
+
+    @Override
+    public void onRefreshed(DiffUtil.DiffResult diff) 
+    {
+        adapter.applyUpdate(diff);
+    }
+
+    @Override
+    public void onLoadFailed(Exception e) 
+    {
+        e.printStackTrace();
+        Toast.makeText(this, "加载视频失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    protected void onDestroy() 
+    {
+        super.onDestroy();
+        getContentResolver().unregisterContentObserver(mediaObserver);
+        pageLoader.release();
+        prefetcher.release();
     }
 
     @Override
@@ -233,7 +289,8 @@ public class VideoPickerActivity extends AppCompatActivity implements VideoGalle
     {
         // 将选择的视频传递给编辑器活动
         Intent intent = new Intent(this, VideoEditorActivity.class);
-        intent.putExtra("video_path", video.getPath());
+        // 传递content URI，编辑器和处理服务通过文件描述符直接读取，不拷贝视频
+        intent.putExtra("video_path", video.getUri());
         intent.putExtra("video_name", video.getName());
         intent.putExtra("video_duration", (long) video.getDuration());
         startActivity(intent);
@@ -0,0 +1,178 @@
+package com.example.ccat;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.IOException;
+
+/**
+ * 从媒体库的系统缩略图缓存读取视频缩略图的Glide加载器
+ * 系统缩略图由媒体扫描生成并缓存，读取时不需要打开视频文件，也不需要解码视频帧
+ * 缓存键由媒体库id和修改时间组成，视频被修改后自动重新读取
+ */
+public class VideoThumbnailLoader implements ModelLoader<VideoItem, Bitmap> 
+{
+    // 目标尺寸未知时使用的默认尺寸，与系统MINI_KIND缩略图一致
+    private static final int DEFAULT_WIDTH = 512;
+    private static final int DEFAULT_HEIGHT = 384;
+    // 不超过这个尺寸时，Android 10以下使用更小的MICRO_KIND缩略图
+    private static final int MICRO_SIZE = 96;
+
+    private final ContentResolver resolver;
+
+    VideoThumbnailLoader(ContentResolver resolver) 
+    {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public LoadData<Bitmap> buildLoadData(@NonNull VideoItem model, int width, int height, @NonNull Options options) 
+    {
+        ObjectKey key = new ObjectKey("video_thumb:" + model.getId() + ":" + model.getDateModified());
+        return new LoadData<>(key, new ThumbnailFetcher(resolver, model.getId(), width, height));
+    }
+
+    @Override
+    public boolean handles(@NonNull VideoItem model) 
+    {
+        return true;
+    }
+
+    public static class Factory implements ModelLoaderFactory<VideoItem, Bitmap> 
+    {
+        private final ContentResolver resolver;
+
+        public Factory(Context context) 
+        {
+            this.resolver = context.getApplicationContext().getContentResolver();
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<VideoItem, Bitmap> build(@NonNull MultiModelLoaderFactory multiFactory) 
+        {
+            return new VideoThumbnailLoader(resolver);
+        }
+
+        @Override
+        public void teardown() 
+        {
+        }
+    }
+
+    /**
+     * 在Glide的后台线程读取系统缩略图
+     * Android 10起按单元格尺寸读取，系统直接返回缩放后的图片；更早的系统按尺寸选择MINI或MICRO缩略图
+     */
+    private static class ThumbnailFetcher implements DataFetcher<Bitmap> 
+    {
+        private final ContentResolver resolver;
+        private final long id;
+        private final int width;
+        private final int height;
+        private CancellationSignal cancellationSignal;
+
+        ThumbnailFetcher(ContentResolver resolver, long id, int width, int height) 
+        {
+            this.resolver = resolver;
+            this.id = id;
+            this.width = width == Target.SIZE_ORIGINAL ? DEFAULT_WIDTH : width;
+            this.height = height == Target.SIZE_ORIGINAL ? DEFAULT_HEIGHT : height;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super Bitmap> callback) 
+        {
+            try 
+            {
+                callback.onDataReady(load());
+            }
+            catch (IOException | RuntimeException e) 
+            {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        private Bitmap load() throws IOException 
+        {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) 
+            {
+                Uri uri = ContentUris.withAppendedId(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, id);
+                CancellationSignal signal;
+                synchronized (this) 
+                {
+                    cancellationSignal = new CancellationSignal();
+                    signal = cancellationSignal;
+                }
+                return resolver.loadThumbnail(uri, new Size(width, height), signal);
+            }
+            int kind = Math.max(width, height) <= MICRO_SIZE
+                    ? MediaStore.Video.Thumbnails.MICRO_KIND : MediaStore.Video.Thumbnails.MINI_KIND;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap bitmap = MediaStore.Video.Thumbnails.getThumbnail(resolver, id, kind, options);
+            if (bitmap == null) 
+            {
+                throw new IOException("系统缩略图不可用: " + id);
+            }
+            return bitmap;
+        }
+
+        @Override
+        public void cleanup() 
+        {
+            // 位图交给Glide管理，这里没有需要释放的资源
+        }
+
+        @Override
+        public void cancel() 
+        {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) 
+            {
+                synchronized (this) 
+                {
+                    if (cancellationSignal != null) 
+                    {
+                        cancellationSignal.cancel();
+                    }
+                }
+                return;
+            }
+            MediaStore.Video.Thumbnails.cancelThumbnailRequest(resolver, id);
+        }
+
+        @NonNull
+        @Override
+        public Class<Bitmap> getDataClass() 
+        {
+            return Bitmap.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() 
+        {
+            return DataSource.LOCAL;
+        }
+    }
+}
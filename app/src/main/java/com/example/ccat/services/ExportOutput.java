@@ -0,0 +1,188 @@
+package com.example.ccat.services;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import com.example.ccat.utils.OutputTarget;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 导出结果的存放位置
+ * Android 10及以上写入媒体库中待发布(IS_PENDING)的条目，处理成功后一次性发布，
+ * 图库在发布前看不到未完成的文件，发布后也不需要再扫描；更早的系统写入公共目录下的文件
+ */
+final class ExportOutput 
+{
+    private static final String TAG = "ExportOutput";
+    static final String DIR_NAME = "CCat";
+    private static final String MIME_TYPE = "video/mp4";
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final File file;
+    private ParcelFileDescriptor descriptor;
+
+    private ExportOutput(ContentResolver resolver, Uri uri, File file) 
+    {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.file = file;
+    }
+
+    /**
+     * 是否可以写入媒体库待发布条目
+     */
+    static boolean isMediaStoreSupported() 
+    {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+
+    static ExportOutput forFile(File file) 
+    {
+        return new ExportOutput(null, null, file);
+    }
+
+    /**
+     * 在媒体库的Movies/CCat下创建待发布的条目
+     * 同名条目已存在时媒体库自动在文件名后追加序号
+     */
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    static ExportOutput createPending(ContentResolver resolver, String displayName) throws IOException 
+    {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Video.Media.DISPLAY_NAME, displayName);
+        values.put(MediaStore.Video.Media.MIME_TYPE, MIME_TYPE);
+        values.put(MediaStore.Video.Media.RELATIVE_PATH, Environment.DIRECTORY_MOVIES + "/" + DIR_NAME);
+        values.put(MediaStore.Video.Media.IS_PENDING, 1);
+        Uri uri = resolver.insert(MediaStore.Video.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY), values);
+        if (uri == null) 
+        {
+            throw new IOException("无法创建媒体库条目: " + displayName);
+        }
+        return new ExportOutput(resolver, uri, null);
+    }
+
+    /**
+     * 按getPath()保存的路径恢复上次未完成的输出
+     */
+    static ExportOutput restore(ContentResolver resolver, String path) 
+    {
+        if (path.startsWith(ContentResolver.SCHEME_CONTENT + ":")) 
+        {
+            return new ExportOutput(resolver, Uri.parse(path), null);
+        }
+        return forFile(new File(path));
+    }
+
+    /**
+     * 输出的唯一名称，用作断点记录名：文件名或媒体库条目id
+     */
+    String getName() 
+    {
+        return uri != null ? "media_" + ContentUris.parseId(uri) : file.getName();
+    }
+
+    /**
+     * 文件路径或content URI，随成功广播发送
+     */
+    String getPath() 
+    {
+        return uri != null ? uri.toString() : file.getPath();
+    }
+
+    /**
+     * 打开输出供处理器写入，媒体库条目以读写方式打开，保留已写入的内容供断点校验
+     * @param scratchDir 处理过程中临时文件存放的目录
+     */
+    synchronized OutputTarget open(File scratchDir) throws IOException 
+    {
+        if (uri == null) 
+        {
+            return OutputTarget.of(file);
+        }
+        if (descriptor == null) 
+        {
+            descriptor = resolver.openFileDescriptor(uri, "rw");
+            if (descriptor == null) 
+            {
+                throw new IOException("无法打开媒体库条目: " + uri);
+            }
+        }
+        return OutputTarget.of(descriptor, uri.toString(), scratchDir);
+    }
+
+    /**
+     * 关闭文件描述符，媒体库条目保持待发布状态，之后可以重新打开继续写入
+     */
+    synchronized void close() 
+    {
+        if (descriptor != null) 
+        {
+            try 
+            {
+                descriptor.close();
+            }
+            catch (IOException e) 
+            {
+                Log.w(TAG, "关闭输出失败: " + uri, e);
+            }
+            descriptor = null;
+        }
+    }
+
+    /**
+     * 处理成功后发布：清除IS_PENDING，条目连同全部内容一次出现在图库中
+     */
+    synchronized void publish() 
+    {
+        close();
+        if (uri == null) 
+        {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Video.Media.IS_PENDING, 0);
+        if (resolver.update(uri, values, null, null) == 0) 
+        {
+            Log.w(TAG, "发布媒体库条目失败: " + uri);
+        }
+    }
+
+    /**
+     * 处理失败或取消后删除输出
+     */
+    synchronized void discard() 
+    {
+        close();
+        if (uri == null) 
+        {
+            file.delete();
+            return;
+        }
+        try 
+        {
+            resolver.delete(uri, null, null);
+        }
+        catch (SecurityException | IllegalArgumentException e) 
+        {
+            Log.w(TAG, "删除媒体库条目失败: " + uri, e);
+        }
+    }
+
+    @Override
+    public String toString() 
+    {
+        return getPath();
+    }
+}
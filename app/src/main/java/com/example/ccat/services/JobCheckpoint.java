@@ -0,0 +1,185 @@
+package com.example.ccat.services;
+
+import android.content.Context;
+
+import com.example.ccat.utils.TimeRange;
+import com.example.ccat.utils.VideoSource;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可恢复的裁剪任务
+ * 保存任务参数和最近一次断点，服务被系统杀死后重新启动时据此继续处理
+ */
+final class JobCheckpoint 
+{
+    private static final int VERSION = 1;
+
+    private final String name;
+    private final String sourcePath;
+    private final long sourceLength;
+    private final long sourceModified;
+    private final String outputPath;
+    private final List<TimeRange> ranges;
+    private final int trimMode;
+    private final boolean fastStart;
+    private final long fragmentMs;
+    private final int priority;
+    private volatile long outputBytes;
+
+    JobCheckpoint(VideoSource source, ExportOutput output, List<TimeRange> ranges, int trimMode, boolean fastStart,
+                  long fragmentMs, int priority) 
+    {
+        this(output.getName(), source.getPath(), source.length(), source.lastModified(),
+                output.getPath(), ranges, trimMode, fastStart, fragmentMs, priority, 0);
+    }
+
+    private JobCheckpoint(String name, String sourcePath, long sourceLength, long sourceModified, String outputPath,
+                          List<TimeRange> ranges, int trimMode, boolean fastStart, long fragmentMs, int priority,
+                          long outputBytes) 
+    {
+        this.name = name;
+        this.sourcePath = sourcePath;
+        this.sourceLength = sourceLength;
+        this.sourceModified = sourceModified;
+        this.outputPath = outputPath;
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(ranges));
+        this.trimMode = trimMode;
+        this.fastStart = fastStart;
+        this.fragmentMs = fragmentMs;
+        this.priority = priority;
+        this.outputBytes = outputBytes;
+    }
+
+    /**
+     * 记录名，取输出的名称，同一时刻不会有两个任务写同一个输出
+     */
+    String getName() 
+    {
+        return name;
+    }
+
+    /**
+     * 源视频，文件路径或content URI
+     */
+    VideoSource getSource(Context context) 
+    {
+        return VideoSource.parse(context, sourcePath);
+    }
+
+    /**
+     * 输出文件路径或媒体库条目的content URI，见ExportOutput.restore
+     */
+    String getOutputPath() 
+    {
+        return outputPath;
+    }
+
+    List<TimeRange> getRanges() 
+    {
+        return ranges;
+    }
+
+    int getTrimMode() 
+    {
+        return trimMode;
+    }
+
+    boolean isFastStart() 
+    {
+        return fastStart;
+    }
+
+    /**
+     * 分片输出的片段时长(毫秒)，0表示普通MP4
+     */
+    long getFragmentMs() 
+    {
+        return fragmentMs;
+    }
+
+    int getPriority() 
+    {
+        return priority;
+    }
+
+    /**
+     * 输出文件开头已经写完并同步到存储的字节数，0表示需要从头开始
+     */
+    long getOutputBytes() 
+    {
+        return outputBytes;
+    }
+
+    void setOutputBytes(long outputBytes) 
+    {
+        this.outputBytes = outputBytes;
+    }
+
+    /**
+     * 源视频在任务提交后是否被修改或删除
+     */
+    boolean isSourceChanged(Context context) 
+    {
+        VideoSource source = getSource(context);
+        return !source.exists() || source.length() != sourceLength || source.lastModified() != sourceModified;
+    }
+
+    String toJson() throws JSONException 
+    {
+        JSONArray rangeArray = new JSONArray();
+        for (TimeRange range : ranges) 
+        {
+            rangeArray.put(new JSONArray().put(range.getStartMs()).put(range.getEndMs()));
+        }
+        return new JSONObject()
+                .put("version", VERSION)
+                .put("source", sourcePath)
+                .put("source_length", sourceLength)
+                .put("source_modified", sourceModified)
+                .put("output", outputPath)
+                .put("ranges", rangeArray)
+                .put("trim_mode", trimMode)
+                .put("fast_start", fastStart)
+                .put("fragment_ms", fragmentMs)
+                .put("priority", priority)
+                .put("output_bytes", outputBytes)
+                .toString();
+    }
+
+    /**
+     * @throws JSONException 内容不完整或版本不符
+     */
+    static JobCheckpoint fromJson(String name, String json) throws JSONException 
+    {
+        JSONObject object = new JSONObject(json);
+        if (object.getInt("version") != VERSION) 
+        {
+            throw new JSONException("不支持的断点版本: " + object.getInt("version"));
+        }
+        JSONArray rangeArray = object.getJSONArray("ranges");
+        List<TimeRange> ranges = new ArrayList<>();
+        for (int i = 0; i < rangeArray.length(); i++) 
+        {
+            JSONArray range = rangeArray.getJSONArray(i);
+            ranges.add(new TimeRange(range.getLong(0), range.getLong(1)));
+        }
+        return new JobCheckpoint(name,
+                object.getString("source"),
+                object.getLong("source_length"),
+                object.getLong("source_modified"),
+                object.getString("output"),
+                ranges,
+                object.getInt("trim_mode"),
+                object.getBoolean("fast_start"),
+                object.optLong("fragment_ms", 0),
+                object.getInt("priority"),
+                object.getLong("output_bytes"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.ccat.services;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 断点存储
+ * 每个未完成的任务在应用私有目录中保存一个JSON文件，先写临时文件再重命名，进程在写入中途被杀死也不会损坏已有记录
+ */
+final class JobCheckpointStore 
+{
+    private static final String TAG = "JobCheckpointStore";
+    private static final String SUFFIX = ".json";
+
+    private final File dir;
+
+    JobCheckpointStore(File dir) 
+    {
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) 
+        {
+            Log.w(TAG, "无法创建断点目录: " + dir);
+        }
+    }
+
+    /**
+     * 保存或更新记录，失败时只记录日志，任务照常进行
+     */
+    synchronized void save(JobCheckpoint checkpoint) 
+    {
+        File file = fileOf(checkpoint);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) 
+        {
+            out.write(checkpoint.toJson().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        catch (IOException | JSONException e) 
+        {
+            Log.w(TAG, "保存断点失败: " + checkpoint.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) 
+        {
+            Log.w(TAG, "保存断点失败: " + checkpoint.getName());
+            temp.delete();
+        }
+    }
+
+    synchronized void delete(JobCheckpoint checkpoint) 
+    {
+        fileOf(checkpoint).delete();
+    }
+
+    /**
+     * 读取全部未完成的记录，无法解析的记录直接删除
+     */
+    synchronized List<JobCheckpoint> loadAll() 
+    {
+        List<JobCheckpoint> checkpoints = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) 
+        {
+            return checkpoints;
+        }
+        for (File file : files) 
+        {
+            String fileName = file.getName();
+            if (!fileName.endsWith(SUFFIX)) 
+            {
+                // 上次保存中断留下的临时文件
+                file.delete();
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) 
+            {
+                byte[] data = new byte[(int) file.length()];
+                in.readFully(data);
+                String json = new String(data, StandardCharsets.UTF_8);
+                String name = fileName.substring(0, fileName.length() - SUFFIX.length());
+                checkpoints.add(JobCheckpoint.fromJson(name, json));
+            }
+            catch (IOException | JSONException e) 
+            {
+                Log.w(TAG, "断点记录无效，已删除: " + fileName, e);
+                file.delete();
+            }
+        }
+        return checkpoints;
+    }
+
+    private File fileOf(JobCheckpoint checkpoint) 
+    {
+        return new File(dir, checkpoint.getName() + SUFFIX);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.ccat.services;
+
+import com.example.ccat.utils.ProgressSnapshot;
+import com.example.ccat.utils.VideoProcessor;
+
+/**
+ * 视频处理任务
+ * 由VideoJobScheduler调度执行，每个任务拥有独立的id、优先级和状态
+ */
+public class VideoJob implements Comparable<VideoJob> 
+{
+    // 优先级常量，数值越大越先执行
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * 任务状态
+     */
+    public enum State 
+    {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    /**
+     * 任务的实际处理逻辑，在工作线程中同步执行
+     */
+    public interface Work 
+    {
+        void run(VideoProcessor processor);
+    }
+
+    private final String id;
+    private final String label;
+    private final int priority;
+    private final long sequence;
+    private final Work work;
+
+    private volatile State state = State.QUEUED;
+    private volatile float progress = 0f;
+    private volatile ProgressSnapshot progressDetail;
+    private volatile boolean cancelRequested = false;
+    private volatile VideoProcessor processor;
+
+    VideoJob(String id, String label, int priority, long sequence, Work work) 
+    {
+        this.id = id;
+        this.label = label;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.work = work;
+    }
+
+    public String getId() 
+    {
+        return id;
+    }
+
+    public String getLabel() 
+    {
+        return label;
+    }
+
+    public int getPriority() 
+    {
+        return priority;
+    }
+
+    public State getState() 
+    {
+        return state;
+    }
+
+    public float getProgress() 
+    {
+        return progress;
+    }
+
+    /**
+     * 最近一次的详细进度(吞吐量、剩余时间)，处理尚未报告时为null
+     */
+    public ProgressSnapshot getProgressDetail() 
+    {
+        return progressDetail;
+    }
+
+    public boolean isFinished() 
+    {
+        return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    boolean isCancelRequested() 
+    {
+        return cancelRequested;
+    }
+
+    Work getWork() 
+    {
+        return work;
+    }
+
+    void setState(State state) 
+    {
+        this.state = state;
+    }
+
+    void setProgress(float progress) 
+    {
+        this.progress = progress;
+    }
+
+    void setProgressDetail(ProgressSnapshot progressDetail) 
+    {
+        this.progressDetail = progressDetail;
+    }
+
+    void attachProcessor(VideoProcessor processor) 
+    {
+        this.processor = processor;
+        // 处理器创建前已请求取消，立即传递
+        if (cancelRequested) 
+        {
+            processor.cancel();
+        }
+    }
+
+    /**
+     * 请求取消任务，运行中的任务会通知处理器停止
+     */
+    void requestCancel() 
+    {
+        cancelRequested = true;
+        VideoProcessor current = processor;
+        if (current != null) 
+        {
+            current.cancel();
+        }
+    }
+
+    /**
+     * 先按优先级降序，同优先级按提交顺序
+     */
+    @Override
+    public int compareTo(VideoJob other) 
+    {
+        if (priority != other.priority) 
+        {
+            return Integer.compare(other.priority, priority);
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.ccat.services;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.example.ccat.utils.ProcessingStats;
+import com.example.ccat.utils.ProgressSnapshot;
+import com.example.ccat.utils.VideoProcessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 视频任务调度器
+ * 使用按设备核心数确定大小的有界线程池执行任务，支持优先级、按id取消和查询排队状态
+ */
+public class VideoJobScheduler 
+{
+    private static final String TAG = "VideoJobScheduler";
+    private static final int MAX_WORKERS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    /**
+     * 任务状态监听器，回调在工作线程中执行
+     */
+    public interface Listener 
+    {
+        void onJobStarted(VideoJob job);
+        void onJobProgress(VideoJob job, float progress);
+        void onJobClipFinished(VideoJob job, int clipIndex, String outputPath);
+        /**
+         * @param stats 处理统计，处理器没有提供时为null
+         */
+        void onJobSucceeded(VideoJob job, String outputPath, ProcessingStats stats);
+        void onJobFailed(VideoJob job, String reason);
+        void onJobCancelled(VideoJob job);
+        void onIdle();
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Listener listener;
+    private final Map<String, VideoJob> jobs = new LinkedHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    public VideoJobScheduler(Listener listener) 
+    {
+        this(listener, defaultWorkerCount());
+    }
+
+    public VideoJobScheduler(Listener listener, int workerCount) 
+    {
+        this.listener = listener;
+        this.executor = new ThreadPoolExecutor(
+                workerCount,
+                workerCount,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new WorkerThreadFactory());
+        // 空闲时释放线程，服务常驻期间不占用资源
+        this.executor.allowCoreThreadTimeOut(true);
+        Log.d(TAG, "调度器已创建，工作线程数: " + workerCount);
+    }
+
+    /**
+     * 根据CPU核心数计算工作线程数
+     * 一半核心用于处理任务，其余留给UI和系统编解码器
+     */
+    public static int defaultWorkerCount() 
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(cores / 2, MAX_WORKERS));
+    }
+
+    /**
+     * 提交任务
+     * @param label 任务描述，用于通知显示
+     * @param priority 优先级，见VideoJob.PRIORITY_*
+     * @param work 实际处理逻辑
+     * @return 新任务
+     */
+    public VideoJob submit(String label, int priority, VideoJob.Work work) 
+    {
+        return enqueue(create(label, priority, work));
+    }
+
+    /**
+     * 创建任务但不加入队列
+     * 调用方需要在任务开始前按任务id登记状态(例如输出和断点)时，先创建、登记，再调用enqueue；
+     * 否则很快结束的任务可能在登记之前就已经回调了监听器
+     */
+    public VideoJob create(String label, int priority, VideoJob.Work work) 
+    {
+        long seq = sequence.incrementAndGet();
+        return new VideoJob("job-" + seq, label, priority, seq, work);
+    }
+
+    /**
+     * 把create创建的任务加入队列
+     * @return 传入的任务
+     */
+    public VideoJob enqueue(VideoJob job) 
+    {
+        synchronized (jobs) 
+        {
+            jobs.put(job.getId(), job);
+        }
+        executor.execute(new JobRunnable(job));
+        Log.d(TAG, "任务已加入队列: " + job.getId() + ", 优先级=" + job.getPriority());
+        return job;
+    }
+
+    /**
+     * 取消指定任务
+     * @return 找到并取消返回true
+     */
+    public boolean cancel(String jobId) 
+    {
+        VideoJob job;
+        synchronized (jobs) 
+        {
+            job = jobs.get(jobId);
+        }
+        if (job == null || job.isFinished()) 
+        {
+            return false;
+        }
+
+        job.requestCancel();
+
+        // 仍在队列中的任务直接移出，不必等待工作线程
+        if (job.getState() == VideoJob.State.QUEUED && removeQueued(job)) 
+        {
+            finish(job, VideoJob.State.CANCELLED);
+            listener.onJobCancelled(job);
+            notifyIfIdle();
+        }
+        return true;
+    }
+
+    /**
+     * 取消全部任务
+     */
+    public void cancelAll() 
+    {
+        for (VideoJob job : getJobs()) 
+        {
+            cancel(job.getId());
+        }
+    }
+
+    /**
+     * 获取未结束任务的快照，按提交顺序排列
+     */
+    public List<VideoJob> getJobs() 
+    {
+        synchronized (jobs) 
+        {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    public VideoJob getJob(String jobId) 
+    {
+        synchronized (jobs) 
+        {
+            return jobs.get(jobId);
+        }
+    }
+
+    public boolean isIdle() 
+    {
+        synchronized (jobs) 
+        {
+            return jobs.isEmpty();
+        }
+    }
+
+    /**
+     * 关闭调度器，取消所有任务
+     */
+    public void shutdown() 
+    {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    private boolean removeQueued(VideoJob job) 
+    {
+        for (Runnable runnable : executor.getQueue()) 
+        {
+            if (runnable instanceof JobRunnable && ((JobRunnable) runnable).job == job) 
+            {
+                return executor.remove(runnable);
+            }
+        }
+        return false;
+    }
+
+    private void finish(VideoJob job, VideoJob.State state) 
+    {
+        job.setState(state);
+        synchronized (jobs) 
+        {
+            jobs.remove(job.getId());
+        }
+    }
+
+    private void notifyIfIdle() 
+    {
+        if (isIdle()) 
+        {
+            listener.onIdle();
+        }
+    }
+
+    /**
+     * 队列中的可执行单元，比较规则委托给VideoJob
+     */
+    private class JobRunnable implements Runnable, Comparable<JobRunnable> 
+    {
+        final VideoJob job;
+
+        JobRunnable(VideoJob job) 
+        {
+            this.job = job;
+        }
+
+        @Override
+        public int compareTo(JobRunnable other) 
+        {
+            return job.compareTo(other.job);
+        }
+
+        @Override
+        public void run() 
+        {
+            if (job.isCancelRequested() || job.isFinished()) 
+            {
+                if (!job.isFinished()) 
+                {
+                    finish(job, VideoJob.State.CANCELLED);
+                    listener.onJobCancelled(job);
+                }
+                notifyIfIdle();
+                return;
+            }
+
+            job.setState(VideoJob.State.RUNNING);
+            listener.onJobStarted(job);
+
+            VideoProcessor processor = new VideoProcessor(new VideoProcessor.ProgressCallback() 
+            {
+                @Override
+                public void onProgress(float progress) 
+                {
+                    job.setProgress(progress);
+                    listener.onJobProgress(job, progress);
+                }
+
+                @Override
+                public void onProgressDetail(ProgressSnapshot snapshot) 
+                {
+                    job.setProgressDetail(snapshot);
+                }
+
+                @Override
+                public void onClipFinished(int index, String outputPath) 
+                {
+                    listener.onJobClipFinished(job, index, outputPath);
+                }
+
+                @Override
+                public void onSuccess(String outputPath) 
+                {
+                    onSuccess(outputPath, null);
+                }
+
+                @Override
+                public void onSuccess(String outputPath, ProcessingStats stats) 
+                {
+                    job.setProgress(1f);
+                    finish(job, VideoJob.State.SUCCEEDED);
+                    listener.onJobSucceeded(job, outputPath, stats);
+                }
+
+                @Override
+                public void onFailed(String reason) 
+                {
+                    if (job.isCancelRequested()) 
+                    {
+                        finish(job, VideoJob.State.CANCELLED);
+                        listener.onJobCancelled(job);
+                    }
+                    else 
+                    {
+                        finish(job, VideoJob.State.FAILED);
+                        listener.onJobFailed(job, reason);
+                    }
+                }
+            }, VideoProcessor.DIRECT_EXECUTOR);
+            job.attachProcessor(processor);
+
+            try 
+            {
+                // 处理器使用直接执行器，返回时任务已经结束
+                job.getWork().run(processor);
+            }
+            catch (Exception e) 
+            {
+                Log.e(TAG, "任务执行异常: " + job.getId(), e);
+                if (!job.isFinished()) 
+                {
+                    finish(job, VideoJob.State.FAILED);
+                    listener.onJobFailed(job, "处理失败: " + e.getMessage());
+                }
+            }
+
+            if (!job.isFinished()) 
+            {
+                // 处理逻辑没有回调结果，视为失败，避免任务永久占用
+                finish(job, VideoJob.State.FAILED);
+                listener.onJobFailed(job, "任务未返回结果");
+            }
+            notifyIfIdle();
+        }
+    }
+
+    /**
+     * 工作线程工厂，线程以后台优先级运行
+     */
+    private static class WorkerThreadFactory implements ThreadFactory 
+    {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) 
+        {
+            Thread thread = new Thread(() -> 
+            {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "VideoJob-" + count.incrementAndGet());
+            return thread;
+        }
+    }
+}
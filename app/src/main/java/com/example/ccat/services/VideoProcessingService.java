@@ -9,7 +9,10 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -17,16 +20,33 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.ccat.MainActivity;
 import com.example.ccat.R;
+import com.example.ccat.utils.ClipSpec;
+import com.example.ccat.utils.OutputTarget;
+import com.example.ccat.utils.ProcessingStats;
+import com.example.ccat.utils.ProgressSnapshot;
+import com.example.ccat.utils.SampleBufferPool;
+import com.example.ccat.utils.SampleIndexCache;
+import com.example.ccat.utils.ThumbnailEngine;
+import com.example.ccat.utils.TimeRange;
+import com.example.ccat.utils.VideoFilter;
 import com.example.ccat.utils.VideoProcessor;
+import com.example.ccat.utils.VideoSource;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 视频处理服务
  * 在后台执行视频处理任务，并显示通知
+ * 裁剪任务在完成前保存断点，服务被系统杀死后以START_STICKY重新启动时从断点继续
+ * 裁剪和滤镜的结果在Android 10及以上直接写入媒体库的待发布条目，成功后发布
  */
 public class VideoProcessingService extends Service 
 {
@@ -35,21 +55,51 @@ public class VideoProcessingService extends Service
     // Action常量
     public static final String ACTION_TRIM_VIDEO = "com.example.ccat.action.TRIM_VIDEO";
     public static final String ACTION_APPLY_FILTER = "com.example.ccat.action.APPLY_FILTER";
+    public static final String ACTION_EXTRACT_CLIPS = "com.example.ccat.action.EXTRACT_CLIPS";
     public static final String ACTION_CANCEL = "com.example.ccat.action.CANCEL";
+    public static final String ACTION_QUERY_JOBS = "com.example.ccat.action.QUERY_JOBS";
+    
+    // 广播常量
+    public static final String BROADCAST_VIDEO_PROCESSED = "com.example.ccat.VIDEO_PROCESSED";
+    public static final String BROADCAST_JOB_STATUS = "com.example.ccat.JOB_STATUS";
+    public static final String BROADCAST_CLIP_EXTRACTED = "com.example.ccat.CLIP_EXTRACTED";
     
     // 额外参数常量
-    public static final String EXTRA_SOURCE_PATH = "source_path";
+    public static final String EXTRA_SOURCE_PATH = "source_path"; // 文件路径或content URI
     public static final String EXTRA_START_TIME = "start_time";
     public static final String EXTRA_END_TIME = "end_time";
+    public static final String EXTRA_RANGE_STARTS = "range_starts";
+    public static final String EXTRA_RANGE_ENDS = "range_ends";
     public static final String EXTRA_FILTER_TYPE = "filter_type";
+    public static final String EXTRA_JOB_ID = "job_id";
+    public static final String EXTRA_PRIORITY = "priority";
+    public static final String EXTRA_SMART_TRIM = "smart_trim";
+    public static final String EXTRA_FAST_START = "fast_start";
+    public static final String EXTRA_FRAGMENT_DURATION = "fragment_duration";
+    public static final String EXTRA_JOB_IDS = "job_ids";
+    public static final String EXTRA_JOB_STATES = "job_states";
+    public static final String EXTRA_JOB_PROGRESS = "job_progress";
+    public static final String EXTRA_CLIP_INDEX = "clip_index";
+    public static final String EXTRA_OUTPUT_PATH = "output_path";
+    public static final String EXTRA_STATS = "stats";
     
     // 通知相关常量
     private static final String CHANNEL_ID = "video_processing_channel";
     private static final int NOTIFICATION_ID = 1001;
+    private static final String CHECKPOINT_DIR_NAME = "job_checkpoints";
     
-    // 视频处理器
-    private VideoProcessor videoProcessor;
-    private boolean isProcessing = false;
+    // 任务调度器
+    private VideoJobScheduler jobScheduler;
+    private Handler mainHandler;
+    // 未结束的可恢复任务，键为任务id
+    private JobCheckpointStore checkpointStore;
+    private final Map<String, JobCheckpoint> checkpoints = new ConcurrentHashMap<>();
+    // 未结束任务的输出，任务结束时发布或删除
+    private final Map<String, ExportOutput> outputs = new ConcurrentHashMap<>();
+    // 批量提取任务各片段的输出，按片段序号排列，片段完成时发布并置为null
+    private final Map<String, ExportOutput[]> clipOutputs = new ConcurrentHashMap<>();
+    // 服务销毁时取消的任务不是用户取消，保留断点下次继续
+    private volatile boolean destroying = false;
     
     @Override
     public void onCreate() 
@@ -57,6 +107,16 @@ public class VideoProcessingService extends Service
         super.onCreate();
         // 创建通知渠道（Android 8.0及以上需要）
         createNotificationChannel();
+        
+        mainHandler = new Handler(Looper.getMainLooper());
+        jobScheduler = new VideoJobScheduler(new JobListener());
+        // 启用缩略图磁盘缓存和样本索引持久化
+        ThumbnailEngine.get(this);
+        SampleIndexCache.get(this);
+        
+        // 上次进程被杀死时未完成的任务
+        checkpointStore = new JobCheckpointStore(new File(getFilesDir(), CHECKPOINT_DIR_NAME));
+        resumePendingJobs();
     }
     
     @Nullable
@@ -71,7 +131,9 @@ public class VideoProcessingService extends Service
     {
         if (intent == null || intent.getAction() == null) 
         {
-            return START_NOT_STICKY;
+            // 系统重新启动服务时intent为null，未完成的任务已在onCreate中恢复
+            stopIfIdle();
+            return startMode();
         }
         
         String action = intent.getAction();
@@ -82,16 +144,181 @@ public class VideoProcessingService extends Service
                 handleTrimVideo(intent);
                 break;
                 
+            case ACTION_EXTRACT_CLIPS:
+                handleExtractClips(intent);
+                break;
+                
             case ACTION_APPLY_FILTER:
                 handleApplyFilter(intent);
                 break;
                 
             case ACTION_CANCEL:
-                handleCancel();
+                handleCancel(intent);
+                break;
+                
+            case ACTION_QUERY_JOBS:
+                broadcastJobStatus();
+                stopIfIdle();
                 break;
         }
         
-        return START_NOT_STICKY;
+        return startMode();
+    }
+    
+    /**
+     * 有未结束的任务时要求系统在杀死服务后重新启动，以便从断点继续
+     */
+    private int startMode() 
+    {
+        return jobScheduler.isIdle() ? START_NOT_STICKY : START_STICKY;
+    }
+    
+    /**
+     * 重新提交上次未完成的裁剪任务
+     * 源文件在此期间被修改或删除的任务放弃，输出文件已有的内容由写入器校验后决定是否从断点继续
+     */
+    private void resumePendingJobs() 
+    {
+        List<JobCheckpoint> pending = checkpointStore.loadAll();
+        for (JobCheckpoint checkpoint : pending) 
+        {
+            VideoSource source = checkpoint.getSource(this);
+            if (checkpoint.isSourceChanged(this)) 
+            {
+                Log.w(TAG, "源文件已变化，放弃未完成的任务: " + source);
+                checkpointStore.delete(checkpoint);
+                ExportOutput.restore(getContentResolver(), checkpoint.getOutputPath()).discard();
+                broadcastFailure("源文件已变化，无法继续裁剪: " + source.getName());
+                continue;
+            }
+            VideoJob job = submitTrim(checkpoint, ExportOutput.restore(getContentResolver(), checkpoint.getOutputPath()));
+            Log.d(TAG, "恢复裁剪任务: " + job.getId() + " -> " + checkpoint.getOutputPath()
+                    + ", 断点=" + checkpoint.getOutputBytes());
+        }
+        if (!jobScheduler.isIdle()) 
+        {
+            startForeground(NOTIFICATION_ID, createNotification(buildStatusText(), 0));
+        }
+    }
+    
+    /**
+     * 提交可恢复的裁剪任务，断点随写入进度更新
+     */
+    private VideoJob submitTrim(JobCheckpoint checkpoint, ExportOutput output) 
+    {
+        VideoJob job = jobScheduler.create("裁剪视频", checkpoint.getPriority(), processor -> 
+        {
+            processor.setTrimMode(checkpoint.getTrimMode());
+            processor.setFastStart(checkpoint.isFastStart());
+            processor.setFragmentDuration(checkpoint.getFragmentMs());
+            processor.setCheckpoint(checkpoint.getOutputBytes(), outputBytes -> 
+            {
+                checkpoint.setOutputBytes(outputBytes);
+                checkpointStore.save(checkpoint);
+            });
+            try 
+            {
+                processor.trimSegments(checkpoint.getSource(this), openOutput(output), checkpoint.getRanges());
+            } 
+            finally 
+            {
+                output.close();
+            }
+        });
+        // 先登记断点和输出再加入队列，任务很快结束时也能删除断点、发布或删除输出，
+        // 否则断点记录残留，每次服务启动都会重新提交已经结束的任务
+        checkpoints.put(job.getId(), checkpoint);
+        outputs.put(job.getId(), output);
+        return jobScheduler.enqueue(job);
+    }
+    
+    /**
+     * 在工作线程中打开输出，失败时由调度器按任务失败处理
+     */
+    private OutputTarget openOutput(ExportOutput output) 
+    {
+        try 
+        {
+            return output.open(getCacheDir());
+        } 
+        catch (IOException e) 
+        {
+            throw new IllegalStateException("无法打开输出: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 任务结束后取出它的输出，没有登记输出的任务返回null
+     */
+    private ExportOutput takeOutput(VideoJob job) 
+    {
+        return outputs.remove(job.getId());
+    }
+    
+    /**
+     * 发布已完成的片段，之后任务失败或取消时不再删除它
+     */
+    private void publishClip(VideoJob job, int clipIndex) 
+    {
+        ExportOutput[] clipOutput = clipOutputs.get(job.getId());
+        if (clipOutput == null) 
+        {
+            return;
+        }
+        ExportOutput output;
+        synchronized (clipOutput) 
+        {
+            output = clipOutput[clipIndex];
+            clipOutput[clipIndex] = null;
+        }
+        if (output != null) 
+        {
+            output.publish();
+        }
+    }
+    
+    /**
+     * 批量提取任务结束后处理尚未发布的片段
+     * @param publish 成功时发布，失败或取消时删除
+     */
+    private void finishClips(VideoJob job, boolean publish) 
+    {
+        ExportOutput[] clipOutput = clipOutputs.remove(job.getId());
+        if (clipOutput == null) 
+        {
+            return;
+        }
+        synchronized (clipOutput) 
+        {
+            for (int i = 0; i < clipOutput.length; i++) 
+            {
+                if (clipOutput[i] == null) 
+                {
+                    continue;
+                }
+                if (publish) 
+                {
+                    clipOutput[i].publish();
+                }
+                else 
+                {
+                    clipOutput[i].discard();
+                }
+                clipOutput[i] = null;
+            }
+        }
+    }
+    
+    /**
+     * 任务结束后删除断点
+     */
+    private void clearCheckpoint(VideoJob job) 
+    {
+        JobCheckpoint checkpoint = checkpoints.remove(job.getId());
+        if (checkpoint != null) 
+        {
+            checkpointStore.delete(checkpoint);
+        }
     }
     
     /**
@@ -99,140 +326,280 @@ public class VideoProcessingService extends Service
      */
     private void handleTrimVideo(Intent intent) 
     {
-        // 如果已经在处理中，直接返回
-        if (isProcessing) 
+        // 获取参数
+        List<TimeRange> ranges = readRanges(intent);
+        if (ranges == null) 
         {
-            Log.w(TAG, "已有处理任务在进行中，忽略新请求");
+            stopIfIdle();
             return;
         }
         
-        // 获取参数
-        String sourcePath = intent.getStringExtra(EXTRA_SOURCE_PATH);
-        // 安全获取Long类型值，避免类型转换异常
-        long startTime = 0L;
-        long endTime = 0L;
+        VideoSource source = openSource(intent.getStringExtra(EXTRA_SOURCE_PATH));
+        if (source == null) 
+        {
+            stopIfIdle();
+            return;
+        }
+        
+        // 输出调试信息
+        Log.d(TAG, "准备裁剪视频: 源文件=" + source + ", 片段=" + ranges);
+        
+        // 创建输出
+        ExportOutput output = createOutput("TRIM_");
+        if (output == null) 
+        {
+            stopIfIdle();
+            return;
+        }
+        int priority = intent.getIntExtra(EXTRA_PRIORITY, VideoJob.PRIORITY_NORMAL);
+        
+        // 智能裁剪只重新编码起始处不完整的GOP，得到帧精确的裁剪点
+        // 关键帧裁剪优先直接拷贝MP4样本，无法解析时处理器自动回退到提取器
+        int trimMode = intent.getBooleanExtra(EXTRA_SMART_TRIM, false)
+                ? VideoProcessor.TRIM_MODE_SMART : VideoProcessor.TRIM_MODE_DIRECT;
+        // faststart输出把moov放在文件开头，默认开启
+        boolean fastStart = intent.getBooleanExtra(EXTRA_FAST_START, true);
+        // 大于0时输出分片MP4，值为片段时长(毫秒)
+        long fragmentMs = intent.getLongExtra(EXTRA_FRAGMENT_DURATION, 0L);
+        // 先保存任务参数再提交，处理开始前进程被杀死也能恢复
+        JobCheckpoint checkpoint = new JobCheckpoint(source, output, ranges, trimMode, fastStart, fragmentMs, priority);
+        checkpointStore.save(checkpoint);
+        VideoJob job = submitTrim(checkpoint, output);
+        Log.d(TAG, "裁剪任务已提交: " + job.getId() + " -> " + output);
+        
+        // 启动前台服务
+        startForeground(NOTIFICATION_ID, createNotification(buildStatusText(), 0));
+    }
+    
+    /**
+     * 处理批量提取请求：每个时间范围输出一个独立文件，源文件只读取一次
+     */
+    private void handleExtractClips(Intent intent) 
+    {
+        List<TimeRange> ranges = readRanges(intent);
+        if (ranges == null) 
+        {
+            stopIfIdle();
+            return;
+        }
+        
+        VideoSource source = openSource(intent.getStringExtra(EXTRA_SOURCE_PATH));
+        if (source == null) 
+        {
+            stopIfIdle();
+            return;
+        }
+        
+        // 每个片段一个输出，与裁剪一样在媒体库中创建待发布的条目
+        ExportOutput[] clipOutput = new ExportOutput[ranges.size()];
+        for (int i = 0; i < clipOutput.length; i++) 
+        {
+            clipOutput[i] = createOutput("CLIP_");
+            if (clipOutput[i] == null) 
+            {
+                for (int j = 0; j < i; j++) 
+                {
+                    clipOutput[j].discard();
+                }
+                stopIfIdle();
+                return;
+            }
+        }
+        Log.d(TAG, "准备批量提取: 源文件=" + source + ", 片段=" + ranges);
+        
+        int priority = intent.getIntExtra(EXTRA_PRIORITY, VideoJob.PRIORITY_NORMAL);
+        // 先登记输出再加入队列，很快失败或完成的任务回调时也能找到它们
+        VideoJob job = jobScheduler.create("批量提取片段", priority, processor -> 
+        {
+            try 
+            {
+                List<ClipSpec> clips = new ArrayList<>();
+                for (int i = 0; i < clipOutput.length; i++) 
+                {
+                    TimeRange range = ranges.get(i);
+                    clips.add(new ClipSpec(range.getStartMs(), range.getEndMs(), openOutput(clipOutput[i])));
+                }
+                processor.extractClips(source, clips);
+            } 
+            finally 
+            {
+                for (ExportOutput output : clipOutput) 
+                {
+                    output.close();
+                }
+            }
+        });
+        clipOutputs.put(job.getId(), clipOutput);
+        jobScheduler.enqueue(job);
+        Log.d(TAG, "批量提取任务已提交: " + job.getId());
+        
+        startForeground(NOTIFICATION_ID, createNotification(buildStatusText(), 0));
+    }
+    
+    /**
+     * 从Intent读取时间范围
+     * 优先读取EXTRA_RANGE_STARTS/EXTRA_RANGE_ENDS，否则使用EXTRA_START_TIME/EXTRA_END_TIME
+     * @return 时间范围列表，参数无效时广播失败并返回null
+     */
+    private List<TimeRange> readRanges(Intent intent) 
+    {
+        // 安全获取时间参数，避免类型转换异常
+        List<TimeRange> ranges = new ArrayList<>();
         
         try 
         {
-            startTime = intent.getLongExtra(EXTRA_START_TIME, 0L);
-            endTime = intent.getLongExtra(EXTRA_END_TIME, 0L);
+            long[] rangeStarts = intent.getLongArrayExtra(EXTRA_RANGE_STARTS);
+            long[] rangeEnds = intent.getLongArrayExtra(EXTRA_RANGE_ENDS);
+            if (rangeStarts != null && rangeEnds != null) 
+            {
+                // 多段：保留的片段按顺序处理
+                for (int i = 0; i < Math.min(rangeStarts.length, rangeEnds.length); i++) 
+                {
+                    ranges.add(new TimeRange(rangeStarts[i], rangeEnds[i]));
+                }
+            } 
+            else 
+            {
+                long startTime = intent.getLongExtra(EXTRA_START_TIME, 0L);
+                long endTime = intent.getLongExtra(EXTRA_END_TIME, 0L);
+                ranges.add(new TimeRange(startTime, endTime));
+            }
             
-            Log.d(TAG, "从Intent获取时间参数: 开始=" + startTime + "ms, 结束=" + endTime + "ms");
+            Log.d(TAG, "从Intent获取时间参数: " + ranges);
         } 
         catch (Exception e) 
         {
             Log.e(TAG, "获取时间参数失败", e);
             broadcastFailure("参数错误: " + e.getMessage());
-            stopSelf();
-            return;
+            return null;
         }
         
         // 确认时间参数有效
-        if (startTime >= endTime) 
+        if (ranges.isEmpty()) 
         {
-            String errorMsg = "无效的时间范围: 开始=" + startTime + "ms, 结束=" + endTime + "ms";
-            Log.e(TAG, errorMsg);
-            broadcastFailure(errorMsg);
-            stopSelf();
-            return;
+            broadcastFailure("没有需要保留的片段");
+            return null;
         }
-        
+        for (TimeRange range : ranges) 
+        {
+            if (range.getStartMs() >= range.getEndMs()) 
+            {
+                String errorMsg = "无效的时间范围: 开始=" + range.getStartMs() + "ms, 结束=" + range.getEndMs() + "ms";
+                Log.e(TAG, errorMsg);
+                broadcastFailure(errorMsg);
+                return null;
+            }
+        }
+        return ranges;
+    }
+    
+    /**
+     * 检查源视频
+     * @param sourcePath 文件路径或content URI，content URI直接通过文件描述符读取，不拷贝源视频
+     * @return 可读的源视频，无效时广播失败并返回null
+     */
+    private VideoSource openSource(String sourcePath) 
+    {
         if (sourcePath == null) 
         {
             Log.e(TAG, "源文件路径为空");
             broadcastFailure("源文件路径为空");
-            stopSelf();
-            return;
+            return null;
         }
         
-        // 检查源文件是否存在
-        File sourceFile = new File(sourcePath);
-        if (!sourceFile.exists() || !sourceFile.canRead()) 
+        // 检查源视频是否存在
+        VideoSource source = VideoSource.parse(this, sourcePath);
+        if (!source.exists()) 
         {
             String errorMsg = "源文件不存在或无法读取: " + sourcePath;
             Log.e(TAG, errorMsg);
             broadcastFailure(errorMsg);
-            stopSelf();
-            return;
+            return null;
         }
-        
-        // 输出调试信息
-        Log.d(TAG, "准备裁剪视频: 源文件=" + sourcePath + ", 开始=" + startTime + "ms, 结束=" + endTime + "ms");
-        
-        // 创建输出文件
+        return source;
+    }
+    
+    /**
+     * 创建裁剪或滤镜的输出
+     * Android 10及以上在媒体库中创建待发布的条目，更早的系统在公共目录中创建文件
+     * @return 输出，创建失败时广播失败并返回null
+     */
+    private ExportOutput createOutput(String prefix) 
+    {
+        if (!ExportOutput.isMediaStoreSupported()) 
+        {
+            File outputDir = prepareOutputDirectory();
+            return outputDir != null ? ExportOutput.forFile(createUniqueOutputFile(outputDir, prefix)) : null;
+        }
+        String displayName = prefix + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".mp4";
+        try 
+        {
+            return ExportOutput.createPending(getContentResolver(), displayName);
+        } 
+        catch (IOException | RuntimeException e) 
+        {
+            Log.e(TAG, "创建媒体库条目失败: " + displayName, e);
+            broadcastFailure("无法创建输出: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 获取并创建输出目录
+     * @return 输出目录，创建失败时广播失败并返回null
+     */
+    private File prepareOutputDirectory() 
+    {
         File outputDir = new File(Environment.getExternalStoragePublicDirectory(
-                Environment.DIRECTORY_MOVIES), "CCat");
+                Environment.DIRECTORY_MOVIES), ExportOutput.DIR_NAME);
         
         if (!outputDir.exists() && !outputDir.mkdirs()) 
         {
             String errorMsg = "无法创建输出目录: " + outputDir.getPath();
             Log.e(TAG, errorMsg);
             broadcastFailure(errorMsg);
-            stopSelf();
-            return;
+            return null;
         }
-        
-        // 生成唯一文件名
+        return outputDir;
+    }
+    
+    /**
+     * 在输出目录中生成不重复的文件名
+     * 立即创建空文件占用文件名，避免并发任务得到相同的输出路径
+     */
+    private File createUniqueOutputFile(File outputDir, String prefix) 
+    {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        File outputFile = new File(outputDir, "TRIM_" + timeStamp + ".mp4");
-        
-        // 启动前台服务
-        startForeground(NOTIFICATION_ID, createNotification("正在裁剪视频...", 0));
-        isProcessing = true;
-        
-        // 创建处理器并开始处理
-        videoProcessor = new VideoProcessor(new VideoProcessor.ProgressCallback() 
+        File outputFile = new File(outputDir, prefix + timeStamp + ".mp4");
+        int index = 1;
+        try 
         {
-            @Override
-            public void onProgress(float progress) 
+            while (!outputFile.createNewFile()) 
             {
-                // 更新通知进度
-                updateNotification("正在裁剪视频...", (int) (progress * 100));
+                outputFile = new File(outputDir, prefix + timeStamp + "_" + index + ".mp4");
+                index++;
             }
-            
-            @Override
-            public void onSuccess(String outputPath) 
-            {
-                // 通知处理成功
-                updateNotification("视频裁剪完成", 100);
-                
-                // 发送广播通知应用
-                broadcastSuccess(outputPath);
-                
-                // 结束服务
-                isProcessing = false;
-                stopForeground(true);
-                stopSelf();
-            }
-            
-            @Override
-            public void onFailed(String reason) 
-            {
-                // 通知处理失败
-                updateNotification("视频裁剪失败: " + reason, 0);
-                
-                // 发送广播通知应用
-                broadcastFailure(reason);
-                
-                // 结束服务
-                isProcessing = false;
-                stopForeground(true);
-                stopSelf();
-            }
-        });
-        
-        // 开始裁剪视频
-        videoProcessor.trimVideo(sourceFile, outputFile, startTime, endTime);
+        } 
+        catch (IOException e) 
+        {
+            Log.w(TAG, "预创建输出文件失败: " + outputFile.getPath(), e);
+        }
+        return outputFile;
     }
     
     /**
-     * 广播处理成功消息
+     * 广播处理成功消息，附带处理统计
      */
-    private void broadcastSuccess(String outputPath) 
+    private void broadcastSuccess(String jobId, String outputPath, ProcessingStats stats) 
     {
-        Intent broadcastIntent = new Intent("com.example.ccat.VIDEO_PROCESSED");
+        Intent broadcastIntent = new Intent(BROADCAST_VIDEO_PROCESSED);
         broadcastIntent.putExtra("success", true);
+        broadcastIntent.putExtra(EXTRA_JOB_ID, jobId);
         broadcastIntent.putExtra("output_path", outputPath);
+        if (stats != null) 
+        {
+            broadcastIntent.putExtra(EXTRA_STATS, stats.toBundle());
+        }
         sendBroadcast(broadcastIntent);
         Log.d(TAG, "发送成功广播: output_path=" + outputPath);
     }
@@ -242,7 +609,16 @@ public class VideoProcessingService extends Service
      */
     private void broadcastFailure(String error) 
     {
-        Intent broadcastIntent = new Intent("com.example.ccat.VIDEO_PROCESSED");
+        broadcastFailure(null, error);
+    }
+    
+    /**
+     * 广播指定任务的失败消息
+     */
+    private void broadcastFailure(String jobId, String error) 
+    {
+        Intent broadcastIntent = new Intent(BROADCAST_VIDEO_PROCESSED);
+        broadcastIntent.putExtra(EXTRA_JOB_ID, jobId);
         broadcastIntent.putExtra("success", false);
         broadcastIntent.putExtra("error", error);
         sendBroadcast(broadcastIntent);
@@ -254,25 +630,161 @@ public class VideoProcessingService extends Service
      */
     private void handleApplyFilter(Intent intent) 
     {
-        // TODO: 实现应用滤镜功能
-        stopSelf();
+        VideoSource source = openSource(intent.getStringExtra(EXTRA_SOURCE_PATH));
+        if (source == null) 
+        {
+            stopIfIdle();
+            return;
+        }
+        
+        String filterType = intent.getStringExtra(EXTRA_FILTER_TYPE);
+        VideoFilter filter = filterType != null ? VideoFilter.fromId(filterType) : null;
+        if (filter == null) 
+        {
+            Log.e(TAG, "未知的滤镜: " + filterType);
+            broadcastFailure("未知的滤镜: " + filterType);
+            stopIfIdle();
+            return;
+        }
+        
+        ExportOutput output = createOutput("FILTER_");
+        if (output == null) 
+        {
+            stopIfIdle();
+            return;
+        }
+        
+        int priority = intent.getIntExtra(EXTRA_PRIORITY, VideoJob.PRIORITY_NORMAL);
+        VideoJob job = jobScheduler.create("应用滤镜: " + filter.getDisplayName(), priority, processor -> 
+        {
+            try 
+            {
+                processor.applyFilter(source, openOutput(output), filter.getId());
+            } 
+            finally 
+            {
+                output.close();
+            }
+        });
+        outputs.put(job.getId(), output);
+        jobScheduler.enqueue(job);
+        Log.d(TAG, "滤镜任务已提交: " + job.getId() + " -> " + output);
+        
+        startForeground(NOTIFICATION_ID, createNotification(buildStatusText(), 0));
     }
     
     /**
      * 处理取消请求
+     * 带EXTRA_JOB_ID时只取消对应任务，否则取消全部任务
      */
-    private void handleCancel() 
+    private void handleCancel(Intent intent) 
     {
-        if (videoProcessor != null) 
+        String jobId = intent.getStringExtra(EXTRA_JOB_ID);
+        if (jobId != null) 
         {
-            videoProcessor.cancel();
+            if (!jobScheduler.cancel(jobId)) 
+            {
+                Log.w(TAG, "未找到可取消的任务: " + jobId);
+            }
+        } 
+        else 
+        {
+            jobScheduler.cancelAll();
+            updateNotification("已取消视频处理", 0);
+        }
+        stopIfIdle();
+    }
+    
+    /**
+     * 广播当前未结束任务的状态
+     */
+    private void broadcastJobStatus() 
+    {
+        List<VideoJob> jobs = jobScheduler.getJobs();
+        String[] ids = new String[jobs.size()];
+        String[] states = new String[jobs.size()];
+        float[] progress = new float[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) 
+        {
+            VideoJob job = jobs.get(i);
+            ids[i] = job.getId();
+            states[i] = job.getState().name();
+            progress[i] = job.getProgress();
         }
         
-        updateNotification("已取消视频处理", 0);
-        
-        isProcessing = false;
-        stopForeground(true);
-        stopSelf();
+        Intent broadcastIntent = new Intent(BROADCAST_JOB_STATUS);
+        broadcastIntent.putExtra(EXTRA_JOB_IDS, ids);
+        broadcastIntent.putExtra(EXTRA_JOB_STATES, states);
+        broadcastIntent.putExtra(EXTRA_JOB_PROGRESS, progress);
+        sendBroadcast(broadcastIntent);
+    }
+    
+    /**
+     * 没有未结束的任务时停止服务
+     */
+    private void stopIfIdle() 
+    {
+        if (jobScheduler.isIdle()) 
+        {
+            stopForeground(true);
+            stopSelf();
+        }
+    }
+    
+    /**
+     * 生成通知文本：运行中和排队中的任务数，以及运行中任务的总吞吐量和最长剩余时间
+     */
+    private String buildStatusText() 
+    {
+        int running = 0;
+        int queued = 0;
+        double bytesPerSecond = 0;
+        long etaMs = -1;
+        for (VideoJob job : jobScheduler.getJobs()) 
+        {
+            if (job.getState() == VideoJob.State.RUNNING) 
+            {
+                running++;
+                ProgressSnapshot detail = job.getProgressDetail();
+                if (detail != null) 
+                {
+                    bytesPerSecond += detail.getBytesPerSecond();
+                    etaMs = Math.max(etaMs, detail.getEtaMs());
+                }
+            } 
+            else if (job.getState() == VideoJob.State.QUEUED) 
+            {
+                queued++;
+            }
+        }
+        StringBuilder text = new StringBuilder("正在处理 " + running + " 个任务，排队 " + queued + " 个");
+        if (bytesPerSecond > 0) 
+        {
+            text.append(String.format(Locale.US, " · %.1f MB/s", bytesPerSecond / (1024 * 1024)));
+        }
+        if (etaMs >= 0) 
+        {
+            text.append("，剩余约 ").append((etaMs + 999) / 1000).append(" 秒");
+        }
+        return text.toString();
+    }
+    
+    /**
+     * 计算运行中任务的平均进度(0-100)
+     */
+    private int averageProgress() 
+    {
+        float total = 0f;
+        int count = 0;
+        for (VideoJob job : jobScheduler.getJobs()) 
+        {
+            if (job.getState() == VideoJob.State.RUNNING) 
+            {
+                total += job.getProgress();
+                count++;
+            }
+        }
+        return count > 0 ? (int) (total / count * 100) : 0;
     }
     
     /**
@@ -341,12 +853,119 @@ public class VideoProcessingService extends Service
     }
     
     @Override
-    public void onDestroy() 
+    public void onTrimMemory(int level) 
     {
-        if (videoProcessor != null) 
+        super.onTrimMemory(level);
+        // 内存紧张时释放缓冲区池中闲置的直接内存
+        if (level >= TRIM_MEMORY_RUNNING_LOW) 
         {
-            videoProcessor.cancel();
+            SampleBufferPool.shared().trim();
+            ThumbnailEngine.get().trimMemory();
+            SampleIndexCache.get().trimMemory();
         }
+    }
+    
+    @Override
+    public void onDestroy() 
+    {
+        destroying = true;
+        jobScheduler.shutdown();
         super.onDestroy();
     }
+    
+    /**
+     * 任务状态监听：更新通知并发送广播
+     */
+    private class JobListener implements VideoJobScheduler.Listener 
+    {
+        // 进度通知的最小间隔，避免多个任务同时刷新通知
+        private static final long NOTIFY_INTERVAL_MS = 500;
+        private volatile long lastNotifyTime = 0;
+        
+        @Override
+        public void onJobStarted(VideoJob job) 
+        {
+            updateNotification(buildStatusText(), averageProgress());
+        }
+        
+        @Override
+        public void onJobProgress(VideoJob job, float progress) 
+        {
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastNotifyTime >= NOTIFY_INTERVAL_MS) 
+            {
+                lastNotifyTime = now;
+                updateNotification(buildStatusText(), averageProgress());
+            }
+        }
+        
+        @Override
+        public void onJobClipFinished(VideoJob job, int clipIndex, String outputPath) 
+        {
+            // 每个片段完成时单独发布，收到广播时图库中已经可以看到它
+            publishClip(job, clipIndex);
+            Intent broadcastIntent = new Intent(BROADCAST_CLIP_EXTRACTED);
+            broadcastIntent.putExtra(EXTRA_JOB_ID, job.getId());
+            broadcastIntent.putExtra(EXTRA_CLIP_INDEX, clipIndex);
+            broadcastIntent.putExtra(EXTRA_OUTPUT_PATH, outputPath);
+            sendBroadcast(broadcastIntent);
+        }
+        
+        @Override
+        public void onJobSucceeded(VideoJob job, String outputPath, ProcessingStats stats) 
+        {
+            Log.d(TAG, "任务完成: " + job.getId());
+            // 先发布输出再广播，收到广播时图库中已经可以看到结果
+            ExportOutput output = takeOutput(job);
+            if (output != null) 
+            {
+                output.publish();
+            }
+            finishClips(job, true);
+            clearCheckpoint(job);
+            broadcastSuccess(job.getId(), outputPath, stats);
+            updateNotification(buildStatusText(), averageProgress());
+        }
+        
+        @Override
+        public void onJobFailed(VideoJob job, String reason) 
+        {
+            Log.e(TAG, "任务失败: " + job.getId() + ", " + reason);
+            ExportOutput output = takeOutput(job);
+            if (output != null) 
+            {
+                output.discard();
+            }
+            finishClips(job, false);
+            clearCheckpoint(job);
+            broadcastFailure(job.getId(), reason);
+            updateNotification(buildStatusText(), averageProgress());
+        }
+        
+        @Override
+        public void onJobCancelled(VideoJob job) 
+        {
+            Log.d(TAG, "任务已取消: " + job.getId());
+            // 服务销毁时可恢复任务的输出保持待发布，下次从断点继续写入
+            ExportOutput output = takeOutput(job);
+            boolean resumable = destroying && checkpoints.containsKey(job.getId());
+            if (output != null && !resumable) 
+            {
+                output.discard();
+            }
+            finishClips(job, false);
+            if (!destroying) 
+            {
+                clearCheckpoint(job);
+            }
+            broadcastFailure(job.getId(), "处理被取消");
+        }
+        
+        @Override
+        public void onIdle() 
+        {
+            // 回到主线程停止服务
+            mainHandler.post(VideoProcessingService.this::stopIfIdle);
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.example.ccat.utils;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 界面相关后台工作的执行器
+ * 线程以后台优先级运行，不与主线程和渲染线程争抢CPU；守护线程不阻止进程退出
+ */
+public final class BackgroundExecutors 
+{
+    private BackgroundExecutors() 
+    {
+    }
+
+    /**
+     * 单线程执行器，任务按提交顺序依次执行
+     * @param name 线程名称
+     */
+    public static ExecutorService newSingleThreadExecutor(String name) 
+    {
+        return Executors.newSingleThreadExecutor(runnable -> 
+        {
+            Thread thread = new Thread(() -> 
+            {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
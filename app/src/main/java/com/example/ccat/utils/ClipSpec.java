@@ -0,0 +1,42 @@
+package com.example.ccat.utils;
+
+import java.io.File;
+
+/**
+ * 批量提取中的一个片段：时间范围(毫秒)和输出位置
+ */
+public final class ClipSpec 
+{
+    private final TimeRange range;
+    private final OutputTarget output;
+
+    public ClipSpec(long startMs, long endMs, File outputFile) 
+    {
+        this(startMs, endMs, OutputTarget.of(outputFile));
+    }
+
+    /**
+     * @param output 输出位置，可以是文件或媒体库条目的文件描述符
+     */
+    public ClipSpec(long startMs, long endMs, OutputTarget output) 
+    {
+        this.range = new TimeRange(startMs, endMs);
+        this.output = output;
+    }
+
+    public TimeRange getRange() 
+    {
+        return range;
+    }
+
+    public OutputTarget getOutput() 
+    {
+        return output;
+    }
+
+    @Override
+    public String toString() 
+    {
+        return range + " -> " + output;
+    }
+}
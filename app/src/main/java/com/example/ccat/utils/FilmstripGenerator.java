@@ -0,0 +1,211 @@
+package com.example.ccat.utils;
+
+import android.graphics.Bitmap;
+import android.media.MediaExtractor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 时间轴缩略图生成器
+ * 在一个解码会话中按时间顺序遍历关键帧，生成均匀分布的N帧，避免N次独立的定位和解码器重建
+ * 每帧就绪后立即回调到主线程，结果经ThumbnailEngine缓存，再次打开同一视频时直接显示
+ */
+public final class FilmstripGenerator 
+{
+    private static final String TAG = "FilmstripGenerator";
+
+    /**
+     * 生成回调，在主线程执行
+     */
+    public interface Listener 
+    {
+        void onFrame(int index, Bitmap frame);
+        void onComplete();
+    }
+
+    /**
+     * 生成任务句柄，用于界面销毁时取消
+     */
+    public static final class Task 
+    {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        public void cancel() 
+        {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() 
+        {
+            return cancelled.get();
+        }
+    }
+
+    // 单线程执行，同一时间只占用一个硬件解码器
+    private static final ExecutorService EXECUTOR = BackgroundExecutors.newSingleThreadExecutor("Filmstrip");
+
+    private final ThumbnailEngine engine;
+    private final SampleIndexCache indexCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public FilmstripGenerator(ThumbnailEngine engine, SampleIndexCache indexCache) 
+    {
+        this.engine = engine;
+        this.indexCache = indexCache;
+    }
+
+    /**
+     * 生成时间轴缩略图
+     * 内存缓存中已有的帧在调用返回前同步回调，其余帧在后台解码后依次回调
+     * @param source 源视频
+     * @param durationMs 视频时长
+     * @param count 帧数
+     * @param frameSize 每帧长边的最大像素数
+     */
+    public Task generate(VideoSource source, long durationMs, int count, int frameSize, Listener listener) 
+    {
+        Task task = new Task();
+        long[] timesMs = frameTimes(durationMs, count);
+
+        // 先同步交付内存缓存中的帧
+        boolean[] delivered = new boolean[count];
+        int missing = 0;
+        for (int i = 0; i < count; i++) 
+        {
+            Bitmap cached = engine.getCached(source, timesMs[i], frameSize);
+            if (cached != null) 
+            {
+                delivered[i] = true;
+                listener.onFrame(i, cached);
+            }
+            else 
+            {
+                missing++;
+            }
+        }
+        if (missing == 0) 
+        {
+            listener.onComplete();
+            return task;
+        }
+
+        EXECUTOR.execute(() -> 
+        {
+            if (!task.isCancelled()) 
+            {
+                decodeMissing(source, timesMs, delivered, frameSize, task, listener);
+            }
+            mainHandler.post(() -> 
+            {
+                if (!task.isCancelled()) 
+                {
+                    listener.onComplete();
+                }
+            });
+        });
+        return task;
+    }
+
+    /**
+     * 每帧取所在区间的中点，避免两端落在黑场或片尾
+     */
+    private static long[] frameTimes(long durationMs, int count) 
+    {
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) 
+        {
+            times[i] = durationMs * (2L * i + 1) / (2L * count);
+        }
+        return times;
+    }
+
+    private void decodeMissing(VideoSource source, long[] timesMs, boolean[] delivered, int frameSize,
+                               Task task, Listener listener) 
+    {
+        KeyframeDecoder decoder = null;
+        long lastKeyframeUs = -1;
+        Bitmap lastFrame = null;
+        try 
+        {
+            // 建立样本索引后，每个目标对应的关键帧通过二分查找确定，不需要提取器定位
+            // 编辑器打开视频时建立的索引也会被之后的裁剪复用
+            SampleIndex.Track videoIndex = indexCache.getIndex(source).getVideoTrack();
+            if (videoIndex != null && videoIndex.getKeyframeCount() == 0) 
+            {
+                videoIndex = null;
+            }
+
+            for (int i = 0; i < timesMs.length && !task.isCancelled(); i++) 
+            {
+                if (delivered[i]) 
+                {
+                    continue;
+                }
+
+                Bitmap frame = engine.lookup(source, timesMs[i], frameSize);
+                if (frame == null) 
+                {
+                    if (decoder == null) 
+                    {
+                        decoder = new KeyframeDecoder(source, frameSize);
+                    }
+                    // 目标时间递增，关键帧也按顺序前进
+                    // 关键帧稀疏时相邻目标可能落到同一关键帧，直接复用上一次的结果
+                    long targetUs = timesMs[i] * 1000;
+                    long keyframeUs = videoIndex != null
+                            ? videoIndex.closestKeyframe(targetUs)
+                            : decoder.seekKeyframe(targetUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                    if (keyframeUs < 0) 
+                    {
+                        continue;
+                    }
+                    if (keyframeUs == lastKeyframeUs && lastFrame != null) 
+                    {
+                        frame = lastFrame;
+                    }
+                    else 
+                    {
+                        if (videoIndex != null) 
+                        {
+                            decoder.seekKeyframe(keyframeUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                        }
+                        frame = decoder.decodeFromCurrentKeyframe(keyframeUs);
+                        if (frame == null) 
+                        {
+                            continue;
+                        }
+                        lastKeyframeUs = keyframeUs;
+                        lastFrame = frame;
+                    }
+                    engine.put(source, timesMs[i], frameSize, frame);
+                }
+
+                final int index = i;
+                final Bitmap result = frame;
+                mainHandler.post(() -> 
+                {
+                    if (!task.isCancelled()) 
+                    {
+                        listener.onFrame(index, result);
+                    }
+                });
+            }
+        }
+        catch (IOException | RuntimeException e) 
+        {
+            Log.e(TAG, "生成时间轴缩略图失败: " + source, e);
+        }
+        finally 
+        {
+            if (decoder != null) 
+            {
+                decoder.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.ccat.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 滤镜转码器
+ * 解码器 → SurfaceTexture → 片元着色器 → 编码器输入Surface → muxer，
+ * 帧只在GPU和编解码器之间流转，Java层只处理压缩后的样本；音频样本原样拷贝
+ * 必须在同一线程中完成整个转码，EGL上下文绑定调用线程
+ */
+final class FilterTranscoder 
+{
+    private static final String TAG = "FilterTranscoder";
+    private static final int TIMEOUT_USEC = 10000;
+    private static final long FRAME_TIMEOUT_MS = 2500;
+
+    /**
+     * 转码进度监听
+     */
+    interface Listener 
+    {
+        void onProgress(float progress);
+    }
+
+    private FilterTranscoder() 
+    {
+    }
+
+    /**
+     * 对整个视频应用滤镜
+     * @return 完成返回true，被取消返回false(输出文件内容不完整)
+     */
+    static boolean transcode(VideoSource source, OutputTarget output, VideoFilter filter,
+                             AtomicBoolean cancelled, Listener listener, ProcessingStats stats) throws IOException 
+    {
+        return transcodeRange(source, output, filter, 0, Long.MAX_VALUE, true, cancelled, listener, stats);
+    }
+
+    /**
+     * 只转码[startUs, endUs)之间的视频，输出不含音频，供分段并行转码使用
+     * @param startUs 段起点，必须是关键帧
+     * @param endUs 段终点(下一段的起始关键帧)，Long.MAX_VALUE表示到结尾
+     */
+    static boolean transcodeSegment(VideoSource source, File outputFile, VideoFilter filter,
+                                    long startUs, long endUs, AtomicBoolean cancelled,
+                                    Listener listener, ProcessingStats stats) throws IOException 
+    {
+        return transcodeRange(source, OutputTarget.of(outputFile), filter, startUs, endUs, false, cancelled, listener, stats);
+    }
+
+    private static boolean transcodeRange(VideoSource source, OutputTarget output, VideoFilter filter,
+                                          long startUs, long endUs, boolean includeAudio, AtomicBoolean cancelled,
+                                          Listener listener, ProcessingStats stats) throws IOException 
+    {
+        MediaExtractor videoExtractor = new MediaExtractor();
+        MediaExtractor audioExtractor = null;
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        Surface encoderSurface = null;
+        TextureRenderer renderer = null;
+        MediaMuxer muxer = null;
+        boolean muxerStarted = false;
+        try 
+        {
+            source.setDataSource(videoExtractor);
+            int videoTrackIndex = findTrack(videoExtractor, "video/");
+            if (videoTrackIndex < 0) 
+            {
+                throw new IOException("未找到视频轨道");
+            }
+            videoExtractor.selectTrack(videoTrackIndex);
+            MediaFormat videoFormat = videoExtractor.getTrackFormat(videoTrackIndex);
+            if (startUs > 0) 
+            {
+                videoExtractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+
+            // 视频经过编解码延迟，音频单独用一个提取器按视频进度交错写入
+            MediaFormat audioFormat = null;
+            if (includeAudio) 
+            {
+                audioExtractor = new MediaExtractor();
+                source.setDataSource(audioExtractor);
+                int audioTrackIndex = findTrack(audioExtractor, "audio/");
+                if (audioTrackIndex >= 0) 
+                {
+                    audioExtractor.selectTrack(audioTrackIndex);
+                    audioFormat = audioExtractor.getTrackFormat(audioTrackIndex);
+                }
+                else 
+                {
+                    audioExtractor.release();
+                    audioExtractor = null;
+                }
+            }
+
+            int width = videoFormat.getInteger(MediaFormat.KEY_WIDTH);
+            int height = videoFormat.getInteger(MediaFormat.KEY_HEIGHT);
+            long durationUs = videoFormat.containsKey(MediaFormat.KEY_DURATION)
+                    ? videoFormat.getLong(MediaFormat.KEY_DURATION) : 0;
+            long rangeEndUs = Math.min(endUs, durationUs > 0 ? durationUs : Long.MAX_VALUE);
+            long rangeDurationUs = rangeEndUs == Long.MAX_VALUE ? 0 : rangeEndUs - startUs;
+
+            // H.264/H.265保持原编码，其他编码输出H.264
+            String sourceMime = videoFormat.getString(MediaFormat.KEY_MIME);
+            String outputMime = MediaFormat.MIMETYPE_VIDEO_HEVC.equals(sourceMime)
+                    ? sourceMime : MediaFormat.MIMETYPE_VIDEO_AVC;
+
+            long configureStart = System.nanoTime();
+            encoder = MediaCodec.createEncoderByType(outputMime);
+            encoder.configure(SmartTrimEncoder.createEncoderFormat(videoFormat, outputMime),
+                    null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            stats.onCodecConfigured(System.nanoTime() - configureStart);
+            encoderSurface = encoder.createInputSurface();
+            renderer = new TextureRenderer(encoderSurface, true);
+            renderer.setFilter(filter);
+            long startStart = System.nanoTime();
+            encoder.start();
+            stats.onCodecStarted(System.nanoTime() - startStart);
+
+            configureStart = System.nanoTime();
+            decoder = MediaCodec.createDecoderByType(sourceMime);
+            // 解码器的格式去掉旋转信息，否则解码器会把旋转写进SurfaceTexture的变换矩阵，
+            // 着色器在未旋转的编码尺寸里画出旋转后的画面，容器里的旋转信息又叠加一次
+            MediaFormat decoderFormat = videoExtractor.getTrackFormat(videoTrackIndex);
+            decoderFormat.setInteger(MediaFormat.KEY_ROTATION, 0);
+            decoder.configure(decoderFormat, renderer.getInputSurface(), null, 0);
+            stats.onCodecConfigured(System.nanoTime() - configureStart);
+            startStart = System.nanoTime();
+            decoder.start();
+            stats.onCodecStarted(System.nanoTime() - startStart);
+
+            muxer = output.createMuxer();
+            // 着色器按编码尺寸绘制原始方向的画面，旋转信息写入容器
+            if (videoFormat.containsKey(MediaFormat.KEY_ROTATION)) 
+            {
+                muxer.setOrientationHint(videoFormat.getInteger(MediaFormat.KEY_ROTATION));
+            }
+
+            MediaCodec.BufferInfo decoderInfo = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo encoderInfo = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo audioInfo = new MediaCodec.BufferInfo();
+            SampleBufferPool bufferPool = SampleBufferPool.shared();
+            ByteBuffer audioBuffer = audioFormat != null
+                    ? bufferPool.acquire(SampleBufferPool.maxSampleSize(audioFormat)) : null;
+            if (audioBuffer != null) 
+            {
+                stats.onBufferAcquired(audioBuffer.capacity());
+            }
+
+            int outputVideoTrack = -1;
+            int outputAudioTrack = -1;
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean encoderDone = false;
+            try 
+            {
+                while (!encoderDone) 
+                {
+                    if (cancelled.get()) 
+                    {
+                        return false;
+                    }
+
+                    if (!inputDone) 
+                    {
+                        inputDone = feedDecoder(videoExtractor, decoder, endUs, stats);
+                    }
+
+                    // 先排空编码器，避免编码器输入队列满时绘制阻塞
+                    boolean encoderIdle = false;
+                    while (!encoderIdle && !encoderDone) 
+                    {
+                        int index = encoder.dequeueOutputBuffer(encoderInfo, decoderDone ? TIMEOUT_USEC : 0);
+                        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) 
+                        {
+                            outputVideoTrack = muxer.addTrack(encoder.getOutputFormat());
+                            if (audioFormat != null) 
+                            {
+                                outputAudioTrack = muxer.addTrack(audioFormat);
+                            }
+                            muxer.start();
+                            muxerStarted = true;
+                        }
+                        else if (index >= 0) 
+                        {
+                            ByteBuffer encoded = encoder.getOutputBuffer(index);
+                            boolean config = (encoderInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                            if (!config && encoderInfo.size > 0 && encoded != null && muxerStarted) 
+                            {
+                                // 编码器输出缓冲区直接写入muxer，不做拷贝
+                                long writeStart = System.nanoTime();
+                                muxer.writeSampleData(outputVideoTrack, encoded, encoderInfo);
+                                stats.onSampleWritten(System.nanoTime() - writeStart);
+                                if (audioExtractor != null) 
+                                {
+                                    copyAudioUntil(audioExtractor, muxer, outputAudioTrack, audioBuffer, audioInfo,
+                                            encoderInfo.presentationTimeUs, stats);
+                                }
+                                if (listener != null && rangeDurationUs > 0) 
+                                {
+                                    float progress = (float) (encoderInfo.presentationTimeUs - startUs) / rangeDurationUs;
+                                    listener.onProgress(Math.max(0f, Math.min(1f, progress)));
+                                }
+                            }
+                            encoderDone = (encoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                            encoder.releaseOutputBuffer(index, false);
+                        }
+                        else 
+                        {
+                            encoderIdle = true;
+                        }
+                    }
+
+                    if (!decoderDone) 
+                    {
+                        int index = decoder.dequeueOutputBuffer(decoderInfo, TIMEOUT_USEC);
+                        if (index >= 0) 
+                        {
+                            // 开放GOP中起点之前的帧只解码不输出
+                            boolean render = decoderInfo.size > 0
+                                    && decoderInfo.presentationTimeUs >= startUs
+                                    && decoderInfo.presentationTimeUs < endUs;
+                            decoder.releaseOutputBuffer(index, render);
+                            if (render) 
+                            {
+                                if (!renderer.awaitNewFrame(FRAME_TIMEOUT_MS)) 
+                                {
+                                    throw new IllegalStateException("等待解码帧超时");
+                                }
+                                renderer.drawFrame(width, height);
+                                renderer.setPresentationTime(decoderInfo.presentationTimeUs * 1000);
+                                renderer.swapBuffers();
+                            }
+                            if ((decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) 
+                            {
+                                encoder.signalEndOfInputStream();
+                                decoderDone = true;
+                            }
+                        }
+                    }
+                }
+
+                if (!muxerStarted) 
+                {
+                    throw new IllegalStateException("编码器没有输出");
+                }
+                // 视频之后剩余的音频
+                if (audioExtractor != null) 
+                {
+                    copyAudioUntil(audioExtractor, muxer, outputAudioTrack, audioBuffer, audioInfo, Long.MAX_VALUE, stats);
+                }
+            }
+            finally 
+            {
+                if (audioBuffer != null) 
+                {
+                    stats.onBufferReleased(audioBuffer.capacity());
+                }
+                bufferPool.release(audioBuffer);
+            }
+
+            muxerStarted = false;
+            muxer.stop();
+            return true;
+        }
+        finally 
+        {
+            if (decoder != null) 
+            {
+                stopQuietly(decoder);
+                decoder.release();
+            }
+            if (encoder != null) 
+            {
+                stopQuietly(encoder);
+                encoder.release();
+            }
+            if (renderer != null) 
+            {
+                renderer.release();
+            }
+            if (encoderSurface != null) 
+            {
+                encoderSurface.release();
+            }
+            if (muxer != null) 
+            {
+                try 
+                {
+                    if (muxerStarted) 
+                    {
+                        muxer.stop();
+                    }
+                    muxer.release();
+                }
+                catch (Exception e) 
+                {
+                    Log.e(TAG, "释放Muxer失败", e);
+                }
+            }
+            videoExtractor.release();
+            if (audioExtractor != null) 
+            {
+                audioExtractor.release();
+            }
+        }
+    }
+
+    /**
+     * 向解码器送入一个样本，到达endUs处的关键帧后送入结束标志
+     * @return 已送入结束标志返回true
+     */
+    private static boolean feedDecoder(MediaExtractor extractor, MediaCodec decoder, long endUs, ProcessingStats stats) 
+    {
+        int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_USEC);
+        if (inputIndex < 0) 
+        {
+            return false;
+        }
+        ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
+        long sampleTimeUs = extractor.getSampleTime();
+        boolean reachedEnd = sampleTimeUs >= endUs
+                && (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+        long readStart = System.nanoTime();
+        int size = sampleTimeUs < 0 || reachedEnd ? -1 : extractor.readSampleData(inputBuffer, 0);
+        if (size < 0) 
+        {
+            decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        stats.onSampleRead(true, size, System.nanoTime() - readStart);
+        decoder.queueInputBuffer(inputIndex, 0, size, sampleTimeUs, 0);
+        extractor.advance();
+        return false;
+    }
+
+    /**
+     * 拷贝时间戳不晚于untilUs的音频样本
+     */
+    static void copyAudioUntil(MediaExtractor extractor, MediaMuxer muxer, int trackIndex,
+                               ByteBuffer buffer, MediaCodec.BufferInfo info, long untilUs, ProcessingStats stats) 
+    {
+        while (true) 
+        {
+            long sampleTimeUs = extractor.getSampleTime();
+            if (sampleTimeUs < 0 || sampleTimeUs > untilUs) 
+            {
+                return;
+            }
+            buffer.clear();
+            long readStart = System.nanoTime();
+            int size = extractor.readSampleData(buffer, 0);
+            long readEnd = System.nanoTime();
+            if (size < 0) 
+            {
+                return;
+            }
+            stats.onSampleRead(false, size, readEnd - readStart);
+            info.offset = 0;
+            info.size = size;
+            info.presentationTimeUs = sampleTimeUs;
+            info.flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                    ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+            long writeStart = System.nanoTime();
+            muxer.writeSampleData(trackIndex, buffer, info);
+            stats.onSampleWritten(System.nanoTime() - writeStart);
+            extractor.advance();
+        }
+    }
+
+    static int findTrack(MediaExtractor extractor, String mimePrefix) 
+    {
+        for (int i = 0; i < extractor.getTrackCount(); i++) 
+        {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(mimePrefix)) 
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void stopQuietly(MediaCodec codec) 
+    {
+        try 
+        {
+            codec.stop();
+        }
+        catch (Exception e) 
+        {
+            Log.w(TAG, "停止编解码器失败", e);
+        }
+    }
+}
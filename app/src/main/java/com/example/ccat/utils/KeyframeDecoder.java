@@ -0,0 +1,309 @@
+package com.example.ccat.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 关键帧解码会话
+ * 硬件解码器输出到SurfaceTexture，由GPU缩放后绘制到ImageReader，只把缩小后的帧读回内存
+ * 一个会话可以连续解码多个关键帧，解码器只创建一次
+ * 会话绑定创建它的线程
+ */
+final class KeyframeDecoder implements Closeable 
+{
+    private static final String TAG = "KeyframeDecoder";
+    private static final int TIMEOUT_USEC = 10000;
+    private static final long FRAME_TIMEOUT_MS = 500;
+    // 单帧解码的最长时间
+    private static final long DECODE_TIMEOUT_MS = 3000;
+
+    private final MediaExtractor extractor;
+    private final MediaFormat format;
+    private final MediaCodec decoder;
+    private final ImageReader imageReader;
+    private final TextureRenderer renderer;
+    private final Object imageLock = new Object();
+    private final int outputWidth;
+    private final int outputHeight;
+    private final int rotation;
+    private final long durationUs;
+    private boolean decoderUsed = false;
+
+    /**
+     * @param source 源视频
+     * @param maxSize 输出帧长边的最大像素数
+     */
+    KeyframeDecoder(VideoSource source, int maxSize) throws IOException 
+    {
+        extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        ImageReader reader = null;
+        TextureRenderer textureRenderer = null;
+        try 
+        {
+            source.setDataSource(extractor);
+            int trackIndex = -1;
+            for (int i = 0; i < extractor.getTrackCount(); i++) 
+            {
+                String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/")) 
+                {
+                    trackIndex = i;
+                    break;
+                }
+            }
+            if (trackIndex < 0) 
+            {
+                throw new IOException("未找到视频轨道: " + source);
+            }
+            extractor.selectTrack(trackIndex);
+            format = extractor.getTrackFormat(trackIndex);
+
+            int width = format.getInteger(MediaFormat.KEY_WIDTH);
+            int height = format.getInteger(MediaFormat.KEY_HEIGHT);
+            rotation = format.containsKey(MediaFormat.KEY_ROTATION) ? format.getInteger(MediaFormat.KEY_ROTATION) : 0;
+            durationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+
+            // 按长边缩放，尺寸取偶数
+            float scale = Math.min(1f, (float) maxSize / Math.max(width, height));
+            outputWidth = Math.max(2, Math.round(width * scale) & ~1);
+            outputHeight = Math.max(2, Math.round(height * scale) & ~1);
+
+            reader = ImageReader.newInstance(outputWidth, outputHeight, PixelFormat.RGBA_8888, 2);
+            reader.setOnImageAvailableListener(r -> 
+            {
+                synchronized (imageLock) 
+                {
+                    imageLock.notifyAll();
+                }
+            }, TextureRenderer.callbackHandler());
+            textureRenderer = new TextureRenderer(reader.getSurface(), false);
+
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            codec = MediaCodec.createDecoderByType(mime);
+            // 旋转只在renderToBitmap中做一次，解码器的格式去掉旋转信息，
+            // 否则GPU绘制时已经旋转，画面被压进未旋转的输出尺寸后又旋转一次
+            MediaFormat decoderFormat = extractor.getTrackFormat(trackIndex);
+            decoderFormat.setInteger(MediaFormat.KEY_ROTATION, 0);
+            codec.configure(decoderFormat, textureRenderer.getInputSurface(), null, 0);
+            codec.start();
+        }
+        catch (IOException | RuntimeException e) 
+        {
+            if (codec != null) 
+            {
+                codec.release();
+            }
+            if (textureRenderer != null) 
+            {
+                textureRenderer.release();
+            }
+            if (reader != null) 
+            {
+                reader.close();
+            }
+            extractor.release();
+            throw e;
+        }
+        decoder = codec;
+        imageReader = reader;
+        renderer = textureRenderer;
+    }
+
+    long getDurationUs() 
+    {
+        return durationUs;
+    }
+
+    /**
+     * 解码指定位置附近的关键帧
+     * @param timeUs 目标时间
+     * @param seekMode MediaExtractor.SEEK_TO_*_SYNC
+     * @return 缩小后的帧，失败返回null
+     */
+    Bitmap decodeAt(long timeUs, int seekMode) 
+    {
+        long keyframeUs = seekKeyframe(timeUs, seekMode);
+        if (keyframeUs < 0) 
+        {
+            return null;
+        }
+        return decodeFromCurrentKeyframe(keyframeUs);
+    }
+
+    /**
+     * 只定位关键帧不解码，调用方可据此判断是否与上一次解码的是同一帧
+     * @return 关键帧时间，没有可用样本返回-1
+     */
+    long seekKeyframe(long timeUs, int seekMode) 
+    {
+        extractor.seekTo(timeUs, seekMode);
+        return extractor.getSampleTime();
+    }
+
+    /**
+     * 从提取器当前位置(必须是关键帧)开始解码，返回第一帧
+     */
+    Bitmap decodeFromCurrentKeyframe(long keyframeUs) 
+    {
+        // 同一会话解码下一个关键帧前清空解码器状态
+        if (decoderUsed) 
+        {
+            decoder.flush();
+        }
+        decoderUsed = true;
+
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        long deadline = System.currentTimeMillis() + DECODE_TIMEOUT_MS;
+
+        while (System.currentTimeMillis() < deadline) 
+        {
+            if (!inputDone) 
+            {
+                int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_USEC);
+                if (inputIndex >= 0) 
+                {
+                    ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
+                    int size = extractor.readSampleData(inputBuffer, 0);
+                    if (size < 0) 
+                    {
+                        decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    }
+                    else 
+                    {
+                        decoder.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int outputIndex = decoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+            if (outputIndex >= 0) 
+            {
+                boolean eos = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                boolean wanted = info.size > 0 && info.presentationTimeUs >= keyframeUs;
+                decoder.releaseOutputBuffer(outputIndex, wanted);
+                if (wanted) 
+                {
+                    return renderToBitmap();
+                }
+                if (eos) 
+                {
+                    return null;
+                }
+            }
+        }
+        Log.w(TAG, "解码超时: " + keyframeUs + "us");
+        return null;
+    }
+
+    /**
+     * GPU缩放绘制到ImageReader并读回
+     */
+    private Bitmap renderToBitmap() 
+    {
+        if (!renderer.awaitNewFrame(FRAME_TIMEOUT_MS)) 
+        {
+            Log.w(TAG, "等待解码帧超时");
+            return null;
+        }
+        renderer.drawFrame(outputWidth, outputHeight);
+        renderer.swapBuffers();
+
+        Image image = acquireImage();
+        if (image == null) 
+        {
+            return null;
+        }
+        Bitmap bitmap;
+        try 
+        {
+            Image.Plane plane = image.getPlanes()[0];
+            int pixelStride = plane.getPixelStride();
+            int rowPadding = plane.getRowStride() - pixelStride * outputWidth;
+            bitmap = Bitmap.createBitmap(outputWidth + rowPadding / pixelStride, outputHeight, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(plane.getBuffer());
+        }
+        finally 
+        {
+            image.close();
+        }
+
+        // 去掉行对齐的填充并按元数据旋转
+        Matrix matrix = null;
+        if (rotation != 0) 
+        {
+            matrix = new Matrix();
+            matrix.postRotate(rotation);
+        }
+        if (matrix != null || bitmap.getWidth() != outputWidth) 
+        {
+            Bitmap result = Bitmap.createBitmap(bitmap, 0, 0, outputWidth, outputHeight, matrix, true);
+            if (result != bitmap) 
+            {
+                bitmap.recycle();
+            }
+            bitmap = result;
+        }
+        return bitmap;
+    }
+
+    private Image acquireImage() 
+    {
+        long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+        synchronized (imageLock) 
+        {
+            Image image = imageReader.acquireLatestImage();
+            while (image == null) 
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) 
+                {
+                    Log.w(TAG, "等待ImageReader超时");
+                    return null;
+                }
+                try 
+                {
+                    imageLock.wait(remaining);
+                }
+                catch (InterruptedException e) 
+                {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                image = imageReader.acquireLatestImage();
+            }
+            return image;
+        }
+    }
+
+    @Override
+    public void close() 
+    {
+        try 
+        {
+            decoder.stop();
+        }
+        catch (Exception e) 
+        {
+            Log.w(TAG, "停止解码器失败", e);
+        }
+        decoder.release();
+        renderer.release();
+        imageReader.close();
+        extractor.release();
+    }
+}
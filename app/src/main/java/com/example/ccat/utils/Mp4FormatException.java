@@ -0,0 +1,17 @@
+package com.example.ccat.utils;
+
+import java.io.IOException;
+
+/**
+ * MP4文件结构无法识别或不受支持(如分片MP4)
+ * 调用方应退回MediaExtractor/MediaMuxer处理
+ */
+public class Mp4FormatException extends IOException 
+{
+    private static final long serialVersionUID = 1L;
+
+    public Mp4FormatException(String message) 
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,640 @@
+package com.example.ccat.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 纯Java的MP4(ISO-BMFF)解析器
+ * 只读取ftyp和moov，样本数据留在文件中，由Mp4TrimWriter按字节区间直接拷贝
+ * 不依赖Android API，可以在普通JVM上运行和做基准测试
+ */
+public final class Mp4Movie 
+{
+    // moov通常只有几百KB，超过此大小视为文件损坏
+    private static final long MAX_MOOV_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * 源文件的打开方式，每次调用返回新的只读通道，由调用方关闭
+     */
+    public interface Source 
+    {
+        FileChannel open() throws IOException;
+    }
+
+    private final Source source;
+    private final byte[] ftyp;
+    private final byte[] mvhd;
+    private final byte[] udta;
+    private final long movieTimescale;
+    private final List<Mp4Track> tracks;
+
+    private Mp4Movie(Source source, byte[] ftyp, byte[] mvhd, byte[] udta, long movieTimescale, List<Mp4Track> tracks) 
+    {
+        this.source = source;
+        this.ftyp = ftyp;
+        this.mvhd = mvhd;
+        this.udta = udta;
+        this.movieTimescale = movieTimescale;
+        this.tracks = Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * 打开源文件的只读通道，读取样本数据
+     */
+    public FileChannel openSource() throws IOException 
+    {
+        return source.open();
+    }
+
+    public long getMovieTimescale() 
+    {
+        return movieTimescale;
+    }
+
+    public List<Mp4Track> getTracks() 
+    {
+        return tracks;
+    }
+
+    /**
+     * @return 第一个有样本的视频轨道，没有时返回null
+     */
+    public Mp4Track getVideoTrack() 
+    {
+        for (Mp4Track track : tracks) 
+        {
+            if (track.isVideo() && track.sampleCount > 0) 
+            {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    byte[] getFtyp() 
+    {
+        return ftyp;
+    }
+
+    byte[] getMvhd() 
+    {
+        return mvhd;
+    }
+
+    byte[] getUdta() 
+    {
+        return udta;
+    }
+
+    /**
+     * 解析文件
+     * @throws Mp4FormatException 不是MP4，或是不支持的分片MP4
+     */
+    public static Mp4Movie parse(File file) throws IOException 
+    {
+        return parse(() -> new RandomAccessFile(file, "r").getChannel());
+    }
+
+    /**
+     * 从通道解析，源文件不在本地路径上(例如content URI)时使用
+     * @throws Mp4FormatException 不是MP4，或是不支持的分片MP4
+     */
+    public static Mp4Movie parse(Source source) throws IOException 
+    {
+        try (FileChannel channel = source.open()) 
+        {
+            long fileSize = channel.size();
+            long position = 0;
+            byte[] ftyp = null;
+            ByteBuffer moov = null;
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (position + 8 <= fileSize) 
+            {
+                header.clear();
+                header.limit(16);
+                readFully(channel, header, position, (int) Math.min(16, fileSize - position));
+                header.flip();
+                long size = header.getInt() & 0xffffffffL;
+                String type = fourcc(header);
+                int headerSize = 8;
+                if (size == 1) 
+                {
+                    if (header.remaining() < 8) 
+                    {
+                        throw new Mp4FormatException("box头不完整: " + type);
+                    }
+                    size = header.getLong();
+                    headerSize = 16;
+                }
+                else if (size == 0) 
+                {
+                    size = fileSize - position;
+                }
+                if (size < headerSize || position + size > fileSize) 
+                {
+                    throw new Mp4FormatException("box大小无效: " + type + " " + size);
+                }
+
+                if ("ftyp".equals(type)) 
+                {
+                    ftyp = readBox(channel, position, size);
+                }
+                else if ("moov".equals(type)) 
+                {
+                    if (size > MAX_MOOV_SIZE) 
+                    {
+                        throw new Mp4FormatException("moov过大: " + size);
+                    }
+                    moov = ByteBuffer.wrap(readBox(channel, position, size));
+                    moov.position(headerSize);
+                }
+                else if ("moof".equals(type)) 
+                {
+                    throw new Mp4FormatException("不支持分片MP4");
+                }
+                position += size;
+            }
+            if (ftyp == null || moov == null) 
+            {
+                throw new Mp4FormatException("缺少ftyp或moov");
+            }
+            return parseMoov(source, ftyp, moov);
+        }
+    }
+
+    private static Mp4Movie parseMoov(Source source, byte[] ftyp, ByteBuffer moov) throws IOException 
+    {
+        byte[] mvhd = null;
+        byte[] udta = null;
+        long movieTimescale = 0;
+        List<Mp4Track> tracks = new ArrayList<>();
+        for (Box box : children(moov)) 
+        {
+            switch (box.type) 
+            {
+                case "mvhd":
+                    mvhd = box.bytes();
+                    ByteBuffer body = box.body();
+                    int version = body.get() & 0xff;
+                    body.position(body.position() + 3 + (version == 1 ? 16 : 8));
+                    movieTimescale = body.getInt() & 0xffffffffL;
+                    break;
+                case "trak":
+                    Mp4Track track = parseTrak(box.body());
+                    if (track != null) 
+                    {
+                        tracks.add(track);
+                    }
+                    break;
+                case "udta":
+                    udta = box.bytes();
+                    break;
+                case "mvex":
+                    throw new Mp4FormatException("不支持分片MP4");
+                default:
+                    break;
+            }
+        }
+        if (mvhd == null || movieTimescale == 0) 
+        {
+            throw new Mp4FormatException("缺少mvhd");
+        }
+        return new Mp4Movie(source, ftyp, mvhd, udta, movieTimescale, tracks);
+    }
+
+    /**
+     * 解析trak，缺少必要box的轨道返回null
+     */
+    private static Mp4Track parseTrak(ByteBuffer trak) throws IOException 
+    {
+        Mp4Track track = new Mp4Track();
+        ByteBuffer stbl = null;
+        for (Box box : children(trak)) 
+        {
+            if ("tkhd".equals(box.type)) 
+            {
+                track.tkhd = box.bytes();
+            }
+            else if ("edts".equals(box.type)) 
+            {
+                track.editMediaTime = parseEditMediaTime(box.body());
+            }
+            else if ("mdia".equals(box.type)) 
+            {
+                for (Box mdiaChild : children(box.body())) 
+                {
+                    if ("mdhd".equals(mdiaChild.type)) 
+                    {
+                        track.mdhd = mdiaChild.bytes();
+                        ByteBuffer body = mdiaChild.body();
+                        int version = body.get() & 0xff;
+                        body.position(body.position() + 3 + (version == 1 ? 16 : 8));
+                        track.timescale = body.getInt() & 0xffffffffL;
+                    }
+                    else if ("hdlr".equals(mdiaChild.type)) 
+                    {
+                        track.hdlr = mdiaChild.bytes();
+                        ByteBuffer body = mdiaChild.body();
+                        // version/flags(4) + pre_defined(4) + handler_type(4)
+                        body.position(body.position() + 8);
+                        track.handlerType = fourcc(body);
+                    }
+                    else if ("minf".equals(mdiaChild.type)) 
+                    {
+                        for (Box minfChild : children(mdiaChild.body())) 
+                        {
+                            switch (minfChild.type) 
+                            {
+                                case "vmhd":
+                                case "smhd":
+                                case "nmhd":
+                                case "sthd":
+                                case "hmhd":
+                                    track.mediaHeader = minfChild.bytes();
+                                    break;
+                                case "dinf":
+                                    track.dinf = minfChild.bytes();
+                                    break;
+                                case "stbl":
+                                    stbl = minfChild.body();
+                                    break;
+                                default:
+                                    break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (track.tkhd == null || track.mdhd == null || track.hdlr == null || stbl == null || track.timescale == 0) 
+        {
+            return null;
+        }
+        parseSampleTables(track, stbl);
+        return track;
+    }
+
+    /**
+     * 取编辑列表中第一个非空片段的media_time
+     */
+    private static long parseEditMediaTime(ByteBuffer edts) 
+    {
+        for (Box box : children(edts)) 
+        {
+            if (!"elst".equals(box.type)) 
+            {
+                continue;
+            }
+            ByteBuffer body = box.body();
+            int version = body.get() & 0xff;
+            body.position(body.position() + 3);
+            long count = body.getInt() & 0xffffffffL;
+            for (long i = 0; i < count; i++) 
+            {
+                long mediaTime;
+                if (version == 1) 
+                {
+                    body.getLong();
+                    mediaTime = body.getLong();
+                }
+                else 
+                {
+                    body.getInt();
+                    mediaTime = body.getInt();
+                }
+                body.getInt(); // media_rate
+                if (mediaTime != -1) 
+                {
+                    return mediaTime;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static void parseSampleTables(Mp4Track track, ByteBuffer stbl) throws IOException 
+    {
+        ByteBuffer stts = null;
+        ByteBuffer ctts = null;
+        ByteBuffer stss = null;
+        ByteBuffer stsz = null;
+        ByteBuffer stz2 = null;
+        ByteBuffer stsc = null;
+        ByteBuffer stco = null;
+        boolean co64 = false;
+        for (Box box : children(stbl)) 
+        {
+            switch (box.type) 
+            {
+                case "stsd":
+                    track.stsd = box.bytes();
+                    break;
+                case "stts":
+                    stts = box.body();
+                    break;
+                case "ctts":
+                    ctts = box.body();
+                    break;
+                case "stss":
+                    stss = box.body();
+                    break;
+                case "stsz":
+                    stsz = box.body();
+                    break;
+                case "stz2":
+                    stz2 = box.body();
+                    break;
+                case "stsc":
+                    stsc = box.body();
+                    break;
+                case "stco":
+                    stco = box.body();
+                    break;
+                case "co64":
+                    stco = box.body();
+                    co64 = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (track.stsd == null || stts == null || stsc == null || stco == null || (stsz == null && stz2 == null)) 
+        {
+            throw new Mp4FormatException("样本表不完整: " + track.handlerType);
+        }
+
+        int count = stsz != null ? readSizes(track, stsz) : readCompactSizes(track, stz2);
+        track.sampleCount = count;
+        readDecodeTimes(track, stts);
+        readCompositionOffsets(track, ctts);
+        readSyncSamples(track, stss);
+        readChunkOffsets(track, stsc, stco, co64);
+    }
+
+    private static int readSizes(Mp4Track track, ByteBuffer stsz) 
+    {
+        stsz.getInt(); // version/flags
+        int constantSize = stsz.getInt();
+        int count = stsz.getInt();
+        track.sizes = new int[count];
+        for (int i = 0; i < count; i++) 
+        {
+            track.sizes[i] = constantSize != 0 ? constantSize : stsz.getInt();
+        }
+        return count;
+    }
+
+    private static int readCompactSizes(Mp4Track track, ByteBuffer stz2) throws IOException 
+    {
+        stz2.getInt(); // version/flags
+        int fieldSize = stz2.getInt() & 0xff;
+        int count = stz2.getInt();
+        track.sizes = new int[count];
+        for (int i = 0; i < count; i++) 
+        {
+            switch (fieldSize) 
+            {
+                case 4:
+                    int b = stz2.get(stz2.position() + i / 2) & 0xff;
+                    track.sizes[i] = (i % 2 == 0) ? (b >> 4) : (b & 0x0f);
+                    break;
+                case 8:
+                    track.sizes[i] = stz2.get() & 0xff;
+                    break;
+                case 16:
+                    track.sizes[i] = stz2.getShort() & 0xffff;
+                    break;
+                default:
+                    throw new Mp4FormatException("stz2字段大小无效: " + fieldSize);
+            }
+        }
+        return count;
+    }
+
+    private static void readDecodeTimes(Mp4Track track, ByteBuffer stts) throws IOException 
+    {
+        int count = track.sampleCount;
+        track.decodeTimes = new long[count];
+        stts.getInt(); // version/flags
+        int entries = stts.getInt();
+        int sample = 0;
+        long time = 0;
+        long delta = 0;
+        for (int e = 0; e < entries && sample < count; e++) 
+        {
+            int runLength = stts.getInt();
+            delta = stts.getInt() & 0xffffffffL;
+            for (int i = 0; i < runLength && sample < count; i++) 
+            {
+                track.decodeTimes[sample++] = time;
+                time += delta;
+            }
+        }
+        if (sample != count) 
+        {
+            throw new Mp4FormatException("stts样本数不一致");
+        }
+        track.lastSampleDelta = delta;
+    }
+
+    private static void readCompositionOffsets(Mp4Track track, ByteBuffer ctts) 
+    {
+        int count = track.sampleCount;
+        track.compositionOffsets = new int[count];
+        if (ctts == null) 
+        {
+            return;
+        }
+        track.hasCompositionOffsets = true;
+        ctts.getInt(); // version/flags，version 1为有符号值，按int读取两者一致
+        int entries = ctts.getInt();
+        int sample = 0;
+        for (int e = 0; e < entries && sample < count; e++) 
+        {
+            int runLength = ctts.getInt();
+            int offset = ctts.getInt();
+            for (int i = 0; i < runLength && sample < count; i++) 
+            {
+                track.compositionOffsets[sample++] = offset;
+            }
+        }
+    }
+
+    private static void readSyncSamples(Mp4Track track, ByteBuffer stss) 
+    {
+        int count = track.sampleCount;
+        track.sync = new boolean[count];
+        if (stss == null) 
+        {
+            // 没有stss表示所有样本都是同步样本
+            Arrays.fill(track.sync, true);
+            return;
+        }
+        track.hasSyncTable = true;
+        stss.getInt(); // version/flags
+        int entries = stss.getInt();
+        for (int e = 0; e < entries; e++) 
+        {
+            int sample = stss.getInt() - 1;
+            if (sample >= 0 && sample < count) 
+            {
+                track.sync[sample] = true;
+            }
+        }
+    }
+
+    private static void readChunkOffsets(Mp4Track track, ByteBuffer stsc, ByteBuffer stco, boolean co64) throws IOException 
+    {
+        int count = track.sampleCount;
+        track.offsets = new long[count];
+        track.descriptionIndexes = new int[count];
+
+        stco.getInt(); // version/flags
+        int chunkCount = stco.getInt();
+        long[] chunkOffsets = new long[chunkCount];
+        for (int i = 0; i < chunkCount; i++) 
+        {
+            chunkOffsets[i] = co64 ? stco.getLong() : stco.getInt() & 0xffffffffL;
+        }
+
+        stsc.getInt(); // version/flags
+        int entries = stsc.getInt();
+        int[] firstChunks = new int[entries];
+        int[] samplesPerChunk = new int[entries];
+        int[] descriptions = new int[entries];
+        for (int e = 0; e < entries; e++) 
+        {
+            firstChunks[e] = stsc.getInt() - 1;
+            samplesPerChunk[e] = stsc.getInt();
+            descriptions[e] = stsc.getInt();
+        }
+
+        int sample = 0;
+        for (int e = 0; e < entries && sample < count; e++) 
+        {
+            int lastChunk = e + 1 < entries ? firstChunks[e + 1] : chunkCount;
+            for (int chunk = firstChunks[e]; chunk < lastChunk && sample < count; chunk++) 
+            {
+                long offset = chunkOffsets[chunk];
+                for (int i = 0; i < samplesPerChunk[e] && sample < count; i++) 
+                {
+                    track.offsets[sample] = offset;
+                    track.descriptionIndexes[sample] = descriptions[e];
+                    offset += track.sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        if (sample != count) 
+        {
+            throw new Mp4FormatException("stsc/stco样本数不一致");
+        }
+    }
+
+    /**
+     * 子box视图，body为box内容(不含box头)
+     */
+    private static final class Box 
+    {
+        final String type;
+        final ByteBuffer buffer;
+        final int start;
+        final int headerSize;
+        final int end;
+
+        Box(String type, ByteBuffer buffer, int start, int headerSize, int end) 
+        {
+            this.type = type;
+            this.buffer = buffer;
+            this.start = start;
+            this.headerSize = headerSize;
+            this.end = end;
+        }
+
+        ByteBuffer body() 
+        {
+            ByteBuffer body = buffer.duplicate();
+            body.limit(end);
+            body.position(start + headerSize);
+            return body.slice();
+        }
+
+        byte[] bytes() 
+        {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer source = buffer.duplicate();
+            source.position(start);
+            source.get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * 遍历容器中从当前位置到limit的子box
+     */
+    private static List<Box> children(ByteBuffer container) 
+    {
+        List<Box> boxes = new ArrayList<>();
+        ByteBuffer buffer = container.duplicate();
+        while (buffer.remaining() >= 8) 
+        {
+            int start = buffer.position();
+            long size = buffer.getInt() & 0xffffffffL;
+            String type = fourcc(buffer);
+            int headerSize = 8;
+            if (size == 1) 
+            {
+                size = buffer.getLong();
+                headerSize = 16;
+            }
+            else if (size == 0) 
+            {
+                size = buffer.limit() - start;
+            }
+            if (size < headerSize || start + size > buffer.limit()) 
+            {
+                break;
+            }
+            int end = (int) (start + size);
+            boxes.add(new Box(type, buffer, start, headerSize, end));
+            buffer.position(end);
+        }
+        return boxes;
+    }
+
+    private static String fourcc(ByteBuffer buffer) 
+    {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readBox(FileChannel channel, long position, long size) throws IOException 
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        readFully(channel, buffer, position, (int) size);
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException 
+    {
+        buffer.limit(buffer.position() + length);
+        while (buffer.hasRemaining()) 
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0) 
+            {
+                throw new Mp4FormatException("文件提前结束");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.ccat.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MP4中的一个轨道
+ * 样本表展开为按解码顺序排列的数组，不需要改写的box保留原始字节，写出时原样拷贝
+ */
+public final class Mp4Track 
+{
+    public static final String HANDLER_VIDEO = "vide";
+    public static final String HANDLER_SOUND = "soun";
+
+    // 原始box(含box头)
+    byte[] tkhd;
+    byte[] mdhd;
+    byte[] hdlr;
+    byte[] mediaHeader;
+    byte[] dinf;
+    byte[] stsd;
+
+    String handlerType;
+    long timescale;
+    // 编辑列表中第一个有效片段的媒体起始时间(媒体时间刻度)，显示时间需减去此值
+    long editMediaTime;
+    boolean hasSyncTable;
+    boolean hasCompositionOffsets;
+
+    // 按解码顺序的样本表
+    int sampleCount;
+    long[] offsets;
+    int[] sizes;
+    long[] decodeTimes;
+    int[] compositionOffsets;
+    boolean[] sync;
+    int[] descriptionIndexes;
+    // 最后一个样本的时长
+    long lastSampleDelta;
+
+    Mp4Track() 
+    {
+    }
+
+    public String getHandlerType() 
+    {
+        return handlerType;
+    }
+
+    public boolean isVideo() 
+    {
+        return HANDLER_VIDEO.equals(handlerType);
+    }
+
+    public boolean isAudio() 
+    {
+        return HANDLER_SOUND.equals(handlerType);
+    }
+
+    public long getTimescale() 
+    {
+        return timescale;
+    }
+
+    public int getSampleCount() 
+    {
+        return sampleCount;
+    }
+
+    public long getSampleOffset(int sample) 
+    {
+        return offsets[sample];
+    }
+
+    public int getSampleSize(int sample) 
+    {
+        return sizes[sample];
+    }
+
+    public boolean isSyncSample(int sample) 
+    {
+        return sync[sample];
+    }
+
+    /**
+     * 样本时长(媒体时间刻度)
+     */
+    public long getSampleDelta(int sample) 
+    {
+        return sample + 1 < sampleCount ? decodeTimes[sample + 1] - decodeTimes[sample] : lastSampleDelta;
+    }
+
+    /**
+     * 样本显示时间(微秒)，已按编辑列表校正
+     */
+    public long getPresentationTimeUs(int sample) 
+    {
+        long pts = decodeTimes[sample] + compositionOffsets[sample] - editMediaTime;
+        return toMicros(pts);
+    }
+
+    /**
+     * 第一个样本描述的格式代码，如avc1、hvc1、mp4a
+     */
+    public String getSampleEntryType() 
+    {
+        // stsd: box头(8) + version/flags(4) + entry_count(4) + 第一个条目的size(4) + type(4)
+        if (stsd == null || stsd.length < 24) 
+        {
+            return null;
+        }
+        return new String(stsd, 20, 4, StandardCharsets.US_ASCII);
+    }
+
+    long toMicros(long mediaTime) 
+    {
+        return mediaTime * 1000000L / timescale;
+    }
+
+    long fromMicros(long timeUs) 
+    {
+        return timeUs * timescale / 1000000L;
+    }
+}
@@ -0,0 +1,1465 @@
+package com.example.ccat.utils;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 无损MP4裁剪写入器
+ * 按保留范围重建moov中的样本表，样本数据用FileChannel.transferTo按字节区间从源文件直接拷贝到输出文件，
+ * 数据不经过Java堆，也不经过MediaExtractor/MediaMuxer的逐样本读写
+ * 视频从每个范围起点之前的关键帧开始(与关键帧裁剪模式一致)，只保留第一个视频轨道和音频轨道
+ * 开启faststart时moov写在mdat之前，整个文件仍然一次顺序写完，不需要事后搬移moov
+ * 输出布局完全由源文件和保留范围决定，可以按断点截断已写出的部分后继续写入
+ * 分片模式输出fMP4：moov只描述轨道，样本按时长分成moof+mdat片段依次写出，写入中途的文件可以播放到最后一个完整片段
+ * 不依赖Android API
+ */
+public final class Mp4TrimWriter 
+{
+    // 每个chunk最长覆盖的时长(秒)，决定输出文件中音视频交错的粒度
+    private static final double CHUNK_DURATION_SECONDS = 0.5;
+    private static final int MDAT_HEADER_SIZE = 8;
+    private static final int MDAT_LARGE_HEADER_SIZE = 16;
+    // 单次transferTo的最大字节数，两次之间检查取消标志和断点
+    private static final long TRANSFER_SLICE_BYTES = 4L * 1024 * 1024;
+    // 两个断点之间至少写入的字节数，每个断点都要把数据同步到存储
+    private static final long CHECKPOINT_INTERVAL_BYTES = 32L * 1024 * 1024;
+    // 分片模式trun中的样本标志：关键帧不依赖其他帧；非关键帧依赖其他帧并标记为非同步样本
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+
+    /**
+     * 写入进度监听
+     */
+    public interface ProgressListener 
+    {
+        /**
+         * @param framesWritten 已写入的视频帧数
+         */
+        void onProgress(long bytesWritten, long totalBytes, long framesWritten);
+    }
+
+    /**
+     * 断点监听
+     */
+    public interface CheckpointListener 
+    {
+        /**
+         * 输出文件开头的outputBytes字节已经写完并同步到存储
+         * 同样的源文件和保留范围可以从这个位置继续写入
+         */
+        void onCheckpoint(long outputBytes);
+    }
+
+    private final Mp4Movie movie;
+    private boolean fastStart = false;
+    private long resumeOffset = 0;
+    private CheckpointListener checkpointListener;
+    private long fragmentDurationMs = 0;
+
+    public Mp4TrimWriter(Mp4Movie movie) 
+    {
+        this.movie = movie;
+    }
+
+    /**
+     * 设置是否把moov放在文件开头，播放器读到文件头即可开始播放
+     */
+    public Mp4TrimWriter setFastStart(boolean enabled) 
+    {
+        this.fastStart = enabled;
+        return this;
+    }
+
+    /**
+     * 设置分片输出(fMP4)
+     * 每个片段从关键帧开始，时长不短于fragmentMs，写入时只需要当前片段的样本表，内存占用与总时长无关
+     * 分片模式下moov总在文件开头，faststart设置不起作用；断点只落在片段边界上
+     * @param fragmentMs 片段时长(毫秒)，0表示输出普通MP4
+     */
+    public Mp4TrimWriter setFragmentDuration(long fragmentMs) 
+    {
+        this.fragmentDurationMs = Math.max(0, fragmentMs);
+        return this;
+    }
+
+    /**
+     * 设置断点
+     * @param resumeOffset 上次写入的断点位置，大于0时先校验输出文件已有的内容，一致时从该位置继续写入，否则从头写入
+     * @param listener 写入过程中的断点回调，可为null
+     */
+    public Mp4TrimWriter setCheckpoint(long resumeOffset, CheckpointListener listener) 
+    {
+        this.resumeOffset = resumeOffset;
+        this.checkpointListener = listener;
+        return this;
+    }
+
+    /**
+     * 把多个保留范围按顺序写入同一个输出文件，输出时间线连续
+     * @param cancelled 取消标志，可为null
+     * @param listener 进度监听，可为null
+     * @return 完成返回true，被取消返回false(输出文件不完整)
+     */
+    public boolean write(List<TimeRange> ranges, File outputFile,
+                         AtomicBoolean cancelled, ProgressListener listener) throws IOException 
+    {
+        try (RandomAccessFile target = new RandomAccessFile(outputFile, "rw");
+             FileChannel out = target.getChannel()) 
+        {
+            return write(ranges, out, out, cancelled, listener);
+        }
+    }
+
+    /**
+     * 写入以读写方式打开的文件描述符，例如媒体库中的条目，输出从文件开头写起
+     * 写入和断点校验分别通过输出流和输入流的通道进行，文件描述符由调用方关闭
+     */
+    public boolean write(List<TimeRange> ranges, FileDescriptor fd,
+                         AtomicBoolean cancelled, ProgressListener listener) throws IOException 
+    {
+        // 由FileDescriptor构造的流不持有描述符，关闭流不会关闭描述符
+        try (FileOutputStream target = new FileOutputStream(fd);
+             FileInputStream existing = new FileInputStream(fd)) 
+        {
+            return write(ranges, target.getChannel(), existing.getChannel(), cancelled, listener);
+        }
+    }
+
+    /**
+     * @param out 写入输出的通道
+     * @param existing 读取输出已有内容的通道，用于校验断点，可以与out相同
+     */
+    private boolean write(List<TimeRange> ranges, FileChannel out, FileChannel existing,
+                          AtomicBoolean cancelled, ProgressListener listener) throws IOException 
+    {
+        List<TrackOutput> outputs = selectSamples(ranges);
+        if (fragmentDurationMs > 0) 
+        {
+            return writeFragmented(outputs, out, existing, cancelled, listener);
+        }
+        List<Chunk> chunks = buildChunks(outputs);
+
+        long payloadSize = 0;
+        for (Chunk chunk : chunks) 
+        {
+            payloadSize += chunk.byteSize;
+        }
+        byte[] ftyp = movie.getFtyp();
+        int mdatHeaderSize = payloadSize + MDAT_HEADER_SIZE > 0xffffffffL ? MDAT_LARGE_HEADER_SIZE : MDAT_HEADER_SIZE;
+        assignOffsets(chunks, ftyp.length + mdatHeaderSize);
+        byte[] moov = buildMoov(outputs, false);
+        if (fastStart) 
+        {
+            // moov的大小只取决于样本表，与chunk偏移的取值无关，先生成一次得到大小再回填偏移
+            // 只有偏移超过32位改用co64时大小会变化，此时再生成一次
+            int moovSize;
+            do 
+            {
+                moovSize = moov.length;
+                assignOffsets(chunks, ftyp.length + moovSize + mdatHeaderSize);
+                moov = buildMoov(outputs, false);
+            }
+            while (moov.length != moovSize);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(ftyp.length + (fastStart ? moov.length : 0) + mdatHeaderSize);
+        header.put(ftyp);
+        if (fastStart) 
+        {
+            header.put(moov);
+        }
+        header.put(mdatHeader(payloadSize, mdatHeaderSize));
+        header.flip();
+        long dataStart = header.remaining();
+
+        try (FileChannel in = movie.openSource()) 
+        {
+            long skipBytes = 0;
+            if (canResume(existing, header, dataStart + payloadSize)) 
+            {
+                skipBytes = resumeOffset - dataStart;
+                out.truncate(resumeOffset);
+                out.position(resumeOffset);
+            }
+            else 
+            {
+                out.truncate(0);
+                writeFully(out, header);
+            }
+            if (!copyChunks(in, out, chunks, dataStart, payloadSize, skipBytes, cancelled, listener)) 
+            {
+                return false;
+            }
+            if (!fastStart) 
+            {
+                writeFully(out, ByteBuffer.wrap(moov));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只生成裁剪后的moov，不读写样本数据
+     * 包含样本选择、时间戳重排和样本表编码的全部计算，供基准测试单独衡量
+     */
+    byte[] remapMoov(List<TimeRange> ranges) 
+    {
+        List<TrackOutput> outputs = selectSamples(ranges);
+        assignOffsets(buildChunks(outputs), movie.getFtyp().length + MDAT_HEADER_SIZE);
+        return buildMoov(outputs, false);
+    }
+
+    /**
+     * 分片模式写入：ftyp、只含轨道描述的moov、sidx，之后依次写出每个片段的moof和mdat
+     * 片段划分先完整计算一遍，只保留每个片段的起点和大小，sidx和断点校验都依赖这份划分
+     */
+    private boolean writeFragmented(List<TrackOutput> outputs, FileChannel out, FileChannel existing,
+                                    AtomicBoolean cancelled, ProgressListener listener) throws IOException 
+    {
+        int referenceIndex = 0;
+        for (int t = 0; t < outputs.size(); t++) 
+        {
+            if (outputs.get(t).track == movie.getVideoTrack()) 
+            {
+                referenceIndex = t;
+            }
+        }
+        List<Fragment> fragments = planFragments(outputs, referenceIndex);
+        long payloadSize = 0;
+        for (Fragment fragment : fragments) 
+        {
+            payloadSize += fragment.size;
+        }
+
+        byte[] ftyp = movie.getFtyp();
+        byte[] moov = buildMoov(outputs, true);
+        byte[] sidx = buildSidx(outputs.get(referenceIndex), fragments);
+        ByteBuffer header = ByteBuffer.allocate(ftyp.length + moov.length + sidx.length);
+        header.put(ftyp);
+        header.put(moov);
+        header.put(sidx);
+        header.flip();
+        long dataStart = header.remaining();
+
+        try (FileChannel in = movie.openSource()) 
+        {
+            long skipBytes = 0;
+            if (canResume(existing, header, dataStart + payloadSize) && isFragmentBoundary(fragments, resumeOffset - dataStart)) 
+            {
+                skipBytes = resumeOffset - dataStart;
+                out.truncate(resumeOffset);
+                out.position(resumeOffset);
+            }
+            else 
+            {
+                out.truncate(0);
+                writeFully(out, header);
+            }
+
+            long written = 0;
+            long frames = 0;
+            long lastCheckpoint = skipBytes;
+            boolean reported = false;
+            for (int k = 0; k < fragments.size(); k++) 
+            {
+                Fragment fragment = fragments.get(k);
+                if (written < skipBytes) 
+                {
+                    written += fragment.size;
+                    frames += fragment.videoFrames;
+                    continue;
+                }
+                if (!reported && listener != null) 
+                {
+                    // 先报告断点之前已完成的部分，作为进度计量的起点
+                    listener.onProgress(written, payloadSize, frames);
+                    reported = true;
+                }
+                if (cancelled != null && cancelled.get()) 
+                {
+                    return false;
+                }
+
+                int mdatHeaderSize = fragment.dataSize + MDAT_HEADER_SIZE > 0xffffffffL ? MDAT_LARGE_HEADER_SIZE : MDAT_HEADER_SIZE;
+                byte[] moof = buildMoof(outputs, fragment, k + 1, mdatHeaderSize);
+                if (moof.length + mdatHeaderSize + fragment.dataSize != fragment.size) 
+                {
+                    throw new IllegalStateException("片段大小与划分时不一致: " + k);
+                }
+                writeFully(out, ByteBuffer.wrap(moof));
+                writeFully(out, mdatHeader(fragment.dataSize, mdatHeaderSize));
+                for (int t = 0; t < outputs.size(); t++) 
+                {
+                    if (!copySamples(in, out, fragment.starts[t], fragment.counts[t], cancelled)) 
+                    {
+                        return false;
+                    }
+                }
+
+                written += fragment.size;
+                frames += fragment.videoFrames;
+                if (listener != null) 
+                {
+                    listener.onProgress(written, payloadSize, frames);
+                }
+                if (checkpointListener != null && written - lastCheckpoint >= CHECKPOINT_INTERVAL_BYTES) 
+                {
+                    out.force(false);
+                    checkpointListener.onCheckpoint(dataStart + written);
+                    lastCheckpoint = written;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 划分片段：参考轨道(视频)在达到片段时长后的下一个关键帧处切分，其他轨道取解码时间早于切分点的样本
+     * 没有视频时参考轨道的每个样本都可以作为切分点
+     */
+    private List<Fragment> planFragments(List<TrackOutput> outputs, int referenceIndex) 
+    {
+        int trackCount = outputs.size();
+        TrackCursor[] cursors = new TrackCursor[trackCount];
+        for (int t = 0; t < trackCount; t++) 
+        {
+            cursors[t] = new TrackCursor(outputs.get(t));
+        }
+        TrackCursor reference = cursors[referenceIndex];
+        Mp4Track referenceTrack = reference.output.track;
+        long fragmentTicks = Math.max(1, fragmentDurationMs * referenceTrack.timescale / 1000);
+
+        List<Fragment> fragments = new ArrayList<>();
+        while (true) 
+        {
+            boolean remaining = false;
+            for (TrackCursor cursor : cursors) 
+            {
+                remaining |= cursor.hasNext();
+            }
+            if (!remaining) 
+            {
+                break;
+            }
+
+            Fragment fragment = new Fragment(trackCount);
+            for (int t = 0; t < trackCount; t++) 
+            {
+                fragment.starts[t] = cursors[t].copy();
+            }
+
+            long fragmentStart = reference.decodeTime;
+            long earliest = Long.MAX_VALUE;
+            while (reference.hasNext()) 
+            {
+                int sample = reference.sample;
+                if (fragment.counts[referenceIndex] > 0 && referenceTrack.sync[sample]
+                        && reference.decodeTime - fragmentStart >= fragmentTicks) 
+                {
+                    break;
+                }
+                earliest = Math.min(earliest, reference.decodeTime + referenceTrack.compositionOffsets[sample]);
+                fragment.addSample(referenceIndex, referenceTrack.sizes[sample], referenceTrack.isVideo());
+                reference.output.advance(referenceTrack.getSampleDelta(sample), referenceTrack.compositionOffsets[sample]);
+                reference.next();
+            }
+            fragment.duration = reference.decodeTime - fragmentStart;
+            fragment.earliestPresentation = earliest == Long.MAX_VALUE ? fragmentStart : earliest;
+
+            // 参考轨道已经结束时其他轨道剩余的样本全部放进最后一个片段
+            boolean last = !reference.hasNext();
+            for (int t = 0; t < trackCount; t++) 
+            {
+                TrackCursor cursor = cursors[t];
+                if (cursor == reference) 
+                {
+                    continue;
+                }
+                Mp4Track track = cursor.output.track;
+                while (cursor.hasNext()
+                        && (last || cursor.decodeTime * referenceTrack.timescale < reference.decodeTime * track.timescale)) 
+                {
+                    int sample = cursor.sample;
+                    fragment.addSample(t, track.sizes[sample], track.isVideo());
+                    cursor.output.advance(track.getSampleDelta(sample), track.compositionOffsets[sample]);
+                    cursor.next();
+                }
+            }
+
+            int mdatHeaderSize = fragment.dataSize + MDAT_HEADER_SIZE > 0xffffffffL ? MDAT_LARGE_HEADER_SIZE : MDAT_HEADER_SIZE;
+            fragment.size = moofSize(outputs, fragment) + mdatHeaderSize + fragment.dataSize;
+            fragments.add(fragment);
+        }
+        for (TrackCursor cursor : cursors) 
+        {
+            cursor.output.durationMedia = cursor.decodeTime;
+        }
+        return fragments;
+    }
+
+    private static boolean isFragmentBoundary(List<Fragment> fragments, long payloadOffset) 
+    {
+        long offset = 0;
+        for (Fragment fragment : fragments) 
+        {
+            if (offset >= payloadOffset) 
+            {
+                break;
+            }
+            offset += fragment.size;
+        }
+        return offset == payloadOffset;
+    }
+
+    /**
+     * moof的大小只取决于各轨道的样本数和trun中是否带显示时间偏移，必须与buildMoof的写法一致
+     */
+    private static long moofSize(List<TrackOutput> outputs, Fragment fragment) 
+    {
+        long size = 8 + 16;
+        for (int t = 0; t < outputs.size(); t++) 
+        {
+            int count = fragment.counts[t];
+            if (count == 0) 
+            {
+                continue;
+            }
+            int perSample = outputs.get(t).track.hasCompositionOffsets ? 16 : 12;
+            size += 8 + 16 + 20 + 20 + (long) count * perSample;
+        }
+        return size;
+    }
+
+    /**
+     * 生成片段的moof，样本数据偏移相对moof起点(default-base-is-moof)
+     */
+    private static byte[] buildMoof(List<TrackOutput> outputs, Fragment fragment, int sequence, int mdatHeaderSize) 
+    {
+        BoxOutput box = new BoxOutput();
+        int moof = box.begin("moof");
+        int mfhd = box.begin("mfhd");
+        box.writeInt(0);
+        box.writeInt(sequence);
+        box.end(mfhd);
+
+        int[] dataOffsetPositions = new int[outputs.size()];
+        for (int t = 0; t < outputs.size(); t++) 
+        {
+            int count = fragment.counts[t];
+            if (count == 0) 
+            {
+                continue;
+            }
+            Mp4Track track = outputs.get(t).track;
+            TrackCursor cursor = fragment.starts[t].copy();
+
+            int traf = box.begin("traf");
+            int tfhd = box.begin("tfhd");
+            box.writeInt(0x020000);
+            box.writeInt(trackId(track));
+            box.end(tfhd);
+            int tfdt = box.begin("tfdt");
+            box.writeInt(0x01000000);
+            box.writeLong(cursor.decodeTime);
+            box.end(tfdt);
+
+            boolean withOffsets = track.hasCompositionOffsets;
+            int flags = 0x000001 | 0x000100 | 0x000200 | 0x000400 | (withOffsets ? 0x000800 : 0);
+            int trun = box.begin("trun");
+            int flagsPosition = box.size();
+            box.writeInt(flags);
+            box.writeInt(count);
+            dataOffsetPositions[t] = box.size();
+            box.writeInt(0);
+            boolean negative = false;
+            for (int n = 0; n < count; n++) 
+            {
+                int sample = cursor.sample;
+                box.writeInt((int) track.getSampleDelta(sample));
+                box.writeInt(track.sizes[sample]);
+                box.writeInt(track.sync[sample] ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+                if (withOffsets) 
+                {
+                    box.writeInt(track.compositionOffsets[sample]);
+                    negative |= track.compositionOffsets[sample] < 0;
+                }
+                cursor.next();
+            }
+            if (negative) 
+            {
+                // version 1的显示时间偏移是有符号数
+                box.putInt(flagsPosition, 0x01000000 | flags);
+            }
+            box.end(trun);
+            box.end(traf);
+        }
+        box.end(moof);
+
+        long dataOffset = box.size() + mdatHeaderSize;
+        for (int t = 0; t < outputs.size(); t++) 
+        {
+            if (fragment.counts[t] > 0) 
+            {
+                box.putInt(dataOffsetPositions[t], (int) dataOffset);
+                dataOffset += fragment.bytes[t];
+            }
+        }
+        return box.toByteArray();
+    }
+
+    /**
+     * 片段索引，播放器据此定位任意片段而不必顺序扫描文件
+     */
+    private static byte[] buildSidx(TrackOutput reference, List<Fragment> fragments) 
+    {
+        BoxOutput box = new BoxOutput();
+        int sidx = box.begin("sidx");
+        box.writeInt(0x01000000);
+        box.writeInt(trackId(reference.track));
+        box.writeInt((int) reference.track.timescale);
+        box.writeLong(fragments.isEmpty() ? 0 : fragments.get(0).earliestPresentation);
+        box.writeLong(0);
+        box.writeInt(fragments.size());
+        for (Fragment fragment : fragments) 
+        {
+            box.writeInt((int) fragment.size);
+            box.writeInt((int) fragment.duration);
+            // 每个片段都从关键帧开始(SAP类型1)
+            box.writeInt(0x90000000);
+        }
+        box.end(sidx);
+        return box.toByteArray();
+    }
+
+    /**
+     * 按解码顺序拷贝一个轨道在片段中的样本，源文件中相邻的样本合并成一次transferTo
+     */
+    private static boolean copySamples(FileChannel in, FileChannel out, TrackCursor start, int count,
+                                       AtomicBoolean cancelled) throws IOException 
+    {
+        TrackCursor cursor = start.copy();
+        Mp4Track track = cursor.output.track;
+        int n = 0;
+        while (n < count) 
+        {
+            long position = track.offsets[cursor.sample];
+            long length = track.sizes[cursor.sample];
+            cursor.next();
+            n++;
+            while (n < count && track.offsets[cursor.sample] == position + length) 
+            {
+                length += track.sizes[cursor.sample];
+                cursor.next();
+                n++;
+            }
+            while (length > 0) 
+            {
+                if (cancelled != null && cancelled.get()) 
+                {
+                    return false;
+                }
+                long transferred = in.transferTo(position, Math.min(length, TRANSFER_SLICE_BYTES), out);
+                if (transferred <= 0) 
+                {
+                    throw new IOException("源文件读取失败: 偏移 " + position);
+                }
+                position += transferred;
+                length -= transferred;
+            }
+        }
+        return true;
+    }
+
+    private static int trackId(Mp4Track track) 
+    {
+        // tkhd中track_ID的位置：version 0在20字节处，version 1的时间字段为64位，在28字节处
+        return ByteBuffer.wrap(track.tkhd).getInt((track.tkhd[8] & 0xff) == 1 ? 28 : 20);
+    }
+
+    /**
+     * 确定每个轨道需要保留的样本
+     */
+    private List<TrackOutput> selectSamples(List<TimeRange> ranges) 
+    {
+        Mp4Track reference = movie.getVideoTrack();
+        List<TrackOutput> outputs = new ArrayList<>();
+        for (Mp4Track track : movie.getTracks()) 
+        {
+            if (track.sampleCount > 0 && (track == reference || track.isAudio())) 
+            {
+                outputs.add(new TrackOutput(track));
+            }
+        }
+        if (outputs.isEmpty()) 
+        {
+            throw new IllegalArgumentException("没有可裁剪的音视频轨道");
+        }
+
+        int[] referenceSync = reference != null ? syncSamples(reference) : null;
+        for (TimeRange range : ranges) 
+        {
+            long startUs = Math.max(0L, range.getStartMs()) * 1000;
+            long endUs = range.getEndMs() * 1000;
+            if (startUs >= endUs) 
+            {
+                throw new IllegalArgumentException("无效的时间范围: " + range);
+            }
+
+            // 视频从起点之前的关键帧开始，其他轨道对齐到该关键帧的显示时间
+            long alignedStartUs = startUs;
+            for (TrackOutput output : outputs) 
+            {
+                if (output.track != reference) 
+                {
+                    continue;
+                }
+                int from = keyframeAtOrBefore(reference, referenceSync, startUs);
+                int to = videoEnd(reference, from, endUs);
+                if (from >= to) 
+                {
+                    throw new IllegalArgumentException("时间范围内没有视频样本: " + range);
+                }
+                output.addRange(from, to);
+                alignedStartUs = reference.getPresentationTimeUs(from);
+            }
+            for (TrackOutput output : outputs) 
+            {
+                if (output.track == reference) 
+                {
+                    continue;
+                }
+                int from = firstSampleAtOrAfter(output.track, alignedStartUs);
+                int to = firstSampleAtOrAfter(output.track, endUs);
+                if (from < to) 
+                {
+                    output.addRange(from, to);
+                }
+            }
+        }
+        return outputs;
+    }
+
+    private static int[] syncSamples(Mp4Track track) 
+    {
+        int count = 0;
+        for (int i = 0; i < track.sampleCount; i++) 
+        {
+            if (track.sync[i]) 
+            {
+                count++;
+            }
+        }
+        int[] result = new int[count];
+        for (int i = 0, k = 0; i < track.sampleCount; i++) 
+        {
+            if (track.sync[i]) 
+            {
+                result[k++] = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 显示时间不晚于timeUs的最后一个关键帧，关键帧的显示时间随解码顺序递增，可以二分查找
+     */
+    private static int keyframeAtOrBefore(Mp4Track track, int[] syncSamples, long timeUs) 
+    {
+        if (syncSamples.length == 0) 
+        {
+            return 0;
+        }
+        int low = 0;
+        int high = syncSamples.length - 1;
+        int result = syncSamples[0];
+        while (low <= high) 
+        {
+            int mid = (low + high) >>> 1;
+            if (track.getPresentationTimeUs(syncSamples[mid]) <= timeUs) 
+            {
+                result = syncSamples[mid];
+                low = mid + 1;
+            }
+            else 
+            {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 视频结束位置(不含)：保留显示时间早于endUs的最后一个样本及其之前的所有样本
+     * 解码时间不小于endUs后，之后样本的显示时间都不会早于endUs
+     */
+    private static int videoEnd(Mp4Track track, int from, long endUs) 
+    {
+        int last = from - 1;
+        for (int i = from; i < track.sampleCount; i++) 
+        {
+            if (track.getPresentationTimeUs(i) < endUs) 
+            {
+                last = i;
+            }
+            else if (track.toMicros(track.decodeTimes[i] - track.editMediaTime) >= endUs) 
+            {
+                break;
+            }
+        }
+        return last + 1;
+    }
+
+    /**
+     * 按解码时间二分查找第一个显示时间不早于timeUs的样本，用于没有重排序的轨道
+     */
+    private static int firstSampleAtOrAfter(Mp4Track track, long timeUs) 
+    {
+        int low = 0;
+        int high = track.sampleCount;
+        while (low < high) 
+        {
+            int mid = (low + high) >>> 1;
+            if (track.getPresentationTimeUs(mid) < timeUs) 
+            {
+                low = mid + 1;
+            }
+            else 
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 把每个轨道的样本按源文件中的连续性和时长切成chunk，再按时间交错排列
+     */
+    private static List<Chunk> buildChunks(List<TrackOutput> outputs) 
+    {
+        List<Chunk> chunks = new ArrayList<>();
+        for (TrackOutput output : outputs) 
+        {
+            Mp4Track track = output.track;
+            output.ensureCapacity(output.selectedCount);
+            long maxChunkDelta = (long) (CHUNK_DURATION_SECONDS * track.timescale);
+            long outputTime = 0;
+            Chunk current = null;
+            for (int r = 0; r < output.rangeCount; r++) 
+            {
+                for (int i = output.rangeFrom[r]; i < output.rangeTo[r]; i++) 
+                {
+                    long offset = track.offsets[i];
+                    int size = track.sizes[i];
+                    int description = track.descriptionIndexes[i];
+                    boolean contiguous = current != null
+                            && current.sourceOffset + current.byteSize == offset
+                            && current.descriptionIndex == description
+                            && outputTime - current.startTime < maxChunkDelta;
+                    if (!contiguous) 
+                    {
+                        current = new Chunk(output, outputTime, offset, description);
+                        output.chunks.add(current);
+                        chunks.add(current);
+                    }
+                    current.sampleCount++;
+                    current.byteSize += size;
+
+                    long delta = track.getSampleDelta(i);
+                    output.addSample(size, delta, track.compositionOffsets[i], track.sync[i]);
+                    outputTime += delta;
+                }
+            }
+            output.durationMedia = outputTime;
+        }
+
+        // 按起始时间交错，同一时间按轨道顺序
+        chunks.sort((a, b) -> 
+        {
+            int byTime = Double.compare(a.startSeconds(), b.startSeconds());
+            return byTime != 0 ? byTime : Integer.compare(outputs.indexOf(a.output), outputs.indexOf(b.output));
+        });
+        return chunks;
+    }
+
+    private static void assignOffsets(List<Chunk> chunks, long dataStart) 
+    {
+        long offset = dataStart;
+        for (Chunk chunk : chunks) 
+        {
+            chunk.outputOffset = offset;
+            offset += chunk.byteSize;
+        }
+    }
+
+    /**
+     * 检查能否从断点继续：断点落在样本数据范围内，输出文件足够长，并且文件头与本次要写入的完全一致
+     * 文件头包含moov(faststart)或ftyp和mdat大小，源文件或保留范围变化时不会一致
+     */
+    private boolean canResume(FileChannel existing, ByteBuffer header, long dataEnd) throws IOException 
+    {
+        if (resumeOffset < header.remaining() || resumeOffset > dataEnd || existing.size() < resumeOffset) 
+        {
+            return false;
+        }
+        ByteBuffer prefix = ByteBuffer.allocate(header.remaining());
+        while (prefix.hasRemaining()) 
+        {
+            if (existing.read(prefix, prefix.position()) < 0) 
+            {
+                return false;
+            }
+        }
+        prefix.flip();
+        return prefix.equals(header);
+    }
+
+    /**
+     * 按输出顺序拷贝chunk，源文件中相邻的chunk合并成一次transferTo
+     * @param dataStart 样本数据在输出文件中的起始位置
+     * @param skipBytes 断点之前已经写好的样本数据字节数，不再拷贝
+     */
+    private boolean copyChunks(FileChannel in, FileChannel out, List<Chunk> chunks, long dataStart, long totalBytes,
+                               long skipBytes, AtomicBoolean cancelled, ProgressListener listener) throws IOException 
+    {
+        long written = 0;
+        long frames = 0;
+        long lastCheckpoint = skipBytes;
+        boolean reported = false;
+        int i = 0;
+        while (i < chunks.size()) 
+        {
+            if (cancelled != null && cancelled.get()) 
+            {
+                return false;
+            }
+            Chunk first = chunks.get(i);
+            long start = first.sourceOffset;
+            long length = first.byteSize;
+            frames += first.videoFrames();
+            i++;
+            while (i < chunks.size() && chunks.get(i).sourceOffset == start + length) 
+            {
+                length += chunks.get(i).byteSize;
+                frames += chunks.get(i).videoFrames();
+                i++;
+            }
+
+            if (written + length <= skipBytes) 
+            {
+                written += length;
+                continue;
+            }
+            if (!reported && listener != null) 
+            {
+                // 先报告断点之前已完成的部分，作为进度计量的起点
+                listener.onProgress(Math.min(written, skipBytes), totalBytes, frames);
+                reported = true;
+            }
+
+            long skipped = Math.max(0, skipBytes - written);
+            long position = start + skipped;
+            long remaining = length - skipped;
+            written += skipped;
+            while (remaining > 0) 
+            {
+                if (cancelled != null && cancelled.get()) 
+                {
+                    return false;
+                }
+                long transferred = in.transferTo(position, Math.min(remaining, TRANSFER_SLICE_BYTES), out);
+                if (transferred <= 0) 
+                {
+                    throw new IOException("源文件读取失败: 偏移 " + position);
+                }
+                position += transferred;
+                remaining -= transferred;
+                written += transferred;
+                if (checkpointListener != null && written - lastCheckpoint >= CHECKPOINT_INTERVAL_BYTES) 
+                {
+                    out.force(false);
+                    checkpointListener.onCheckpoint(dataStart + written);
+                    lastCheckpoint = written;
+                }
+            }
+            if (listener != null) 
+            {
+                listener.onProgress(written, totalBytes, frames);
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer mdatHeader(long payloadSize, int headerSize) 
+    {
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        if (headerSize == MDAT_LARGE_HEADER_SIZE) 
+        {
+            header.putInt(1);
+            header.put("mdat".getBytes(StandardCharsets.ISO_8859_1));
+            header.putLong(payloadSize + headerSize);
+        }
+        else 
+        {
+            header.putInt((int) (payloadSize + headerSize));
+            header.put("mdat".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        header.flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException 
+    {
+        while (buffer.hasRemaining()) 
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 生成新的moov，未改动的box原样拷贝，时长字段按裁剪结果改写
+     * @param fragmented 分片模式：样本表为空，追加mvex声明后续的片段
+     */
+    private byte[] buildMoov(List<TrackOutput> outputs, boolean fragmented) 
+    {
+        long movieTimescale = movie.getMovieTimescale();
+        long movieDuration = 0;
+        for (TrackOutput output : outputs) 
+        {
+            movieDuration = Math.max(movieDuration, output.durationMedia * movieTimescale / output.track.timescale);
+        }
+
+        BoxOutput box = new BoxOutput();
+        int moov = box.begin("moov");
+        box.write(patchDuration(movie.getMvhd(), 24, 32, movieDuration));
+        for (TrackOutput output : outputs) 
+        {
+            writeTrak(box, output, movieTimescale, fragmented);
+        }
+        if (fragmented) 
+        {
+            int mvex = box.begin("mvex");
+            int mehd = box.begin("mehd");
+            box.writeInt(0x01000000);
+            box.writeLong(movieDuration);
+            box.end(mehd);
+            for (TrackOutput output : outputs) 
+            {
+                int trex = box.begin("trex");
+                box.writeInt(0);
+                box.writeInt(trackId(output.track));
+                box.writeInt(1);
+                box.writeInt(0);
+                box.writeInt(0);
+                box.writeInt(0);
+                box.end(trex);
+            }
+            box.end(mvex);
+        }
+        if (movie.getUdta() != null) 
+        {
+            box.write(movie.getUdta());
+        }
+        box.end(moov);
+        return box.toByteArray();
+    }
+
+    private static void writeTrak(BoxOutput box, TrackOutput output, long movieTimescale, boolean fragmented) 
+    {
+        Mp4Track track = output.track;
+        long trackDuration = output.durationMedia * movieTimescale / track.timescale;
+
+        int trak = box.begin("trak");
+        box.write(patchDuration(track.tkhd, 28, 36, trackDuration));
+
+        // 有重排序时首帧的显示时间不为0，用编辑列表把第一帧对齐到时间线起点
+        long mediaTime = output.firstPresentationMedia();
+        if (mediaTime > 0) 
+        {
+            int edts = box.begin("edts");
+            int elst = box.begin("elst");
+            boolean large = trackDuration > 0xffffffffL || mediaTime > Integer.MAX_VALUE;
+            box.writeInt(large ? 0x01000000 : 0);
+            box.writeInt(1);
+            if (large) 
+            {
+                box.writeLong(trackDuration);
+                box.writeLong(mediaTime);
+            }
+            else 
+            {
+                box.writeInt((int) trackDuration);
+                box.writeInt((int) mediaTime);
+            }
+            box.writeInt(0x00010000);
+            box.end(elst);
+            box.end(edts);
+        }
+
+        int mdia = box.begin("mdia");
+        box.write(patchDuration(track.mdhd, 24, 32, output.durationMedia));
+        box.write(track.hdlr);
+        int minf = box.begin("minf");
+        if (track.mediaHeader != null) 
+        {
+            box.write(track.mediaHeader);
+        }
+        if (track.dinf != null) 
+        {
+            box.write(track.dinf);
+        }
+        int stbl = box.begin("stbl");
+        box.write(track.stsd);
+        writeStts(box, output);
+        // 分片模式的显示时间偏移和关键帧标志写在各片段的trun中
+        if (track.hasCompositionOffsets && !fragmented) 
+        {
+            writeCtts(box, output);
+        }
+        if (track.hasSyncTable && !fragmented) 
+        {
+            writeStss(box, output);
+        }
+        writeStsz(box, output);
+        writeStsc(box, output);
+        writeChunkOffsets(box, output);
+        box.end(stbl);
+        box.end(minf);
+        box.end(mdia);
+        box.end(trak);
+    }
+
+    private static void writeStts(BoxOutput box, TrackOutput output) 
+    {
+        int stts = box.begin("stts");
+        box.writeInt(0);
+        int countPosition = box.size();
+        box.writeInt(0);
+        int entries = 0;
+        int i = 0;
+        while (i < output.sampleCount) 
+        {
+            long delta = output.deltas[i];
+            int run = 1;
+            while (i + run < output.sampleCount && output.deltas[i + run] == delta) 
+            {
+                run++;
+            }
+            box.writeInt(run);
+            box.writeInt((int) delta);
+            entries++;
+            i += run;
+        }
+        box.putInt(countPosition, entries);
+        box.end(stts);
+    }
+
+    private static void writeCtts(BoxOutput box, TrackOutput output) 
+    {
+        boolean negative = false;
+        for (int i = 0; i < output.sampleCount; i++) 
+        {
+            negative |= output.compositionOffsets[i] < 0;
+        }
+        int ctts = box.begin("ctts");
+        box.writeInt(negative ? 0x01000000 : 0);
+        int countPosition = box.size();
+        box.writeInt(0);
+        int entries = 0;
+        int i = 0;
+        while (i < output.sampleCount) 
+        {
+            int offset = output.compositionOffsets[i];
+            int run = 1;
+            while (i + run < output.sampleCount && output.compositionOffsets[i + run] == offset) 
+            {
+                run++;
+            }
+            box.writeInt(run);
+            box.writeInt(offset);
+            entries++;
+            i += run;
+        }
+        box.putInt(countPosition, entries);
+        box.end(ctts);
+    }
+
+    private static void writeStss(BoxOutput box, TrackOutput output) 
+    {
+        int stss = box.begin("stss");
+        box.writeInt(0);
+        int countPosition = box.size();
+        box.writeInt(0);
+        int entries = 0;
+        for (int i = 0; i < output.sampleCount; i++) 
+        {
+            if (output.sync[i]) 
+            {
+                box.writeInt(i + 1);
+                entries++;
+            }
+        }
+        box.putInt(countPosition, entries);
+        box.end(stss);
+    }
+
+    private static void writeStsz(BoxOutput box, TrackOutput output) 
+    {
+        boolean constant = true;
+        for (int i = 1; i < output.sampleCount && constant; i++) 
+        {
+            constant = output.sizes[i] == output.sizes[0];
+        }
+        int stsz = box.begin("stsz");
+        box.writeInt(0);
+        if (constant) 
+        {
+            box.writeInt(output.sampleCount > 0 ? output.sizes[0] : 0);
+            box.writeInt(output.sampleCount);
+        }
+        else 
+        {
+            box.writeInt(0);
+            box.writeInt(output.sampleCount);
+            for (int i = 0; i < output.sampleCount; i++) 
+            {
+                box.writeInt(output.sizes[i]);
+            }
+        }
+        box.end(stsz);
+    }
+
+    private static void writeStsc(BoxOutput box, TrackOutput output) 
+    {
+        int stsc = box.begin("stsc");
+        box.writeInt(0);
+        int countPosition = box.size();
+        box.writeInt(0);
+        int entries = 0;
+        int lastCount = -1;
+        int lastDescription = -1;
+        for (int c = 0; c < output.chunks.size(); c++) 
+        {
+            Chunk chunk = output.chunks.get(c);
+            if (chunk.sampleCount != lastCount || chunk.descriptionIndex != lastDescription) 
+            {
+                box.writeInt(c + 1);
+                box.writeInt(chunk.sampleCount);
+                box.writeInt(chunk.descriptionIndex);
+                lastCount = chunk.sampleCount;
+                lastDescription = chunk.descriptionIndex;
+                entries++;
+            }
+        }
+        box.putInt(countPosition, entries);
+        box.end(stsc);
+    }
+
+    private static void writeChunkOffsets(BoxOutput box, TrackOutput output) 
+    {
+        boolean large = false;
+        for (Chunk chunk : output.chunks) 
+        {
+            large |= chunk.outputOffset > 0xffffffffL;
+        }
+        int stco = box.begin(large ? "co64" : "stco");
+        box.writeInt(0);
+        box.writeInt(output.chunks.size());
+        for (Chunk chunk : output.chunks) 
+        {
+            if (large) 
+            {
+                box.writeLong(chunk.outputOffset);
+            }
+            else 
+            {
+                box.writeInt((int) chunk.outputOffset);
+            }
+        }
+        box.end(stco);
+    }
+
+    /**
+     * 复制box并改写duration字段
+     * @param v0Offset version 0时duration(32位)在box中的偏移
+     * @param v1Offset version 1时duration(64位)在box中的偏移
+     */
+    private static byte[] patchDuration(byte[] raw, int v0Offset, int v1Offset, long duration) 
+    {
+        byte[] copy = raw.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(copy);
+        int version = copy[8] & 0xff;
+        if (version == 1) 
+        {
+            buffer.putLong(v1Offset, duration);
+        }
+        else 
+        {
+            buffer.putInt(v0Offset, (int) Math.min(duration, 0xffffffffL));
+        }
+        return copy;
+    }
+
+    /**
+     * 单个轨道的输出样本表
+     */
+    private static final class TrackOutput 
+    {
+        final Mp4Track track;
+        final List<Chunk> chunks = new ArrayList<>();
+        int[] rangeFrom = new int[4];
+        int[] rangeTo = new int[4];
+        int rangeCount = 0;
+        int selectedCount = 0;
+
+        int sampleCount = 0;
+        int[] sizes = new int[0];
+        long[] deltas = new long[0];
+        int[] compositionOffsets = new int[0];
+        boolean[] sync = new boolean[0];
+        long durationMedia;
+        private long nextDecodeTime = 0;
+        private long minPresentation = Long.MAX_VALUE;
+
+        TrackOutput(Mp4Track track) 
+        {
+            this.track = track;
+        }
+
+        void addRange(int from, int to) 
+        {
+            if (rangeCount == rangeFrom.length) 
+            {
+                rangeFrom = Arrays.copyOf(rangeFrom, rangeCount * 2);
+                rangeTo = Arrays.copyOf(rangeTo, rangeCount * 2);
+            }
+            rangeFrom[rangeCount] = from;
+            rangeTo[rangeCount] = to;
+            rangeCount++;
+            selectedCount += to - from;
+        }
+
+        private void ensureCapacity(int capacity) 
+        {
+            if (capacity > sizes.length) 
+            {
+                sizes = Arrays.copyOf(sizes, capacity);
+                deltas = Arrays.copyOf(deltas, capacity);
+                compositionOffsets = Arrays.copyOf(compositionOffsets, capacity);
+                sync = Arrays.copyOf(sync, capacity);
+            }
+        }
+
+        void addSample(int size, long delta, int compositionOffset, boolean isSync) 
+        {
+            sizes[sampleCount] = size;
+            deltas[sampleCount] = delta;
+            compositionOffsets[sampleCount] = compositionOffset;
+            sync[sampleCount] = isSync;
+            sampleCount++;
+            advance(delta, compositionOffset);
+        }
+
+        /**
+         * 推进输出时间线，分片模式不保存样本表，只经过这里
+         */
+        void advance(long delta, int compositionOffset) 
+        {
+            minPresentation = Math.min(minPresentation, nextDecodeTime + compositionOffset);
+            nextDecodeTime += delta;
+        }
+
+        /**
+         * 输出时间线上最早的显示时间(媒体时间刻度)
+         */
+        long firstPresentationMedia() 
+        {
+            return minPresentation == Long.MAX_VALUE ? 0 : minPresentation;
+        }
+    }
+
+    /**
+     * 输出文件中的一个chunk，对应源文件中一段连续的字节
+     */
+    private static final class Chunk 
+    {
+        final TrackOutput output;
+        final long startTime;
+        final long sourceOffset;
+        final int descriptionIndex;
+        int sampleCount;
+        long byteSize;
+        long outputOffset;
+
+        Chunk(TrackOutput output, long startTime, long sourceOffset, int descriptionIndex) 
+        {
+            this.output = output;
+            this.startTime = startTime;
+            this.sourceOffset = sourceOffset;
+            this.descriptionIndex = descriptionIndex;
+        }
+
+        int videoFrames() 
+        {
+            return output.track.isVideo() ? sampleCount : 0;
+        }
+
+        double startSeconds() 
+        {
+            return (double) startTime / output.track.timescale;
+        }
+    }
+
+    /**
+     * 分片模式中一个轨道在输出时间线上的读取位置
+     */
+    private static final class TrackCursor 
+    {
+        final TrackOutput output;
+        int range;
+        int sample;
+        long decodeTime;
+
+        TrackCursor(TrackOutput output) 
+        {
+            this.output = output;
+            this.sample = output.rangeCount > 0 ? output.rangeFrom[0] : 0;
+        }
+
+        TrackCursor copy() 
+        {
+            TrackCursor copy = new TrackCursor(output);
+            copy.range = range;
+            copy.sample = sample;
+            copy.decodeTime = decodeTime;
+            return copy;
+        }
+
+        boolean hasNext() 
+        {
+            return range < output.rangeCount && sample < output.rangeTo[range];
+        }
+
+        /**
+         * 移动到下一个样本，当前范围结束时进入下一个范围
+         */
+        void next() 
+        {
+            decodeTime += output.track.getSampleDelta(sample);
+            sample++;
+            if (sample >= output.rangeTo[range] && range + 1 < output.rangeCount) 
+            {
+                range++;
+                sample = output.rangeFrom[range];
+            }
+        }
+    }
+
+    /**
+     * 分片模式的一个片段：各轨道的起始位置和样本数，不保存逐样本的数据
+     */
+    private static final class Fragment 
+    {
+        final TrackCursor[] starts;
+        final int[] counts;
+        final long[] bytes;
+        long dataSize;
+        long size;
+        long duration;
+        long earliestPresentation;
+        int videoFrames;
+
+        Fragment(int trackCount) 
+        {
+            starts = new TrackCursor[trackCount];
+            counts = new int[trackCount];
+            bytes = new long[trackCount];
+        }
+
+        void addSample(int track, int size, boolean isVideo) 
+        {
+            counts[track]++;
+            bytes[track] += size;
+            dataSize += size;
+            if (isVideo) 
+            {
+                videoFrames++;
+            }
+        }
+    }
+
+    /**
+     * 可回填大小字段的box写入缓冲区
+     */
+    private static final class BoxOutput 
+    {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        int begin(String type) 
+        {
+            int start = buffer.position();
+            writeInt(0);
+            write(type.getBytes(StandardCharsets.ISO_8859_1));
+            return start;
+        }
+
+        void end(int start) 
+        {
+            buffer.putInt(start, buffer.position() - start);
+        }
+
+        int size() 
+        {
+            return buffer.position();
+        }
+
+        void putInt(int position, int value) 
+        {
+            buffer.putInt(position, value);
+        }
+
+        void writeInt(int value) 
+        {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) 
+        {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void write(byte[] bytes) 
+        {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        byte[] toByteArray() 
+        {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private void ensure(int extra) 
+        {
+            if (buffer.remaining() < extra) 
+            {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
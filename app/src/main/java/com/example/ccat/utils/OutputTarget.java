@@ -0,0 +1,157 @@
+package com.example.ccat.utils;
+
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * 处理结果的输出位置
+ * 可以是普通文件，也可以是已打开的文件描述符(例如媒体库中待发布的条目)
+ * 处理器只通过这里创建muxer和写入输出，不关心结果最终存放在哪里
+ */
+public final class OutputTarget 
+{
+    private static final String TAG = "OutputTarget";
+
+    private final File file;
+    private final ParcelFileDescriptor descriptor;
+    private final String path;
+    private final File scratchDir;
+
+    private OutputTarget(File file, ParcelFileDescriptor descriptor, String path, File scratchDir) 
+    {
+        this.file = file;
+        this.descriptor = descriptor;
+        this.path = path;
+        this.scratchDir = scratchDir;
+    }
+
+    /**
+     * 输出到文件
+     */
+    public static OutputTarget of(File file) 
+    {
+        return new OutputTarget(file, null, file.getPath(), file.getParentFile());
+    }
+
+    /**
+     * 输出到以读写方式打开的文件描述符，描述符由调用方关闭
+     * @param path 回调和日志中使用的路径，媒体库条目为content URI
+     * @param scratchDir 处理过程中的临时文件(例如并行转码的分段)存放的目录
+     */
+    public static OutputTarget of(ParcelFileDescriptor descriptor, String path, File scratchDir) 
+    {
+        return new OutputTarget(null, descriptor, path, scratchDir);
+    }
+
+    /**
+     * 回调和日志中使用的路径：文件路径或content URI
+     */
+    public String getPath() 
+    {
+        return path;
+    }
+
+    /**
+     * 输出文件，输出到文件描述符时返回null
+     */
+    public File getFile() 
+    {
+        return file;
+    }
+
+    FileDescriptor getFileDescriptor() 
+    {
+        return descriptor.getFileDescriptor();
+    }
+
+    /**
+     * 确保输出文件所在目录存在，输出到文件描述符时不需要准备
+     */
+    public boolean prepare() 
+    {
+        File parent = file != null ? file.getParentFile() : null;
+        return parent == null || parent.exists() || parent.mkdirs();
+    }
+
+    /**
+     * 创建写入输出的MP4 muxer
+     * 文件描述符可能已经写过内容(上次处理失败后重试)，先清空再交给muxer
+     */
+    MediaMuxer createMuxer() throws IOException 
+    {
+        if (file != null) 
+        {
+            return new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) 
+        {
+            throw new IOException("当前系统不支持写入文件描述符");
+        }
+        FileDescriptor fd = descriptor.getFileDescriptor();
+        try 
+        {
+            Os.ftruncate(fd, 0);
+            Os.lseek(fd, 0, OsConstants.SEEK_SET);
+        }
+        catch (ErrnoException e) 
+        {
+            throw new IOException("无法清空输出: " + path, e);
+        }
+        return new MediaMuxer(fd, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    /**
+     * 在输出旁边创建临时文件的路径，输出到文件描述符时放在临时目录
+     */
+    File tempFile(String suffix) 
+    {
+        if (file != null) 
+        {
+            return new File(file.getPath() + suffix);
+        }
+        return new File(scratchDir, "output_" + descriptor.getFd() + suffix);
+    }
+
+    /**
+     * 已写入的字节数
+     */
+    public long length() 
+    {
+        return file != null ? file.length() : descriptor.getStatSize();
+    }
+
+    /**
+     * 丢弃未完成的输出：文件直接删除，文件描述符截断为空，媒体库条目本身由创建者删除
+     */
+    public void discard() 
+    {
+        if (file != null) 
+        {
+            file.delete();
+            return;
+        }
+        try 
+        {
+            Os.ftruncate(descriptor.getFileDescriptor(), 0);
+        }
+        catch (ErrnoException e) 
+        {
+            Log.w(TAG, "清空输出失败: " + path, e);
+        }
+    }
+
+    @Override
+    public String toString() 
+    {
+        return path;
+    }
+}
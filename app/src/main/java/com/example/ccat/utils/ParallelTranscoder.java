@@ -0,0 +1,458 @@
+package com.example.ccat.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分段并行转码
+ * 在关键帧处把源视频切成互相独立的段，每段由单独的解码器/编码器实例同时转码，
+ * 最后把各段的压缩样本按顺序无损拼接成一个MP4，音频从源文件原样拷贝
+ * 并行度取编解码器支持的最大实例数，受CPU核心数和MAX_SESSIONS限制
+ */
+final class ParallelTranscoder 
+{
+    private static final String TAG = "ParallelTranscoder";
+    private static final int MAX_SESSIONS = 4;
+    // 每段至少的时长，过短的视频分段带来的编解码器启动开销大于收益
+    private static final long MIN_SEGMENT_US = 5_000_000L;
+    private static final long CANCEL_POLL_MS = 200;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private ParallelTranscoder() 
+    {
+    }
+
+    /**
+     * 对整个视频应用滤镜，条件允许时分段并行
+     * @return 完成返回true，被取消返回false
+     */
+    static boolean transcode(VideoSource source, OutputTarget output, VideoFilter filter, AtomicBoolean cancelled,
+                             FilterTranscoder.Listener listener, ProcessingStats stats) throws IOException 
+    {
+        MediaFormat videoFormat;
+        List<Long> keyframes;
+        MediaExtractor extractor = new MediaExtractor();
+        try 
+        {
+            source.setDataSource(extractor);
+            int videoTrackIndex = FilterTranscoder.findTrack(extractor, "video/");
+            if (videoTrackIndex < 0) 
+            {
+                throw new IOException("未找到视频轨道");
+            }
+            extractor.selectTrack(videoTrackIndex);
+            videoFormat = extractor.getTrackFormat(videoTrackIndex);
+            keyframes = listKeyframes(source, extractor);
+        }
+        finally 
+        {
+            extractor.release();
+        }
+
+        long durationUs = videoFormat.containsKey(MediaFormat.KEY_DURATION)
+                ? videoFormat.getLong(MediaFormat.KEY_DURATION) : 0;
+        int sessions = Math.min(sessionCount(videoFormat), (int) (durationUs / MIN_SEGMENT_US));
+        List<long[]> segments = splitAtKeyframes(keyframes, durationUs, sessions);
+        if (segments.size() < 2) 
+        {
+            return FilterTranscoder.transcode(source, output, filter, cancelled, listener, stats);
+        }
+        Log.d(TAG, "分段并行转码: " + segments.size() + " 段, 源时长=" + durationUs + "us");
+
+        List<File> parts = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) 
+        {
+            parts.add(output.tempFile(".part" + i));
+        }
+        try 
+        {
+            if (!encodeSegments(source, parts, filter, segments, durationUs, cancelled, listener, stats)) 
+            {
+                return false;
+            }
+            return stitch(source, parts, output, videoFormat, cancelled, stats);
+        }
+        finally 
+        {
+            for (File part : parts) 
+            {
+                part.delete();
+            }
+        }
+    }
+
+    /**
+     * 可同时运行的编码会话数
+     * 取解码器和编码器声明的最大实例数中较小者，最多使用一半CPU核心
+     */
+    private static int sessionCount(MediaFormat videoFormat) 
+    {
+        String sourceMime = videoFormat.getString(MediaFormat.KEY_MIME);
+        String outputMime = MediaFormat.MIMETYPE_VIDEO_HEVC.equals(sourceMime)
+                ? sourceMime : MediaFormat.MIMETYPE_VIDEO_AVC;
+        int decoders = maxInstances(sourceMime, false);
+        int encoders = maxInstances(outputMime, true);
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return Math.max(1, Math.min(Math.min(decoders, encoders), Math.min(cores, MAX_SESSIONS)));
+    }
+
+    private static int maxInstances(String mime, boolean encoder) 
+    {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo info : codecList.getCodecInfos()) 
+        {
+            if (info.isEncoder() != encoder) 
+            {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) 
+            {
+                if (type.equalsIgnoreCase(mime)) 
+                {
+                    // 列表按优先级排列，第一个匹配的就是createXxxByType选中的实现
+                    return info.getCapabilitiesForType(type).getMaxSupportedInstances();
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 优先从样本索引读取关键帧，否则只选中视频轨道遍历样本标志，不读取样本数据
+     */
+    private static List<Long> listKeyframes(VideoSource source, MediaExtractor extractor) 
+    {
+        List<Long> keyframes = new ArrayList<>();
+        SampleIndex index = SampleIndexCache.get().getExistingIndex(source);
+        SampleIndex.Track videoIndex = index != null ? index.getVideoTrack() : null;
+        if (videoIndex != null) 
+        {
+            for (int i = 0; i < videoIndex.getKeyframeCount(); i++) 
+            {
+                keyframes.add(videoIndex.getKeyframeTimeUs(i));
+            }
+            return keyframes;
+        }
+        long timeUs;
+        while ((timeUs = extractor.getSampleTime()) >= 0) 
+        {
+            if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) 
+            {
+                keyframes.add(timeUs);
+            }
+            extractor.advance();
+        }
+        return keyframes;
+    }
+
+    /**
+     * 按时长均分后对齐到最近的关键帧
+     * @return 每段的[起点, 终点)，最后一段终点为Long.MAX_VALUE
+     */
+    private static List<long[]> splitAtKeyframes(List<Long> keyframes, long durationUs, int count) 
+    {
+        List<long[]> segments = new ArrayList<>();
+        if (keyframes.isEmpty() || count < 2) 
+        {
+            return segments;
+        }
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(keyframes.get(0));
+        for (int i = 1; i < count; i++) 
+        {
+            long target = durationUs * i / count;
+            long best = -1;
+            for (long keyframe : keyframes) 
+            {
+                if (best < 0 || Math.abs(keyframe - target) < Math.abs(best - target)) 
+                {
+                    best = keyframe;
+                }
+            }
+            if (best > bounds.get(bounds.size() - 1)) 
+            {
+                bounds.add(best);
+            }
+        }
+
+        for (int i = 0; i < bounds.size(); i++) 
+        {
+            long end = i + 1 < bounds.size() ? bounds.get(i + 1) : Long.MAX_VALUE;
+            segments.add(new long[]{bounds.get(i), end});
+        }
+        return segments;
+    }
+
+    /**
+     * 每段一个线程同时转码，任意一段失败时取消其余段
+     * 按完成顺序等待，哪一段先失败就立即停止其余段，不必等排在前面的段转码结束
+     */
+    private static boolean encodeSegments(VideoSource source, List<File> parts, VideoFilter filter,
+                                          List<long[]> segments, long durationUs, AtomicBoolean cancelled,
+                                          FilterTranscoder.Listener listener, ProcessingStats stats) throws IOException 
+    {
+        // 各段的已完成时长，汇总成整体进度
+        long[] doneUs = new long[segments.size()];
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService pool = Executors.newFixedThreadPool(segments.size(),
+                runnable -> new Thread(runnable, TAG + "-" + threadCount.incrementAndGet()));
+        ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<>(pool);
+        try 
+        {
+            for (int i = 0; i < segments.size(); i++) 
+            {
+                final int index = i;
+                final long startUs = segments.get(i)[0];
+                final long endUs = segments.get(i)[1];
+                final long lengthUs = Math.min(endUs, durationUs) - startUs;
+                // 外部取消和其他段失败都通过stop让所有段停止
+                completion.submit(() -> FilterTranscoder.transcodeSegment(source, parts.get(index), filter,
+                        startUs, endUs, stop, progress -> 
+                        {
+                            synchronized (doneUs) 
+                            {
+                                doneUs[index] = (long) (lengthUs * progress);
+                                if (listener != null && durationUs > 0) 
+                                {
+                                    long total = 0;
+                                    for (long done : doneUs) 
+                                    {
+                                        total += done;
+                                    }
+                                    listener.onProgress(Math.min(1f, (float) total / durationUs));
+                                }
+                            }
+                        }, stats));
+            }
+
+            boolean completed = true;
+            for (int remaining = segments.size(); remaining > 0; ) 
+            {
+                // 等待期间轮询外部取消标志
+                if (cancelled.get()) 
+                {
+                    stop.set(true);
+                }
+                Future<Boolean> future;
+                try 
+                {
+                    future = completion.poll(CANCEL_POLL_MS, TimeUnit.MILLISECONDS);
+                    if (future == null) 
+                    {
+                        continue;
+                    }
+                    remaining--;
+                    completed &= future.get();
+                }
+                catch (ExecutionException e) 
+                {
+                    stop.set(true);
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) 
+                    {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException("分段转码失败: " + cause, cause);
+                }
+                catch (InterruptedException e) 
+                {
+                    stop.set(true);
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return completed && !cancelled.get();
+        }
+        finally 
+        {
+            // 等待所有段停止后再返回，调用方随后会删除分段文件
+            stop.set(stop.get() || cancelled.get());
+            pool.shutdown();
+            try 
+            {
+                pool.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) 
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 把各段的视频样本按顺序写入输出文件，并按视频时间交错拷贝源音频
+     * 各段由不同编码器实例产生，参数集不同时在该段第一个关键帧前写入带内参数集
+     */
+    private static boolean stitch(VideoSource source, List<File> parts, OutputTarget output, MediaFormat sourceFormat,
+                                  AtomicBoolean cancelled, ProcessingStats stats) throws IOException 
+    {
+        List<MediaExtractor> extractors = new ArrayList<>();
+        MediaExtractor audioExtractor = null;
+        MediaMuxer muxer = null;
+        boolean muxerStarted = false;
+        SampleBufferPool bufferPool = SampleBufferPool.shared();
+        ByteBuffer buffer = null;
+        ByteBuffer audioBuffer = null;
+        try 
+        {
+            MediaFormat outputFormat = null;
+            int maxSampleSize = 0;
+            for (File part : parts) 
+            {
+                MediaExtractor extractor = new MediaExtractor();
+                extractors.add(extractor);
+                extractor.setDataSource(part.getPath());
+                extractor.selectTrack(0);
+                MediaFormat format = extractor.getTrackFormat(0);
+                if (outputFormat == null) 
+                {
+                    outputFormat = format;
+                }
+                maxSampleSize = Math.max(maxSampleSize, SampleBufferPool.maxSampleSize(format));
+            }
+            ByteBuffer baseCsd = SmartTrimEncoder.concatCsd(outputFormat);
+
+            MediaFormat audioFormat = null;
+            audioExtractor = new MediaExtractor();
+            source.setDataSource(audioExtractor);
+            int audioTrackIndex = FilterTranscoder.findTrack(audioExtractor, "audio/");
+            if (audioTrackIndex >= 0) 
+            {
+                audioExtractor.selectTrack(audioTrackIndex);
+                audioFormat = audioExtractor.getTrackFormat(audioTrackIndex);
+                audioBuffer = bufferPool.acquire(SampleBufferPool.maxSampleSize(audioFormat));
+                stats.onBufferAcquired(audioBuffer.capacity());
+            }
+
+            muxer = output.createMuxer();
+            if (sourceFormat.containsKey(MediaFormat.KEY_ROTATION)) 
+            {
+                muxer.setOrientationHint(sourceFormat.getInteger(MediaFormat.KEY_ROTATION));
+            }
+            int outputVideoTrack = muxer.addTrack(outputFormat);
+            int outputAudioTrack = audioFormat != null ? muxer.addTrack(audioFormat) : -1;
+            muxer.start();
+            muxerStarted = true;
+
+            // 预留参数集空间，读取样本时写在其后
+            int csdReserve = 1024;
+            buffer = bufferPool.acquire(maxSampleSize + csdReserve);
+            stats.onBufferAcquired(buffer.capacity());
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo audioInfo = new MediaCodec.BufferInfo();
+            for (MediaExtractor extractor : extractors) 
+            {
+                ByteBuffer csd = SmartTrimEncoder.concatCsd(extractor.getTrackFormat(0));
+                boolean needCsd = csd != null && baseCsd != null && !csd.equals(baseCsd);
+                if (needCsd && csd.remaining() > csdReserve) 
+                {
+                    throw new IOException("参数集过大: " + csd.remaining());
+                }
+                long timeUs;
+                while ((timeUs = extractor.getSampleTime()) >= 0) 
+                {
+                    if (cancelled.get()) 
+                    {
+                        return false;
+                    }
+                    int flags = extractor.getSampleFlags();
+                    boolean sync = (flags & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                    int prefix = needCsd && sync ? csd.remaining() : 0;
+                    buffer.clear();
+                    if (prefix > 0) 
+                    {
+                        buffer.put(csd.duplicate());
+                        needCsd = false;
+                    }
+                    int size = extractor.readSampleData(buffer, prefix);
+                    if (size < 0) 
+                    {
+                        break;
+                    }
+                    buffer.position(0);
+                    buffer.limit(prefix + size);
+                    info.offset = 0;
+                    info.size = prefix + size;
+                    info.presentationTimeUs = timeUs;
+                    info.flags = sync ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                    // 分段文件是中间结果，只统计写入耗时，读取量已在分段转码时计入
+                    long writeStart = System.nanoTime();
+                    muxer.writeSampleData(outputVideoTrack, buffer, info);
+                    stats.onSampleWritten(System.nanoTime() - writeStart);
+                    if (audioFormat != null) 
+                    {
+                        FilterTranscoder.copyAudioUntil(audioExtractor, muxer, outputAudioTrack,
+                                audioBuffer, audioInfo, timeUs, stats);
+                    }
+                    extractor.advance();
+                }
+            }
+            if (audioFormat != null) 
+            {
+                FilterTranscoder.copyAudioUntil(audioExtractor, muxer, outputAudioTrack,
+                        audioBuffer, audioInfo, Long.MAX_VALUE, stats);
+            }
+
+            muxerStarted = false;
+            muxer.stop();
+            return true;
+        }
+        finally 
+        {
+            if (buffer != null) 
+            {
+                stats.onBufferReleased(buffer.capacity());
+                bufferPool.release(buffer);
+            }
+            if (audioBuffer != null) 
+            {
+                stats.onBufferReleased(audioBuffer.capacity());
+                bufferPool.release(audioBuffer);
+            }
+            for (MediaExtractor extractor : extractors) 
+            {
+                extractor.release();
+            }
+            if (audioExtractor != null) 
+            {
+                audioExtractor.release();
+            }
+            if (muxer != null) 
+            {
+                try 
+                {
+                    if (muxerStarted) 
+                    {
+                        muxer.stop();
+                    }
+                    muxer.release();
+                }
+                catch (Exception e) 
+                {
+                    Log.e(TAG, "释放Muxer失败", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.ccat.utils;
+
+import android.os.Bundle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单次处理的统计数据
+ * 处理过程中由VideoProcessor及其转码器累计，完成后随onSuccess回调并保存到最近记录中，
+ * 用于在真机上对比不同版本的性能
+ * 计数器可以被多个线程同时更新(分段并行转码)
+ */
+public final class ProcessingStats 
+{
+    private static final int HISTORY_SIZE = 20;
+    private static final ArrayDeque<ProcessingStats> HISTORY = new ArrayDeque<>();
+
+    // 广播中统计数据的键
+    public static final String KEY_OPERATION = "operation";
+    public static final String KEY_BYTES_READ = "bytes_read";
+    public static final String KEY_BYTES_WRITTEN = "bytes_written";
+    public static final String KEY_VIDEO_SAMPLES = "video_samples";
+    public static final String KEY_AUDIO_SAMPLES = "audio_samples";
+    public static final String KEY_READ_BLOCKED_MS = "read_blocked_ms";
+    public static final String KEY_WRITE_BLOCKED_MS = "write_blocked_ms";
+    public static final String KEY_CODEC_CONFIGURE_MS = "codec_configure_ms";
+    public static final String KEY_CODEC_START_MS = "codec_start_ms";
+    public static final String KEY_CODEC_COUNT = "codec_count";
+    public static final String KEY_PEAK_BUFFER_BYTES = "peak_buffer_bytes";
+    public static final String KEY_WALL_TIME_MS = "wall_time_ms";
+
+    private final String operation;
+    private final long startNs;
+    private volatile long wallTimeNs = -1;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile long bytesWritten;
+    private final AtomicLong videoSamples = new AtomicLong();
+    private final AtomicLong audioSamples = new AtomicLong();
+    private final AtomicLong readBlockedNs = new AtomicLong();
+    private final AtomicLong writeBlockedNs = new AtomicLong();
+    private final AtomicLong codecConfigureNs = new AtomicLong();
+    private final AtomicLong codecStartNs = new AtomicLong();
+    private final AtomicLong codecCount = new AtomicLong();
+    private final AtomicLong bufferBytes = new AtomicLong();
+    private final AtomicLong peakBufferBytes = new AtomicLong();
+
+    /**
+     * @param operation 处理类型，如"trim"、"filter"
+     */
+    ProcessingStats(String operation) 
+    {
+        this.operation = operation;
+        this.startNs = System.nanoTime();
+    }
+
+    /**
+     * 记录一次readSampleData
+     * @param blockedNs 调用耗时
+     */
+    void onSampleRead(boolean isVideo, int size, long blockedNs) 
+    {
+        bytesRead.addAndGet(size);
+        readBlockedNs.addAndGet(blockedNs);
+        (isVideo ? videoSamples : audioSamples).incrementAndGet();
+    }
+
+    /**
+     * 记录按字节区间读取的数据，用于不经过提取器的路径
+     */
+    void onBytesRead(long size, long videoSampleCount, long audioSampleCount, long blockedNs) 
+    {
+        bytesRead.addAndGet(size);
+        readBlockedNs.addAndGet(blockedNs);
+        videoSamples.addAndGet(videoSampleCount);
+        audioSamples.addAndGet(audioSampleCount);
+    }
+
+    /**
+     * 记录一次writeSampleData的耗时
+     */
+    void onSampleWritten(long blockedNs) 
+    {
+        writeBlockedNs.addAndGet(blockedNs);
+    }
+
+    /**
+     * 记录编解码器的创建和configure耗时
+     */
+    void onCodecConfigured(long elapsedNs) 
+    {
+        codecConfigureNs.addAndGet(elapsedNs);
+        codecCount.incrementAndGet();
+    }
+
+    void onCodecStarted(long elapsedNs) 
+    {
+        codecStartNs.addAndGet(elapsedNs);
+    }
+
+    void onBufferAcquired(int capacity) 
+    {
+        long current = bufferBytes.addAndGet(capacity);
+        peakBufferBytes.accumulateAndGet(current, Math::max);
+    }
+
+    void onBufferReleased(int capacity) 
+    {
+        bufferBytes.addAndGet(-capacity);
+    }
+
+    /**
+     * 处理成功结束，记录总耗时和输出大小并加入最近记录
+     * @param outputBytes 输出文件的总字节数
+     */
+    void finish(long outputBytes) 
+    {
+        wallTimeNs = System.nanoTime() - startNs;
+        bytesWritten = outputBytes;
+        synchronized (HISTORY) 
+        {
+            if (HISTORY.size() == HISTORY_SIZE) 
+            {
+                HISTORY.removeFirst();
+            }
+            HISTORY.addLast(this);
+        }
+    }
+
+    /**
+     * 最近完成的处理统计，按完成顺序排列
+     */
+    public static List<ProcessingStats> getHistory() 
+    {
+        synchronized (HISTORY) 
+        {
+            return new ArrayList<>(HISTORY);
+        }
+    }
+
+    public String getOperation() 
+    {
+        return operation;
+    }
+
+    /**
+     * 从源文件读取的样本字节数
+     */
+    public long getBytesRead() 
+    {
+        return bytesRead.get();
+    }
+
+    /**
+     * 输出文件的字节数
+     */
+    public long getBytesWritten() 
+    {
+        return bytesWritten;
+    }
+
+    public long getVideoSamples() 
+    {
+        return videoSamples.get();
+    }
+
+    public long getAudioSamples() 
+    {
+        return audioSamples.get();
+    }
+
+    /**
+     * 阻塞在readSampleData(或直接拷贝读取)中的总时间，多线程时为各线程之和
+     */
+    public long getReadBlockedMs() 
+    {
+        return readBlockedNs.get() / 1_000_000;
+    }
+
+    /**
+     * 阻塞在writeSampleData中的总时间，多线程时为各线程之和
+     */
+    public long getWriteBlockedMs() 
+    {
+        return writeBlockedNs.get() / 1_000_000;
+    }
+
+    public long getCodecConfigureMs() 
+    {
+        return codecConfigureNs.get() / 1_000_000;
+    }
+
+    public long getCodecStartMs() 
+    {
+        return codecStartNs.get() / 1_000_000;
+    }
+
+    /**
+     * 创建的编解码器实例数
+     */
+    public long getCodecCount() 
+    {
+        return codecCount.get();
+    }
+
+    /**
+     * 同时占用的样本缓冲区容量峰值
+     */
+    public long getPeakBufferBytes() 
+    {
+        return peakBufferBytes.get();
+    }
+
+    /**
+     * 总耗时，处理未结束时为-1
+     */
+    public long getWallTimeMs() 
+    {
+        return wallTimeNs < 0 ? -1 : wallTimeNs / 1_000_000;
+    }
+
+    /**
+     * 转换为Bundle，随处理完成广播发送
+     */
+    public Bundle toBundle() 
+    {
+        Bundle bundle = new Bundle();
+        bundle.putString(KEY_OPERATION, operation);
+        bundle.putLong(KEY_BYTES_READ, getBytesRead());
+        bundle.putLong(KEY_BYTES_WRITTEN, getBytesWritten());
+        bundle.putLong(KEY_VIDEO_SAMPLES, getVideoSamples());
+        bundle.putLong(KEY_AUDIO_SAMPLES, getAudioSamples());
+        bundle.putLong(KEY_READ_BLOCKED_MS, getReadBlockedMs());
+        bundle.putLong(KEY_WRITE_BLOCKED_MS, getWriteBlockedMs());
+        bundle.putLong(KEY_CODEC_CONFIGURE_MS, getCodecConfigureMs());
+        bundle.putLong(KEY_CODEC_START_MS, getCodecStartMs());
+        bundle.putLong(KEY_CODEC_COUNT, getCodecCount());
+        bundle.putLong(KEY_PEAK_BUFFER_BYTES, getPeakBufferBytes());
+        bundle.putLong(KEY_WALL_TIME_MS, getWallTimeMs());
+        return bundle;
+    }
+
+    @Override
+    public String toString() 
+    {
+        return String.format(Locale.US,
+                "%s: %dms, read=%dB (%dms), written=%dB (%dms), samples=%d/%d, codecs=%d (configure %dms, start %dms), peakBuffer=%dB",
+                operation, getWallTimeMs(), getBytesRead(), getReadBlockedMs(), getBytesWritten(), getWriteBlockedMs(),
+                getVideoSamples(), getAudioSamples(), getCodecCount(), getCodecConfigureMs(), getCodecStartMs(),
+                getPeakBufferBytes());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.ccat.utils;
+
+/**
+ * 处理进度计量
+ * 在样本循环中累计字节数和帧数，按固定间隔计算进度、吞吐量和剩余时间并回调
+ * 时钟使用System.nanoTime()，并且每处理若干样本才读取一次，循环中的开销只有几次加法
+ */
+final class ProgressMeter 
+{
+    private static final long REPORT_INTERVAL_NS = 100_000_000L; // 100毫秒
+    private static final int CLOCK_CHECK_SAMPLES = 8;            // 每处理这么多样本读取一次时钟
+    private static final double SMOOTHING = 0.3;                 // 吞吐量指数平滑系数
+
+    private final VideoProcessor.ProgressCallback callback;
+    private final long totalBytes;
+    private final long totalDurationUs;
+
+    private long bytes;
+    private long samples;
+    private long frames;
+    private long positionUs;
+    private int samplesSinceCheck;
+
+    private long lastReportNs;
+    private long lastReportBytes;
+    private long lastReportFrames;
+    private double bytesPerSecond = -1;
+    private double framesPerSecond = -1;
+
+    /**
+     * @param totalBytes 需要处理的总字节数，未知时传入不大于0的值，改用时长计算进度
+     * @param totalDurationUs 需要处理的总时长
+     */
+    ProgressMeter(VideoProcessor.ProgressCallback callback, long totalBytes, long totalDurationUs) 
+    {
+        this.callback = callback;
+        this.totalBytes = totalBytes;
+        this.totalDurationUs = totalDurationUs;
+        this.lastReportNs = System.nanoTime();
+    }
+
+    /**
+     * 记录一个已处理的样本
+     * @param positionUs 样本在整体处理范围中的位置，总字节数未知时用于计算进度
+     */
+    void onSample(int size, boolean isVideo, long positionUs) 
+    {
+        bytes += size;
+        samples++;
+        if (isVideo) 
+        {
+            frames++;
+        }
+        if (positionUs > this.positionUs) 
+        {
+            this.positionUs = positionUs;
+        }
+        if (++samplesSinceCheck >= CLOCK_CHECK_SAMPLES) 
+        {
+            samplesSinceCheck = 0;
+            maybeReport(System.nanoTime());
+        }
+    }
+
+    /**
+     * 按累计值更新，用于按字节区间而不是逐样本处理的路径
+     */
+    void onTotals(long bytesProcessed, long framesProcessed) 
+    {
+        samples += framesProcessed - frames;
+        bytes = bytesProcessed;
+        frames = framesProcessed;
+        maybeReport(System.nanoTime());
+    }
+
+    /**
+     * 从断点继续时设置起始值，已完成的部分计入进度，不计入吞吐量
+     */
+    void onResumed(long bytesProcessed, long framesProcessed) 
+    {
+        bytes = bytesProcessed;
+        frames = framesProcessed;
+        samples = framesProcessed;
+        lastReportBytes = bytesProcessed;
+        lastReportFrames = framesProcessed;
+    }
+
+    long getBytes() 
+    {
+        return bytes;
+    }
+
+    private void maybeReport(long now) 
+    {
+        long elapsed = now - lastReportNs;
+        if (elapsed < REPORT_INTERVAL_NS) 
+        {
+            return;
+        }
+        double seconds = elapsed / 1e9;
+        double instantBytes = (bytes - lastReportBytes) / seconds;
+        double instantFrames = (frames - lastReportFrames) / seconds;
+        bytesPerSecond = bytesPerSecond < 0 ? instantBytes : bytesPerSecond + SMOOTHING * (instantBytes - bytesPerSecond);
+        framesPerSecond = framesPerSecond < 0 ? instantFrames : framesPerSecond + SMOOTHING * (instantFrames - framesPerSecond);
+        lastReportNs = now;
+        lastReportBytes = bytes;
+        lastReportFrames = frames;
+
+        if (callback != null) 
+        {
+            ProgressSnapshot snapshot = snapshot();
+            callback.onProgress(snapshot.getFraction());
+            callback.onProgressDetail(snapshot);
+        }
+    }
+
+    ProgressSnapshot snapshot() 
+    {
+        float fraction;
+        if (totalBytes > 0) 
+        {
+            fraction = (float) bytes / totalBytes;
+        }
+        else if (totalDurationUs > 0) 
+        {
+            fraction = (float) positionUs / totalDurationUs;
+        }
+        else 
+        {
+            fraction = 0f;
+        }
+        fraction = Math.min(1f, Math.max(0f, fraction));
+
+        long etaMs = -1;
+        if (totalBytes > 0 && bytesPerSecond > 0) 
+        {
+            etaMs = (long) (Math.max(0L, totalBytes - bytes) * 1000 / bytesPerSecond);
+        }
+        else if (totalBytes <= 0 && fraction > 0 && framesPerSecond > 0 && frames > 0) 
+        {
+            // 没有总字节数时按帧速推算剩余帧数
+            etaMs = (long) (frames * (1 - fraction) / fraction * 1000 / framesPerSecond);
+        }
+        return new ProgressSnapshot(fraction, bytes, totalBytes > 0 ? totalBytes : -1, samples,
+                Math.max(0, bytesPerSecond), Math.max(0, framesPerSecond), etaMs);
+    }
+}
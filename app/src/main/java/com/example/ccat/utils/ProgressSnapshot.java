@@ -0,0 +1,90 @@
+package com.example.ccat.utils;
+
+import java.util.Locale;
+
+/**
+ * 某一时刻的处理进度
+ * 进度按已处理字节数占总字节数计算，总字节数未知时按已处理的时长计算
+ * 吞吐量是最近几次报告之间的平滑瞬时值，不是全程平均值
+ */
+public final class ProgressSnapshot 
+{
+    private final float fraction;
+    private final long bytesProcessed;
+    private final long totalBytes;
+    private final long samplesProcessed;
+    private final double bytesPerSecond;
+    private final double framesPerSecond;
+    private final long etaMs;
+
+    ProgressSnapshot(float fraction, long bytesProcessed, long totalBytes, long samplesProcessed,
+                     double bytesPerSecond, double framesPerSecond, long etaMs) 
+    {
+        this.fraction = fraction;
+        this.bytesProcessed = bytesProcessed;
+        this.totalBytes = totalBytes;
+        this.samplesProcessed = samplesProcessed;
+        this.bytesPerSecond = bytesPerSecond;
+        this.framesPerSecond = framesPerSecond;
+        this.etaMs = etaMs;
+    }
+
+    /**
+     * 整体进度，0~1
+     */
+    public float getFraction() 
+    {
+        return fraction;
+    }
+
+    public long getBytesProcessed() 
+    {
+        return bytesProcessed;
+    }
+
+    /**
+     * 需要处理的总字节数，未知时为-1
+     */
+    public long getTotalBytes() 
+    {
+        return totalBytes;
+    }
+
+    public long getSamplesProcessed() 
+    {
+        return samplesProcessed;
+    }
+
+    public double getBytesPerSecond() 
+    {
+        return bytesPerSecond;
+    }
+
+    public double getMegabytesPerSecond() 
+    {
+        return bytesPerSecond / (1024 * 1024);
+    }
+
+    /**
+     * 每秒处理的视频帧数
+     */
+    public double getFramesPerSecond() 
+    {
+        return framesPerSecond;
+    }
+
+    /**
+     * 预计剩余时间(毫秒)，无法估计时为-1
+     */
+    public long getEtaMs() 
+    {
+        return etaMs;
+    }
+
+    @Override
+    public String toString() 
+    {
+        return String.format(Locale.US, "%.1f%%, %.2f MB/s, %.1f fps, eta=%dms",
+                fraction * 100, getMegabytesPerSecond(), framesPerSecond, etaMs);
+    }
+}
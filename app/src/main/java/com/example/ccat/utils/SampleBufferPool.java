@@ -0,0 +1,151 @@
+package com.example.ccat.utils;
+
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * 样本缓冲区池
+ * 提供按容量分级复用的直接缓冲区，MediaExtractor/MediaMuxer读写直接缓冲区时不需要在Java堆和native内存之间拷贝
+ */
+public final class SampleBufferPool 
+{
+    // 最小分级 64KB，最大分级 64MB
+    private static final int MIN_SHIFT = 16;
+    private static final int MAX_SHIFT = 26;
+
+    // 池中最多保留的总字节数，超出后归还的缓冲区直接丢弃
+    private static final long MAX_RETAINED_BYTES = 32L * 1024 * 1024;
+
+    // 未声明KEY_MAX_INPUT_SIZE时的音频默认大小
+    private static final int DEFAULT_AUDIO_SAMPLE_SIZE = 64 * 1024;
+    // 无法获取任何尺寸信息时的默认大小
+    private static final int DEFAULT_SAMPLE_SIZE = 1024 * 1024;
+
+    private static final SampleBufferPool SHARED = new SampleBufferPool();
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ByteBuffer>[] buckets = new ArrayDeque[MAX_SHIFT - MIN_SHIFT + 1];
+    private long retainedBytes = 0;
+
+    private SampleBufferPool() 
+    {
+        for (int i = 0; i < buckets.length; i++) 
+        {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * 获取进程内共享的缓冲区池，跨轨道、跨任务复用
+     */
+    public static SampleBufferPool shared() 
+    {
+        return SHARED;
+    }
+
+    /**
+     * 根据轨道格式估算单个样本的最大字节数
+     */
+    public static int maxSampleSize(MediaFormat format) 
+    {
+        if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) 
+        {
+            int size = format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
+            if (size > 0) 
+            {
+                return size;
+            }
+        }
+
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        if (mime != null && mime.startsWith("video/")
+                && format.containsKey(MediaFormat.KEY_WIDTH)
+                && format.containsKey(MediaFormat.KEY_HEIGHT)) 
+        {
+            // 压缩帧不会超过一帧未压缩的YUV420数据
+            int width = format.getInteger(MediaFormat.KEY_WIDTH);
+            int height = format.getInteger(MediaFormat.KEY_HEIGHT);
+            return width * height * 3 / 2;
+        }
+        if (mime != null && mime.startsWith("audio/")) 
+        {
+            return DEFAULT_AUDIO_SAMPLE_SIZE;
+        }
+        return DEFAULT_SAMPLE_SIZE;
+    }
+
+    /**
+     * 获取容量不小于minCapacity的直接缓冲区
+     * 超过最大分级的请求单独分配，归还时不会入池
+     */
+    public ByteBuffer acquire(int minCapacity) 
+    {
+        int shift = shiftFor(minCapacity);
+        if (shift > MAX_SHIFT) 
+        {
+            return ByteBuffer.allocateDirect(minCapacity).order(ByteOrder.nativeOrder());
+        }
+
+        synchronized (this) 
+        {
+            ByteBuffer buffer = buckets[shift - MIN_SHIFT].pollLast();
+            if (buffer != null) 
+            {
+                retainedBytes -= buffer.capacity();
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(1 << shift).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 归还缓冲区
+     */
+    public void release(ByteBuffer buffer) 
+    {
+        if (buffer == null || !buffer.isDirect()) 
+        {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int shift = shiftFor(capacity);
+        // 只接收本池分配的整级缓冲区
+        if (shift > MAX_SHIFT || (1 << shift) != capacity) 
+        {
+            return;
+        }
+
+        synchronized (this) 
+        {
+            if (retainedBytes + capacity > MAX_RETAINED_BYTES) 
+            {
+                return;
+            }
+            buffer.clear();
+            buckets[shift - MIN_SHIFT].addLast(buffer);
+            retainedBytes += capacity;
+        }
+    }
+
+    /**
+     * 清空池，在内存紧张时调用
+     */
+    public synchronized void trim() 
+    {
+        for (ArrayDeque<ByteBuffer> bucket : buckets) 
+        {
+            bucket.clear();
+        }
+        retainedBytes = 0;
+    }
+
+    private static int shiftFor(int capacity) 
+    {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1);
+        return Math.max(MIN_SHIFT, shift);
+    }
+}
@@ -0,0 +1,514 @@
+package com.example.ccat.utils;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个视频文件的样本索引
+ * 记录每个轨道所有样本的时间戳、大小、文件偏移和关键帧标志，
+ * 查找关键帧或指定时间的样本时使用二分查找，不需要用提取器逐个样本前进
+ * 由SampleIndexCache按文件标识持久化，同一文件只建立一次
+ */
+public final class SampleIndex 
+{
+    private static final int MAGIC = 0x43435349; // "CCSI"
+    private static final int VERSION = 1;
+
+    private static final byte FLAG_SYNC = 1;
+
+    /**
+     * 单个轨道的样本表，数组按解码顺序排列
+     */
+    public static final class Track 
+    {
+        private final int trackIndex;
+        private final String mime;
+        private final long[] timesUs;
+        private final int[] sizes;
+        private final long[] offsets;
+        private final byte[] flags;
+        // 派生数据：按时间排序的关键帧时间和全部样本时间
+        private final long[] keyframeTimesUs;
+        private final long[] sortedTimesUs;
+        // 按显示顺序的样本大小前缀和，sizeSums[i]为sortedTimesUs前i个样本的总字节数；有未知大小时为null
+        private final long[] sizeSums;
+
+        Track(int trackIndex, String mime, long[] timesUs, int[] sizes, long[] offsets, byte[] flags) 
+        {
+            this.trackIndex = trackIndex;
+            this.mime = mime;
+            this.timesUs = timesUs;
+            this.sizes = sizes;
+            this.offsets = offsets;
+            this.flags = flags;
+
+            int keyframes = 0;
+            for (byte flag : flags) 
+            {
+                if ((flag & FLAG_SYNC) != 0) 
+                {
+                    keyframes++;
+                }
+            }
+            keyframeTimesUs = new long[keyframes];
+            for (int i = 0, k = 0; i < flags.length; i++) 
+            {
+                if ((flags[i] & FLAG_SYNC) != 0) 
+                {
+                    keyframeTimesUs[k++] = timesUs[i];
+                }
+            }
+            Arrays.sort(keyframeTimesUs);
+            sortedTimesUs = timesUs.clone();
+            Arrays.sort(sortedTimesUs);
+            sizeSums = buildSizeSums(timesUs, sizes, sortedTimesUs);
+        }
+
+        /**
+         * 把每个样本的大小放到它在显示顺序中的位置后求前缀和
+         * 时间相同的样本都记在第一个位置上，按时间范围求和时它们总是一起计入或一起排除
+         */
+        private static long[] buildSizeSums(long[] timesUs, int[] sizes, long[] sortedTimesUs) 
+        {
+            long[] sums = new long[sortedTimesUs.length + 1];
+            for (int i = 0; i < timesUs.length; i++) 
+            {
+                if (sizes[i] < 0) 
+                {
+                    return null;
+                }
+                sums[firstAtOrAfter(sortedTimesUs, timesUs[i]) + 1] += sizes[i];
+            }
+            for (int i = 1; i < sums.length; i++) 
+            {
+                sums[i] += sums[i - 1];
+            }
+            return sums;
+        }
+
+        /**
+         * 第一个不早于timeUs的位置，没有时返回数组长度
+         */
+        private static int firstAtOrAfter(long[] sorted, long timeUs) 
+        {
+            int pos = Arrays.binarySearch(sorted, timeUs);
+            if (pos < 0) 
+            {
+                return -pos - 1;
+            }
+            while (pos > 0 && sorted[pos - 1] == timeUs) 
+            {
+                pos--;
+            }
+            return pos;
+        }
+
+        /**
+         * 第一个晚于timeUs的位置，没有时返回数组长度
+         */
+        private static int firstAfter(long[] sorted, long timeUs) 
+        {
+            int pos = Arrays.binarySearch(sorted, timeUs);
+            if (pos < 0) 
+            {
+                return -pos - 1;
+            }
+            while (pos < sorted.length && sorted[pos] == timeUs) 
+            {
+                pos++;
+            }
+            return pos;
+        }
+
+        /**
+         * 对应MediaExtractor中的轨道序号
+         */
+        public int getTrackIndex() 
+        {
+            return trackIndex;
+        }
+
+        public String getMime() 
+        {
+            return mime;
+        }
+
+        public int getSampleCount() 
+        {
+            return timesUs.length;
+        }
+
+        public long getSampleTimeUs(int sample) 
+        {
+            return timesUs[sample];
+        }
+
+        /**
+         * @return 样本字节数，未知时为-1
+         */
+        public int getSampleSize(int sample) 
+        {
+            return sizes[sample];
+        }
+
+        /**
+         * @return 样本在文件中的偏移，未知时为-1
+         */
+        public long getSampleOffset(int sample) 
+        {
+            return offsets[sample];
+        }
+
+        public boolean isSyncSample(int sample) 
+        {
+            return (flags[sample] & FLAG_SYNC) != 0;
+        }
+
+        public int getKeyframeCount() 
+        {
+            return keyframeTimesUs.length;
+        }
+
+        public long getKeyframeTimeUs(int keyframe) 
+        {
+            return keyframeTimesUs[keyframe];
+        }
+
+        /**
+         * 不晚于timeUs的最后一个关键帧，timeUs在第一个关键帧之前时返回第一个关键帧
+         * @return 关键帧时间，没有关键帧返回-1
+         */
+        public long keyframeAtOrBefore(long timeUs) 
+        {
+            if (keyframeTimesUs.length == 0) 
+            {
+                return -1;
+            }
+            int pos = Arrays.binarySearch(keyframeTimesUs, timeUs);
+            if (pos >= 0) 
+            {
+                return keyframeTimesUs[pos];
+            }
+            int insertion = -pos - 1;
+            return keyframeTimesUs[Math.max(0, insertion - 1)];
+        }
+
+        /**
+         * 不早于timeUs的第一个关键帧
+         * @return 关键帧时间，之后没有关键帧返回-1
+         */
+        public long keyframeAtOrAfter(long timeUs) 
+        {
+            int pos = Arrays.binarySearch(keyframeTimesUs, timeUs);
+            if (pos >= 0) 
+            {
+                return keyframeTimesUs[pos];
+            }
+            int insertion = -pos - 1;
+            return insertion < keyframeTimesUs.length ? keyframeTimesUs[insertion] : -1;
+        }
+
+        /**
+         * 离timeUs最近的关键帧
+         */
+        public long closestKeyframe(long timeUs) 
+        {
+            long before = keyframeAtOrBefore(timeUs);
+            long after = keyframeAtOrAfter(timeUs);
+            if (after < 0) 
+            {
+                return before;
+            }
+            if (before < 0) 
+            {
+                return after;
+            }
+            return timeUs - before <= after - timeUs ? before : after;
+        }
+
+        /**
+         * 显示时间在[fromUs, toUs]内的样本总字节数，两次二分查找后由前缀和相减得到
+         * @return 样本大小未知时返回-1
+         */
+        public long bytesBetween(long fromUs, long toUs) 
+        {
+            if (sizeSums == null) 
+            {
+                return -1;
+            }
+            int from = firstAtOrAfter(sortedTimesUs, fromUs);
+            int to = firstAfter(sortedTimesUs, toUs);
+            return to > from ? sizeSums[to] - sizeSums[from] : 0;
+        }
+
+        /**
+         * 显示时间不早于timeUs的第一个样本的时间
+         * @return 样本时间，之后没有样本返回-1
+         */
+        public long sampleTimeAtOrAfter(long timeUs) 
+        {
+            int pos = Arrays.binarySearch(sortedTimesUs, timeUs);
+            if (pos >= 0) 
+            {
+                return sortedTimesUs[pos];
+            }
+            int insertion = -pos - 1;
+            return insertion < sortedTimesUs.length ? sortedTimesUs[insertion] : -1;
+        }
+    }
+
+    private final List<Track> tracks;
+
+    SampleIndex(List<Track> tracks) 
+    {
+        this.tracks = Collections.unmodifiableList(tracks);
+    }
+
+    public List<Track> getTracks() 
+    {
+        return tracks;
+    }
+
+    /**
+     * @return 第一个视频轨道，没有时返回null
+     */
+    public Track getVideoTrack() 
+    {
+        return findTrack("video/");
+    }
+
+    /**
+     * @return 第一个音频轨道，没有时返回null
+     */
+    public Track getAudioTrack() 
+    {
+        return findTrack("audio/");
+    }
+
+    private Track findTrack(String mimePrefix) 
+    {
+        for (Track track : tracks) 
+        {
+            if (track.mime != null && track.mime.startsWith(mimePrefix)) 
+            {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 用MediaExtractor遍历一次文件建立索引
+     * 只查询样本元数据，不读取样本内容；提取器不提供文件偏移，偏移记为-1
+     * 用于Mp4Movie无法解析的容器
+     */
+    static SampleIndex build(VideoSource source) throws IOException 
+    {
+        MediaExtractor extractor = new MediaExtractor();
+        try 
+        {
+            source.setDataSource(extractor);
+            int trackCount = extractor.getTrackCount();
+            String[] mimes = new String[trackCount];
+            TrackBuilder[] builders = new TrackBuilder[trackCount];
+            for (int i = 0; i < trackCount; i++) 
+            {
+                mimes[i] = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                builders[i] = new TrackBuilder();
+                extractor.selectTrack(i);
+            }
+
+            boolean sizeAvailable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+            int track;
+            while ((track = extractor.getSampleTrackIndex()) >= 0) 
+            {
+                int size = sizeAvailable ? (int) extractor.getSampleSize() : -1;
+                boolean sync = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                builders[track].add(extractor.getSampleTime(), size, -1, sync);
+                extractor.advance();
+            }
+
+            List<Track> tracks = new ArrayList<>();
+            for (int i = 0; i < trackCount; i++) 
+            {
+                tracks.add(builders[i].build(i, mimes[i]));
+            }
+            return new SampleIndex(tracks);
+        }
+        finally 
+        {
+            extractor.release();
+        }
+    }
+
+    /**
+     * 从已解析的MP4样本表建立索引，包含真实的样本大小和文件偏移，不需要遍历提取器
+     * 轨道序号与MediaExtractor一致，按moov中trak的顺序
+     */
+    static SampleIndex fromMp4(Mp4Movie movie) 
+    {
+        List<Mp4Track> mp4Tracks = movie.getTracks();
+        List<Track> tracks = new ArrayList<>(mp4Tracks.size());
+        for (int t = 0; t < mp4Tracks.size(); t++) 
+        {
+            Mp4Track mp4Track = mp4Tracks.get(t);
+            TrackBuilder builder = new TrackBuilder();
+            for (int i = 0; i < mp4Track.getSampleCount(); i++) 
+            {
+                builder.add(mp4Track.getPresentationTimeUs(i), mp4Track.getSampleSize(i),
+                        mp4Track.getSampleOffset(i), mp4Track.isSyncSample(i));
+            }
+            tracks.add(builder.build(t, mimeOf(mp4Track)));
+        }
+        return new SampleIndex(tracks);
+    }
+
+    /**
+     * 由样本描述类型推断与MediaFormat一致的mime
+     */
+    private static String mimeOf(Mp4Track track) 
+    {
+        String type = track.getSampleEntryType();
+        if (type != null) 
+        {
+            switch (type) 
+            {
+                case "avc1":
+                case "avc3":
+                    return MediaFormat.MIMETYPE_VIDEO_AVC;
+                case "hvc1":
+                case "hev1":
+                    return MediaFormat.MIMETYPE_VIDEO_HEVC;
+                case "mp4v":
+                    return MediaFormat.MIMETYPE_VIDEO_MPEG4;
+                case "mp4a":
+                    return MediaFormat.MIMETYPE_AUDIO_AAC;
+                default:
+                    break;
+            }
+        }
+        if (track.isVideo()) 
+        {
+            return "video/" + (type != null ? type : "unknown");
+        }
+        if (track.isAudio()) 
+        {
+            return "audio/" + (type != null ? type : "unknown");
+        }
+        return null;
+    }
+
+    /**
+     * 写入文件，key用于读取时校验是否对应同一源文件
+     */
+    void writeTo(File file, String key) throws IOException 
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) 
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(tracks.size());
+            for (Track track : tracks) 
+            {
+                out.writeInt(track.trackIndex);
+                out.writeUTF(track.mime != null ? track.mime : "");
+                int count = track.timesUs.length;
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) 
+                {
+                    out.writeLong(track.timesUs[i]);
+                    out.writeInt(track.sizes[i]);
+                    out.writeLong(track.offsets[i]);
+                    out.writeByte(track.flags[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从文件读取索引
+     * @return 格式不符或key不一致时返回null
+     */
+    static SampleIndex readFrom(File file, String key) throws IOException 
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) 
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF())) 
+            {
+                return null;
+            }
+            int trackCount = in.readInt();
+            List<Track> tracks = new ArrayList<>(trackCount);
+            for (int t = 0; t < trackCount; t++) 
+            {
+                int trackIndex = in.readInt();
+                String mime = in.readUTF();
+                int count = in.readInt();
+                long[] times = new long[count];
+                int[] sizes = new int[count];
+                long[] offsets = new long[count];
+                byte[] flags = new byte[count];
+                for (int i = 0; i < count; i++) 
+                {
+                    times[i] = in.readLong();
+                    sizes[i] = in.readInt();
+                    offsets[i] = in.readLong();
+                    flags[i] = in.readByte();
+                }
+                tracks.add(new Track(trackIndex, mime.isEmpty() ? null : mime, times, sizes, offsets, flags));
+            }
+            return new SampleIndex(tracks);
+        }
+    }
+
+    /**
+     * 按样本追加并在结束时生成定长数组
+     */
+    static final class TrackBuilder 
+    {
+        private long[] times = new long[1024];
+        private int[] sizes = new int[1024];
+        private long[] offsets = new long[1024];
+        private byte[] flags = new byte[1024];
+        private int count = 0;
+
+        void add(long timeUs, int size, long offset, boolean sync) 
+        {
+            if (count == times.length) 
+            {
+                int capacity = count * 2;
+                times = Arrays.copyOf(times, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+            times[count] = timeUs;
+            sizes[count] = size;
+            offsets[count] = offset;
+            flags[count] = sync ? FLAG_SYNC : 0;
+            count++;
+        }
+
+        Track build(int trackIndex, String mime) 
+        {
+            return new Track(trackIndex, mime,
+                    Arrays.copyOf(times, count), Arrays.copyOf(sizes, count),
+                    Arrays.copyOf(offsets, count), Arrays.copyOf(flags, count));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.ccat.utils;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 样本索引缓存
+ * 索引以文件标识(路径、大小、修改时间)为键保存在应用缓存目录，内存中保留最近使用的几个
+ * 文件被修改后键随之变化，旧索引不会被误用；索引随时可以重建，磁盘上按总字节数限制大小，系统空间不足时也可以清理
+ */
+public final class SampleIndexCache 
+{
+    private static final String TAG = "SampleIndexCache";
+    private static final String INDEX_DIR_NAME = "sample_index";
+    private static final int MEMORY_ENTRIES = 8;
+    // 持久化索引的总大小上限，超出后删除最久未使用的，长视频的索引可达数MB
+    private static final long MAX_DISK_BYTES = 64L * 1024 * 1024;
+
+    private static SampleIndexCache instance;
+
+    private final LruCache<String, SampleIndex> memoryCache = new LruCache<>(MEMORY_ENTRIES);
+    private final Object diskLock = new Object();
+    private volatile File indexDir;
+    private long diskBytes = -1;
+
+    private SampleIndexCache() 
+    {
+    }
+
+    /**
+     * 获取缓存并启用持久化
+     */
+    public static SampleIndexCache get(Context context) 
+    {
+        SampleIndexCache cache = get();
+        if (cache.indexDir == null) 
+        {
+            cache.attachIndexDir(new File(context.getApplicationContext().getCacheDir(), INDEX_DIR_NAME));
+        }
+        return cache;
+    }
+
+    /**
+     * 获取缓存，未通过get(Context)初始化时索引只保存在内存中
+     */
+    public static synchronized SampleIndexCache get() 
+    {
+        if (instance == null) 
+        {
+            instance = new SampleIndexCache();
+        }
+        return instance;
+    }
+
+    private void attachIndexDir(File dir) 
+    {
+        synchronized (diskLock) 
+        {
+            if (indexDir != null) 
+            {
+                return;
+            }
+            if (!dir.exists() && !dir.mkdirs()) 
+            {
+                Log.w(TAG, "无法创建索引目录: " + dir);
+                return;
+            }
+            indexDir = dir;
+        }
+    }
+
+    /**
+     * 获取索引，没有时遍历文件建立并保存
+     * 首次建立需要遍历整个文件的样本表，不要在主线程调用
+     */
+    public SampleIndex getIndex(VideoSource source) throws IOException 
+    {
+        SampleIndex index = getExistingIndex(source);
+        if (index != null) 
+        {
+            return index;
+        }
+
+        long start = System.currentTimeMillis();
+        try 
+        {
+            // MP4直接读取样本表，比逐样本遍历提取器快得多，并且带有文件偏移
+            index = SampleIndex.fromMp4(Mp4Movie.parse(source::openChannel));
+        }
+        catch (Mp4FormatException e) 
+        {
+            Log.d(TAG, "无法直接解析MP4，使用提取器建立索引: " + e.getMessage());
+            index = SampleIndex.build(source);
+        }
+        Log.d(TAG, "建立样本索引: " + source.getName() + ", 耗时 " + (System.currentTimeMillis() - start) + "ms");
+        put(source, index);
+        return index;
+    }
+
+    /**
+     * 只返回已经建立的索引，不遍历文件
+     * @return 没有索引时返回null
+     */
+    public SampleIndex getExistingIndex(VideoSource source) 
+    {
+        String key = source.cacheKey();
+        SampleIndex index = memoryCache.get(key);
+        if (index != null) 
+        {
+            return index;
+        }
+
+        File file = indexFile(key);
+        if (file != null && file.isFile()) 
+        {
+            try 
+            {
+                index = SampleIndex.readFrom(file, key);
+            }
+            catch (IOException e) 
+            {
+                Log.w(TAG, "读取样本索引失败: " + file, e);
+            }
+            if (index != null) 
+            {
+                memoryCache.put(key, index);
+                // 以修改时间记录最近使用，淘汰时按此排序
+                file.setLastModified(System.currentTimeMillis());
+            }
+            else 
+            {
+                file.delete();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 保存已建立的索引，例如由MP4解析器得到的带偏移的索引
+     */
+    void put(VideoSource source, SampleIndex index) 
+    {
+        String key = source.cacheKey();
+        memoryCache.put(key, index);
+        File file = indexFile(key);
+        if (file == null) 
+        {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try 
+        {
+            index.writeTo(temp, key);
+        }
+        catch (IOException e) 
+        {
+            Log.w(TAG, "保存样本索引失败", e);
+            temp.delete();
+            return;
+        }
+
+        synchronized (diskLock) 
+        {
+            long previous = file.length();
+            if (!temp.renameTo(file)) 
+            {
+                temp.delete();
+                return;
+            }
+            if (diskBytes < 0) 
+            {
+                diskBytes = directorySize(file.getParentFile());
+            }
+            else 
+            {
+                diskBytes += file.length() - previous;
+            }
+            if (diskBytes > MAX_DISK_BYTES) 
+            {
+                evictDisk(file.getParentFile());
+            }
+        }
+    }
+
+    /**
+     * 清空内存中的索引，在内存紧张时调用
+     */
+    public void trimMemory() 
+    {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * 按最近使用时间淘汰，直到总大小降到上限的3/4
+     */
+    private void evictDisk(File dir) 
+    {
+        File[] files = dir.listFiles();
+        if (files == null) 
+        {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long target = MAX_DISK_BYTES * 3 / 4;
+        for (File file : files) 
+        {
+            if (diskBytes <= target) 
+            {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) 
+            {
+                diskBytes -= length;
+            }
+        }
+    }
+
+    private static long directorySize(File dir) 
+    {
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) 
+        {
+            for (File file : files) 
+            {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private File indexFile(String key) 
+    {
+        File dir = indexDir;
+        return dir == null ? null : new File(dir, hash(key) + ".idx");
+    }
+
+    private static String hash(String key) 
+    {
+        try 
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) 
+            {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException e) 
+        {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
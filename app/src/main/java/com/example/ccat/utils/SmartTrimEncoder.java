@@ -0,0 +1,349 @@
+package com.example.ccat.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 智能裁剪的片头编码器
+ * 只解码起始位置之前的关键帧到下一个关键帧之间的帧，并把[起始位置, 下一个关键帧)重新编码，
+ * 其余部分仍然直接拷贝，得到帧精确的裁剪点
+ */
+final class SmartTrimEncoder 
+{
+    private static final String TAG = "SmartTrimEncoder";
+    private static final int TIMEOUT_USEC = 10000;
+    private static final int I_FRAME_INTERVAL = 1;
+    private static final float DEFAULT_FRAME_RATE = 30.0f;
+
+    /**
+     * 重新编码得到的一个样本
+     */
+    static final class EncodedSample 
+    {
+        final ByteBuffer data;
+        final long presentationTimeUs;
+        final int flags;
+
+        EncodedSample(ByteBuffer data, long presentationTimeUs, int flags) 
+        {
+            this.data = data;
+            this.presentationTimeUs = presentationTimeUs;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * 片头编码结果
+     */
+    static final class Result 
+    {
+        final List<EncodedSample> samples;
+
+        Result(List<EncodedSample> samples) 
+        {
+            this.samples = samples;
+        }
+    }
+
+    private SmartTrimEncoder() 
+    {
+    }
+
+    /**
+     * 重新编码[startTimeUs, headEndUs)之间的视频帧
+     * 调用前只选中视频轨道，返回后提取器位置不确定，调用方需要重新seek
+     * @param keyframeTimeUs 起始位置之前的关键帧
+     * @param headEndUs 下一个关键帧(或裁剪结束位置)，此前的帧都需要重新编码
+     * @return 编码结果；编码器输出无法和源码流拼接时返回null，调用方退回关键帧裁剪
+     */
+    static Result encodeHead(MediaExtractor extractor, MediaFormat videoFormat,
+                             long keyframeTimeUs, long startTimeUs, long headEndUs,
+                             AtomicBoolean cancelled, ProcessingStats stats) throws IOException 
+    {
+        String mime = videoFormat.getString(MediaFormat.KEY_MIME);
+        MediaFormat encoderFormat = createEncoderFormat(videoFormat, mime);
+
+        MediaCodec encoder = null;
+        MediaCodec decoder = null;
+        Surface inputSurface = null;
+        try 
+        {
+            long configureStart = System.nanoTime();
+            encoder = MediaCodec.createEncoderByType(mime);
+            encoder.configure(encoderFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            stats.onCodecConfigured(System.nanoTime() - configureStart);
+            inputSurface = encoder.createInputSurface();
+            long startStart = System.nanoTime();
+            encoder.start();
+            stats.onCodecStarted(System.nanoTime() - startStart);
+
+            // 解码器直接输出到编码器的输入Surface，帧数据不经过Java堆
+            configureStart = System.nanoTime();
+            decoder = MediaCodec.createDecoderByType(mime);
+            decoder.configure(videoFormat, inputSurface, null, 0);
+            stats.onCodecConfigured(System.nanoTime() - configureStart);
+            startStart = System.nanoTime();
+            decoder.start();
+            stats.onCodecStarted(System.nanoTime() - startStart);
+
+            extractor.seekTo(keyframeTimeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+
+            List<EncodedSample> samples = new ArrayList<>();
+            ByteBuffer[] encoderCsd = new ByteBuffer[1];
+            transcode(extractor, decoder, encoder, startTimeUs, headEndUs, samples, encoderCsd, cancelled);
+
+            if (cancelled.get() || samples.isEmpty()) 
+            {
+                return null;
+            }
+            return buildResult(mime, videoFormat, samples, encoderCsd[0]);
+        }
+        finally 
+        {
+            if (decoder != null) 
+            {
+                try 
+                {
+                    decoder.stop();
+                }
+                catch (Exception e) 
+                {
+                    Log.w(TAG, "停止解码器失败", e);
+                }
+                decoder.release();
+            }
+            if (encoder != null) 
+            {
+                try 
+                {
+                    encoder.stop();
+                }
+                catch (Exception e) 
+                {
+                    Log.w(TAG, "停止编码器失败", e);
+                }
+                encoder.release();
+            }
+            if (inputSurface != null) 
+            {
+                inputSurface.release();
+            }
+        }
+    }
+
+    /**
+     * 根据源格式创建编码器格式，码率取源码率的1.5倍，减少重新编码带来的画质损失
+     * 输出编码与源相同时沿用源的profile和level
+     */
+    static MediaFormat createEncoderFormat(MediaFormat videoFormat, String mime) 
+    {
+        int width = videoFormat.getInteger(MediaFormat.KEY_WIDTH);
+        int height = videoFormat.getInteger(MediaFormat.KEY_HEIGHT);
+        float frameRate = DEFAULT_FRAME_RATE;
+        if (videoFormat.containsKey(MediaFormat.KEY_FRAME_RATE)) 
+        {
+            try 
+            {
+                frameRate = videoFormat.getFloat(MediaFormat.KEY_FRAME_RATE);
+            }
+            catch (ClassCastException e) 
+            {
+                frameRate = (float) videoFormat.getInteger(MediaFormat.KEY_FRAME_RATE);
+            }
+        }
+
+        int bitRate;
+        if (videoFormat.containsKey(MediaFormat.KEY_BIT_RATE)) 
+        {
+            bitRate = videoFormat.getInteger(MediaFormat.KEY_BIT_RATE) * 3 / 2;
+        }
+        else 
+        {
+            bitRate = (int) (width * height * frameRate * 0.2f);
+        }
+
+        MediaFormat format = MediaFormat.createVideoFormat(mime, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, Math.round(frameRate));
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL);
+        boolean sameCodec = mime.equals(videoFormat.getString(MediaFormat.KEY_MIME));
+        if (sameCodec && videoFormat.containsKey(MediaFormat.KEY_PROFILE)) 
+        {
+            format.setInteger(MediaFormat.KEY_PROFILE, videoFormat.getInteger(MediaFormat.KEY_PROFILE));
+        }
+        if (sameCodec && videoFormat.containsKey(MediaFormat.KEY_LEVEL)) 
+        {
+            format.setInteger(MediaFormat.KEY_LEVEL, videoFormat.getInteger(MediaFormat.KEY_LEVEL));
+        }
+        return format;
+    }
+
+    /**
+     * 解码-编码循环
+     * [keyframe, startTimeUs)的帧只解码不渲染，[startTimeUs, headEndUs)的帧渲染到编码器
+     * 开放GOP中headEnd处关键帧之后还可能跟着显示时间更早的前导帧，它们参考前一个GOP，
+     * 不能从源直接拷贝，所以关键帧也送入解码器，并继续送入这些前导帧一起重新编码
+     */
+    private static void transcode(MediaExtractor extractor, MediaCodec decoder, MediaCodec encoder,
+                                  long startTimeUs, long headEndUs,
+                                  List<EncodedSample> samples, ByteBuffer[] encoderCsd,
+                                  AtomicBoolean cancelled) 
+    {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        boolean decoderDone = false;
+        boolean encoderDone = false;
+        boolean headKeyframeQueued = false;
+
+        while (!encoderDone && !cancelled.get()) 
+        {
+            // 向解码器送入样本，送完下一个关键帧和它的前导帧后结束输入
+            if (!inputDone) 
+            {
+                int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_USEC);
+                if (inputIndex >= 0) 
+                {
+                    ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
+                    long sampleTimeUs = extractor.getSampleTime();
+                    boolean reachedHeadEnd = false;
+                    if (headKeyframeQueued) 
+                    {
+                        // 前导帧按解码顺序紧跟关键帧，第一个显示时间不早于headEnd的样本之后不再有前导帧
+                        reachedHeadEnd = sampleTimeUs >= headEndUs;
+                    }
+                    else if (sampleTimeUs >= headEndUs
+                            && (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) 
+                    {
+                        // 关键帧只作为前导帧的参考，显示时间不早于headEnd，不会被渲染
+                        headKeyframeQueued = true;
+                    }
+                    int size = sampleTimeUs < 0 || reachedHeadEnd ? -1 : extractor.readSampleData(inputBuffer, 0);
+                    if (size < 0) 
+                    {
+                        decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    }
+                    else 
+                    {
+                        decoder.queueInputBuffer(inputIndex, 0, size, sampleTimeUs, extractor.getSampleFlags());
+                        extractor.advance();
+                    }
+                }
+            }
+
+            // 解码输出：只渲染需要重新编码的帧
+            if (!decoderDone) 
+            {
+                int outputIndex = decoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+                if (outputIndex >= 0) 
+                {
+                    boolean eos = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                    boolean render = info.size > 0
+                            && info.presentationTimeUs >= startTimeUs
+                            && info.presentationTimeUs < headEndUs;
+                    if (render) 
+                    {
+                        decoder.releaseOutputBuffer(outputIndex, info.presentationTimeUs * 1000);
+                    }
+                    else 
+                    {
+                        decoder.releaseOutputBuffer(outputIndex, false);
+                    }
+                    if (eos) 
+                    {
+                        encoder.signalEndOfInputStream();
+                        decoderDone = true;
+                    }
+                }
+            }
+
+            // 收集编码输出
+            int encoderIndex = encoder.dequeueOutputBuffer(info, decoderDone ? TIMEOUT_USEC : 0);
+            if (encoderIndex >= 0) 
+            {
+                ByteBuffer encoded = encoder.getOutputBuffer(encoderIndex);
+                if (info.size > 0 && encoded != null) 
+                {
+                    encoded.position(info.offset);
+                    encoded.limit(info.offset + info.size);
+                    ByteBuffer copy = ByteBuffer.allocateDirect(info.size);
+                    copy.put(encoded);
+                    copy.flip();
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) 
+                    {
+                        encoderCsd[0] = copy;
+                    }
+                    else 
+                    {
+                        samples.add(new EncodedSample(copy, info.presentationTimeUs, info.flags));
+                    }
+                }
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) 
+                {
+                    encoderDone = true;
+                }
+                encoder.releaseOutputBuffer(encoderIndex, false);
+            }
+            else if (encoderIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED && encoderCsd[0] == null) 
+            {
+                encoderCsd[0] = concatCsd(encoder.getOutputFormat());
+            }
+        }
+    }
+
+    /**
+     * 检查编码输出能否和源码流拼接
+     * 输出轨道沿用源的样本描述(avc1/hvc1等)，其中的参数集只有源的一份；
+     * 这类样本描述不允许码流中出现与之不同的带内参数集，编码器参数集与源不一致时无法拼接
+     */
+    private static Result buildResult(String mime, MediaFormat sourceFormat,
+                                      List<EncodedSample> samples, ByteBuffer encoderCsd) 
+    {
+        ByteBuffer sourceCsd = concatCsd(sourceFormat);
+        if (encoderCsd == null || encoderCsd.equals(sourceCsd)) 
+        {
+            return new Result(samples);
+        }
+        Log.w(TAG, "编码器参数集与源不一致，无法与源码流拼接: " + mime);
+        return null;
+    }
+
+    /**
+     * 拼接格式中的csd-0/csd-1(起始码格式的参数集)
+     */
+    static ByteBuffer concatCsd(MediaFormat format) 
+    {
+        ByteBuffer csd0 = format.containsKey("csd-0") ? format.getByteBuffer("csd-0") : null;
+        ByteBuffer csd1 = format.containsKey("csd-1") ? format.getByteBuffer("csd-1") : null;
+        if (csd0 == null) 
+        {
+            return null;
+        }
+        return csd1 == null ? csd0.duplicate() : prepend(csd0, csd1);
+    }
+
+    /**
+     * 返回head+body拼接后的新缓冲区
+     */
+    static ByteBuffer prepend(ByteBuffer head, ByteBuffer body) 
+    {
+        ByteBuffer h = head.duplicate();
+        ByteBuffer b = body.duplicate();
+        ByteBuffer merged = ByteBuffer.allocateDirect(h.remaining() + b.remaining());
+        merged.put(h);
+        merged.put(b);
+        merged.flip();
+        return merged;
+    }
+}
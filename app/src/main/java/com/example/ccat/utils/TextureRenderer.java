@@ -0,0 +1,434 @@
+package com.example.ccat.utils;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * GPU帧渲染器
+ * 解码器输出到SurfaceTexture(外部纹理)，经片元着色器绘制到输出Surface(编码器输入或ImageReader)，
+ * 帧数据始终停留在GPU内存中，不经过Java堆
+ * 渲染器绑定创建它的线程，所有方法必须在同一线程调用
+ */
+final class TextureRenderer 
+{
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uSTMatrix;\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aTextureCoord;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "void main() {\n" +
+            "    gl_Position = aPosition;\n" +
+            "    vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n" +
+            "}\n";
+
+    static final String PASSTHROUGH_FRAGMENT_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "precision mediump float;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "uniform samplerExternalOES sTexture;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(sTexture, vTextureCoord);\n" +
+            "}\n";
+
+    // 滤镜：颜色矩阵变换后按通道查找色调曲线，查找坐标对齐到纹素中心
+    private static final String FILTER_FRAGMENT_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "precision mediump float;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "uniform samplerExternalOES sTexture;\n" +
+            "uniform sampler2D uCurve;\n" +
+            "uniform mat3 uColorMatrix;\n" +
+            "uniform vec3 uColorOffset;\n" +
+            "void main() {\n" +
+            "    vec4 color = texture2D(sTexture, vTextureCoord);\n" +
+            "    vec3 rgb = clamp(uColorMatrix * color.rgb + uColorOffset, 0.0, 1.0);\n" +
+            "    vec3 coord = rgb * (255.0 / 256.0) + 0.5 / 256.0;\n" +
+            "    gl_FragColor = vec4(texture2D(uCurve, vec2(coord.r, 0.5)).r,\n" +
+            "                        texture2D(uCurve, vec2(coord.g, 0.5)).g,\n" +
+            "                        texture2D(uCurve, vec2(coord.b, 0.5)).b,\n" +
+            "                        color.a);\n" +
+            "}\n";
+
+    // 全屏矩形：X, Y, U, V
+    private static final float[] QUAD = {
+            -1.0f, -1.0f, 0.0f, 0.0f,
+             1.0f, -1.0f, 1.0f, 0.0f,
+            -1.0f,  1.0f, 0.0f, 1.0f,
+             1.0f,  1.0f, 1.0f, 1.0f,
+    };
+    private static final int FLOAT_SIZE = 4;
+    private static final int STRIDE = 4 * FLOAT_SIZE;
+
+    // 所有渲染器共用的帧到达回调线程，避免回调落在主线程
+    private static HandlerThread callbackThread;
+
+    private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+
+    private final FloatBuffer quad;
+    private final float[] stMatrix = new float[16];
+    private final Object frameLock = new Object();
+    private boolean frameAvailable = false;
+
+    private int textureId;
+    private int program;
+    private int positionHandle;
+    private int textureCoordHandle;
+    private int stMatrixHandle;
+
+    // 滤镜状态，未设置滤镜时使用直通着色器
+    private VideoFilter filter;
+    private int curveTextureId;
+    private float[] colorMatrix;
+    private int colorMatrixHandle;
+    private int colorOffsetHandle;
+    private int textureHandle;
+    private int curveHandle;
+
+    private SurfaceTexture surfaceTexture;
+    private Surface inputSurface;
+
+    /**
+     * @param outputSurface 绘制目标
+     * @param recordable 输出到编码器时为true
+     */
+    TextureRenderer(Surface outputSurface, boolean recordable) 
+    {
+        quad = ByteBuffer.allocateDirect(QUAD.length * FLOAT_SIZE)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        quad.put(QUAD).position(0);
+
+        setupEgl(outputSurface, recordable);
+        setupTexture();
+        program = createProgram(VERTEX_SHADER, PASSTHROUGH_FRAGMENT_SHADER);
+        bindProgramHandles();
+    }
+
+    /**
+     * 解码器应输出到的Surface
+     */
+    Surface getInputSurface() 
+    {
+        return inputSurface;
+    }
+
+    /**
+     * 等待解码器的新帧并更新纹理
+     * @return 超时返回false
+     */
+    boolean awaitNewFrame(long timeoutMs) 
+    {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        synchronized (frameLock) 
+        {
+            while (!frameAvailable) 
+            {
+                long remainingMs = (deadline - System.nanoTime()) / 1000000L;
+                if (remainingMs <= 0) 
+                {
+                    return false;
+                }
+                try 
+                {
+                    frameLock.wait(remainingMs);
+                }
+                catch (InterruptedException e) 
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            frameAvailable = false;
+        }
+        surfaceTexture.updateTexImage();
+        surfaceTexture.getTransformMatrix(stMatrix);
+        return true;
+    }
+
+    /**
+     * 把当前纹理绘制到输出Surface
+     */
+    void drawFrame(int width, int height) 
+    {
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClearColor(0f, 0f, 0f, 1f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+        quad.position(0);
+        GLES20.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, STRIDE, quad);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        quad.position(2);
+        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, STRIDE, quad);
+        GLES20.glEnableVertexAttribArray(textureCoordHandle);
+
+        GLES20.glUniformMatrix4fv(stMatrixHandle, 1, false, stMatrix, 0);
+        if (filter != null) 
+        {
+            GLES20.glUniform1i(textureHandle, 0);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, curveTextureId);
+            GLES20.glUniform1i(curveHandle, 1);
+            GLES20.glUniformMatrix3fv(colorMatrixHandle, 1, false, colorMatrix, 0);
+            GLES20.glUniform3fv(colorOffsetHandle, 1, filter.offset(), 0);
+        }
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        checkGlError("glDrawArrays");
+    }
+
+    /**
+     * 设置滤镜，传入null或VideoFilter.NONE恢复直通绘制
+     * 色调曲线作为256x1纹理上传一次，之后每帧只设置uniform
+     */
+    void setFilter(VideoFilter newFilter) 
+    {
+        if (newFilter == VideoFilter.NONE) 
+        {
+            newFilter = null;
+        }
+        GLES20.glDeleteProgram(program);
+        deleteCurveTexture();
+        filter = newFilter;
+        if (filter == null) 
+        {
+            program = createProgram(VERTEX_SHADER, PASSTHROUGH_FRAGMENT_SHADER);
+            bindProgramHandles();
+            return;
+        }
+
+        program = createProgram(VERTEX_SHADER, FILTER_FRAGMENT_SHADER);
+        bindProgramHandles();
+        colorMatrix = filter.columnMajorMatrix();
+        colorMatrixHandle = GLES20.glGetUniformLocation(program, "uColorMatrix");
+        colorOffsetHandle = GLES20.glGetUniformLocation(program, "uColorOffset");
+        textureHandle = GLES20.glGetUniformLocation(program, "sTexture");
+        curveHandle = GLES20.glGetUniformLocation(program, "uCurve");
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        curveTextureId = textures[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, curveTextureId);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, VideoFilter.CURVE_SIZE, 1, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, filter.buildCurveTable());
+        checkGlError("setFilter");
+    }
+
+    private void deleteCurveTexture() 
+    {
+        if (curveTextureId != 0) 
+        {
+            GLES20.glDeleteTextures(1, new int[]{curveTextureId}, 0);
+            curveTextureId = 0;
+        }
+    }
+
+    /**
+     * 设置输出帧的时间戳，编码器以此作为样本时间
+     */
+    void setPresentationTime(long presentationTimeNs) 
+    {
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, presentationTimeNs);
+    }
+
+    void swapBuffers() 
+    {
+        EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+    }
+
+    void release() 
+    {
+        if (eglDisplay != EGL14.EGL_NO_DISPLAY) 
+        {
+            GLES20.glDeleteProgram(program);
+            GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
+            deleteCurveTexture();
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroySurface(eglDisplay, eglSurface);
+            EGL14.eglDestroyContext(eglDisplay, eglContext);
+            // 不调用eglTerminate：display在进程内共享，其他线程的渲染器可能仍在使用
+            EGL14.eglReleaseThread();
+        }
+        eglDisplay = EGL14.EGL_NO_DISPLAY;
+        eglContext = EGL14.EGL_NO_CONTEXT;
+        eglSurface = EGL14.EGL_NO_SURFACE;
+
+        if (inputSurface != null) 
+        {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        if (surfaceTexture != null) 
+        {
+            surfaceTexture.release();
+            surfaceTexture = null;
+        }
+    }
+
+    private void setupEgl(Surface outputSurface, boolean recordable) 
+    {
+        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (eglDisplay == EGL14.EGL_NO_DISPLAY) 
+        {
+            throw new IllegalStateException("无法获取EGL display");
+        }
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) 
+        {
+            throw new IllegalStateException("无法初始化EGL");
+        }
+
+        int[] attribList = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                recordable ? EGL_RECORDABLE_ANDROID : EGL14.EGL_NONE, 1,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(eglDisplay, attribList, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) 
+        {
+            throw new IllegalStateException("找不到合适的EGL配置");
+        }
+
+        int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        eglContext = EGL14.eglCreateContext(eglDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        checkEglError("eglCreateContext");
+
+        int[] surfaceAttribs = {EGL14.EGL_NONE};
+        eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, configs[0], outputSurface, surfaceAttribs, 0);
+        checkEglError("eglCreateWindowSurface");
+
+        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) 
+        {
+            throw new IllegalStateException("eglMakeCurrent失败");
+        }
+    }
+
+    private void setupTexture() 
+    {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        // 缩小时使用线性过滤，由GPU完成缩放
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        checkGlError("setupTexture");
+
+        surfaceTexture = new SurfaceTexture(textureId);
+        surfaceTexture.setOnFrameAvailableListener(st -> 
+        {
+            synchronized (frameLock) 
+            {
+                frameAvailable = true;
+                frameLock.notifyAll();
+            }
+        }, callbackHandler());
+        inputSurface = new Surface(surfaceTexture);
+    }
+
+    /**
+     * 共用的回调线程Handler，用于SurfaceTexture和ImageReader的回调
+     */
+    static synchronized Handler callbackHandler() 
+    {
+        if (callbackThread == null) 
+        {
+            callbackThread = new HandlerThread("TextureRenderer");
+            callbackThread.start();
+        }
+        return new Handler(callbackThread.getLooper());
+    }
+
+    private void bindProgramHandles() 
+    {
+        positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        textureCoordHandle = GLES20.glGetAttribLocation(program, "aTextureCoord");
+        stMatrixHandle = GLES20.glGetUniformLocation(program, "uSTMatrix");
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) 
+    {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        if (linkStatus[0] != GLES20.GL_TRUE) 
+        {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IllegalStateException("着色器程序链接失败: " + log);
+        }
+        return program;
+    }
+
+    private static int loadShader(int type, String source) 
+    {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) 
+        {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("着色器编译失败: " + log);
+        }
+        return shader;
+    }
+
+    private static void checkGlError(String op) 
+    {
+        int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) 
+        {
+            throw new IllegalStateException(op + ": glError 0x" + Integer.toHexString(error));
+        }
+    }
+
+    private static void checkEglError(String op) 
+    {
+        int error = EGL14.eglGetError();
+        if (error != EGL14.EGL_SUCCESS) 
+        {
+            throw new IllegalStateException(op + ": EGL error 0x" + Integer.toHexString(error));
+        }
+    }
+}
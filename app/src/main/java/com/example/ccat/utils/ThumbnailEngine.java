@@ -0,0 +1,344 @@
+package com.example.ccat.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaExtractor;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 缩略图引擎
+ * 定位到最近的关键帧，用硬件解码器只解码这一帧并在GPU上缩小
+ * 结果写入按字节数限制大小的内存LRU缓存和磁盘LRU缓存，键由文件标识(路径、大小、修改时间)和时间点组成
+ */
+public final class ThumbnailEngine 
+{
+    private static final String TAG = "ThumbnailEngine";
+    private static final String CACHE_DIR_NAME = "thumbnails";
+    private static final long MAX_DISK_BYTES = 32L * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private static ThumbnailEngine instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final Object diskLock = new Object();
+    private volatile File diskCacheDir;
+    private long diskBytes = -1;
+
+    private ThumbnailEngine() 
+    {
+        // 内存缓存使用可用堆的1/16
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) 
+        {
+            @Override
+            protected int sizeOf(String key, Bitmap value) 
+            {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * 获取引擎并启用磁盘缓存
+     */
+    public static ThumbnailEngine get(Context context) 
+    {
+        ThumbnailEngine engine = get();
+        if (engine.diskCacheDir == null) 
+        {
+            engine.attachDiskCache(new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME));
+        }
+        return engine;
+    }
+
+    /**
+     * 获取引擎，未通过get(Context)初始化时只使用内存缓存
+     */
+    public static synchronized ThumbnailEngine get() 
+    {
+        if (instance == null) 
+        {
+            instance = new ThumbnailEngine();
+        }
+        return instance;
+    }
+
+    private void attachDiskCache(File dir) 
+    {
+        synchronized (diskLock) 
+        {
+            if (diskCacheDir != null) 
+            {
+                return;
+            }
+            if (!dir.exists() && !dir.mkdirs()) 
+            {
+                Log.w(TAG, "无法创建缩略图缓存目录: " + dir);
+                return;
+            }
+            diskCacheDir = dir;
+        }
+    }
+
+    /**
+     * 只查询缓存，不解码，可以在主线程调用
+     */
+    public Bitmap getCached(VideoSource source, long timeMs, int maxSize) 
+    {
+        return memoryCache.get(cacheKey(source, timeMs, maxSize));
+    }
+
+    /**
+     * 获取指定时间的缩略图，缓存未命中时解码最近的关键帧
+     * 会阻塞调用线程，不要在主线程调用
+     * @return 缩略图，失败返回null
+     */
+    public Bitmap getThumbnail(File videoFile, long timeMs, int maxSize) 
+    {
+        return getThumbnail(VideoSource.of(videoFile), timeMs, maxSize);
+    }
+
+    /**
+     * 获取源视频(文件或content URI)指定时间的缩略图
+     */
+    public Bitmap getThumbnail(VideoSource source, long timeMs, int maxSize) 
+    {
+        Bitmap bitmap = lookup(source, timeMs, maxSize);
+        if (bitmap != null) 
+        {
+            return bitmap;
+        }
+
+        // 已有样本索引时先确定实际会解码的关键帧，落到同一关键帧的不同时间共用一个缓存条目
+        long decodeTimeUs = timeMs * 1000;
+        String keyframeKey = null;
+        SampleIndex index = SampleIndexCache.get().getExistingIndex(source);
+        SampleIndex.Track videoIndex = index != null ? index.getVideoTrack() : null;
+        if (videoIndex != null && videoIndex.getKeyframeCount() > 0) 
+        {
+            decodeTimeUs = videoIndex.closestKeyframe(decodeTimeUs);
+            keyframeKey = keyframeCacheKey(source, decodeTimeUs, maxSize);
+            bitmap = lookup(keyframeKey);
+            if (bitmap != null) 
+            {
+                memoryCache.put(cacheKey(source, timeMs, maxSize), bitmap);
+                return bitmap;
+            }
+        }
+
+        try (KeyframeDecoder decoder = new KeyframeDecoder(source, maxSize)) 
+        {
+            bitmap = decoder.decodeAt(decodeTimeUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        }
+        catch (IOException | RuntimeException e) 
+        {
+            Log.e(TAG, "解码缩略图失败: " + source, e);
+            return null;
+        }
+        if (bitmap != null) 
+        {
+            if (keyframeKey != null) 
+            {
+                // 磁盘上只保存关键帧条目，请求时间只记在内存中
+                put(keyframeKey, bitmap);
+                memoryCache.put(cacheKey(source, timeMs, maxSize), bitmap);
+            }
+            else 
+            {
+                put(cacheKey(source, timeMs, maxSize), bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 查询内存和磁盘缓存，不解码
+     */
+    Bitmap lookup(VideoSource source, long timeMs, int maxSize) 
+    {
+        return lookup(cacheKey(source, timeMs, maxSize));
+    }
+
+    private Bitmap lookup(String key) 
+    {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap == null) 
+        {
+            bitmap = readDisk(key);
+            if (bitmap != null) 
+            {
+                memoryCache.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 将已解码的帧加入缓存，供批量解码(如时间轴缩略图)复用
+     */
+    void put(VideoSource source, long timeMs, int maxSize, Bitmap bitmap) 
+    {
+        put(cacheKey(source, timeMs, maxSize), bitmap);
+    }
+
+    /**
+     * 清空内存缓存，在内存紧张时调用
+     */
+    public void trimMemory() 
+    {
+        memoryCache.evictAll();
+    }
+
+    private void put(String key, Bitmap bitmap) 
+    {
+        memoryCache.put(key, bitmap);
+        writeDisk(key, bitmap);
+    }
+
+    private static String cacheKey(VideoSource source, long timeMs, int maxSize) 
+    {
+        // 文件被替换或修改后键随之变化，旧条目由LRU自然淘汰
+        return source.cacheKey() + '|' + timeMs + '|' + maxSize;
+    }
+
+    private static String keyframeCacheKey(VideoSource source, long keyframeUs, int maxSize) 
+    {
+        return source.cacheKey() + "|k" + keyframeUs + '|' + maxSize;
+    }
+
+    private File diskFile(String key) 
+    {
+        File dir = diskCacheDir;
+        return dir == null ? null : new File(dir, hash(key) + ".jpg");
+    }
+
+    private Bitmap readDisk(String key) 
+    {
+        File file = diskFile(key);
+        if (file == null || !file.isFile()) 
+        {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap != null) 
+        {
+            // 以修改时间记录最近访问，淘汰时按此排序
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    private void writeDisk(String key, Bitmap bitmap) 
+    {
+        File file = diskFile(key);
+        if (file == null) 
+        {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) 
+        {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        }
+        catch (IOException e) 
+        {
+            Log.w(TAG, "写入缩略图缓存失败", e);
+            temp.delete();
+            return;
+        }
+
+        synchronized (diskLock) 
+        {
+            long previous = file.length();
+            if (!temp.renameTo(file)) 
+            {
+                temp.delete();
+                return;
+            }
+            if (diskBytes < 0) 
+            {
+                diskBytes = directorySize(file.getParentFile());
+            }
+            else 
+            {
+                diskBytes += file.length() - previous;
+            }
+            if (diskBytes > MAX_DISK_BYTES) 
+            {
+                evictDisk(file.getParentFile());
+            }
+        }
+    }
+
+    /**
+     * 按最近访问时间淘汰，直到总大小降到上限的3/4
+     */
+    private void evictDisk(File dir) 
+    {
+        File[] files = dir.listFiles();
+        if (files == null) 
+        {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long target = MAX_DISK_BYTES * 3 / 4;
+        for (File file : files) 
+        {
+            if (diskBytes <= target) 
+            {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) 
+            {
+                diskBytes -= length;
+            }
+        }
+    }
+
+    private static long directorySize(File dir) 
+    {
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) 
+        {
+            for (File file : files) 
+            {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private static String hash(String key) 
+    {
+        try 
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) 
+            {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException e) 
+        {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
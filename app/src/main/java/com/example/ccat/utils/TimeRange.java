@@ -0,0 +1,37 @@
+package com.example.ccat.utils;
+
+/**
+ * 时间范围(毫秒)，表示需要保留的一段视频
+ */
+public final class TimeRange 
+{
+    private final long startMs;
+    private final long endMs;
+
+    public TimeRange(long startMs, long endMs) 
+    {
+        this.startMs = startMs;
+        this.endMs = endMs;
+    }
+
+    public long getStartMs() 
+    {
+        return startMs;
+    }
+
+    public long getEndMs() 
+    {
+        return endMs;
+    }
+
+    public long getDurationMs() 
+    {
+        return endMs - startMs;
+    }
+
+    @Override
+    public String toString() 
+    {
+        return "[" + startMs + "ms, " + endMs + "ms]";
+    }
+}
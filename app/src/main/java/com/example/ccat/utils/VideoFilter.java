@@ -0,0 +1,203 @@
+package com.example.ccat.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 视频滤镜
+ * 每个滤镜由一个3x3颜色矩阵加偏移和一条每通道的色调曲线(256级查找表)组成，
+ * 在片元着色器中先做矩阵变换，再查表，两步都在GPU上完成
+ */
+public enum VideoFilter 
+{
+    NONE("none", "原图", null, null, null),
+    GRAYSCALE("grayscale", "黑白", new float[]{
+            0.299f, 0.587f, 0.114f,
+            0.299f, 0.587f, 0.114f,
+            0.299f, 0.587f, 0.114f}, null, null),
+    SEPIA("sepia", "怀旧", new float[]{
+            0.393f, 0.769f, 0.189f,
+            0.349f, 0.686f, 0.168f,
+            0.272f, 0.534f, 0.131f}, null, null),
+    WARM("warm", "暖色", new float[]{
+            1.10f, 0.00f, 0.00f,
+            0.00f, 1.02f, 0.00f,
+            0.00f, 0.00f, 0.88f}, new float[]{0.02f, 0.01f, 0.0f}, null),
+    COOL("cool", "冷色", new float[]{
+            0.90f, 0.00f, 0.00f,
+            0.00f, 1.00f, 0.00f,
+            0.00f, 0.00f, 1.12f}, new float[]{0.0f, 0.01f, 0.03f}, null),
+    VIVID("vivid", "鲜艳", saturation(1.35f), null, Curve.CONTRAST),
+    FADE("fade", "褪色", saturation(0.75f), null, Curve.FADE),
+    FILM("film", "胶片", null, null, Curve.FILM),
+    INVERT("invert", "反相", new float[]{
+            -1f, 0f, 0f,
+            0f, -1f, 0f,
+            0f, 0f, -1f}, new float[]{1f, 1f, 1f}, null);
+
+    // 查找表级数
+    static final int CURVE_SIZE = 256;
+
+    private final String id;
+    private final String displayName;
+    private final float[] matrix;
+    private final float[] offset;
+    private final Curve curve;
+
+    VideoFilter(String id, String displayName, float[] rowMajorMatrix, float[] offset, Curve curve) 
+    {
+        this.id = id;
+        this.displayName = displayName;
+        // 枚举构造器中不能引用静态字段，缺省值直接创建
+        this.matrix = rowMajorMatrix != null ? rowMajorMatrix : new float[]{1f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 1f};
+        this.offset = offset != null ? offset : new float[]{0f, 0f, 0f};
+        this.curve = curve;
+    }
+
+    /**
+     * 用于Intent参数的标识
+     */
+    public String getId() 
+    {
+        return id;
+    }
+
+    public String getDisplayName() 
+    {
+        return displayName;
+    }
+
+    /**
+     * 根据标识查找滤镜
+     * @return 未知标识返回null
+     */
+    public static VideoFilter fromId(String id) 
+    {
+        for (VideoFilter filter : values()) 
+        {
+            if (filter.id.equals(id)) 
+            {
+                return filter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 列主序矩阵，可直接传给glUniformMatrix3fv
+     */
+    float[] columnMajorMatrix() 
+    {
+        return new float[]{
+                matrix[0], matrix[3], matrix[6],
+                matrix[1], matrix[4], matrix[7],
+                matrix[2], matrix[5], matrix[8]};
+    }
+
+    float[] offset() 
+    {
+        return offset;
+    }
+
+    /**
+     * 生成CURVE_SIZE x 1的RGBA查找表，没有曲线的滤镜返回恒等表
+     */
+    ByteBuffer buildCurveTable() 
+    {
+        ByteBuffer table = ByteBuffer.allocateDirect(CURVE_SIZE * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < CURVE_SIZE; i++) 
+        {
+            float x = i / (float) (CURVE_SIZE - 1);
+            table.put(toByte(curve != null ? curve.red(x) : x));
+            table.put(toByte(curve != null ? curve.green(x) : x));
+            table.put(toByte(curve != null ? curve.blue(x) : x));
+            table.put((byte) 0xff);
+        }
+        table.position(0);
+        return table;
+    }
+
+    private static byte toByte(float value) 
+    {
+        return (byte) Math.round(Math.max(0f, Math.min(1f, value)) * 255f);
+    }
+
+    /**
+     * 按BT.601亮度权重调整饱和度的矩阵
+     */
+    private static float[] saturation(float s) 
+    {
+        float r = 0.299f * (1 - s);
+        float g = 0.587f * (1 - s);
+        float b = 0.114f * (1 - s);
+        return new float[]{
+                r + s, g, b,
+                r, g + s, b,
+                r, g, b + s};
+    }
+
+    /**
+     * 每通道色调曲线
+     */
+    private enum Curve 
+    {
+        // S型曲线提高对比度
+        CONTRAST 
+        {
+            @Override
+            float red(float x) 
+            {
+                return sCurve(x, 0.6f);
+            }
+        },
+        // 抬高黑位、压低白位
+        FADE 
+        {
+            @Override
+            float red(float x) 
+            {
+                return 0.08f + x * 0.84f;
+            }
+        },
+        // 轻微S型曲线，暗部偏青、亮部偏暖
+        FILM 
+        {
+            @Override
+            float red(float x) 
+            {
+                return sCurve(x, 0.35f) + 0.03f * x;
+            }
+
+            @Override
+            float green(float x) 
+            {
+                return sCurve(x, 0.3f);
+            }
+
+            @Override
+            float blue(float x) 
+            {
+                return sCurve(x, 0.25f) * 0.92f + 0.06f;
+            }
+        };
+
+        abstract float red(float x);
+
+        float green(float x) 
+        {
+            return red(x);
+        }
+
+        float blue(float x) 
+        {
+            return red(x);
+        }
+
+        private static float sCurve(float x, float strength) 
+        {
+            // 在恒等曲线和smoothstep之间插值
+            float smooth = x * x * (3f - 2f * x);
+            return x + (smooth - x) * strength;
+        }
+    }
+}
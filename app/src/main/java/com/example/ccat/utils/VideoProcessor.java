@@ -1,5 +1,7 @@
 package com.example.ccat.utils;
 
+import android.content.Context;
+import android.graphics.Bitmap;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaExtractor;
@@ -8,8 +10,14 @@ import android.media.MediaMuxer;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -22,8 +30,30 @@ public class VideoProcessor
     private static final int TIMEOUT_USEC = 10000;
     private static final float DEFAULT_FRAME_RATE = 30.0f; // 默认帧率
     
+    /**
+     * 在调用线程中直接执行，供已经运行在工作线程中的调度器使用
+     */
+    public static final Executor DIRECT_EXECUTOR = Runnable::run;
+    
+    /**
+     * 默认执行器：每次处理启动一个新线程
+     */
+    private static final Executor THREAD_PER_TASK_EXECUTOR = runnable -> new Thread(runnable, TAG).start();
+    
+    // 裁剪模式
+    public static final int TRIM_MODE_KEYFRAME = 0; // 从起始位置之前的关键帧开始，速度最快
+    public static final int TRIM_MODE_SMART = 1;    // 只重新编码起始处不完整的GOP，帧精确
+    public static final int TRIM_MODE_DIRECT = 2;   // 关键帧裁剪，MP4直接拷贝样本字节，不经过提取器和muxer
+    
     private final AtomicBoolean isCancelled = new AtomicBoolean(false);
+    private final Executor executor;
     private ProgressCallback progressCallback;
+    private volatile int trimMode = TRIM_MODE_KEYFRAME;
+    private volatile boolean parallelTranscoding = true;
+    private volatile boolean fastStart = true;
+    private volatile long fragmentDurationMs = 0;
+    private volatile long resumeOffset = 0;
+    private volatile Mp4TrimWriter.CheckpointListener checkpointListener;
     
     /**
      * 进度回调接口
@@ -32,12 +62,95 @@ public class VideoProcessor
     {
         void onProgress(float progress);
         void onSuccess(String outputPath);
+        
+        /**
+         * 处理成功，附带本次处理的统计数据
+         * 默认转发给onSuccess(String)，只关心输出路径的调用方不需要实现
+         */
+        default void onSuccess(String outputPath, ProcessingStats stats) 
+        {
+            onSuccess(outputPath);
+        }
         void onFailed(String reason);
+        
+        /**
+         * 详细进度，包含已处理字节数、吞吐量和预计剩余时间，与onProgress同时回调
+         */
+        default void onProgressDetail(ProgressSnapshot snapshot) 
+        {
+        }
+        
+        /**
+         * 批量提取时单个片段完成
+         */
+        default void onClipFinished(int index, String outputPath) 
+        {
+        }
     }
     
     public VideoProcessor(ProgressCallback callback) 
+    {
+        this(callback, THREAD_PER_TASK_EXECUTOR);
+    }
+    
+    /**
+     * @param callback 进度回调
+     * @param executor 执行处理的执行器，传入DIRECT_EXECUTOR时处理方法同步返回
+     */
+    public VideoProcessor(ProgressCallback callback, Executor executor) 
     {
         this.progressCallback = callback;
+        this.executor = executor;
+    }
+    
+    /**
+     * 设置裁剪模式
+     * @param mode TRIM_MODE_KEYFRAME、TRIM_MODE_SMART 或 TRIM_MODE_DIRECT
+     */
+    public void setTrimMode(int mode) 
+    {
+        this.trimMode = mode;
+    }
+    
+    /**
+     * 设置是否分段并行转码
+     * 开启时重新编码的处理在关键帧处分段，由多个编解码器实例同时转码后无损拼接
+     */
+    public void setParallelTranscoding(boolean enabled) 
+    {
+        this.parallelTranscoding = enabled;
+    }
+    
+    /**
+     * 设置输出是否把moov放在文件开头(faststart)
+     * 只对TRIM_MODE_DIRECT生效，MediaMuxer固定把moov写在文件末尾
+     */
+    public void setFastStart(boolean enabled) 
+    {
+        this.fastStart = enabled;
+    }
+    
+    /**
+     * 设置分片输出(fMP4)，每个片段从关键帧开始，时长不短于fragmentMs
+     * 写入时内存占用不随时长增长，中途中断的文件可以播放到最后一个完整片段
+     * 只对TRIM_MODE_DIRECT生效，MediaMuxer不支持分片输出
+     * @param fragmentMs 片段时长(毫秒)，0表示输出普通MP4
+     */
+    public void setFragmentDuration(long fragmentMs) 
+    {
+        this.fragmentDurationMs = fragmentMs;
+    }
+    
+    /**
+     * 设置裁剪断点
+     * 只对TRIM_MODE_DIRECT生效，输出按字节顺序写入，可以截断到断点后继续；经过MediaMuxer的输出只能从头开始
+     * @param resumeOffset 上次记录的断点，没有时传0
+     * @param listener 断点回调，在处理线程中执行，可为null
+     */
+    public void setCheckpoint(long resumeOffset, Mp4TrimWriter.CheckpointListener listener) 
+    {
+        this.resumeOffset = resumeOffset;
+        this.checkpointListener = listener;
     }
     
     /**
@@ -56,13 +169,126 @@ public class VideoProcessor
      * @param endTimeMs 结束时间(毫秒)
      */
     public void trimVideo(final File sourceFile, final File outputFile, final long startTimeMs, final long endTimeMs) 
+    {
+        trimSegments(VideoSource.of(sourceFile), OutputTarget.of(outputFile), Collections.singletonList(new TimeRange(startTimeMs, endTimeMs)));
+    }
+    
+    /**
+     * 用Mp4TrimWriter直接裁剪MP4文件
+     * @return 已经处理并回调结果返回true；源文件不是可直接解析的MP4时返回false，由调用方改用提取器裁剪
+     */
+    private boolean trimDirect(VideoSource source, OutputTarget output, List<TimeRange> ranges) 
+    {
+        Mp4Movie movie;
+        try 
+        {
+            movie = Mp4Movie.parse(source::openChannel);
+        }
+        catch (Mp4FormatException e) 
+        {
+            Log.d(TAG, "无法直接解析MP4，改用提取器裁剪: " + e.getMessage());
+            return false;
+        }
+        catch (IOException e) 
+        {
+            Log.e(TAG, "读取源文件失败", e);
+            output.discard();
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("读取源文件失败: " + e.getMessage());
+            }
+            return true;
+        }
+        
+        // 总字节数在写入开始时才确定，计量器在第一次回调时创建
+        // 第一次回调是写入起点(从断点继续时为断点之前已完成的部分)，只作为计量的基准
+        ProcessingStats stats = new ProcessingStats("direct_trim");
+        ProgressMeter[] meter = {null};
+        long[] copied = new long[2];
+        Mp4TrimWriter.ProgressListener listener = (written, total, frames) -> 
+        {
+            if (meter[0] == null) 
+            {
+                meter[0] = new ProgressMeter(progressCallback, total, 0);
+                meter[0].onResumed(written, frames);
+            }
+            else 
+            {
+                meter[0].onTotals(written, frames);
+            }
+            copied[0] = written;
+            copied[1] = frames;
+        };
+        try 
+        {
+            Mp4TrimWriter writer = new Mp4TrimWriter(movie)
+                    .setFastStart(fastStart)
+                    .setFragmentDuration(fragmentDurationMs)
+                    .setCheckpoint(resumeOffset, checkpointListener);
+            boolean completed = output.getFile() != null
+                    ? writer.write(ranges, output.getFile(), isCancelled, listener)
+                    : writer.write(ranges, output.getFileDescriptor(), isCancelled, listener);
+            if (!completed) 
+            {
+                // 有断点记录时保留已写入的部分，是否丢弃由记录断点的调用方决定，
+                // 例如服务销毁时保留输出，重启后从断点继续写入
+                if (checkpointListener == null) 
+                {
+                    output.discard();
+                }
+                if (progressCallback != null) 
+                {
+                    progressCallback.onFailed("处理被取消");
+                }
+                return true;
+            }
+            
+            // 样本数据由transferTo直接拷贝，读写无法分开计时，耗时只计入总时间
+            stats.onBytesRead(copied[0], copied[1], 0, 0);
+            Log.d(TAG, "直接裁剪完成: " + output);
+            if (progressCallback != null) 
+            {
+                progressCallback.onProgress(1.0f);
+            }
+            reportSuccess(output.getPath(), stats, output.length());
+        }
+        catch (IOException | IllegalArgumentException e) 
+        {
+            Log.e(TAG, "直接裁剪失败", e);
+            output.discard();
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("处理失败: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 多段裁剪：把多个保留片段按顺序拼接到同一个输出文件
+     * 所有片段共用一个提取器和muxer，输出时间戳连续，不产生中间文件
+     * @param sourceFile 源视频文件
+     * @param outputFile 输出视频文件
+     * @param ranges 需要保留的时间范围，按输出顺序排列
+     */
+    public void trimSegments(final File sourceFile, final File outputFile, final List<TimeRange> ranges) 
+    {
+        trimSegments(VideoSource.of(sourceFile), OutputTarget.of(outputFile), ranges);
+    }
+    
+    /**
+     * 多段裁剪，源视频可以是文件或content URI，输出到文件或媒体库条目
+     * @param source 源视频
+     * @param output 输出位置
+     */
+    public void trimSegments(final VideoSource source, final OutputTarget output, final List<TimeRange> ranges) 
     {
         // 记录参数日志
-        Log.d(TAG, "开始剪辑视频: 源文件=" + sourceFile.getPath() + 
-              ", 输出=" + outputFile.getPath() + 
-              ", 开始=" + startTimeMs + "ms, 结束=" + endTimeMs + "ms");
+        Log.d(TAG, "开始剪辑视频: 源文件=" + source + 
+              ", 输出=" + output + 
+              ", 片段=" + ranges);
         
-        if (!sourceFile.exists()) 
+        if (!source.exists()) 
         {
             if (progressCallback != null) 
             {
@@ -71,8 +297,17 @@ public class VideoProcessor
             return;
         }
         
+        if (ranges == null || ranges.isEmpty()) 
+        {
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("没有需要保留的片段");
+            }
+            return;
+        }
+        
         // 确保输出目录存在
-        if (!outputFile.getParentFile().exists() && !outputFile.getParentFile().mkdirs()) 
+        if (!output.prepare()) 
         {
             if (progressCallback != null) 
             {
@@ -81,59 +316,30 @@ public class VideoProcessor
             return;
         }
         
-        isCancelled.set(false);
-        
-        // 在子线程中处理
-        new Thread(() -> 
+        // 在执行器中处理
+        executor.execute(() -> 
         {
-            MediaExtractor videoExtractor = null;
-            MediaExtractor audioExtractor = null;
+            if (trimMode == TRIM_MODE_DIRECT && trimDirect(source, output, ranges)) 
+            {
+                return;
+            }
+            
+            MediaExtractor extractor = null;
             MediaMuxer muxer = null;
+            boolean muxerStarted = false;
             try 
             {
                 // 创建MediaExtractor，从源文件提取媒体数据
-                videoExtractor = new MediaExtractor();
-                videoExtractor.setDataSource(sourceFile.getPath());
-                
-                audioExtractor = new MediaExtractor();
-                audioExtractor.setDataSource(sourceFile.getPath());
+                // 音视频共用一个提取器，容器只解析一次
+                ProcessingStats stats = new ProcessingStats(trimMode == TRIM_MODE_SMART ? "smart_trim" : "trim");
+                extractor = new MediaExtractor();
+                source.setDataSource(extractor);
                 
                 // 查找视频和音频轨道
-                int videoTrackIndex = -1;
-                int audioTrackIndex = -1;
-                MediaFormat videoFormat = null;
-                MediaFormat audioFormat = null;
-                
-                // 获取轨道数
-                int trackCount = videoExtractor.getTrackCount();
-                
-                // 查找视频轨道
-                for (int i = 0; i < trackCount; i++) 
-                {
-                    MediaFormat format = videoExtractor.getTrackFormat(i);
-                    String mime = format.getString(MediaFormat.KEY_MIME);
-                    if (mime != null && mime.startsWith("video/")) 
-                    {
-                        videoTrackIndex = i;
-                        videoFormat = format;
-                        break;
-                    }
-                }
-                
-                // 查找音频轨道
-                for (int i = 0; i < trackCount; i++) 
-                {
-                    MediaFormat format = audioExtractor.getTrackFormat(i);
-                    String mime = format.getString(MediaFormat.KEY_MIME);
-                    if (mime != null && mime.startsWith("audio/")) 
-                    {
-                        audioTrackIndex = i;
-                        audioFormat = format;
-                        break;
-                    }
-                }
+                int videoTrackIndex = findTrack(extractor, "video/");
+                int audioTrackIndex = findTrack(extractor, "audio/");
                 
-                if (videoTrackIndex < 0 || videoFormat == null) 
+                if (videoTrackIndex < 0) 
                 {
                     if (progressCallback != null) 
                     {
@@ -142,6 +348,9 @@ public class VideoProcessor
                     return;
                 }
                 
+                MediaFormat videoFormat = extractor.getTrackFormat(videoTrackIndex);
+                MediaFormat audioFormat = audioTrackIndex >= 0 ? extractor.getTrackFormat(audioTrackIndex) : null;
+                
                 Log.d(TAG, "找到视频轨道: " + videoTrackIndex + ", 音频轨道: " + 
                      (audioTrackIndex >= 0 ? audioTrackIndex : "无"));
                 
@@ -161,84 +370,109 @@ public class VideoProcessor
                 
                 Log.d(TAG, "视频时长: " + duration + "ms");
                 
-                // 安全获取帧率
-                float frameRate = DEFAULT_FRAME_RATE; // 默认值
-                try 
+                // 片段之间留出一帧的间隔，保证时间戳严格递增
+                long frameIntervalUs = (long) (1000000 / getFrameRate(videoFormat));
+                
+                // 关键帧位置优先从样本索引中二分查找，样本大小用于计算按字节的进度
+                SampleIndex index = loadIndex(source);
+                SampleIndex.Track videoIndex = index != null ? index.getVideoTrack() : null;
+                SampleIndex.Track audioIndex = index != null && audioFormat != null ? index.getAudioTrack() : null;
+                
+                // 先只选中视频轨道，确定每个片段的关键帧位置并按需重新编码片头
+                extractor.selectTrack(videoTrackIndex);
+                List<TrimPlan> plans = new ArrayList<>();
+                long totalDurationUs = 0;
+                for (TimeRange range : ranges) 
                 {
-                    if (videoFormat.containsKey(MediaFormat.KEY_FRAME_RATE)) 
+                    // 确保时间范围合法
+                    long actualStartMs = Math.max(0L, range.getStartMs());
+                    long actualEndMs = Math.min(duration > 0 ? duration : range.getEndMs(), range.getEndMs());
+                    
+                    Log.d(TAG, "调整后时间范围: 开始=" + actualStartMs + "ms, 结束=" + actualEndMs + "ms");
+                    
+                    if (actualStartMs >= actualEndMs) 
                     {
-                        // 尝试以浮点数方式获取
-                        try 
-                        {
-                            frameRate = videoFormat.getFloat(MediaFormat.KEY_FRAME_RATE);
-                        } 
-                        catch (ClassCastException e) 
+                        if (progressCallback != null) 
                         {
-                            // 如果类型不匹配，尝试以整数方式获取再转为浮点数
-                            frameRate = (float) videoFormat.getInteger(MediaFormat.KEY_FRAME_RATE);
+                            progressCallback.onFailed("无效的时间范围: " + actualStartMs + " >= " + actualEndMs);
                         }
+                        output.discard();
+                        return;
                     }
-                } 
-                catch (Exception e) 
-                {
-                    Log.w(TAG, "无法获取帧率，使用默认值：" + DEFAULT_FRAME_RATE, e);
-                }
-                
-                // 确保时间范围合法
-                long actualStartMs = Math.max(0L, startTimeMs);
-                long actualEndMs = Math.min(duration > 0 ? duration : endTimeMs, endTimeMs);
-                
-                Log.d(TAG, "调整后时间范围: 开始=" + actualStartMs + "ms, 结束=" + actualEndMs + "ms");
-                
-                if (actualStartMs >= actualEndMs) 
-                {
-                    if (progressCallback != null) 
+                    
+                    TrimPlan plan = planTrim(extractor, videoFormat, videoIndex, 
+                                             actualStartMs * 1000, actualEndMs * 1000, stats);
+                    plan.progressOffsetUs = totalDurationUs;
+                    totalDurationUs += plan.endTimeUs - plan.startTimeUs;
+                    plans.add(plan);
+                    
+                    if (isCancelled.get()) 
                     {
-                        progressCallback.onFailed("无效的时间范围: " + actualStartMs + " >= " + actualEndMs);
+                        if (progressCallback != null) 
+                        {
+                            progressCallback.onFailed("处理被取消");
+                        }
+                        output.discard();
+                        return;
                     }
-                    return;
                 }
                 
                 // 创建MediaMuxer，用于输出
-                muxer = new MediaMuxer(outputFile.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+                muxer = output.createMuxer();
                 
                 // 添加轨道到muxer
-                videoExtractor.selectTrack(videoTrackIndex);
                 int outputVideoTrackIndex = muxer.addTrack(videoFormat);
                 
                 // 添加音频轨道(如果有)
                 int outputAudioTrackIndex = -1;
-                if (audioTrackIndex >= 0 && audioFormat != null) 
+                if (audioFormat != null) 
                 {
-                    audioExtractor.selectTrack(audioTrackIndex);
+                    extractor.selectTrack(audioTrackIndex);
                     outputAudioTrackIndex = muxer.addTrack(audioFormat);
                 }
                 
                 // 开始合成
                 muxer.start();
+                muxerStarted = true;
                 
-                // 计算目标时长
-                long targetDurationMs = actualEndMs - actualStartMs;
+                // 按轨道格式确定缓冲区大小，音视频共用一个缓冲区
+                int maxSampleSize = SampleBufferPool.maxSampleSize(videoFormat);
+                if (audioFormat != null) 
+                {
+                    maxSampleSize = Math.max(maxSampleSize, SampleBufferPool.maxSampleSize(audioFormat));
+                }
                 
-                // 处理视频轨道
-                processTrack(videoExtractor, muxer, outputVideoTrackIndex, 
-                           actualStartMs, actualEndMs, targetDurationMs, true);
+                ProgressMeter meter = new ProgressMeter(progressCallback, 
+                        totalCopyBytes(plans, videoIndex, audioIndex, audioFormat != null), totalDurationUs);
                 
-                // 处理音频轨道(如果有)
-                if (outputAudioTrackIndex >= 0) 
+                // 依次处理各片段，每个片段的输出时间接在上一片段之后
+                long outputOffsetUs = 0;
+                for (TrimPlan plan : plans) 
                 {
-                    processTrack(audioExtractor, muxer, outputAudioTrackIndex, 
-                               actualStartMs, actualEndMs, targetDurationMs, false);
+                    if (isCancelled.get()) 
+                    {
+                        break;
+                    }
+                    plan.outputOffsetUs = outputOffsetUs;
+                    
+                    // 重新编码的片头先写入
+                    long lastHeadTimeUs = writeEncodedHead(muxer, outputVideoTrackIndex, plan);
+                    
+                    // 单次遍历，音视频样本交错写入
+                    long lastTimeUs = remuxInterleaved(extractor, muxer, 
+                                                     videoTrackIndex, outputVideoTrackIndex, 
+                                                     outputAudioTrackIndex, maxSampleSize, plan, meter, stats);
+                    outputOffsetUs = Math.max(lastHeadTimeUs, lastTimeUs) + frameIntervalUs;
                 }
                 
                 // 处理完成
                 if (!isCancelled.get()) 
                 {
-                    if (progressCallback != null) 
-                    {
-                        progressCallback.onSuccess(outputFile.getPath());
-                    }
-                    Log.d(TAG, "视频裁剪完成: " + outputFile.getPath());
+                    // 先结束muxer写入文件索引，再通知成功
+                    muxerStarted = false;
+                    muxer.stop();
+                    Log.d(TAG, "视频裁剪完成: " + output);
+                    reportSuccess(output.getPath(), stats, output.length());
                 } 
                 else 
                 {
@@ -248,7 +482,7 @@ public class VideoProcessor
                     }
                     
                     // 删除未完成的文件
-                    outputFile.delete();
+                    output.discard();
                 }
             } 
             catch (Exception e) 
@@ -260,29 +494,24 @@ public class VideoProcessor
                 }
                 
                 // 删除未完成的文件
-                if (outputFile.exists()) 
-                {
-                    outputFile.delete();
-                }
+                output.discard();
             } 
             finally 
             {
                 // 释放资源
-                if (videoExtractor != null) 
-                {
-                    videoExtractor.release();
-                }
-                
-                if (audioExtractor != null) 
+                if (extractor != null) 
                 {
-                    audioExtractor.release();
+                    extractor.release();
                 }
                 
                 if (muxer != null) 
                 {
                     try 
                     {
-                        muxer.stop();
+                        if (muxerStarted) 
+                        {
+                            muxer.stop();
+                        }
                         muxer.release();
                     } 
                     catch (Exception e) 
@@ -291,149 +520,922 @@ public class VideoProcessor
                     }
                 }
             }
-        }).start();
+        });
     }
     
     /**
-     * 处理单个媒体轨道(视频或音频)
+     * 批量提取片段：一次顺序读取源文件，把样本同时分发给多个打开的muxer
+     * 每个片段从起始位置之前的关键帧开始(关键帧模式)，相邻片段之间没有覆盖的区间直接seek跳过，
+     * 总读取量接近所有片段覆盖范围的一次读取
+     * 每个片段完成时回调onClipFinished，全部完成后onSuccess返回第一个片段所在目录，输出到媒体库时返回第一个片段的URI
+     * @param source 源视频
+     * @param clips 需要提取的片段
      */
-    private void processTrack(MediaExtractor extractor, MediaMuxer muxer, 
-                            int outputTrackIndex, long startTimeMs, long endTimeMs, 
-                            long targetDurationMs, boolean isVideo) throws IOException 
+    public void extractClips(final VideoSource source, final List<ClipSpec> clips) 
     {
-        // 创建ByteBuffer用于存放数据
-        int maxBufferSize = 1024 * 1024; // 默认1MB
-        
-        // 将提取器定位到起始时间附近(微秒)
-        long startTimeUs = startTimeMs * 1000;
-        extractor.seekTo(startTimeUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        Log.d(TAG, "开始批量提取: 源文件=" + source + ", 片段数=" + (clips != null ? clips.size() : 0));
         
-        // 获取实际的开始时间
-        long actualStartTimeUs = extractor.getSampleTime();
-        
-        // 如果不是视频轨道或者起始时间早于请求时间，进一步调整
-        if (!isVideo || actualStartTimeUs < startTimeUs) 
+        if (!source.exists()) 
         {
-            while (actualStartTimeUs < startTimeUs) 
+            if (progressCallback != null) 
             {
-                // 前进到下一个样本
-                if (!extractor.advance()) 
-                {
-                    // 如果没有更多样本，退出循环
-                    break;
-                }
-                actualStartTimeUs = extractor.getSampleTime();
+                progressCallback.onFailed("源文件不存在");
             }
+            return;
         }
         
-        Log.d(TAG, (isVideo ? "视频" : "音频") + " 实际起始时间: " + (actualStartTimeUs / 1000) + "ms");
+        if (clips == null || clips.isEmpty()) 
+        {
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("没有需要提取的片段");
+            }
+            return;
+        }
         
-        // 如果是音频轨道，需要进一步前进到起始时间，避免音画不同步
-        if (!isVideo) 
+        executor.execute(() -> 
         {
-            while (extractor.getSampleTime() < startTimeUs) 
+            MediaExtractor extractor = null;
+            List<ClipState> states = new ArrayList<>();
+            try 
             {
-                if (!extractor.advance()) 
+                ProcessingStats stats = new ProcessingStats("extract_clips");
+                extractor = new MediaExtractor();
+                source.setDataSource(extractor);
+                
+                int videoTrackIndex = findTrack(extractor, "video/");
+                int audioTrackIndex = findTrack(extractor, "audio/");
+                if (videoTrackIndex < 0) 
                 {
-                    break;
+                    if (progressCallback != null) 
+                    {
+                        progressCallback.onFailed("未找到视频轨道");
+                    }
+                    return;
+                }
+                
+                MediaFormat videoFormat = extractor.getTrackFormat(videoTrackIndex);
+                MediaFormat audioFormat = audioTrackIndex >= 0 ? extractor.getTrackFormat(audioTrackIndex) : null;
+                
+                // 只选中视频轨道时查询各片段的关键帧，只访问索引，不读取样本数据
+                SampleIndex index = loadIndex(source);
+                SampleIndex.Track videoIndex = index != null ? index.getVideoTrack() : null;
+                SampleIndex.Track audioIndex = index != null && audioFormat != null ? index.getAudioTrack() : null;
+                extractor.selectTrack(videoTrackIndex);
+                for (int i = 0; i < clips.size(); i++) 
+                {
+                    ClipSpec clip = clips.get(i);
+                    long startUs = Math.max(0L, clip.getRange().getStartMs()) * 1000;
+                    long endUs = clip.getRange().getEndMs() * 1000;
+                    if (startUs >= endUs) 
+                    {
+                        throw new IllegalArgumentException("无效的时间范围: " + clip.getRange());
+                    }
+                    if (!clip.getOutput().prepare()) 
+                    {
+                        throw new IOException("无法创建输出目录: " + clip.getOutput());
+                    }
+                    long keyframeUs;
+                    if (videoIndex != null) 
+                    {
+                        keyframeUs = Math.max(0L, videoIndex.keyframeAtOrBefore(startUs));
+                    } 
+                    else 
+                    {
+                        extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                        keyframeUs = Math.max(0L, extractor.getSampleTime());
+                    }
+                    states.add(new ClipState(i, clip, keyframeUs, endUs));
+                }
+                if (audioTrackIndex >= 0) 
+                {
+                    extractor.selectTrack(audioTrackIndex);
+                }
+                
+                // 按关键帧位置排序，读取过程中依次打开
+                List<ClipState> pending = new ArrayList<>(states);
+                Collections.sort(pending, (a, b) -> Long.compare(a.keyframeUs, b.keyframeUs));
+                
+                int maxSampleSize = SampleBufferPool.maxSampleSize(videoFormat);
+                if (audioFormat != null) 
+                {
+                    maxSampleSize = Math.max(maxSampleSize, SampleBufferPool.maxSampleSize(audioFormat));
+                }
+                
+                SampleBufferPool bufferPool = SampleBufferPool.shared();
+                ByteBuffer buffer = bufferPool.acquire(maxSampleSize);
+                stats.onBufferAcquired(buffer.capacity());
+                try 
+                {
+                    fanOutSamples(extractor, buffer, videoTrackIndex, videoFormat, audioFormat, pending, 
+                            createClipMeter(pending, videoIndex, audioIndex, audioFormat != null), stats);
+                } 
+                finally 
+                {
+                    stats.onBufferReleased(buffer.capacity());
+                    bufferPool.release(buffer);
+                }
+                
+                if (isCancelled.get()) 
+                {
+                    if (progressCallback != null) 
+                    {
+                        progressCallback.onFailed("处理被取消");
+                    }
+                    for (ClipState state : states) 
+                    {
+                        state.abort();
+                    }
+                    return;
+                }
+                
+                long outputBytes = 0;
+                for (ClipSpec clip : clips) 
+                {
+                    outputBytes += clip.getOutput().length();
+                }
+                Log.d(TAG, "批量提取完成: " + clips.size() + " 个片段");
+                OutputTarget first = clips.get(0).getOutput();
+                reportSuccess(first.getFile() != null ? first.getFile().getParent() : first.getPath(), stats, outputBytes);
+            } 
+            catch (Exception e) 
+            {
+                Log.e(TAG, "批量提取失败", e);
+                for (ClipState state : states) 
+                {
+                    state.abort();
+                }
+                if (progressCallback != null) 
+                {
+                    progressCallback.onFailed("处理失败: " + e.getMessage());
+                }
+            } 
+            finally 
+            {
+                if (extractor != null) 
+                {
+                    extractor.release();
                 }
             }
-        }
-        
-        // 计算时间基准，用于调整输出时间戳
-        long baseTimeUs = extractor.getSampleTime();
-        
-        // 处理轨道数据
-        ByteBuffer buffer = ByteBuffer.allocate(maxBufferSize);
+        });
+    }
+    
+    /**
+     * 批量提取的主循环
+     * @param pending 按关键帧排序、尚未打开的片段
+     */
+    private void fanOutSamples(MediaExtractor extractor, ByteBuffer buffer, 
+                             int videoTrackIndex, MediaFormat videoFormat, MediaFormat audioFormat, 
+                             List<ClipState> pending, ProgressMeter meter, ProcessingStats stats) throws IOException 
+    {
+        List<ClipState> active = new ArrayList<>();
         MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+        int total = pending.size();
+        int next = 0;
+        long lastSeekUs = -1;
+        long firstKeyframeUs = pending.get(0).keyframeUs;
         
-        boolean sawEOS = false;
-        long lastProgressReportTime = System.currentTimeMillis();
-        
-        while (!sawEOS && !isCancelled.get()) 
+        while (!isCancelled.get() && (next < total || !active.isEmpty())) 
         {
-            // 清空缓冲区
-            buffer.clear();
-            
-            // 读取下一个样本
-            int sampleSize = extractor.readSampleData(buffer, 0);
+            // 没有打开的片段时，直接跳到下一个片段的关键帧，跳过未覆盖的区间
+            if (active.isEmpty() && pending.get(next).keyframeUs != lastSeekUs) 
+            {
+                lastSeekUs = pending.get(next).keyframeUs;
+                extractor.seekTo(lastSeekUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
             
-            if (sampleSize < 0) 
+            int trackIndex = extractor.getSampleTrackIndex();
+            if (trackIndex < 0) 
             {
-                // 没有更多样本
-                sawEOS = true;
                 break;
             }
-            
-            // 获取当前样本时间
+            boolean isVideo = trackIndex == videoTrackIndex;
             long sampleTimeUs = extractor.getSampleTime();
-            long sampleTimeMs = sampleTimeUs / 1000;
             
-            // 检查是否超出范围
-            if (sampleTimeMs > endTimeMs) 
+            // 打开已经到达关键帧的片段
+            while (next < total && pending.get(next).keyframeUs <= sampleTimeUs) 
             {
-                sawEOS = true;
-                break;
+                ClipState state = pending.get(next++);
+                state.open(videoFormat, audioFormat);
+                active.add(state);
             }
             
-            // 调整输出时间戳
-            long presentationTimeUs = sampleTimeUs - baseTimeUs;
+            // 判断哪些片段需要当前样本
+            boolean needed = false;
+            for (ClipState state : active) 
+            {
+                if (state.accepts(isVideo, sampleTimeUs, extractor.getSampleFlags())) 
+                {
+                    needed = true;
+                }
+            }
             
-            // 填充缓冲区信息
-            bufferInfo.offset = 0;
+            if (needed) 
+            {
+                // 样本只读取一次，写入所有需要它的muxer
+                buffer.clear();
+                long readStart = System.nanoTime();
+                int sampleSize = extractor.readSampleData(buffer, 0);
+                long readEnd = System.nanoTime();
+                if (sampleSize < 0) 
+                {
+                    break;
+                }
+                stats.onSampleRead(isVideo, sampleSize, readEnd - readStart);
+                bufferInfo.offset = 0;
+                bufferInfo.size = sampleSize;
+                bufferInfo.flags = extractor.getSampleFlags();
+                for (ClipState state : active) 
+                {
+                    if (state.wantsCurrent) 
+                    {
+                        bufferInfo.presentationTimeUs = sampleTimeUs - state.keyframeUs;
+                        state.muxer.writeSampleData(isVideo ? state.videoTrack : state.audioTrack, buffer, bufferInfo);
+                    }
+                }
+                stats.onSampleWritten(System.nanoTime() - readEnd);
+                meter.onSample(sampleSize, isVideo, sampleTimeUs - firstKeyframeUs);
+            }
+            
+            // 关闭已完成的片段
+            for (int i = active.size() - 1; i >= 0; i--) 
+            {
+                ClipState state = active.get(i);
+                if (state.isDone(audioFormat != null)) 
+                {
+                    active.remove(i);
+                    finishClip(state);
+                }
+            }
+            
+            extractor.advance();
+        }
+        
+        // 源文件结束时仍未完成的片段按已写入内容结束
+        if (!isCancelled.get()) 
+        {
+            for (ClipState state : active) 
+            {
+                finishClip(state);
+            }
+        }
+    }
+    
+    private void finishClip(ClipState state) 
+    {
+        state.finish();
+        Log.d(TAG, "片段完成: " + state.clip);
+        if (progressCallback != null) 
+        {
+            progressCallback.onClipFinished(state.index, state.clip.getOutput().getPath());
+        }
+    }
+    
+    /**
+     * 批量提取中单个片段的写入状态
+     */
+    private static final class ClipState 
+    {
+        final int index;
+        final ClipSpec clip;
+        final long keyframeUs;
+        final long endUs;
+        
+        MediaMuxer muxer;
+        int videoTrack = -1;
+        int audioTrack = -1;
+        boolean videoStarted = false;
+        boolean videoDone = false;
+        boolean audioDone = false;
+        boolean wantsCurrent = false;
+        
+        ClipState(int index, ClipSpec clip, long keyframeUs, long endUs) 
+        {
+            this.index = index;
+            this.clip = clip;
+            this.keyframeUs = keyframeUs;
+            this.endUs = endUs;
+        }
+        
+        void open(MediaFormat videoFormat, MediaFormat audioFormat) throws IOException 
+        {
+            muxer = clip.getOutput().createMuxer();
+            videoTrack = muxer.addTrack(videoFormat);
+            if (audioFormat != null) 
+            {
+                audioTrack = muxer.addTrack(audioFormat);
+            }
+            muxer.start();
+        }
+        
+        /**
+         * 判断是否需要当前样本，并更新轨道结束状态
+         */
+        boolean accepts(boolean isVideo, long sampleTimeUs, int flags) 
+        {
+            wantsCurrent = false;
+            if (sampleTimeUs > endUs) 
+            {
+                if (isVideo) 
+                {
+                    videoDone = true;
+                } 
+                else 
+                {
+                    audioDone = true;
+                }
+                return false;
+            }
+            if (sampleTimeUs < keyframeUs) 
+            {
+                return false;
+            }
+            if (isVideo) 
+            {
+                // 视频必须从关键帧开始
+                if (!videoStarted && (flags & MediaExtractor.SAMPLE_FLAG_SYNC) == 0) 
+                {
+                    return false;
+                }
+                videoStarted = true;
+                wantsCurrent = !videoDone;
+            } 
+            else 
+            {
+                wantsCurrent = !audioDone;
+            }
+            return wantsCurrent;
+        }
+        
+        boolean isDone(boolean hasAudio) 
+        {
+            return videoDone && (audioDone || !hasAudio);
+        }
+        
+        void finish() 
+        {
+            if (muxer != null) 
+            {
+                try 
+                {
+                    muxer.stop();
+                } 
+                finally 
+                {
+                    muxer.release();
+                    muxer = null;
+                }
+            }
+        }
+        
+        /**
+         * 放弃未完成的片段并删除输出
+         */
+        void abort() 
+        {
+            if (muxer != null) 
+            {
+                try 
+                {
+                    muxer.stop();
+                } 
+                catch (Exception e) 
+                {
+                    Log.w(TAG, "停止片段muxer失败", e);
+                }
+                muxer.release();
+                muxer = null;
+                clip.getOutput().discard();
+            }
+        }
+    }
+    
+    /**
+     * 结束统计并回调成功
+     * @param outputBytes 输出文件的总字节数
+     */
+    private void reportSuccess(String outputPath, ProcessingStats stats, long outputBytes) 
+    {
+        stats.finish(outputBytes);
+        Log.d(TAG, "处理统计: " + stats);
+        if (progressCallback != null) 
+        {
+            progressCallback.onSuccess(outputPath, stats);
+        }
+    }
+    
+    /**
+     * 获取源文件的样本索引，首次处理某个文件时建立并持久化
+     * @return 无法建立时返回null，调用方退回提取器定位
+     */
+    private static SampleIndex loadIndex(VideoSource source) 
+    {
+        try 
+        {
+            return SampleIndexCache.get().getIndex(source);
+        } 
+        catch (IOException | RuntimeException e) 
+        {
+            Log.w(TAG, "建立样本索引失败，使用提取器定位", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 裁剪需要拷贝的总字节数：各片段视频和音频拷贝区间内的样本大小之和
+     * @return 没有索引或索引缺少样本大小时返回-1
+     */
+    private static long totalCopyBytes(List<TrimPlan> plans, SampleIndex.Track videoIndex, 
+                                       SampleIndex.Track audioIndex, boolean hasAudio) 
+    {
+        if (videoIndex == null || (hasAudio && audioIndex == null)) 
+        {
+            return -1;
+        }
+        long total = 0;
+        for (TrimPlan plan : plans) 
+        {
+            long videoBytes = videoIndex.bytesBetween(plan.videoCopyFromUs, plan.endTimeUs);
+            long audioBytes = audioIndex != null ? audioIndex.bytesBetween(plan.audioCopyFromUs, plan.endTimeUs) : 0;
+            if (videoBytes < 0 || audioBytes < 0) 
+            {
+                return -1;
+            }
+            total += videoBytes + audioBytes;
+        }
+        return total;
+    }
+    
+    /**
+     * 批量提取的进度计量，总量为所有片段覆盖区间的并集，重叠部分只读取一次
+     * @param pending 按关键帧排序的片段
+     */
+    private ProgressMeter createClipMeter(List<ClipState> pending, SampleIndex.Track videoIndex, 
+                                          SampleIndex.Track audioIndex, boolean hasAudio) 
+    {
+        boolean bytesKnown = videoIndex != null && (!hasAudio || audioIndex != null);
+        long totalBytes = 0;
+        long firstUs = pending.get(0).keyframeUs;
+        long lastUs = firstUs;
+        long spanStartUs = firstUs;
+        long spanEndUs = -1;
+        for (ClipState state : pending) 
+        {
+            lastUs = Math.max(lastUs, state.endUs);
+            if (state.keyframeUs > spanEndUs && spanEndUs >= 0) 
+            {
+                totalBytes = addSpanBytes(totalBytes, bytesKnown, videoIndex, audioIndex, spanStartUs, spanEndUs);
+                spanStartUs = state.keyframeUs;
+            }
+            spanEndUs = Math.max(spanEndUs, state.endUs);
+        }
+        totalBytes = addSpanBytes(totalBytes, bytesKnown, videoIndex, audioIndex, spanStartUs, spanEndUs);
+        return new ProgressMeter(progressCallback, totalBytes, lastUs - firstUs);
+    }
+    
+    private static long addSpanBytes(long total, boolean bytesKnown, SampleIndex.Track videoIndex, 
+                                     SampleIndex.Track audioIndex, long fromUs, long toUs) 
+    {
+        if (!bytesKnown || total < 0) 
+        {
+            return -1;
+        }
+        long videoBytes = videoIndex.bytesBetween(fromUs, toUs);
+        long audioBytes = audioIndex != null ? audioIndex.bytesBetween(fromUs, toUs) : 0;
+        return videoBytes < 0 || audioBytes < 0 ? -1 : total + videoBytes + audioBytes;
+    }
+    
+    /**
+     * 查找第一个指定类型的轨道
+     * @param mimePrefix "video/" 或 "audio/"
+     * @return 轨道索引，没有时返回-1
+     */
+    private static int findTrack(MediaExtractor extractor, String mimePrefix) 
+    {
+        int trackCount = extractor.getTrackCount();
+        for (int i = 0; i < trackCount; i++) 
+        {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(mimePrefix)) 
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 安全获取帧率
+     */
+    private static float getFrameRate(MediaFormat videoFormat) 
+    {
+        float frameRate = DEFAULT_FRAME_RATE; // 默认值
+        try 
+        {
+            if (videoFormat.containsKey(MediaFormat.KEY_FRAME_RATE)) 
+            {
+                // 尝试以浮点数方式获取
+                try 
+                {
+                    frameRate = videoFormat.getFloat(MediaFormat.KEY_FRAME_RATE);
+                } 
+                catch (ClassCastException e) 
+                {
+                    // 如果类型不匹配，尝试以整数方式获取再转为浮点数
+                    frameRate = (float) videoFormat.getInteger(MediaFormat.KEY_FRAME_RATE);
+                }
+            }
+        } 
+        catch (Exception e) 
+        {
+            Log.w(TAG, "无法获取帧率，使用默认值：" + DEFAULT_FRAME_RATE, e);
+        }
+        return frameRate > 0 ? frameRate : DEFAULT_FRAME_RATE;
+    }
+    
+    /**
+     * 裁剪计划：各轨道从哪里开始拷贝，以及输出时间戳的基准
+     */
+    private static final class TrimPlan 
+    {
+        long startTimeUs;       // 请求的起始时间
+        long endTimeUs;         // 请求的结束时间
+        long seekTimeUs;        // 拷贝开始时的seek位置(起始位置之前的关键帧)
+        long videoCopyFromUs;   // 视频从此时间的样本开始直接拷贝
+        long audioCopyFromUs;   // 音频从此时间的样本开始拷贝
+        long baseTimeUs;        // 该源时间映射为片段的输出起点
+        long outputOffsetUs;    // 片段在输出文件中的起始时间
+        long progressOffsetUs;  // 之前片段的总时长，用于计算整体进度
+        SmartTrimEncoder.Result head; // 重新编码的片头，关键帧模式下为null
+    }
+    
+    /**
+     * 确定裁剪计划
+     * 关键帧模式：所有轨道都从起始位置之前的关键帧开始，音视频保持同步
+     * 智能模式：重新编码[起始位置, 下一个关键帧)，之后的帧直接拷贝，裁剪点帧精确
+     */
+    private TrimPlan planTrim(MediaExtractor extractor, MediaFormat videoFormat, SampleIndex.Track videoIndex, 
+                            long startTimeUs, long endTimeUs, ProcessingStats stats) throws IOException 
+    {
+        TrimPlan plan = new TrimPlan();
+        plan.startTimeUs = startTimeUs;
+        plan.endTimeUs = endTimeUs;
+        
+        long keyframeTimeUs;
+        if (videoIndex != null) 
+        {
+            keyframeTimeUs = Math.max(0L, videoIndex.keyframeAtOrBefore(startTimeUs));
+        } 
+        else 
+        {
+            extractor.seekTo(startTimeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            keyframeTimeUs = Math.max(0L, extractor.getSampleTime());
+        }
+        plan.seekTimeUs = keyframeTimeUs;
+        plan.videoCopyFromUs = keyframeTimeUs;
+        plan.audioCopyFromUs = keyframeTimeUs;
+        plan.baseTimeUs = keyframeTimeUs;
+        
+        if (trimMode != TRIM_MODE_SMART || keyframeTimeUs >= startTimeUs) 
+        {
+            Log.d(TAG, "视频 实际起始时间: " + (keyframeTimeUs / 1000) + "ms");
+            return plan;
+        }
+        
+        // 查找起始位置之后的关键帧
+        long nextKeyframeUs;
+        if (videoIndex != null) 
+        {
+            nextKeyframeUs = videoIndex.keyframeAtOrAfter(startTimeUs + 1);
+        } 
+        else 
+        {
+            extractor.seekTo(startTimeUs, MediaExtractor.SEEK_TO_NEXT_SYNC);
+            nextKeyframeUs = extractor.getSampleTime();
+        }
+        if (nextKeyframeUs <= startTimeUs) 
+        {
+            nextKeyframeUs = Long.MAX_VALUE;
+        }
+        long headEndUs = Math.min(nextKeyframeUs, endTimeUs + 1);
+        
+        Log.d(TAG, "智能裁剪: 关键帧=" + (keyframeTimeUs / 1000) + "ms, 重新编码至 " 
+              + (headEndUs == Long.MAX_VALUE ? "结尾" : (headEndUs / 1000) + "ms"));
+        
+        SmartTrimEncoder.Result head = SmartTrimEncoder.encodeHead(
+                extractor, videoFormat, keyframeTimeUs, startTimeUs, headEndUs, isCancelled, stats);
+        if (head == null) 
+        {
+            Log.w(TAG, "片头重新编码不可用，退回关键帧裁剪");
+            return plan;
+        }
+        
+        plan.head = head;
+        plan.videoCopyFromUs = headEndUs;
+        plan.audioCopyFromUs = startTimeUs;
+        plan.baseTimeUs = startTimeUs;
+        return plan;
+    }
+    
+    /**
+     * 写入重新编码的片头样本
+     * @return 写入的最大输出时间戳
+     */
+    private long writeEncodedHead(MediaMuxer muxer, int outputVideoTrackIndex, TrimPlan plan) 
+    {
+        long lastTimeUs = plan.outputOffsetUs;
+        if (plan.head == null) 
+        {
+            return lastTimeUs;
+        }
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        for (SmartTrimEncoder.EncodedSample sample : plan.head.samples) 
+        {
+            info.offset = 0;
+            info.size = sample.data.remaining();
+            info.presentationTimeUs = sample.presentationTimeUs - plan.baseTimeUs + plan.outputOffsetUs;
+            info.flags = sample.flags & ~MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+            muxer.writeSampleData(outputVideoTrackIndex, sample.data, info);
+            lastTimeUs = Math.max(lastTimeUs, info.presentationTimeUs);
+        }
+        return lastTimeUs;
+    }
+    
+    /**
+     * 单次遍历提取器，把音视频样本按时间顺序交错写入muxer
+     * 同时选中多个轨道时，MediaExtractor总是返回时间戳最小的下一个样本，
+     * 因此按读取顺序写入即得到交错的输出，muxer无需缓存整条轨道
+     * @return 写入的最大输出时间戳
+     */
+    private long remuxInterleaved(MediaExtractor extractor, MediaMuxer muxer, 
+                                int videoTrackIndex, int outputVideoTrackIndex, 
+                                int outputAudioTrackIndex, int maxSampleSize, TrimPlan plan, 
+                                ProgressMeter meter, ProcessingStats stats) 
+    {
+        // 定位到起始时间之前的关键帧，所有选中的轨道一起定位
+        extractor.seekTo(plan.seekTimeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        
+        // 从缓冲区池获取直接缓冲区，循环中不再分配内存
+        SampleBufferPool bufferPool = SampleBufferPool.shared();
+        ByteBuffer buffer = bufferPool.acquire(maxSampleSize);
+        stats.onBufferAcquired(buffer.capacity());
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+        try 
+        {
+            return copySamples(extractor, muxer, buffer, bufferInfo, 
+                      videoTrackIndex, outputVideoTrackIndex, outputAudioTrackIndex, plan, meter, stats);
+        } 
+        finally 
+        {
+            stats.onBufferReleased(buffer.capacity());
+            bufferPool.release(buffer);
+        }
+    }
+    
+    /**
+     * 样本拷贝循环
+     * @return 写入的最大输出时间戳
+     */
+    private long copySamples(MediaExtractor extractor, MediaMuxer muxer, 
+                           ByteBuffer buffer, MediaCodec.BufferInfo bufferInfo, 
+                           int videoTrackIndex, int outputVideoTrackIndex, int outputAudioTrackIndex, 
+                           TrimPlan plan, ProgressMeter meter, ProcessingStats stats) 
+    {
+        long startTimeUs = plan.startTimeUs;
+        long endTimeUs = plan.endTimeUs;
+        long lastTimeUs = plan.outputOffsetUs;
+        
+        boolean videoDone = false;
+        boolean audioDone = outputAudioTrackIndex < 0;
+        
+        while (!isCancelled.get() && !(videoDone && audioDone)) 
+        {
+            int trackIndex = extractor.getSampleTrackIndex();
+            if (trackIndex < 0) 
+            {
+                // 没有更多样本
+                break;
+            }
+            
+            boolean isVideo = trackIndex == videoTrackIndex;
+            long sampleTimeUs = extractor.getSampleTime();
+            
+            // 超出范围的轨道标记为结束，其余轨道继续
+            if (sampleTimeUs > endTimeUs) 
+            {
+                if (isVideo) 
+                {
+                    videoDone = true;
+                } 
+                else 
+                {
+                    audioDone = true;
+                }
+                extractor.advance();
+                continue;
+            }
+            
+            // 跳过拷贝起点之前的样本：视频的片头(包括拷贝起点关键帧的前导帧)已重新编码，
+            // 音频从同一时间基准开始，避免音画不同步
+            if (sampleTimeUs < (isVideo ? plan.videoCopyFromUs : plan.audioCopyFromUs)) 
+            {
+                extractor.advance();
+                continue;
+            }
+            
+            // 读取样本
+            buffer.clear();
+            long readStart = System.nanoTime();
+            int sampleSize = extractor.readSampleData(buffer, 0);
+            long readEnd = System.nanoTime();
+            if (sampleSize < 0) 
+            {
+                break;
+            }
+            stats.onSampleRead(isVideo, sampleSize, readEnd - readStart);
+            
+            int outputTrackIndex = isVideo ? outputVideoTrackIndex : outputAudioTrackIndex;
+            long presentationTimeUs = sampleTimeUs - plan.baseTimeUs + plan.outputOffsetUs;
+            lastTimeUs = Math.max(lastTimeUs, presentationTimeUs);
+            
+            // 填充缓冲区信息
+            bufferInfo.offset = 0;
             bufferInfo.size = sampleSize;
             bufferInfo.presentationTimeUs = presentationTimeUs;
             bufferInfo.flags = extractor.getSampleFlags();
             
             // 写入数据到muxer
+            long writeStart = System.nanoTime();
             muxer.writeSampleData(outputTrackIndex, buffer, bufferInfo);
+            stats.onSampleWritten(System.nanoTime() - writeStart);
             
             // 前进到下一个样本
             extractor.advance();
             
-            // 只对视频轨道更新进度(避免重复计算)
-            if (isVideo) 
+            // 音视频样本都计入进度，索引没有样本大小时按时间位置计算
+            meter.onSample(sampleSize, isVideo, plan.progressOffsetUs + sampleTimeUs - startTimeUs);
+        }
+        return lastTimeUs;
+    }
+    
+    /**
+     * 应用滤镜效果
+     * 解码帧经SurfaceTexture交给片元着色器处理后直接绘制到编码器输入Surface，音频原样拷贝
+     * @param filterType 滤镜标识，见VideoFilter.getId()
+     */
+    public void applyFilter(File sourceFile, File outputFile, String filterType) 
+    {
+        applyFilter(VideoSource.of(sourceFile), OutputTarget.of(outputFile), filterType);
+    }
+    
+    /**
+     * 应用滤镜效果，源视频可以是文件或content URI，输出到文件或媒体库条目
+     * @param output 输出位置
+     */
+    public void applyFilter(VideoSource source, OutputTarget output, String filterType) 
+    {
+        Log.d(TAG, "开始应用滤镜: 源文件=" + source + ", 输出=" + output + ", 滤镜=" + filterType);
+        
+        if (!source.exists()) 
+        {
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("源文件不存在");
+            }
+            return;
+        }
+        
+        final VideoFilter filter = VideoFilter.fromId(filterType);
+        if (filter == null) 
+        {
+            if (progressCallback != null) 
             {
-                // 计算进度
-                float progress = (float)(sampleTimeMs - startTimeMs) / targetDurationMs;
-                progress = Math.min(1.0f, Math.max(0.0f, progress));
+                progressCallback.onFailed("未知的滤镜: " + filterType);
+            }
+            return;
+        }
+        
+        if (!output.prepare()) 
+        {
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("无法创建输出目录");
+            }
+            return;
+        }
+        
+        executor.execute(() -> 
+        {
+            try 
+            {
+                long[] lastReportTime = {0L};
+                FilterTranscoder.Listener listener = progress -> 
+                {
+                    long currentTime = System.currentTimeMillis();
+                    if (currentTime - lastReportTime[0] > 100 && progressCallback != null) 
+                    { // 至少间隔100毫秒
+                        lastReportTime[0] = currentTime;
+                        progressCallback.onProgress(progress);
+                    }
+                };
+                ProcessingStats stats = new ProcessingStats("filter");
+                boolean completed = parallelTranscoding
+                        ? ParallelTranscoder.transcode(source, output, filter, isCancelled, listener, stats)
+                        : FilterTranscoder.transcode(source, output, filter, isCancelled, listener, stats);
                 
-                // 限制进度更新频率，减少UI负担
-                long currentTime = System.currentTimeMillis();
-                if (currentTime - lastProgressReportTime > 100) 
-                { // 至少间隔100毫秒
-                    lastProgressReportTime = currentTime;
+                if (completed) 
+                {
+                    Log.d(TAG, "滤镜处理完成: " + output);
+                    reportSuccess(output.getPath(), stats, output.length());
+                } 
+                else 
+                {
+                    output.discard();
                     if (progressCallback != null) 
                     {
-                        progressCallback.onProgress(progress);
+                        progressCallback.onFailed("处理被取消");
                     }
                 }
+            } 
+            catch (Exception e) 
+            {
+                Log.e(TAG, "滤镜处理失败", e);
+                output.discard();
+                if (progressCallback != null) 
+                {
+                    progressCallback.onFailed("处理失败: " + e.getMessage());
+                }
             }
-        }
+        });
     }
     
     /**
-     * 应用滤镜效果（基础实现）
+     * 提取视频缩略图
+     * 取指定时间附近的关键帧，结果经过ThumbnailEngine缓存，重复请求不会再次解码
+     * @param context 用于启用缩略图的磁盘缓存
      */
-    public void applyFilter(File sourceFile, File outputFile, String filterType) 
+    public void extractThumbnail(Context context, File sourceFile, File outputFile, long timeMs) 
     {
-        // TODO: 实现滤镜效果
-        // 这需要使用OpenGL和MediaCodec结合的方式，比较复杂
-        if (progressCallback != null) 
-        {
-            progressCallback.onFailed("滤镜功能尚未实现");
-        }
+        extractThumbnail(context, VideoSource.of(sourceFile), outputFile, timeMs);
     }
     
     /**
-     * 提取视频缩略图
+     * 提取缩略图，源视频可以是文件或content URI
      */
-    public void extractThumbnail(File sourceFile, File outputFile, long timeMs) 
+    public void extractThumbnail(Context context, VideoSource source, File outputFile, long timeMs) 
     {
-        // TODO: 提取指定时间的视频帧作为缩略图
-        if (progressCallback != null) 
+        if (!source.exists()) 
         {
-            progressCallback.onFailed("缩略图提取功能尚未实现");
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("源文件不存在");
+            }
+            return;
         }
+        
+        File parent = outputFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) 
+        {
+            if (progressCallback != null) 
+            {
+                progressCallback.onFailed("无法创建输出目录");
+            }
+            return;
+        }
+
+        ThumbnailEngine engine = ThumbnailEngine.get(context);
+        executor.execute(() -> 
+        {
+            ProcessingStats stats = new ProcessingStats("thumbnail");
+            Bitmap bitmap = engine.getThumbnail(source, timeMs, ThumbnailEngine.DEFAULT_MAX_SIZE);
+            if (bitmap == null) 
+            {
+                if (progressCallback != null) 
+                {
+                    progressCallback.onFailed("无法解码视频帧");
+                }
+                return;
+            }
+
+            try (OutputStream out = new FileOutputStream(outputFile)) 
+            {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+            }
+            catch (IOException e) 
+            {
+                Log.e(TAG, "保存缩略图失败", e);
+                if (progressCallback != null) 
+                {
+                    progressCallback.onFailed("保存缩略图失败: " + e.getMessage());
+                }
+                return;
+            }
+
+            if (progressCallback != null) 
+            {
+                progressCallback.onProgress(1f);
+            }
+            reportSuccess(outputFile.getAbsolutePath(), stats, outputFile.length());
+        });
     }
-} 
\ No newline at end of file
+} 
@@ -0,0 +1,215 @@
+package com.example.ccat.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaExtractor;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 待处理的源视频
+ * 可以是本地文件，也可以是content URI(媒体库或文档提供器)
+ * content URI通过ParcelFileDescriptor直接读取，不需要DATA列，也不需要先把视频拷贝到应用目录
+ */
+public final class VideoSource 
+{
+    private static final String TAG = "VideoSource";
+
+    private final File file;
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final String name;
+    private final long length;
+    private final long lastModified;
+
+    private VideoSource(File file, ContentResolver resolver, Uri uri, String name, long length, long lastModified) 
+    {
+        this.file = file;
+        this.resolver = resolver;
+        this.uri = uri;
+        this.name = name;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    public static VideoSource of(File file) 
+    {
+        return new VideoSource(file, null, null, file.getName(), -1, -1);
+    }
+
+    /**
+     * content URI的名称、大小和修改时间在这里查询一次，之后不再变化
+     * 查询失败时exists()返回false
+     */
+    public static VideoSource of(Context context, Uri uri) 
+    {
+        ContentResolver resolver = context.getContentResolver();
+        String name = uri.getLastPathSegment();
+        long length = -1;
+        long lastModified = -1;
+        try (Cursor cursor = resolver.query(uri, null, null, null, null)) 
+        {
+            if (cursor != null && cursor.moveToFirst()) 
+            {
+                int nameColumn = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                int sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+                int mediaModifiedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+                int documentModifiedColumn = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                if (nameColumn >= 0 && !cursor.isNull(nameColumn)) 
+                {
+                    name = cursor.getString(nameColumn);
+                }
+                if (sizeColumn >= 0 && !cursor.isNull(sizeColumn)) 
+                {
+                    length = cursor.getLong(sizeColumn);
+                }
+                // 媒体库的修改时间单位是秒，文档提供器是毫秒
+                if (mediaModifiedColumn >= 0 && !cursor.isNull(mediaModifiedColumn)) 
+                {
+                    lastModified = cursor.getLong(mediaModifiedColumn) * 1000;
+                }
+                else if (documentModifiedColumn >= 0 && !cursor.isNull(documentModifiedColumn)) 
+                {
+                    lastModified = cursor.getLong(documentModifiedColumn);
+                }
+            }
+        }
+        catch (RuntimeException e) 
+        {
+            Log.w(TAG, "查询源视频信息失败: " + uri, e);
+        }
+        return new VideoSource(null, resolver, uri, name, length, lastModified);
+    }
+
+    /**
+     * 按getPath()的结果还原：content URI或文件路径
+     */
+    public static VideoSource parse(Context context, String path) 
+    {
+        if (path.startsWith(ContentResolver.SCHEME_CONTENT + ":")) 
+        {
+            return of(context, Uri.parse(path));
+        }
+        return of(new File(path));
+    }
+
+    /**
+     * 文件路径或content URI，可以在Intent和断点记录中传递
+     */
+    public String getPath() 
+    {
+        return file != null ? file.getPath() : uri.toString();
+    }
+
+    /**
+     * 显示名称：文件名或媒体库中的显示名称
+     */
+    public String getName() 
+    {
+        return name;
+    }
+
+    /**
+     * 本地文件，源是content URI时返回null
+     */
+    public File getFile() 
+    {
+        return file;
+    }
+
+    public boolean exists() 
+    {
+        return file != null ? file.isFile() && file.canRead() : length >= 0;
+    }
+
+    public long length() 
+    {
+        return file != null ? file.length() : length;
+    }
+
+    public long lastModified() 
+    {
+        return file != null ? file.lastModified() : lastModified;
+    }
+
+    /**
+     * 缓存键：路径、大小和修改时间，源视频被修改后缓存自动失效
+     */
+    String cacheKey() 
+    {
+        String path = file != null ? file.getAbsolutePath() : uri.toString();
+        return path + '|' + length() + '|' + lastModified();
+    }
+
+    /**
+     * 设置提取器的数据源，content URI经文件描述符读取
+     * 提取器在setDataSource返回前复制描述符，这里打开的描述符随即关闭
+     */
+    public void setDataSource(MediaExtractor extractor) throws IOException 
+    {
+        if (file != null) 
+        {
+            extractor.setDataSource(file.getPath());
+            return;
+        }
+        try (ParcelFileDescriptor descriptor = openDescriptor()) 
+        {
+            extractor.setDataSource(descriptor.getFileDescriptor());
+        }
+    }
+
+    /**
+     * 设置元数据读取器的数据源，描述符的处理同setDataSource(MediaExtractor)
+     */
+    public void setDataSource(MediaMetadataRetriever retriever) throws IOException 
+    {
+        if (file != null) 
+        {
+            retriever.setDataSource(file.getPath());
+            return;
+        }
+        try (ParcelFileDescriptor descriptor = openDescriptor()) 
+        {
+            retriever.setDataSource(descriptor.getFileDescriptor());
+        }
+    }
+
+    /**
+     * 打开只读通道，关闭通道时一并关闭描述符
+     */
+    public FileChannel openChannel() throws IOException 
+    {
+        if (file != null) 
+        {
+            return new FileInputStream(file).getChannel();
+        }
+        return new ParcelFileDescriptor.AutoCloseInputStream(openDescriptor()).getChannel();
+    }
+
+    private ParcelFileDescriptor openDescriptor() throws IOException 
+    {
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+        if (descriptor == null) 
+        {
+            throw new IOException("无法打开源视频: " + uri);
+        }
+        return descriptor;
+    }
+
+    @Override
+    public String toString() 
+    {
+        return getPath();
+    }
+}
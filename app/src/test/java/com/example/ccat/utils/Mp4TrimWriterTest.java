@@ -0,0 +1,472 @@
+package com.example.ccat.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Mp4TrimWriter的裁剪结果检查
+ * 输出重新解析后，按样本内容逐个对应回源文件的样本，核对样本选择、时间戳和数据
+ */
+public class Mp4TrimWriterTest 
+{
+    private static final int SECONDS = 20;
+    private static final int FPS = 30;
+    private static final int GOP_FRAMES = 30;
+    // 样本标志中的sample_is_non_sync_sample位
+    private static final int NON_SYNC_FLAG = 0x00010000;
+
+    private final List<File> tempFiles = new ArrayList<>();
+    private File sourceFile;
+    private byte[] sourceBytes;
+    private Mp4Movie source;
+
+    @Before
+    public void setUp() throws IOException 
+    {
+        sourceFile = newTempFile("source");
+        SyntheticMp4.write(sourceFile, SECONDS, FPS, GOP_FRAMES);
+        sourceBytes = Files.readAllBytes(sourceFile.toPath());
+        source = Mp4Movie.parse(sourceFile);
+    }
+
+    @After
+    public void tearDown() 
+    {
+        for (File file : tempFiles) 
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void plainTrimKeepsSamplesByteForByte() throws IOException 
+    {
+        List<TimeRange> ranges = Collections.singletonList(new TimeRange(5500, 12000));
+        File output = trim(ranges, false);
+        Mp4Movie trimmed = Mp4Movie.parse(output);
+        byte[] outputBytes = Files.readAllBytes(output.toPath());
+
+        assertEquals(source.getTracks().size(), trimmed.getTracks().size());
+        for (Mp4Track track : trimmed.getTracks()) 
+        {
+            Mp4Track sourceTrack = sourceTrack(track);
+            int[] indexes = matchSamples(sourceTrack, track, outputBytes);
+            assertEquals("连续样本段数: " + track.getHandlerType(), 1, runCount(indexes));
+            assertCovers(sourceTrack, indexes, 5500000, 12000000);
+        }
+        Mp4Track video = trimmed.getVideoTrack();
+        int[] videoIndexes = matchSamples(source.getVideoTrack(), video, outputBytes);
+        assertTrue(source.getVideoTrack().isSyncSample(videoIndexes[0]));
+        assertTrue(video.isSyncSample(0));
+        assertTrue(source.getVideoTrack().getPresentationTimeUs(videoIndexes[0]) <= 5500000);
+    }
+
+    @Test
+    public void fastStartPutsMoovFirstAndKeepsSamples() throws IOException 
+    {
+        List<TimeRange> ranges = Collections.singletonList(new TimeRange(3000, 9000));
+        File plain = trim(ranges, false);
+        File fastStart = trim(ranges, true);
+        byte[] plainBytes = Files.readAllBytes(plain.toPath());
+        byte[] fastStartBytes = Files.readAllBytes(fastStart.toPath());
+
+        assertEquals(Arrays.asList("ftyp", "mdat", "moov"), types(boxes(plainBytes, 0, plainBytes.length)));
+        assertEquals(Arrays.asList("ftyp", "moov", "mdat"), types(boxes(fastStartBytes, 0, fastStartBytes.length)));
+        assertEquals(plainBytes.length, fastStartBytes.length);
+
+        Mp4Movie plainMovie = Mp4Movie.parse(plain);
+        Mp4Movie fastStartMovie = Mp4Movie.parse(fastStart);
+        assertEquals(plainMovie.getTracks().size(), fastStartMovie.getTracks().size());
+        for (int t = 0; t < plainMovie.getTracks().size(); t++) 
+        {
+            List<byte[]> expected = payloads(plainMovie.getTracks().get(t), plainBytes);
+            List<byte[]> actual = payloads(fastStartMovie.getTracks().get(t), fastStartBytes);
+            assertPayloadsEqual(expected, actual);
+        }
+    }
+
+    @Test
+    public void multiRangeTrimProducesOneRunPerRange() throws IOException 
+    {
+        List<TimeRange> ranges = Arrays.asList(new TimeRange(2000, 6000), new TimeRange(11000, 15500));
+        File output = trim(ranges, false);
+        Mp4Movie trimmed = Mp4Movie.parse(output);
+        byte[] outputBytes = Files.readAllBytes(output.toPath());
+
+        for (Mp4Track track : trimmed.getTracks()) 
+        {
+            Mp4Track sourceTrack = sourceTrack(track);
+            int[] indexes = matchSamples(sourceTrack, track, outputBytes);
+            assertEquals("连续样本段数: " + track.getHandlerType(), 2, runCount(indexes));
+            assertCovers(sourceTrack, indexes, 2000000, 6000000);
+            assertCovers(sourceTrack, indexes, 11000000, 15500000);
+            // 两段在输出中首尾相接，解码时间严格递增，每个样本的时长与源文件一致
+            for (int i = 0; i < indexes.length; i++) 
+            {
+                assertEquals(sourceTrack.getSampleDelta(indexes[i]), track.getSampleDelta(i));
+                if (i > 0) 
+                {
+                    assertEquals(track.decodeTimes[i - 1] + track.getSampleDelta(i - 1), track.decodeTimes[i]);
+                }
+            }
+        }
+
+        // 每一段视频都从关键帧开始
+        int[] videoIndexes = matchSamples(source.getVideoTrack(), trimmed.getVideoTrack(), outputBytes);
+        for (int i = 0; i < videoIndexes.length; i++) 
+        {
+            if (i == 0 || videoIndexes[i] != videoIndexes[i - 1] + 1) 
+            {
+                assertTrue(source.getVideoTrack().isSyncSample(videoIndexes[i]));
+                assertTrue(trimmed.getVideoTrack().isSyncSample(i));
+            }
+        }
+    }
+
+    @Test
+    public void bFrameTimingSurvivesTrim() throws IOException 
+    {
+        Mp4Track sourceVideo = source.getVideoTrack();
+        assertTrue(sourceVideo.hasCompositionOffsets);
+        assertTrue(sourceVideo.editMediaTime > 0);
+
+        File output = trim(Collections.singletonList(new TimeRange(4200, 10800)), true);
+        Mp4Movie trimmed = Mp4Movie.parse(output);
+        byte[] outputBytes = Files.readAllBytes(output.toPath());
+        Mp4Track video = trimmed.getVideoTrack();
+        int[] indexes = matchSamples(sourceVideo, video, outputBytes);
+
+        // ctts逐个保留，elst保持同样的整体后移，stts的时长不变
+        assertTrue(video.hasCompositionOffsets);
+        assertEquals(sourceVideo.editMediaTime, video.editMediaTime);
+        for (int i = 0; i < indexes.length; i++) 
+        {
+            assertEquals(sourceVideo.compositionOffsets[indexes[i]], video.compositionOffsets[i]);
+            assertEquals(sourceVideo.getSampleDelta(indexes[i]), video.getSampleDelta(i));
+        }
+
+        // 经编辑列表校正后从0开始，按显示顺序每帧一个时间点，没有重复或空缺
+        long[] presentation = new long[video.getSampleCount()];
+        for (int i = 0; i < presentation.length; i++) 
+        {
+            presentation[i] = video.getPresentationTimeUs(i);
+        }
+        assertEquals(0, presentation[0]);
+        Arrays.sort(presentation);
+        for (int i = 0; i < presentation.length; i++) 
+        {
+            assertEquals(i * 1000000L / FPS, presentation[i], 1);
+        }
+    }
+
+    @Test
+    public void fragmentedOutputMatchesPlainTrim() throws IOException 
+    {
+        List<TimeRange> ranges = Arrays.asList(new TimeRange(1000, 9000), new TimeRange(12000, 16000));
+        File plain = trim(ranges, false);
+        File fragmented = newTempFile("fragmented");
+        assertTrue(new Mp4TrimWriter(source).setFragmentDuration(2000).write(ranges, fragmented, null, null));
+
+        byte[] bytes = Files.readAllBytes(fragmented.toPath());
+        List<Box> top = boxes(bytes, 0, bytes.length);
+        List<String> types = types(top);
+        assertEquals(Arrays.asList("ftyp", "moov", "sidx"), types.subList(0, 3));
+        assertTrue(types(boxes(bytes, top.get(1).bodyStart(), top.get(1).end())).contains("mvex"));
+        // 不支持分片MP4的解析器应当明确拒绝，而不是读出空的样本表
+        assertThrows(Mp4FormatException.class, () -> Mp4Movie.parse(fragmented));
+
+        List<Box> fragments = top.subList(3, top.size());
+        assertEquals(0, fragments.size() % 2);
+        assertTrue("片段数: " + fragments.size() / 2, fragments.size() / 2 >= 4);
+
+        // sidx的每一项对应一个moof和紧随其后的mdat
+        ByteBuffer sidx = ByteBuffer.wrap(bytes, top.get(2).bodyStart(), top.get(2).bodySize());
+        assertEquals(1, sidx.get() & 0xff);
+        sidx.position(sidx.position() + 3 + 4 + 4 + 8 + 8 + 2);
+        int referenceCount = sidx.getShort() & 0xffff;
+        assertEquals(fragments.size() / 2, referenceCount);
+
+        Map<Integer, List<byte[]>> trackPayloads = new HashMap<>();
+        for (int k = 0; k < referenceCount; k++) 
+        {
+            Box moof = fragments.get(2 * k);
+            Box mdat = fragments.get(2 * k + 1);
+            assertEquals("moof", moof.type);
+            assertEquals("mdat", mdat.type);
+            assertEquals(moof.size + mdat.size, sidx.getInt() & 0x7fffffffL);
+            sidx.getInt();
+            sidx.getInt();
+
+            List<Box> moofChildren = boxes(bytes, moof.bodyStart(), moof.end());
+            assertEquals("mfhd", moofChildren.get(0).type);
+            assertEquals(k + 1, ByteBuffer.wrap(bytes, moofChildren.get(0).bodyStart() + 4, 4).getInt());
+            for (Box traf : moofChildren.subList(1, moofChildren.size())) 
+            {
+                assertEquals("traf", traf.type);
+                readTraf(bytes, moof, mdat, traf, trackPayloads);
+            }
+        }
+
+        // 按轨道拼起来的样本与普通裁剪的结果逐字节一致
+        Mp4Movie plainMovie = Mp4Movie.parse(plain);
+        byte[] plainBytes = Files.readAllBytes(plain.toPath());
+        assertPayloadsEqual(payloads(plainMovie.getVideoTrack(), plainBytes), trackPayloads.get(1));
+        assertPayloadsEqual(payloads(plainMovie.getTracks().get(1), plainBytes), trackPayloads.get(2));
+    }
+
+    @Test
+    public void truncatedInputIsRejected() throws IOException 
+    {
+        // moov在文件末尾，截掉最后一段后moov的大小超出文件
+        File truncatedMoov = newTempFile("truncated_moov");
+        Files.write(truncatedMoov.toPath(), Arrays.copyOf(sourceBytes, sourceBytes.length - 100));
+        assertThrows(Mp4FormatException.class, () -> Mp4Movie.parse(truncatedMoov));
+
+        // 只剩ftyp和部分mdat
+        File truncatedData = newTempFile("truncated_data");
+        Files.write(truncatedData.toPath(), Arrays.copyOf(sourceBytes, sourceBytes.length / 2));
+        assertThrows(Mp4FormatException.class, () -> Mp4Movie.parse(truncatedData));
+
+        // box头本身不完整
+        File truncatedHeader = newTempFile("truncated_header");
+        Files.write(truncatedHeader.toPath(), Arrays.copyOf(sourceBytes, 4));
+        assertThrows(Mp4FormatException.class, () -> Mp4Movie.parse(truncatedHeader));
+    }
+
+    /**
+     * 读取一个traf：trun中每个样本的大小和data_offset(相对moof起点)确定样本数据在mdat中的位置
+     */
+    private static void readTraf(byte[] bytes, Box moof, Box mdat, Box traf, Map<Integer, List<byte[]>> trackPayloads) 
+    {
+        int trackId = 0;
+        boolean video = false;
+        for (Box child : boxes(bytes, traf.bodyStart(), traf.end())) 
+        {
+            ByteBuffer body = ByteBuffer.wrap(bytes, child.bodyStart(), child.bodySize());
+            if ("tfhd".equals(child.type)) 
+            {
+                body.getInt();
+                trackId = body.getInt();
+                video = trackId == 1;
+            }
+            else if ("trun".equals(child.type)) 
+            {
+                int flags = body.getInt() & 0xffffff;
+                int count = body.getInt();
+                assertTrue((flags & 0x000001) != 0);
+                int dataOffset = body.getInt();
+                long position = moof.start + dataOffset;
+                assertTrue(position >= mdat.bodyStart() && position <= mdat.end());
+                List<byte[]> payloads = trackPayloads.computeIfAbsent(trackId, id -> new ArrayList<>());
+                for (int n = 0; n < count; n++) 
+                {
+                    body.getInt();
+                    int size = body.getInt();
+                    int sampleFlags = body.getInt();
+                    if ((flags & 0x000800) != 0) 
+                    {
+                        body.getInt();
+                    }
+                    if (video && n == 0) 
+                    {
+                        // 每个片段从关键帧开始
+                        assertEquals(0, sampleFlags & NON_SYNC_FLAG);
+                    }
+                    payloads.add(Arrays.copyOfRange(bytes, (int) position, (int) position + size));
+                    position += size;
+                }
+                assertTrue(position <= mdat.end());
+            }
+        }
+        assertTrue(trackId > 0);
+    }
+
+    private File trim(List<TimeRange> ranges, boolean fastStart) throws IOException 
+    {
+        File output = newTempFile(fastStart ? "faststart" : "plain");
+        assertTrue(new Mp4TrimWriter(source).setFastStart(fastStart).write(ranges, output, null, null));
+        return output;
+    }
+
+    private File newTempFile(String prefix) throws IOException 
+    {
+        File file = File.createTempFile(prefix, ".mp4");
+        tempFiles.add(file);
+        return file;
+    }
+
+    private Mp4Track sourceTrack(Mp4Track track) 
+    {
+        for (Mp4Track candidate : source.getTracks()) 
+        {
+            if (candidate.getHandlerType().equals(track.getHandlerType())) 
+            {
+                return candidate;
+            }
+        }
+        fail("源文件中没有对应的轨道: " + track.getHandlerType());
+        return null;
+    }
+
+    /**
+     * 按样本内容找到输出中每个样本在源轨道中的序号
+     * 合成文件的样本数据是不重复的随机字节，内容相同即为同一个样本
+     */
+    private int[] matchSamples(Mp4Track sourceTrack, Mp4Track track, byte[] outputBytes) 
+    {
+        Map<ByteBuffer, Integer> index = new HashMap<>();
+        List<byte[]> sourcePayloads = payloads(sourceTrack, sourceBytes);
+        for (int i = 0; i < sourcePayloads.size(); i++) 
+        {
+            index.put(ByteBuffer.wrap(sourcePayloads.get(i)), i);
+        }
+        List<byte[]> outputPayloads = payloads(track, outputBytes);
+        int[] result = new int[outputPayloads.size()];
+        for (int i = 0; i < result.length; i++) 
+        {
+            Integer sample = index.get(ByteBuffer.wrap(outputPayloads.get(i)));
+            assertNotNull("输出样本在源文件中不存在: " + track.getHandlerType() + " " + i, sample);
+            result[i] = sample;
+        }
+        return result;
+    }
+
+    /**
+     * 源轨道中显示时间落在[startUs, endUs)的样本都必须出现在输出中
+     */
+    private static void assertCovers(Mp4Track sourceTrack, int[] indexes, long startUs, long endUs) 
+    {
+        boolean[] present = new boolean[sourceTrack.getSampleCount()];
+        for (int sample : indexes) 
+        {
+            assertFalse("样本重复: " + sample, present[sample]);
+            present[sample] = true;
+        }
+        for (int i = 0; i < sourceTrack.getSampleCount(); i++) 
+        {
+            long pts = sourceTrack.getPresentationTimeUs(i);
+            if (pts >= startUs && pts < endUs) 
+            {
+                assertTrue("缺少样本: " + sourceTrack.getHandlerType() + " " + i, present[i]);
+            }
+        }
+    }
+
+    private static int runCount(int[] indexes) 
+    {
+        int runs = 0;
+        for (int i = 0; i < indexes.length; i++) 
+        {
+            if (i == 0 || indexes[i] != indexes[i - 1] + 1) 
+            {
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    private static List<byte[]> payloads(Mp4Track track, byte[] bytes) 
+    {
+        List<byte[]> result = new ArrayList<>(track.getSampleCount());
+        for (int i = 0; i < track.getSampleCount(); i++) 
+        {
+            int offset = (int) track.getSampleOffset(i);
+            result.add(Arrays.copyOfRange(bytes, offset, offset + track.getSampleSize(i)));
+        }
+        return result;
+    }
+
+    private static void assertPayloadsEqual(List<byte[]> expected, List<byte[]> actual) 
+    {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) 
+        {
+            assertArrayEquals("样本 " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static final class Box 
+    {
+        final String type;
+        final int start;
+        final int size;
+        final int headerSize;
+
+        Box(String type, int start, int size, int headerSize) 
+        {
+            this.type = type;
+            this.start = start;
+            this.size = size;
+            this.headerSize = headerSize;
+        }
+
+        int bodyStart() 
+        {
+            return start + headerSize;
+        }
+
+        int bodySize() 
+        {
+            return size - headerSize;
+        }
+
+        int end() 
+        {
+            return start + size;
+        }
+    }
+
+    private static List<Box> boxes(byte[] bytes, int from, int to) 
+    {
+        List<Box> result = new ArrayList<>();
+        int position = from;
+        while (position < to) 
+        {
+            ByteBuffer header = ByteBuffer.wrap(bytes, position, to - position);
+            long size = header.getInt() & 0xffffffffL;
+            String type = new String(bytes, position + 4, 4, StandardCharsets.ISO_8859_1);
+            int headerSize = 8;
+            if (size == 1) 
+            {
+                size = header.getLong(position + 8);
+                headerSize = 16;
+            }
+            assertTrue("box超出范围: " + type, size >= headerSize && position + size <= to);
+            result.add(new Box(type, position, (int) size, headerSize));
+            position += (int) size;
+        }
+        return result;
+    }
+
+    private static List<String> types(List<Box> boxes) 
+    {
+        List<String> result = new ArrayList<>();
+        for (Box box : boxes) 
+        {
+            result.add(box.type);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.ccat.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 样本索引的按时间范围求字节数，与逐个样本累加的结果核对
+ */
+public class SampleIndexTest 
+{
+    @Test
+    public void bytesBetweenMatchesLinearSum() throws IOException 
+    {
+        File file = File.createTempFile("source", ".mp4");
+        try 
+        {
+            SyntheticMp4.write(file, 20, 30, 30);
+            SampleIndex index = SampleIndex.fromMp4(Mp4Movie.parse(file));
+            Random random = new Random(1);
+            for (SampleIndex.Track track : index.getTracks()) 
+            {
+                // 样本按解码顺序排列，B帧的显示时间不是单调的
+                long last = track.getSampleTimeUs(track.getSampleCount() - 1);
+                assertEquals(linearSum(track, Long.MIN_VALUE, Long.MAX_VALUE), track.bytesBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+                for (int n = 0; n < 200; n++) 
+                {
+                    long from = random.nextInt((int) last + 2000000) - 1000000;
+                    long to = from + random.nextInt(5000000);
+                    assertEquals(linearSum(track, from, to), track.bytesBetween(from, to));
+                }
+                // 区间端点正好落在样本时间上时两端都包含
+                for (int i = 0; i + 10 < track.getSampleCount(); i += 7) 
+                {
+                    long from = track.getSampleTimeUs(i);
+                    long to = track.getSampleTimeUs(i + 10);
+                    assertEquals(linearSum(track, from, to), track.bytesBetween(from, to));
+                }
+            }
+        }
+        finally 
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void bytesBetweenCountsSamplesWithEqualTimes() 
+    {
+        long[] times = {0, 100, 100, 100, 200, 50};
+        int[] sizes = {1, 10, 20, 30, 1000, 5};
+        SampleIndex.Track track = new SampleIndex.Track(0, "video/avc", times, sizes, new long[times.length], new byte[times.length]);
+
+        assertEquals(60, track.bytesBetween(100, 100));
+        assertEquals(65, track.bytesBetween(50, 199));
+        assertEquals(1066, track.bytesBetween(-1, 200));
+        assertEquals(0, track.bytesBetween(101, 199));
+        assertEquals(0, track.bytesBetween(300, 400));
+        assertEquals(0, track.bytesBetween(200, 100));
+    }
+
+    @Test
+    public void bytesBetweenWithUnknownSizes() 
+    {
+        long[] times = {0, 100, 200};
+        int[] sizes = {-1, -1, -1};
+        SampleIndex.Track track = new SampleIndex.Track(0, "video/avc", times, sizes, new long[times.length], new byte[times.length]);
+
+        assertEquals(-1, track.bytesBetween(0, 200));
+    }
+
+    private static long linearSum(SampleIndex.Track track, long fromUs, long toUs) 
+    {
+        long total = 0;
+        for (int i = 0; i < track.getSampleCount(); i++) 
+        {
+            long time = track.getSampleTimeUs(i);
+            if (time >= fromUs && time <= toUs) 
+            {
+                total += track.getSampleSize(i);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.ccat.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 生成单元测试和基准测试用的合成MP4
+ * 结构与相机录制的文件一致：ftyp、mdat、moov，一个H.264视频轨道(带B帧重排序)和一个AAC音频轨道，
+ * 音视频按约0.5秒一个chunk交错存放
+ * 样本内容是固定种子的随机字节，只用于解析和裁剪，不能解码
+ */
+final class SyntheticMp4 
+{
+    private static final int VIDEO_TIMESCALE = 90000;
+    private static final int AUDIO_TIMESCALE = 48000;
+    private static final int AUDIO_FRAME = 1024;
+    private static final int MOVIE_TIMESCALE = 1000;
+
+    private SyntheticMp4() 
+    {
+    }
+
+    /**
+     * @param seconds 时长
+     * @param fps 帧率
+     * @param gopFrames 关键帧间隔(帧)
+     */
+    static void write(File file, int seconds, int fps, int gopFrames) throws IOException 
+    {
+        Random random = new Random(seconds * 31L + fps);
+        int videoCount = seconds * fps;
+        int audioCount = seconds * AUDIO_TIMESCALE / AUDIO_FRAME;
+        int videoDelta = VIDEO_TIMESCALE / fps;
+
+        int[] videoSizes = new int[videoCount];
+        for (int i = 0; i < videoCount; i++) 
+        {
+            videoSizes[i] = i % gopFrames == 0 ? 40000 + random.nextInt(20000) : 4000 + random.nextInt(8000);
+        }
+        int[] audioSizes = new int[audioCount];
+        for (int i = 0; i < audioCount; i++) 
+        {
+            audioSizes[i] = 300 + random.nextInt(80);
+        }
+
+        // 按0.5秒交错chunk，先视频后音频
+        // 音频每0.5秒约23.4帧，每个chunk向上取整，保证单条stsc能覆盖全部音频样本
+        int videoPerChunk = Math.max(1, fps / 2);
+        int chunkCount = (videoCount + videoPerChunk - 1) / videoPerChunk;
+        int audioPerChunk = (audioCount + chunkCount - 1) / chunkCount;
+        long[] videoChunkOffsets = new long[chunkCount];
+        long[] audioChunkOffsets = new long[chunkCount];
+        byte[] ftyp = box("ftyp", concat("isom".getBytes(StandardCharsets.ISO_8859_1), ints(512),
+                "isomiso2avc1mp41".getBytes(StandardCharsets.ISO_8859_1)));
+        long offset = ftyp.length + 16;
+        int audioChunks = 0;
+        for (int c = 0; c < chunkCount; c++) 
+        {
+            videoChunkOffsets[c] = offset;
+            for (int i = c * videoPerChunk; i < Math.min(videoCount, (c + 1) * videoPerChunk); i++) 
+            {
+                offset += videoSizes[i];
+            }
+            int audioFrom = c * audioPerChunk;
+            if (audioFrom < audioCount) 
+            {
+                audioChunkOffsets[audioChunks++] = offset;
+                for (int i = audioFrom; i < Math.min(audioCount, (c + 1) * audioPerChunk); i++) 
+                {
+                    offset += audioSizes[i];
+                }
+            }
+        }
+        long payload = offset - ftyp.length - 16;
+
+        // IBBP：显示顺序I0 B1 B2 P3，解码顺序I0 P3 B1 B2，GOP末尾放不下两个B帧的部分不重排
+        // 所有显示时间整体后移一帧，由编辑列表抵消
+        int[] compositionOffsets = new int[videoCount];
+        for (int i = 0; i < videoCount; i++) 
+        {
+            int inGop = i % gopFrames;
+            if (inGop == 0) 
+            {
+                compositionOffsets[i] = videoDelta;
+            }
+            else if (inGop % 3 == 1) 
+            {
+                compositionOffsets[i] = inGop + 2 < gopFrames ? 3 * videoDelta : videoDelta;
+            }
+            else 
+            {
+                int reference = inGop - (inGop % 3 == 2 ? 1 : 2);
+                compositionOffsets[i] = reference + 2 < gopFrames ? 0 : videoDelta;
+            }
+        }
+        int[] syncSamples = new int[(videoCount + gopFrames - 1) / gopFrames];
+        for (int i = 0; i < syncSamples.length; i++) 
+        {
+            syncSamples[i] = i * gopFrames + 1;
+        }
+
+        byte[] videoTrak = trak(1, "vide", VIDEO_TIMESCALE, (long) videoCount * videoDelta,
+                box("vmhd", ints(1, 0, 0)), sampleEntry("avc1", 78),
+                stts(videoCount, videoDelta), ctts(compositionOffsets), box("stss", table(syncSamples)),
+                stsz(videoSizes), stsc(videoPerChunk), stco(videoChunkOffsets, chunkCount), videoDelta);
+        byte[] audioTrak = trak(2, "soun", AUDIO_TIMESCALE, (long) audioCount * AUDIO_FRAME,
+                box("smhd", ints(0, 0)), sampleEntry("mp4a", 28),
+                stts(audioCount, AUDIO_FRAME), null, null,
+                stsz(audioSizes), stsc(audioPerChunk), stco(audioChunkOffsets, audioChunks), 0);
+        byte[] mvhd = box("mvhd", concat(ints(0, 0, 0, MOVIE_TIMESCALE, seconds * MOVIE_TIMESCALE), new byte[80]));
+        byte[] moov = box("moov", concat(mvhd, videoTrak, audioTrak));
+
+        // 样本数据整体随机，不循环重复，单元测试可以按内容逐字节核对裁剪结果
+        byte[] chunk = new byte[64 * 1024];
+        try (OutputStream out = new FileOutputStream(file)) 
+        {
+            out.write(ftyp);
+            ByteBuffer mdatHeader = ByteBuffer.allocate(16);
+            mdatHeader.putInt(1).put("mdat".getBytes(StandardCharsets.ISO_8859_1)).putLong(payload + 16);
+            out.write(mdatHeader.array());
+            long remaining = payload;
+            while (remaining > 0) 
+            {
+                int n = (int) Math.min(chunk.length, remaining);
+                random.nextBytes(chunk);
+                out.write(chunk, 0, n);
+                remaining -= n;
+            }
+            out.write(moov);
+        }
+    }
+
+    private static byte[] trak(int trackId, String handler, int timescale, long duration, byte[] mediaHeader,
+                               byte[] stsd, byte[] stts, byte[] ctts, byte[] stss, byte[] stsz, byte[] stsc,
+                               byte[] stco, int editMediaTime) 
+    {
+        long movieDuration = duration * MOVIE_TIMESCALE / timescale;
+        byte[] tkhd = box("tkhd", concat(ints(3, 0, 0, trackId, 0, (int) movieDuration), new byte[60]));
+        byte[] edts = editMediaTime > 0
+                ? box("edts", box("elst", ints(0, 1, (int) movieDuration, editMediaTime, 0x00010000)))
+                : new byte[0];
+        byte[] mdhd = box("mdhd", ints(0, 0, 0, timescale, (int) duration, 0x55c40000));
+        byte[] hdlr = box("hdlr", concat(ints(0, 0), handler.getBytes(StandardCharsets.ISO_8859_1), new byte[13]));
+        byte[] dinf = box("dinf", box("dref", concat(ints(0, 1), box("url ", ints(1)))));
+        byte[] stbl = box("stbl", concat(stsd, stts, ctts != null ? ctts : new byte[0],
+                stss != null ? stss : new byte[0], stsz, stsc, stco));
+        byte[] minf = box("minf", concat(mediaHeader, dinf, stbl));
+        return box("trak", concat(tkhd, edts, box("mdia", concat(mdhd, hdlr, minf))));
+    }
+
+    private static byte[] sampleEntry(String type, int bodySize) 
+    {
+        byte[] body = new byte[bodySize];
+        body[7] = 1; // data_reference_index
+        return box("stsd", concat(ints(0, 1), box(type, body)));
+    }
+
+    private static byte[] stts(int count, int delta) 
+    {
+        return box("stts", ints(0, 1, count, delta));
+    }
+
+    private static byte[] ctts(int[] offsets) 
+    {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        int entryCount = 0;
+        for (int i = 0; i < offsets.length; ) 
+        {
+            int run = 1;
+            while (i + run < offsets.length && offsets[i + run] == offsets[i]) 
+            {
+                run++;
+            }
+            entries.writeBytes(ints(run, offsets[i]));
+            entryCount++;
+            i += run;
+        }
+        return box("ctts", concat(ints(0, entryCount), entries.toByteArray()));
+    }
+
+    private static byte[] stsz(int[] sizes) 
+    {
+        return box("stsz", concat(ints(0, 0, sizes.length), ints(sizes)));
+    }
+
+    private static byte[] stsc(int samplesPerChunk) 
+    {
+        // 最后一个chunk的样本数可以少于samplesPerChunk，解析时按样本总数截断
+        return box("stsc", ints(0, 1, 1, samplesPerChunk, 1));
+    }
+
+    private static byte[] stco(long[] offsets, int count) 
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + count * 8);
+        buffer.putInt(0).putInt(count);
+        for (int i = 0; i < count; i++) 
+        {
+            buffer.putLong(offsets[i]);
+        }
+        return box("co64", buffer.array());
+    }
+
+    private static byte[] table(int[] values) 
+    {
+        return concat(ints(0, values.length), ints(values));
+    }
+
+    private static byte[] box(String type, byte[] body) 
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + body.length);
+        buffer.putInt(8 + body.length).put(type.getBytes(StandardCharsets.ISO_8859_1)).put(body);
+        return buffer.array();
+    }
+
+    private static byte[] ints(int... values) 
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) 
+        {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] concat(byte[]... parts) 
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) 
+        {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.ccat.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 直接裁剪的取消与断点续写
+ * 有断点记录时取消后保留已写入的部分，从断点继续写完的文件与一次写完的逐字节相同
+ */
+public class VideoProcessorResumeTest 
+{
+    // 输出约68MB，超过两个断点间隔
+    private static final int SECONDS = 240;
+    private static final long START_MS = 1000;
+    private static final long END_MS = 230000;
+
+    private final List<File> tempFiles = new ArrayList<>();
+    private File sourceFile;
+
+    /**
+     * 记录回调结果，处理在DIRECT_EXECUTOR中同步完成
+     */
+    private static class Result implements VideoProcessor.ProgressCallback 
+    {
+        String outputPath;
+        String failure;
+
+        @Override
+        public void onProgress(float progress) 
+        {
+        }
+
+        @Override
+        public void onSuccess(String outputPath) 
+        {
+            this.outputPath = outputPath;
+        }
+
+        @Override
+        public void onFailed(String reason) 
+        {
+            this.failure = reason;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException 
+    {
+        sourceFile = newTempFile("source");
+        SyntheticMp4.write(sourceFile, SECONDS, 30, 30);
+    }
+
+    @After
+    public void tearDown() 
+    {
+        for (File file : tempFiles) 
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void resumeAfterCancelMatchesCleanRun() throws IOException 
+    {
+        assertResumeMatchesCleanRun(false, 0);
+    }
+
+    @Test
+    public void resumeAfterCancelMatchesCleanRunWithFastStart() throws IOException 
+    {
+        assertResumeMatchesCleanRun(true, 0);
+    }
+
+    @Test
+    public void resumeAfterCancelMatchesCleanRunFragmented() throws IOException 
+    {
+        assertResumeMatchesCleanRun(false, 2000);
+    }
+
+    @Test
+    public void cancelWithoutCheckpointDiscardsOutput() throws IOException 
+    {
+        File output = newTempFile("discarded");
+        VideoProcessor[] processor = {null};
+        Result result = new Result() 
+        {
+            @Override
+            public void onProgress(float progress) 
+            {
+                processor[0].cancel();
+            }
+        };
+        processor[0] = newProcessor(result, false, 0);
+        processor[0].trimVideo(sourceFile, output, START_MS, END_MS);
+
+        assertNotNull(result.failure);
+        assertNull(result.outputPath);
+        assertFalse(output.exists());
+    }
+
+    private void assertResumeMatchesCleanRun(boolean fastStart, long fragmentMs) throws IOException 
+    {
+        File expected = newTempFile("clean");
+        Result clean = new Result();
+        newProcessor(clean, fastStart, fragmentMs).trimVideo(sourceFile, expected, START_MS, END_MS);
+        assertEquals(expected.getPath(), clean.outputPath);
+
+        // 第二个断点处取消，与服务销毁时一样保留输出和断点
+        File output = newTempFile("resumed");
+        Result cancelled = new Result();
+        VideoProcessor first = newProcessor(cancelled, fastStart, fragmentMs);
+        long[] checkpoint = {0};
+        int[] checkpoints = {0};
+        first.setCheckpoint(0, outputBytes -> 
+        {
+            checkpoint[0] = outputBytes;
+            if (++checkpoints[0] == 2) 
+            {
+                first.cancel();
+            }
+        });
+        first.trimVideo(sourceFile, output, START_MS, END_MS);
+        assertNotNull(cancelled.failure);
+        assertNull(cancelled.outputPath);
+        assertEquals(2, checkpoints[0]);
+        assertTrue(output.exists());
+        assertTrue(output.length() >= checkpoint[0]);
+        assertTrue(checkpoint[0] < expected.length());
+
+        // 重新开始时传入断点，从断点继续写完
+        Result resumed = new Result();
+        VideoProcessor second = newProcessor(resumed, fastStart, fragmentMs);
+        second.setCheckpoint(checkpoint[0], null);
+        second.trimVideo(sourceFile, output, START_MS, END_MS);
+        assertNull(resumed.failure);
+        assertEquals(output.getPath(), resumed.outputPath);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath()));
+    }
+
+    private static VideoProcessor newProcessor(Result result, boolean fastStart, long fragmentMs) 
+    {
+        VideoProcessor processor = new VideoProcessor(result, VideoProcessor.DIRECT_EXECUTOR);
+        processor.setTrimMode(VideoProcessor.TRIM_MODE_DIRECT);
+        processor.setFastStart(fastStart);
+        processor.setFragmentDuration(fragmentMs);
+        return processor;
+    }
+
+    private File newTempFile(String prefix) throws IOException 
+    {
+        File file = File.createTempFile(prefix, ".mp4");
+        tempFiles.add(file);
+        return file;
+    }
+}
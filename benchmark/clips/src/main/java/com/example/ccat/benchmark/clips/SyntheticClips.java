@@ -0,0 +1,304 @@
+package com.example.ccat.benchmark.clips;
+
+import android.content.Context;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合成测试视频
+ * 用设备编码器生成H.264+AAC的MP4：画面是逐帧平移的渐变，声音是固定频率的正弦波
+ * 同样参数的视频只生成一次，缓存在应用的缓存目录中，保证各次测量使用相同的输入
+ */
+public final class SyntheticClips 
+{
+    private static final String TAG = "SyntheticClips";
+    private static final String CACHE_DIR_NAME = "synthetic_clips";
+    private static final long TIMEOUT_US = 10_000;
+
+    public static final int DEFAULT_WIDTH = 1280;
+    public static final int DEFAULT_HEIGHT = 720;
+    private static final int FRAME_RATE = 30;
+    private static final int KEYFRAME_INTERVAL_SECONDS = 1;
+    private static final int VIDEO_BIT_RATE = 4_000_000;
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int AUDIO_FRAME_SAMPLES = 1024;
+    private static final int AUDIO_BIT_RATE = 128_000;
+    private static final double TONE_HZ = 440.0;
+
+    private SyntheticClips() 
+    {
+    }
+
+    /**
+     * 获取默认分辨率(720p)的测试视频
+     * @param seconds 时长(秒)
+     */
+    public static File get(Context context, int seconds) throws IOException 
+    {
+        return get(context, DEFAULT_WIDTH, DEFAULT_HEIGHT, seconds);
+    }
+
+    /**
+     * 获取测试视频，缓存中没有时生成，耗时与时长成正比
+     */
+    public static synchronized File get(Context context, int width, int height, int seconds) throws IOException 
+    {
+        File dir = new File(context.getCacheDir(), CACHE_DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) 
+        {
+            throw new IOException("无法创建测试视频目录: " + dir);
+        }
+        File file = new File(dir, "clip_" + width + "x" + height + "_" + seconds + "s.mp4");
+        if (file.length() > 0) 
+        {
+            return file;
+        }
+
+        // 先写临时文件，生成中断时不会留下不完整的缓存
+        File temp = new File(dir, file.getName() + ".tmp");
+        long start = System.currentTimeMillis();
+        generate(temp, width, height, seconds);
+        if (!temp.renameTo(file)) 
+        {
+            temp.delete();
+            throw new IOException("无法保存测试视频: " + file);
+        }
+        Log.d(TAG, "已生成测试视频 " + file.getName() + ", 耗时 " + (System.currentTimeMillis() - start) + "ms");
+        return file;
+    }
+
+    private static void generate(File file, int width, int height, int seconds) throws IOException 
+    {
+        MediaFormat videoFormat = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC, width, height);
+        videoFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        videoFormat.setInteger(MediaFormat.KEY_BIT_RATE, VIDEO_BIT_RATE);
+        videoFormat.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        videoFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, KEYFRAME_INTERVAL_SECONDS);
+        int frameCount = seconds * FRAME_RATE;
+        byte[] ramp = new byte[width + 256];
+        for (int i = 0; i < ramp.length; i++) 
+        {
+            ramp[i] = (byte) i;
+        }
+        Encoded video = encode(videoFormat, frameCount, 1_000_000L / FRAME_RATE, (codec, index, frame) -> 
+        {
+            Image image = codec.getInputImage(index);
+            fillGradient(image, ramp, frame);
+            codec.queueInputBuffer(index, 0, width * height * 3 / 2, frame * 1_000_000L / FRAME_RATE, 0);
+        });
+
+        MediaFormat audioFormat = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, SAMPLE_RATE, 1);
+        audioFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, AUDIO_BIT_RATE);
+        audioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AUDIO_FRAME_SAMPLES * 2);
+        int audioFrameCount = (int) ((long) seconds * SAMPLE_RATE / AUDIO_FRAME_SAMPLES);
+        Encoded audio = encode(audioFormat, audioFrameCount, AUDIO_FRAME_SAMPLES * 1_000_000L / SAMPLE_RATE, (codec, index, frame) -> 
+        {
+            ByteBuffer buffer = codec.getInputBuffer(index);
+            buffer.clear();
+            buffer.order(ByteOrder.nativeOrder());
+            long firstSample = (long) frame * AUDIO_FRAME_SAMPLES;
+            for (int i = 0; i < AUDIO_FRAME_SAMPLES; i++) 
+            {
+                double phase = 2 * Math.PI * TONE_HZ * (firstSample + i) / SAMPLE_RATE;
+                buffer.putShort((short) (Math.sin(phase) * 8000));
+            }
+            codec.queueInputBuffer(index, 0, AUDIO_FRAME_SAMPLES * 2, firstSample * 1_000_000L / SAMPLE_RATE, 0);
+        });
+
+        mux(file, video, audio);
+    }
+
+    /**
+     * 亮度是沿对角线的渐变，每帧平移4个像素，色度随时间缓慢变化
+     */
+    private static void fillGradient(Image image, byte[] ramp, int frame) 
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+
+        Image.Plane luma = planes[0];
+        ByteBuffer buffer = luma.getBuffer();
+        int shift = frame * 4;
+        for (int y = 0; y < height; y++) 
+        {
+            int offset = (y + shift) & 0xff;
+            if (luma.getPixelStride() == 1) 
+            {
+                buffer.position(y * luma.getRowStride());
+                buffer.put(ramp, offset, width);
+            }
+            else 
+            {
+                for (int x = 0; x < width; x++) 
+                {
+                    buffer.put(y * luma.getRowStride() + x * luma.getPixelStride(), ramp[offset + x]);
+                }
+            }
+        }
+
+        byte u = (byte) (128 + 64 * Math.sin(frame / 30.0));
+        byte v = (byte) (128 + 64 * Math.cos(frame / 30.0));
+        for (int p = 1; p < planes.length; p++) 
+        {
+            Image.Plane plane = planes[p];
+            ByteBuffer chroma = plane.getBuffer();
+            byte value = p == 1 ? u : v;
+            for (int y = 0; y < height / 2; y++) 
+            {
+                for (int x = 0; x < width / 2; x++) 
+                {
+                    chroma.put(y * plane.getRowStride() + x * plane.getPixelStride(), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 向编码器的第frame个输入缓冲区填充数据并提交
+     */
+    private interface InputFiller 
+    {
+        void fill(MediaCodec codec, int index, int frame);
+    }
+
+    /**
+     * 编码后的样本，全部保存在内存中，等两个轨道都编码完再交错写入
+     */
+    private static final class Encoded 
+    {
+        MediaFormat format;
+        final List<byte[]> samples = new ArrayList<>();
+        final List<MediaCodec.BufferInfo> infos = new ArrayList<>();
+    }
+
+    private static Encoded encode(MediaFormat format, int frameCount, long frameDurationUs, InputFiller filler) throws IOException 
+    {
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        MediaCodec codec = MediaCodec.createEncoderByType(mime);
+        Encoded encoded = new Encoded();
+        try 
+        {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            int frame = 0;
+            boolean inputDone = false;
+            while (true) 
+            {
+                if (!inputDone) 
+                {
+                    int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputIndex >= 0) 
+                    {
+                        if (frame < frameCount) 
+                        {
+                            filler.fill(codec, inputIndex, frame++);
+                        }
+                        else 
+                        {
+                            codec.queueInputBuffer(inputIndex, 0, 0, frameCount * frameDurationUs,
+                                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        }
+                    }
+                }
+
+                int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) 
+                {
+                    encoded.format = codec.getOutputFormat();
+                }
+                else if (outputIndex >= 0) 
+                {
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) 
+                    {
+                        ByteBuffer buffer = codec.getOutputBuffer(outputIndex);
+                        byte[] data = new byte[info.size];
+                        buffer.position(info.offset);
+                        buffer.get(data);
+                        MediaCodec.BufferInfo copy = new MediaCodec.BufferInfo();
+                        copy.set(0, info.size, info.presentationTimeUs, info.flags);
+                        encoded.samples.add(data);
+                        encoded.infos.add(copy);
+                    }
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) 
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+        finally 
+        {
+            try 
+            {
+                codec.stop();
+            }
+            catch (IllegalStateException e) 
+            {
+                Log.w(TAG, "停止编码器失败", e);
+            }
+            codec.release();
+        }
+
+        if (encoded.format == null) 
+        {
+            throw new IOException("编码器没有输出格式: " + mime);
+        }
+        return encoded;
+    }
+
+    /**
+     * 按时间戳交错写入两个轨道
+     */
+    private static void mux(File file, Encoded video, Encoded audio) throws IOException 
+    {
+        MediaMuxer muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try 
+        {
+            int videoTrack = muxer.addTrack(video.format);
+            int audioTrack = muxer.addTrack(audio.format);
+            muxer.start();
+
+            int v = 0;
+            int a = 0;
+            while (v < video.samples.size() || a < audio.samples.size()) 
+            {
+                boolean takeVideo = a >= audio.samples.size()
+                        || (v < video.samples.size()
+                        && video.infos.get(v).presentationTimeUs <= audio.infos.get(a).presentationTimeUs);
+                if (takeVideo) 
+                {
+                    muxer.writeSampleData(videoTrack, ByteBuffer.wrap(video.samples.get(v)), video.infos.get(v));
+                    v++;
+                }
+                else 
+                {
+                    muxer.writeSampleData(audioTrack, ByteBuffer.wrap(audio.samples.get(a)), audio.infos.get(a));
+                    a++;
+                }
+            }
+            muxer.stop();
+        }
+        finally 
+        {
+            muxer.release();
+        }
+    }
+}
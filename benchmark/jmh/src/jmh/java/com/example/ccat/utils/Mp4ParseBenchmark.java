@@ -0,0 +1,49 @@
+package com.example.ccat.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MP4解析：读取moov并展开全部样本表
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Mp4ParseBenchmark 
+{
+    @Param({"60", "600"})
+    public int seconds;
+
+    private File clip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException 
+    {
+        clip = File.createTempFile("parse-" + seconds + "s-", ".mp4");
+        SyntheticMp4.write(clip, seconds, 30, 30);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() 
+    {
+        clip.delete();
+    }
+
+    @Benchmark
+    public Mp4Movie parse() throws IOException 
+    {
+        return Mp4Movie.parse(clip);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ccat.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无损裁剪的完整写入：解析、重建样本表、transferTo拷贝样本数据
+ * 结果受文件系统缓存影响，对比时应在同一台机器上运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Mp4TrimBenchmark 
+{
+    @Param({"false", "true"})
+    public boolean fastStart;
+
+    // 分片输出的片段时长(毫秒)，0为普通MP4
+    @Param({"0", "2000"})
+    public long fragmentMs;
+
+    private File clip;
+    private File output;
+    private List<TimeRange> ranges;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException 
+    {
+        clip = File.createTempFile("trim-source-", ".mp4");
+        output = File.createTempFile("trim-output-", ".mp4");
+        SyntheticMp4.write(clip, 120, 30, 30);
+        ranges = Arrays.asList(new TimeRange(10_500, 40_000), new TimeRange(60_250, 90_000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() 
+    {
+        clip.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public boolean trim() throws IOException 
+    {
+        Mp4Movie movie = Mp4Movie.parse(clip);
+        return new Mp4TrimWriter(movie).setFastStart(fastStart).setFragmentDuration(fragmentMs).write(ranges, output, null, null);
+    }
+}
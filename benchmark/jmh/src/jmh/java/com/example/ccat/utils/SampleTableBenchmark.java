@@ -0,0 +1,75 @@
+package com.example.ccat.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 样本表计算和时间戳重排
+ * presentationTimes遍历全部样本做显示时间换算，remap是裁剪时的样本选择、时间戳重排和样本表编码，不含文件读写
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleTableBenchmark 
+{
+    @Param({"600"})
+    public int seconds;
+
+    private Mp4Movie movie;
+    private Mp4TrimWriter writer;
+    private List<TimeRange> ranges;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException 
+    {
+        File clip = File.createTempFile("table-" + seconds + "s-", ".mp4");
+        try 
+        {
+            SyntheticMp4.write(clip, seconds, 30, 30);
+            movie = Mp4Movie.parse(clip);
+        }
+        finally 
+        {
+            clip.delete();
+        }
+        writer = new Mp4TrimWriter(movie);
+        long durationMs = seconds * 1000L;
+        ranges = Arrays.asList(
+                new TimeRange(durationMs / 10 + 333, durationMs / 4),
+                new TimeRange(durationMs / 3 + 123, durationMs / 2),
+                new TimeRange(durationMs * 2 / 3 + 777, durationMs - 1000));
+    }
+
+    @Benchmark
+    public long presentationTimes() 
+    {
+        long sum = 0;
+        for (Mp4Track track : movie.getTracks()) 
+        {
+            for (int i = 0; i < track.getSampleCount(); i++) 
+            {
+                sum += track.getPresentationTimeUs(i);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public byte[] remap() 
+    {
+        return writer.remapMoov(ranges);
+    }
+}
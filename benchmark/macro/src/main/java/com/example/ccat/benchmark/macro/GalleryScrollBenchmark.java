@@ -0,0 +1,157 @@
+package com.example.ccat.benchmark.macro;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import com.example.ccat.benchmark.clips.SyntheticClips;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Locale;
+
+import kotlin.Unit;
+
+/**
+ * 视频选择页滚动的帧时间
+ * 先把一批合成视频写入媒体库，保证相册有足够的条目可以滚动，再从主页进入选择页反复快速滑动
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class GalleryScrollBenchmark 
+{
+    private static final String PACKAGE_NAME = "com.example.ccat";
+    private static final String RELATIVE_PATH = "Movies/ccat-benchmark/";
+    private static final int CLIP_COUNT = 60;
+    private static final int CLIP_SECONDS = 5;
+    private static final int ITERATIONS = 5;
+    private static final int FLINGS = 3;
+    private static final long TIMEOUT_MS = 5_000;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @BeforeClass
+    public static void prepareGallery() throws IOException 
+    {
+        Context context = InstrumentationRegistry.getInstrumentation().getContext();
+        publishClips(context);
+
+        // 跳过运行时权限对话框
+        UiDevice device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        device.executeShellCommand("appops set " + PACKAGE_NAME + " MANAGE_EXTERNAL_STORAGE allow");
+        device.executeShellCommand("pm grant " + PACKAGE_NAME + " android.permission.READ_EXTERNAL_STORAGE");
+    }
+
+    @Test
+    public void scrollGallery() 
+    {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new FrameTimingMetric()),
+                CompilationMode.DEFAULT,
+                StartupMode.WARM,
+                ITERATIONS,
+                scope -> 
+                {
+                    scope.pressHome();
+                    scope.startActivityAndWait();
+                    UiDevice device = scope.getDevice();
+                    device.findObject(By.res(PACKAGE_NAME, "new_project_button")).click();
+                    device.wait(Until.hasObject(By.res(PACKAGE_NAME, "recycler_video_gallery")), TIMEOUT_MS);
+                    return Unit.INSTANCE;
+                },
+                scope -> 
+                {
+                    UiDevice device = scope.getDevice();
+                    UiObject2 gallery = device.findObject(By.res(PACKAGE_NAME, "recycler_video_gallery"));
+                    // 留出边距，避免手势从屏幕边缘开始触发系统返回
+                    gallery.setGestureMargin(device.getDisplayWidth() / 5);
+                    for (int i = 0; i < FLINGS; i++) 
+                    {
+                        gallery.fling(Direction.DOWN);
+                        device.waitForIdle();
+                    }
+                    for (int i = 0; i < FLINGS; i++) 
+                    {
+                        gallery.fling(Direction.UP);
+                        device.waitForIdle();
+                    }
+                    return Unit.INSTANCE;
+                });
+    }
+
+    /**
+     * 把合成视频写入媒体库的基准目录，已经写入过时跳过
+     */
+    private static void publishClips(Context context) throws IOException 
+    {
+        ContentResolver resolver = context.getContentResolver();
+        Uri collection = MediaStore.Video.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        try (Cursor cursor = resolver.query(collection, new String[] {MediaStore.Video.Media._ID},
+                MediaStore.Video.Media.RELATIVE_PATH + "=?", new String[] {RELATIVE_PATH}, null)) 
+        {
+            if (cursor != null && cursor.getCount() >= CLIP_COUNT) 
+            {
+                return;
+            }
+        }
+
+        File clip = SyntheticClips.get(context, CLIP_SECONDS);
+        for (int i = 0; i < CLIP_COUNT; i++) 
+        {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Video.Media.DISPLAY_NAME, String.format(Locale.US, "bench_%03d.mp4", i));
+            values.put(MediaStore.Video.Media.MIME_TYPE, "video/mp4");
+            values.put(MediaStore.Video.Media.RELATIVE_PATH, RELATIVE_PATH);
+            values.put(MediaStore.Video.Media.IS_PENDING, 1);
+            Uri uri = resolver.insert(collection, values);
+            if (uri == null) 
+            {
+                throw new IOException("无法写入媒体库");
+            }
+            try (InputStream in = new FileInputStream(clip);
+                 OutputStream out = resolver.openOutputStream(uri)) 
+            {
+                if (out == null) 
+                {
+                    throw new IOException("无法打开媒体库文件: " + uri);
+                }
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) 
+                {
+                    out.write(buffer, 0, read);
+                }
+            }
+            values.clear();
+            values.put(MediaStore.Video.Media.IS_PENDING, 0);
+            resolver.update(uri, values, null, null);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.ccat.benchmark.micro;
+
+import com.example.ccat.utils.VideoProcessor;
+
+/**
+ * 记录处理结果，处理器使用直接执行器时方法返回后即可检查
+ */
+class ResultCallback implements VideoProcessor.ProgressCallback 
+{
+    private String failure;
+
+    @Override
+    public void onProgress(float progress) 
+    {
+    }
+
+    @Override
+    public void onSuccess(String outputPath) 
+    {
+        failure = null;
+    }
+
+    @Override
+    public void onFailed(String reason) 
+    {
+        failure = reason;
+    }
+
+    /**
+     * 上一次处理失败时抛出AssertionError，使测量中止
+     */
+    void check() 
+    {
+        if (failure != null) 
+        {
+            throw new AssertionError("处理失败: " + failure);
+        }
+    }
+}
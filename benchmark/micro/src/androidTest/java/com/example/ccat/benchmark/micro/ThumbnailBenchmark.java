@@ -0,0 +1,84 @@
+package com.example.ccat.benchmark.micro;
+
+import android.graphics.Bitmap;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.ccat.benchmark.clips.SyntheticClips;
+import com.example.ccat.utils.SampleIndexCache;
+import com.example.ccat.utils.ThumbnailEngine;
+import com.example.ccat.utils.VideoSource;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 缩略图提取
+ * 冷启动每次清空缩略图和样本索引的内存缓存，计时包含样本索引构建和关键帧解码，与第一次打开某个视频时一致；
+ * 缓存命中只查内存缓存
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ThumbnailBenchmark 
+{
+    private static final long TIME_MS = 12_000;
+
+    private static File clip;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @BeforeClass
+    public static void prepareClip() throws IOException 
+    {
+        clip = SyntheticClips.get(InstrumentationRegistry.getInstrumentation().getTargetContext(), 30);
+    }
+
+    @Test
+    public void thumbnailCold() throws IOException 
+    {
+        ThumbnailEngine engine = ThumbnailEngine.get();
+        SampleIndexCache indexCache = SampleIndexCache.get();
+        VideoSource source = VideoSource.of(clip);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) 
+        {
+            state.pauseTiming();
+            engine.trimMemory();
+            indexCache.trimMemory();
+            state.resumeTiming();
+
+            // 缩略图引擎只使用已有的索引，这里先建立索引，否则冷启动只测到解码
+            indexCache.getIndex(source);
+            Bitmap bitmap = engine.getThumbnail(source, TIME_MS, ThumbnailEngine.DEFAULT_MAX_SIZE);
+            if (bitmap == null) 
+            {
+                throw new AssertionError("无法解码缩略图");
+            }
+        }
+    }
+
+    @Test
+    public void thumbnailCached() 
+    {
+        ThumbnailEngine engine = ThumbnailEngine.get();
+        if (engine.getThumbnail(clip, TIME_MS, ThumbnailEngine.DEFAULT_MAX_SIZE) == null) 
+        {
+            throw new AssertionError("无法解码缩略图");
+        }
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) 
+        {
+            engine.getThumbnail(clip, TIME_MS, ThumbnailEngine.DEFAULT_MAX_SIZE);
+        }
+    }
+}
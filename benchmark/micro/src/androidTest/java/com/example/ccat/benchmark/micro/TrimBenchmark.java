@@ -0,0 +1,80 @@
+package com.example.ccat.benchmark.micro;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.ccat.benchmark.clips.SyntheticClips;
+import com.example.ccat.utils.VideoProcessor;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * trimVideo在三种裁剪模式下的耗时
+ * 输入是30秒720p的合成视频，裁掉开头和结尾，起点不在关键帧上
+ * 样本索引在第一次迭代后进入缓存，测量的是应用内重复裁剪同一文件时的情况
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class TrimBenchmark 
+{
+    private static File clip;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public String modeName;
+
+    @Parameterized.Parameter(1)
+    public int mode;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> modes() 
+    {
+        return Arrays.asList(new Object[][] {
+                {"KEYFRAME", VideoProcessor.TRIM_MODE_KEYFRAME},
+                {"SMART", VideoProcessor.TRIM_MODE_SMART},
+                {"DIRECT", VideoProcessor.TRIM_MODE_DIRECT}
+        });
+    }
+
+    @BeforeClass
+    public static void prepareClip() throws IOException 
+    {
+        clip = SyntheticClips.get(InstrumentationRegistry.getInstrumentation().getTargetContext(), 30);
+    }
+
+    @Test
+    public void trimVideo() 
+    {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File output = new File(context.getCacheDir(), "trim_" + modeName + ".mp4");
+        ResultCallback callback = new ResultCallback();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) 
+        {
+            state.pauseTiming();
+            output.delete();
+            VideoProcessor processor = new VideoProcessor(callback, VideoProcessor.DIRECT_EXECUTOR);
+            processor.setTrimMode(mode);
+            state.resumeTiming();
+
+            processor.trimVideo(clip, output, 5_500, 25_000);
+            callback.check();
+        }
+        output.delete();
+    }
+}